@@ -27,13 +27,21 @@ public final class PlanDescriptor {
 
     private final boolean atomic;
 
+    private final Boolean concurrentStart;
+
     private final List<ArtifactSpecification> artifactSpecifications;
 
     public PlanDescriptor(String name, Version version, boolean scoped, boolean atomic, List<ArtifactSpecification> artifactSpecifications) {
+        this(name, version, scoped, atomic, null, artifactSpecifications);
+    }
+
+    public PlanDescriptor(String name, Version version, boolean scoped, boolean atomic, Boolean concurrentStart,
+        List<ArtifactSpecification> artifactSpecifications) {
         this.name = name;
         this.version = version;
         this.scoped = scoped;
         this.atomic = atomic;
+        this.concurrentStart = concurrentStart;
         this.artifactSpecifications = artifactSpecifications;
     }
 
@@ -53,6 +61,16 @@ public final class PlanDescriptor {
         return atomic;
     }
 
+    /**
+     * Returns whether the plan's artifacts should be started concurrently.
+     * 
+     * @return <code>Boolean.TRUE</code> or <code>Boolean.FALSE</code> if the plan specifies a start mode, otherwise
+     *         <code>null</code> in which case the deployer's default applies
+     */
+    public Boolean getConcurrentStart() {
+        return concurrentStart;
+    }
+
     public List<ArtifactSpecification> getArtifactSpecifications() {
         return artifactSpecifications;
     }
@@ -55,6 +55,8 @@ public final class PlanReader {
 
     private static final String ATOMIC_ATTRIBUTE = "atomic";
 
+    private static final String CONCURRENT_START_ATTRIBUTE = "concurrent-start";
+
     private static final String ARTIFACT_ELEMENT = "artifact";
 
     private static final String ATTRIBUTE_ELEMENT = "attribute";
@@ -106,12 +108,13 @@ public final class PlanReader {
         Version version = new Version(element.getAttribute(VERSION_ATTRIBUTE));
         boolean scoped = Boolean.parseBoolean(element.getAttribute(SCOPED_ATTRIBUTE));
         boolean atomic = Boolean.parseBoolean(element.getAttribute(ATOMIC_ATTRIBUTE));
+        Boolean concurrentStart = element.hasAttribute(CONCURRENT_START_ATTRIBUTE) ? Boolean.valueOf(element.getAttribute(CONCURRENT_START_ATTRIBUTE)) : null;
 
         Properties attributes = parseAttributes(element);
 
         List<ArtifactSpecification> artifactSpecifications = parseArtifactElements(element.getElementsByTagName(ARTIFACT_ELEMENT), attributes);
 
-        return new PlanDescriptor(name, version, scoped, atomic, artifactSpecifications);
+        return new PlanDescriptor(name, version, scoped, atomic, concurrentStart, artifactSpecifications);
     }
 
     private Properties parseAttributes(Element element) {
@@ -13,6 +13,7 @@ package org.eclipse.virgo.kernel.artifact.plan;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.FileInputStream;
@@ -50,6 +51,15 @@ public class PlanReaderTests {
         assertEquals(new VersionRange("[1.0.0, 2.0.0)"), artifactSpecification.getVersionRange());
         assertNotNull(artifactSpecification.getProperties());
         assertTrue(artifactSpecification.getProperties().isEmpty());
+        assertNull(plan.getConcurrentStart());
+    }
+
+    @Test
+    public void testConcurrentStartPlan() throws FileNotFoundException {
+        PlanDescriptor plan = reader.read(new FileInputStream("src/test/resources/plans/concurrent-start.plan"));
+        assertEquals("concurrent-start.plan", plan.getName());
+        assertEquals(Boolean.TRUE, plan.getConcurrentStart());
+        assertEquals(1, plan.getArtifactSpecifications().size());
     }
 
     @Test
@@ -13,9 +13,9 @@ package org.eclipse.virgo.kernel.core.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.virgo.kernel.core.BundleUtils;
 import org.eclipse.virgo.kernel.core.Signal;
@@ -45,9 +45,14 @@ import org.springframework.osgi.extender.support.ApplicationContextConfiguration
  * 
  * <p/>
  * 
+ * Whether a bundle is powered by Spring DM is determined from its headers once per revision of the bundle, which is
+ * identified by the bundle's last modification time. The result is cached until the bundle is updated or uninstalled.
+ * 
+ * <p/>
+ * 
  * <strong>Concurrent Semantics</strong><br />
  * 
- * Thread-safe.
+ * Thread-safe. The tracking state is held in concurrent collections and no lock is held while signals are driven.
  * 
  */
 final class BundleStartTracker implements EventHandler {
@@ -62,13 +67,13 @@ final class BundleStartTracker implements EventHandler {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(BundleStartTracker.class);
 
-    private final Object monitor = new Object();
+    private final ConcurrentMap<Bundle, Boolean> bundlesWithCreatedApplicationContexts = new ConcurrentHashMap<Bundle, Boolean>();
 
-    private final List<Bundle> bundlesWithCreatedApplicationContexts = new ArrayList<Bundle>();
+    private final ConcurrentMap<Bundle, Throwable> failureMap = new ConcurrentHashMap<Bundle, Throwable>();
 
-    private final Map<Bundle, Throwable> failureMap = new HashMap<Bundle, Throwable>();
+    private final ConcurrentMap<Bundle, SignalQueue> signalMap = new ConcurrentHashMap<Bundle, SignalQueue>();
 
-    private final Map<Bundle, List<Signal>> signalMap = new HashMap<Bundle, List<Signal>>();
+    private final ConcurrentMap<Bundle, SpringDmPowered> springDmPoweredBundles = new ConcurrentHashMap<Bundle, SpringDmPowered>();
 
     private final BundleListener bundleListener = new StartupTrackerBundleListener();
     
@@ -84,10 +89,7 @@ final class BundleStartTracker implements EventHandler {
 
     private void recordApplicationContextCreation(Bundle bundle) {
         LOGGER.info("Recording created application context for bundle '{}'", bundle);
-
-        synchronized (this.monitor) {
-            this.bundlesWithCreatedApplicationContexts.add(bundle);
-        }
+        this.bundlesWithCreatedApplicationContexts.put(bundle, Boolean.TRUE);
     }
 
     private void driveSignalsIfStartCompleted(Bundle bundle, boolean springDmPowered) {
@@ -96,27 +98,25 @@ final class BundleStartTracker implements EventHandler {
         Throwable failure = null;
         boolean isActive = isBundleActive(bundle);
         
-        synchronized (this.monitor) {
-            if (springDmPowered) {
-                boolean created = this.bundlesWithCreatedApplicationContexts.contains(bundle);
-                failure = this.failureMap.get(bundle);
-                
-                if (created && failure != null) {
-                    throw new IllegalStateException("Spring DM has notified an application context both successfully constructed and failed: " + failure);
-                }
-                
-                if (created) {
-                    LOGGER.info("Bundle '{}' has started and its application context is available", bundle);
-                    signals = this.signalMap.remove(bundle);
-                } else if (failure != null) {
-                    LOGGER.info("Bundle '{}' failed to start, the failure was '{}'", bundle, failure);
-                    signals = this.signalMap.remove(bundle);
-                }
+        if (springDmPowered) {
+            boolean created = this.bundlesWithCreatedApplicationContexts.containsKey(bundle);
+            failure = this.failureMap.get(bundle);
+
+            if (created && failure != null) {
+                throw new IllegalStateException("Spring DM has notified an application context both successfully constructed and failed: " + failure);
             }
-            else {
-                if (isActive) {
-                    signals = this.signalMap.remove(bundle);
-                }
+
+            if (created) {
+                LOGGER.info("Bundle '{}' has started and its application context is available", bundle);
+                signals = removeSignals(bundle);
+            } else if (failure != null) {
+                LOGGER.info("Bundle '{}' failed to start, the failure was '{}'", bundle, failure);
+                signals = removeSignals(bundle);
+            }
+        }
+        else {
+            if (isActive) {
+                signals = removeSignals(bundle);
             }
         }
         // signals to drive
@@ -146,6 +146,39 @@ final class BundleStartTracker implements EventHandler {
         });        
     }
 
+    /**
+     * Removes the signals queued for the given bundle. Each queued signal is returned by exactly one call.
+     * 
+     * @param bundle the bundle whose signals are to be removed
+     * @return the removed signals, or <code>null</code> if no signals were queued
+     */
+    private List<Signal> removeSignals(Bundle bundle) {
+        SignalQueue queue = this.signalMap.remove(bundle);
+        if (queue == null) {
+            return null;
+        }
+        List<Signal> signals = queue.close();
+        return signals.isEmpty() ? null : signals;
+    }
+
+    private void addSignal(Bundle bundle, Signal signal) {
+        LOGGER.info("Adding signal '{}' for bundle '{}'", signal, bundle);
+        while (true) {
+            SignalQueue queue = this.signalMap.get(bundle);
+            if (queue == null) {
+                queue = new SignalQueue();
+                SignalQueue existingQueue = this.signalMap.putIfAbsent(bundle, queue);
+                if (existingQueue != null) {
+                    queue = existingQueue;
+                }
+            }
+            if (queue.add(signal)) {
+                return;
+            }
+            // the queue was removed and closed concurrently, so retry with a new queue
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -160,17 +193,13 @@ final class BundleStartTracker implements EventHandler {
         if (EVENT_FAILURE.equals(event.getTopic())) {
             cause = (Throwable) event.getProperty("exception");
             if (cause != null) {
-                synchronized (this.monitor) {
-                    LOGGER.error("Recording application context construction failure '{}' for bundle '{}'", cause, bundle);
-                    this.failureMap.put(bundle, cause);
-                    signals = this.signalMap.remove(bundle);
-                }
+                LOGGER.error("Recording application context construction failure '{}' for bundle '{}'", cause, bundle);
+                this.failureMap.put(bundle, cause);
+                signals = removeSignals(bundle);
             }
         } else if (EVENT_CREATED.equals(event.getTopic())) {
-            synchronized (this.monitor) {
-                recordApplicationContextCreation(bundle);
-                signals = this.signalMap.remove(bundle);
-            }
+            recordApplicationContextCreation(bundle);
+            signals = removeSignals(bundle);
         } else if (EVENT_REGION_STARTING.equals(event.getTopic())) {
             initialize((BundleContext) event.getProperty("region.bundleContext"));
         }
@@ -191,16 +220,7 @@ final class BundleStartTracker implements EventHandler {
         
         if (signal != null) {
             if (springDmPowered || !bundleActive) {
-                List<Signal> queue;
-                synchronized (this.monitor) {
-                    queue = this.signalMap.get(bundle);
-                    if (queue == null) {
-                        queue = new ArrayList<Signal>();
-                        this.signalMap.put(bundle, queue);
-                    }
-                    LOGGER.info("Adding signal '{}' for bundle '{}'", signal, bundle);
-                    queue.add(signal);
-                }
+                addSignal(bundle, signal);
             } else {
                 // !springDmPowered && bundleActive
                 driveSignals(Arrays.asList(signal), null);
@@ -216,10 +236,18 @@ final class BundleStartTracker implements EventHandler {
         return false;
     }
 
-    private static boolean isSpringDmPoweredBundle(Bundle bundle) {
-        ApplicationContextConfiguration springDmConfiguration = new ApplicationContextConfiguration(bundle);
-        boolean springDmPowered = springDmConfiguration.isSpringPoweredBundle();
-        return springDmPowered;
+    private boolean isSpringDmPoweredBundle(Bundle bundle) {
+        long lastModified = bundle.getLastModified();
+        SpringDmPowered springDmPowered = this.springDmPoweredBundles.get(bundle);
+        if (springDmPowered == null || springDmPowered.lastModified != lastModified) {
+            // An entry for an earlier revision, whether found here or put concurrently, is replaced by the next lookup.
+            springDmPowered = new SpringDmPowered(lastModified, new ApplicationContextConfiguration(bundle).isSpringPoweredBundle());
+            this.springDmPoweredBundles.put(bundle, springDmPowered);
+            if (bundle.getState() == Bundle.UNINSTALLED) {
+                this.springDmPoweredBundles.remove(bundle);
+            }
+        }
+        return springDmPowered.springDmPowered;
     }
 
     private final class StartupTrackerBundleListener implements SynchronousBundleListener {
@@ -230,11 +258,8 @@ final class BundleStartTracker implements EventHandler {
         public void bundleChanged(BundleEvent event) {
             Bundle bundle = event.getBundle();
             if (event.getType() == BundleEvent.STARTED) {
-                List<Signal> signals = null;
                 if (!isSpringDmPoweredBundle(bundle)) {
-                    synchronized (BundleStartTracker.this.monitor) {
-                        signals = BundleStartTracker.this.signalMap.remove(bundle);
-                    }
+                    List<Signal> signals = removeSignals(bundle);
                     if (signals != null) {
                         LOGGER.info("Non-Spring DM powered bundle '{}' has started. Driving signals '{}'.", bundle, signals);
                         driveSignals(signals, null);
@@ -245,6 +270,9 @@ final class BundleStartTracker implements EventHandler {
                 LOGGER.info("Bundle '{}' has stopped. Removing its related tracking state.", bundle);
                 BundleStartTracker.this.cleanup(bundle, new RuntimeException("bundle stopped"));
             }
+            if (event.getType() == BundleEvent.UPDATED || event.getType() == BundleEvent.UNINSTALLED) {
+                BundleStartTracker.this.springDmPoweredBundles.remove(bundle);
+            }
         }
     }
 
@@ -255,12 +283,10 @@ final class BundleStartTracker implements EventHandler {
      */
     public void cleanup(Bundle bundle, Throwable cause) {
         List<Signal> danglingSignals = null;
-        synchronized (BundleStartTracker.this.monitor) {
-            if (bundle != null) {
-                BundleStartTracker.this.bundlesWithCreatedApplicationContexts.remove(bundle);
-                BundleStartTracker.this.failureMap.remove(bundle);
-                danglingSignals = BundleStartTracker.this.signalMap.remove(bundle);
-            }
+        if (bundle != null) {
+            this.bundlesWithCreatedApplicationContexts.remove(bundle);
+            this.failureMap.remove(bundle);
+            danglingSignals = removeSignals(bundle);
         }
         if (danglingSignals != null) {
             driveSignals(danglingSignals, cause);
@@ -279,4 +305,52 @@ final class BundleStartTracker implements EventHandler {
             }
         }
     }
+
+    /**
+     * Whether a given revision of a bundle is powered by Spring DM.
+     * <p />
+     * 
+     * <strong>Concurrent Semantics</strong><br />
+     * 
+     * Immutable.
+     */
+    private static final class SpringDmPowered {
+
+        private final long lastModified;
+
+        private final boolean springDmPowered;
+
+        private SpringDmPowered(long lastModified, boolean springDmPowered) {
+            this.lastModified = lastModified;
+            this.springDmPowered = springDmPowered;
+        }
+    }
+
+    /**
+     * The signals awaiting the completion of a bundle's start. Once closed, a queue accepts no more signals.
+     * <p />
+     * 
+     * <strong>Concurrent Semantics</strong><br />
+     * 
+     * Thread-safe.
+     */
+    private static final class SignalQueue {
+
+        private final List<Signal> signals = new ArrayList<Signal>(); // protected by this
+
+        private boolean closed = false; // protected by this
+
+        synchronized boolean add(Signal signal) {
+            if (this.closed) {
+                return false;
+            }
+            this.signals.add(signal);
+            return true;
+        }
+
+        synchronized List<Signal> close() {
+            this.closed = true;
+            return new ArrayList<Signal>(this.signals);
+        }
+    }
 }
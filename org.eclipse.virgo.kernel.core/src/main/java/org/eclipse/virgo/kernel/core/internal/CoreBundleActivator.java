@@ -11,6 +11,8 @@
 
 package org.eclipse.virgo.kernel.core.internal;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.util.Dictionary;
 import java.util.Hashtable;
@@ -29,8 +31,10 @@ import javax.management.ObjectName;
 
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceReference;
 import org.osgi.framework.launch.Framework;
+import org.osgi.service.cm.ConfigurationAdmin;
 import org.osgi.service.event.EventConstants;
 import org.osgi.service.event.EventHandler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -41,6 +45,8 @@ import org.eclipse.virgo.kernel.config.internal.KernelConfiguration;
 import org.eclipse.virgo.kernel.core.BundleStarter;
 import org.eclipse.virgo.kernel.core.Shutdown;
 import org.eclipse.virgo.kernel.core.internal.blueprint.ApplicationContextDependencyMonitor;
+import org.eclipse.virgo.kernel.serviceability.dump.DumpCoordinator;
+import org.eclipse.virgo.kernel.serviceability.dump.ThrottlingDumpGenerator;
 import org.eclipse.virgo.kernel.shim.scope.ScopeFactory;
 import org.eclipse.virgo.kernel.shim.scope.internal.StandardScopeFactory;
 import org.eclipse.virgo.kernel.shim.serviceability.TracingService;
@@ -71,6 +77,14 @@ public class CoreBundleActivator implements BundleActivator {
     private static final String MBEAN_VALUE_SHUTDOWN = "Shutdown";
 
     private static final String MBEAN_KEY_TYPE = "type";
+
+    private static final String MBEAN_NAME_DUMP_THROTTLE_MONITOR = ":category=Control,type=DumpThrottleMonitor";
+
+    private static final String MEDIC_CONFIGURATION_PID = "org.eclipse.virgo.medic";
+
+    private static final String PROPERTY_NAME_DUMP_ROOT_DIRECTORY = "dump.root.directory";
+
+    private static final String DEFAULT_DUMP_ROOT_DIRECTORY = "serviceability/dump";
     
     private static final int STARTUP_WAIT_LIMIT = 3600; // one hour
 
@@ -86,6 +100,10 @@ public class CoreBundleActivator implements BundleActivator {
     
     private volatile BundleStartTracker bundleStartTracker;
 
+    private volatile ThrottlingDumpGenerator throttlingDumpGenerator;
+
+    private volatile ObjectInstance dumpThrottleMonitorMBean;
+
     /**
      * {@inheritDoc}
      */
@@ -101,6 +119,7 @@ public class CoreBundleActivator implements BundleActivator {
         this.dependencyMonitor = createAndRegisterApplicationContextDependencyMonitor(context, eventLogger);
         
         DumpGenerator dumpGenerator = getRequiredService(context, DumpGenerator.class);
+        this.throttlingDumpGenerator = createAndRegisterThrottlingDumpGenerator(context, configuration, dumpGenerator);
         
         this.startupTracker = new StartupTracker(context, configuration, STARTUP_WAIT_LIMIT, bundleStartTracker, shutdown, dumpGenerator);
         this.startupTracker.start();
@@ -128,6 +147,45 @@ public class CoreBundleActivator implements BundleActivator {
        return dependencyMonitor;
     }
 
+    /**
+     * Decorates the <code>DumpGenerator</code> so that storms of failures do not stall the kernel's threads or fill the
+     * disk. The decorator is registered with a higher ranking than the <code>DumpGenerator</code> it decorates so that
+     * subsequent lookups find it. The startup tracker uses the undecorated <code>DumpGenerator</code> as it shuts down
+     * the kernel after requesting a dump.
+     */
+    @SuppressWarnings("unchecked")
+    private ThrottlingDumpGenerator createAndRegisterThrottlingDumpGenerator(BundleContext context, KernelConfiguration configuration,
+        DumpGenerator dumpGenerator) throws IOException {
+        ThrottlingDumpGenerator throttlingDumpGenerator = new ThrottlingDumpGenerator(dumpGenerator, getDumpDirectory(context));
+
+        Dictionary properties = new Hashtable();
+        properties.put(Constants.SERVICE_RANKING, Integer.MAX_VALUE);
+
+        this.tracker.track(context.registerService(DumpGenerator.class.getName(), throttlingDumpGenerator, properties));
+        DumpCoordinator.aspectOf().setDumpGenerator(throttlingDumpGenerator);
+
+        try {
+            ObjectName dumpThrottleMonitorName = ObjectName.getInstance(configuration.getDomain() + MBEAN_NAME_DUMP_THROTTLE_MONITOR);
+            this.dumpThrottleMonitorMBean = ManagementFactory.getPlatformMBeanServer().registerMBean(throttlingDumpGenerator,
+                dumpThrottleMonitorName);
+        } catch (JMException ex) {
+            throw new IllegalStateException("Unable to register DumpThrottleMonitor MBean", ex);
+        }
+
+        return throttlingDumpGenerator;
+    }
+
+    /**
+     * Returns the directory medic writes dumps to, as configured by its <code>dump.root.directory</code> property. Like
+     * medic, a relative directory is resolved against the working directory.
+     */
+    private File getDumpDirectory(BundleContext context) throws IOException {
+        ConfigurationAdmin configurationAdmin = getRequiredService(context, ConfigurationAdmin.class);
+        Dictionary<?, ?> properties = configurationAdmin.getConfiguration(MEDIC_CONFIGURATION_PID, null).getProperties();
+        Object dumpDirectory = properties == null ? null : properties.get(PROPERTY_NAME_DUMP_ROOT_DIRECTORY);
+        return new File(dumpDirectory == null ? DEFAULT_DUMP_ROOT_DIRECTORY : dumpDirectory.toString());
+    }
+
     @SuppressWarnings("unchecked")
     private BundleStartTracker createAndRegisterBundleStartTracker(BundleContext context) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
@@ -168,6 +226,18 @@ public class CoreBundleActivator implements BundleActivator {
         
         unregisterShutdownMBean();
         
+        ObjectInstance dumpThrottleMonitorMBean = this.dumpThrottleMonitorMBean;
+        if (dumpThrottleMonitorMBean != null) {
+            this.dumpThrottleMonitorMBean = null;
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(dumpThrottleMonitorMBean.getObjectName());
+        }
+        
+        ThrottlingDumpGenerator throttlingDumpGenerator = this.throttlingDumpGenerator;
+        if (throttlingDumpGenerator != null) {
+            this.throttlingDumpGenerator = null;
+            throttlingDumpGenerator.stop();
+        }
+        
         ApplicationContextDependencyMonitor dependencyMonitor = this.dependencyMonitor;
         if (dependencyMonitor != null) {
             this.dependencyMonitor = null;
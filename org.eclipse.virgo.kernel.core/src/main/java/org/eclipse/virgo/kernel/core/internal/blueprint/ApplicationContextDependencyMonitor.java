@@ -12,13 +12,15 @@
 package org.eclipse.virgo.kernel.core.internal.blueprint;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.osgi.framework.Bundle;
 import org.osgi.service.event.Event;
@@ -27,6 +29,7 @@ import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.eclipse.virgo.kernel.core.internal.blueprint.HashedTimerWheel.Timeout;
 import org.eclipse.virgo.kernel.diagnostics.KernelLogEvents;
 import org.eclipse.virgo.medic.eventlog.EventLogger;
 
@@ -34,6 +37,12 @@ import org.eclipse.virgo.medic.eventlog.EventLogger;
  * {@link ApplicationContextDependencyMonitor} is a class that tracks the satisfaction of service dependencies needed
  * during the creation of application contexts and issues log messages for delayed service dependencies.
  * <p />
+ * The warning intervals of all the unsatisfied service dependencies are tracked by a single {@link HashedTimerWheel}
+ * which is advanced by one periodic task on the given {@link ScheduledExecutorService}. The dependencies whose warnings
+ * fall due in the same tick are grouped by application, so a single warning lists all of the application's dependencies
+ * which are still awaited. The bundles of a scoped application are grouped by their scope name and each unscoped bundle
+ * is treated as an application of its own.
+ * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
@@ -60,15 +69,23 @@ public final class ApplicationContextDependencyMonitor implements EventHandler {
 
     private static final int SLOW_WARNING_INTERVAL = 5 * 60 * 1000;
 
+    private static final int TIMER_WHEEL_TICK = 250;
+
+    private static final String HEADER_MODULE_SCOPE = "Module-Scope";
+
+    // One revolution spans 64 seconds, more than MAXIMUM_WARNING_INTERVAL. Longer intervals, such as
+    // SLOW_WARNING_INTERVAL, stay in their slot for more than one revolution.
+    private static final int TIMER_WHEEL_SLOTS = 256;
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final EventLogger eventLogger;
 
     private final ScheduledExecutorService scheduledExecutorService;
 
-    private final Map<Bundle, Map<ServiceDependency, Ticker>> tickers = new HashMap<Bundle, Map<ServiceDependency, Ticker>>();
+    private final ConcurrentMap<Bundle, ConcurrentMap<ServiceDependency, DependencyWait>> dependencyWaits = new ConcurrentHashMap<Bundle, ConcurrentMap<ServiceDependency, DependencyWait>>();
 
-    private final Object monitor = new Object();
+    private final HashedTimerWheel<DependencyWait> timerWheel = new HashedTimerWheel<DependencyWait>(TIMER_WHEEL_SLOTS, TIMER_WHEEL_TICK);
 
     /**
      * Construct a {@link ApplicationContextDependencyMonitor} which uses the given {@link ScheduledExecutorService} to
@@ -80,100 +97,109 @@ public final class ApplicationContextDependencyMonitor implements EventHandler {
     public ApplicationContextDependencyMonitor(ScheduledExecutorService scheduledExecutorService, EventLogger eventLogger) {
         this.scheduledExecutorService = scheduledExecutorService;
         this.eventLogger = eventLogger;
+        this.scheduledExecutorService.scheduleWithFixedDelay(new Runnable() {
+
+            public void run() {
+                try {
+                    warnOfDelayedDependencies();
+                } catch (RuntimeException e) {
+                    logger.error("Unexpected failure while checking for delayed service dependencies", e);
+                }
+            }
+        }, TIMER_WHEEL_TICK, TIMER_WHEEL_TICK, TimeUnit.MILLISECONDS);
     }
 
     /**
      * {@inheritDoc}
      */
     public void handleEvent(Event event) {
-        synchronized (this.monitor) {
-            Bundle bundle = (Bundle) event.getProperty(EventConstants.BUNDLE);
+        Bundle bundle = (Bundle) event.getProperty(EventConstants.BUNDLE);
 
-            if (EVENT_WAITING.equals(event.getTopic())) {
+        if (EVENT_WAITING.equals(event.getTopic())) {
+            List<ServiceDependency> serviceDependencies = createServiceDependencies(event);
+            for (ServiceDependency serviceDependency : serviceDependencies) {
+                addDependencyWait(serviceDependency, bundle);
+            }
+        } else if (EVENT_GRACE_PERIOD.equals(event.getTopic())) {
+            List<ServiceDependency> remainingUnsatisfiedDependencies = createServiceDependencies(event);
+            changeInUnsatisfiedDependencies(remainingUnsatisfiedDependencies, bundle);
+
+        } else if (EVENT_FAILURE.equals(event.getTopic())) {
+            String[] dependenciesArray = (String[]) event.getProperty("dependencies");
+            if (dependenciesArray != null) {
                 List<ServiceDependency> serviceDependencies = createServiceDependencies(event);
-                for (ServiceDependency serviceDependency : serviceDependencies) {
-                    addServiceDependencyTicker(serviceDependency, bundle);
-                }
-            } else if (EVENT_GRACE_PERIOD.equals(event.getTopic())) {
-                List<ServiceDependency> remainingUnsatisfiedDependencies = createServiceDependencies(event);
-                changeInUnsatisfiedDependencies(remainingUnsatisfiedDependencies, bundle);
-
-            } else if (EVENT_FAILURE.equals(event.getTopic())) {
-                String[] dependenciesArray = (String[]) event.getProperty("dependencies");
-                if (dependenciesArray != null) {
-                    List<ServiceDependency> serviceDependencies = createServiceDependencies(event);
-                    serviceDependenciesTimedOut(serviceDependencies, bundle);
-                } else {
-                    containerCreationFailed(bundle);
-                }
-            } else if (EVENT_CREATED.equals(event.getTopic())) {
-                containerCreated(bundle);
+                serviceDependenciesTimedOut(serviceDependencies, bundle);
+            } else {
+                containerCreationFailed(bundle);
             }
+        } else if (EVENT_CREATED.equals(event.getTopic())) {
+            containerCreated(bundle);
         }
     }
 
     private void serviceDependenciesTimedOut(List<ServiceDependency> timedOutDependencies, Bundle bundle) {
-        Map<ServiceDependency, Ticker> bundlesTickers = this.tickers.get(bundle);
+        Map<ServiceDependency, DependencyWait> bundlesWaits = this.dependencyWaits.get(bundle);
 
-        if (bundlesTickers != null) {
+        if (bundlesWaits != null) {
             for (ServiceDependency timedOutDependency : timedOutDependencies) {
-                Ticker ticker = bundlesTickers.remove(timedOutDependency);
-                if (ticker != null) {
-                    dependencyTimedOut(timedOutDependency, ticker, bundle);
+                DependencyWait dependencyWait = bundlesWaits.remove(timedOutDependency);
+                if (dependencyWait != null) {
+                    dependencyTimedOut(dependencyWait);
                 }
             }
         }
     }
 
     private void containerCreationFailed(Bundle bundle) {
-        Map<ServiceDependency, Ticker> tickers = this.tickers.remove(bundle);
-        if (tickers != null) {
-            for (Entry<ServiceDependency, Ticker> ticker : tickers.entrySet()) {
-                ticker.getValue().cancel();
+        Map<ServiceDependency, DependencyWait> bundlesWaits = this.dependencyWaits.remove(bundle);
+        if (bundlesWaits != null) {
+            for (DependencyWait dependencyWait : bundlesWaits.values()) {
+                dependencyWait.cancel();
             }
         }
     }
 
     private void containerCreated(Bundle bundle) {
-        Map<ServiceDependency, Ticker> bundlesTickers = this.tickers.remove(bundle);
+        Map<ServiceDependency, DependencyWait> bundlesWaits = this.dependencyWaits.remove(bundle);
 
-        if (bundlesTickers != null) {
-            for (Entry<ServiceDependency, Ticker> entry : bundlesTickers.entrySet()) {
-                dependencySatisfied(entry.getKey(), entry.getValue(), bundle);
+        if (bundlesWaits != null) {
+            for (DependencyWait dependencyWait : bundlesWaits.values()) {
+                dependencySatisfied(dependencyWait);
             }
         }
     }
 
     private void changeInUnsatisfiedDependencies(List<ServiceDependency> remainingUnsatisfiedDependencies, Bundle bundle) {
-        Map<ServiceDependency, Ticker> tickers = this.tickers.get(bundle);
+        ConcurrentMap<ServiceDependency, DependencyWait> bundlesWaits = this.dependencyWaits.get(bundle);
 
-        if (tickers != null) {
-            Iterator<Entry<ServiceDependency, Ticker>> entries = tickers.entrySet().iterator();
+        if (bundlesWaits != null) {
+            Iterator<Entry<ServiceDependency, DependencyWait>> entries = bundlesWaits.entrySet().iterator();
 
             while (entries.hasNext()) {
-                Entry<ServiceDependency, Ticker> entry = entries.next();
+                Entry<ServiceDependency, DependencyWait> entry = entries.next();
 
-                if (!remainingUnsatisfiedDependencies.contains(entry.getKey())) {
-                    dependencySatisfied(entry.getKey(), entry.getValue(), bundle);
-                    entries.remove();
+                if (!remainingUnsatisfiedDependencies.contains(entry.getKey()) && bundlesWaits.remove(entry.getKey(), entry.getValue())) {
+                    dependencySatisfied(entry.getValue());
                 }
             }
         }
     }
 
-    private void dependencySatisfied(ServiceDependency serviceDependency, Ticker ticker, Bundle bundle) {
-        logger.info("Service dependency '{}' has been satisfied", serviceDependency);
-        handleRemovedTicker(ticker, serviceDependency, bundle, true);
+    private void dependencySatisfied(DependencyWait dependencyWait) {
+        logger.info("Service dependency '{}' has been satisfied", dependencyWait.serviceDependency);
+        handleRemovedDependencyWait(dependencyWait, true);
     }
 
-    private void dependencyTimedOut(ServiceDependency serviceDependency, Ticker ticker, Bundle bundle) {
-        logger.info("Service dependency '{}' has timed out", serviceDependency);
-        handleRemovedTicker(ticker, serviceDependency, bundle, false);
+    private void dependencyTimedOut(DependencyWait dependencyWait) {
+        logger.info("Service dependency '{}' has timed out", dependencyWait.serviceDependency);
+        handleRemovedDependencyWait(dependencyWait, false);
     }
 
-    private void handleRemovedTicker(Ticker ticker, ServiceDependency serviceDependency, Bundle bundle, boolean satisfied) {
-        boolean hasTicked = ticker.cancel();
-        if (hasTicked) {
+    private void handleRemovedDependencyWait(DependencyWait dependencyWait, boolean satisfied) {
+        boolean hasWarned = dependencyWait.cancel();
+        if (hasWarned) {
+            ServiceDependency serviceDependency = dependencyWait.serviceDependency;
+            Bundle bundle = dependencyWait.bundle;
             if (satisfied) {
                 this.eventLogger.log(KernelLogEvents.APPLICATION_CONTEXT_DEPENDENCY_SATISFIED, serviceDependency.getBeanName(),
                     bundle.getSymbolicName(), bundle.getVersion(), serviceDependency.getFilter());
@@ -185,53 +211,138 @@ public final class ApplicationContextDependencyMonitor implements EventHandler {
     }
 
     /**
-     * Add a service dependency ticker for the given application context, given associated bundle, and given service
-     * dependency.
+     * Start waiting for the given service dependency of the application context associated with the given bundle.
      * 
-     * @param applicationContext the partially constructed application context which needs the service dependency
      * @param serviceDependency the service dependency
-     * @param bundle the {@link Bundle} associated with the given application context
+     * @param bundle the {@link Bundle} associated with the application context
      */
-    private void addServiceDependencyTicker(final ServiceDependency serviceDependency, final Bundle bundle) {
-        Map<ServiceDependency, Ticker> serviceDependencyTickers = getServiceDependencyTickers(bundle);
-        if (serviceDependencyTickers.containsKey(serviceDependency)) {
+    private void addDependencyWait(ServiceDependency serviceDependency, Bundle bundle) {
+        // Services which are flagged as likely to be slow to be published are given a longer initial warning
+        // interval.
+        boolean slowService = serviceDependency.getFilter().contains("(org.eclipse.virgo.server.slowservice=true)");
+        DependencyWait dependencyWait = new DependencyWait(bundle, getScopeName(bundle), serviceDependency,
+            slowService ? SLOW_WARNING_INTERVAL : INITIAL_WARNING_INTERVAL, slowService ? SLOW_WARNING_INTERVAL : MAXIMUM_WARNING_INTERVAL);
+
+        if (getDependencyWaits(bundle).putIfAbsent(serviceDependency, dependencyWait) != null) {
             logger.warn("Service dependency '{}' already being waited upon", serviceDependency);
         } else {
-            // Services which are flagged as likely to be slow to be published are given a longer initial warning
-            // interval.
-            boolean slowService = serviceDependency.getFilter().contains("(org.eclipse.virgo.server.slowservice=true)");
-            serviceDependencyTickers.put(serviceDependency, StandardTicker.createExponentialTicker(slowService ? SLOW_WARNING_INTERVAL
-                : INITIAL_WARNING_INTERVAL, WARNING_INTERVAL_INCREASE_RATE_PERCENT, slowService ? SLOW_WARNING_INTERVAL : MAXIMUM_WARNING_INTERVAL,
-                new Callable<Void>() {
-
-                    public Void call() throws Exception {
-                        synchronized (ApplicationContextDependencyMonitor.this.monitor) {
-                            if (bundle.getState() == Bundle.UNINSTALLED) {
-                                ApplicationContextDependencyMonitor.this.containerCreationFailed(bundle);
-                            } else {
-                                eventLogger.log(KernelLogEvents.APPLICATION_CONTEXT_DEPENDENCY_DELAYED, serviceDependency.getBeanName(),
-                                    bundle.getSymbolicName(), bundle.getVersion(), serviceDependency.getFilter());
-                            }
-                            return null;
-                        }
-                    }
-                }, this.scheduledExecutorService));
+            dependencyWait.schedule(this.timerWheel);
         }
     }
 
     /**
-     * Get the possibly empty map of service dependency tickers for the given <code>Bundle</code>.
+     * Get the possibly empty map of service dependency waits for the given <code>Bundle</code>.
      * 
      * @param bundle the <code>Bundle</code> whose application context's service dependencies are required
-     * @return a map of service dependency tickers
+     * @return a map of service dependency waits
+     */
+    private ConcurrentMap<ServiceDependency, DependencyWait> getDependencyWaits(Bundle bundle) {
+        ConcurrentMap<ServiceDependency, DependencyWait> bundlesWaits = this.dependencyWaits.get(bundle);
+        if (bundlesWaits == null) {
+            bundlesWaits = new ConcurrentHashMap<ServiceDependency, DependencyWait>();
+            ConcurrentMap<ServiceDependency, DependencyWait> existingWaits = this.dependencyWaits.putIfAbsent(bundle, bundlesWaits);
+            if (existingWaits != null) {
+                bundlesWaits = existingWaits;
+            }
+        }
+        return bundlesWaits;
+    }
+
+    /**
+     * Get the name of the application scope containing the given bundle.
+     * 
+     * @param bundle the <code>Bundle</code>
+     * @return the scope name or <code>null</code> if the bundle is not scoped
+     */
+    private static String getScopeName(Bundle bundle) {
+        return (String) bundle.getHeaders().get(HEADER_MODULE_SCOPE);
+    }
+
+    /**
+     * Advance the timer wheel and log a warning for the service dependencies whose warning intervals have elapsed. The
+     * dependencies are grouped by application so that one warning is logged for each application.
      */
-    private Map<ServiceDependency, Ticker> getServiceDependencyTickers(Bundle bundle) {
-        Map<ServiceDependency, Ticker> tickers = this.tickers.get(bundle);
-        if (tickers == null) {
-            tickers = new HashMap<ServiceDependency, Ticker>();
-            this.tickers.put(bundle, tickers);
+    private void warnOfDelayedDependencies() {
+        List<DependencyWait> expired = this.timerWheel.advance();
+        if (expired.isEmpty()) {
+            return;
+        }
+
+        // Keyed by scope name for scoped bundles and by bundle otherwise.
+        Map<Object, List<DependencyWait>> expiredByApplication = new LinkedHashMap<Object, List<DependencyWait>>();
+        for (DependencyWait dependencyWait : expired) {
+            Object application = dependencyWait.scopeName == null ? dependencyWait.bundle : dependencyWait.scopeName;
+            List<DependencyWait> applicationsExpired = expiredByApplication.get(application);
+            if (applicationsExpired == null) {
+                applicationsExpired = new ArrayList<DependencyWait>();
+                expiredByApplication.put(application, applicationsExpired);
+            }
+            applicationsExpired.add(dependencyWait);
+        }
+
+        for (List<DependencyWait> applicationsExpired : expiredByApplication.values()) {
+            List<DependencyWait> delayedDependencyWaits = new ArrayList<DependencyWait>(applicationsExpired.size());
+            for (DependencyWait dependencyWait : applicationsExpired) {
+                Bundle bundle = dependencyWait.bundle;
+                if (bundle.getState() == Bundle.UNINSTALLED) {
+                    containerCreationFailed(bundle);
+                    dependencyWait.cancel();
+                    continue;
+                }
+
+                Map<ServiceDependency, DependencyWait> bundlesWaits = this.dependencyWaits.get(bundle);
+                if (bundlesWaits == null || bundlesWaits.get(dependencyWait.serviceDependency) != dependencyWait) {
+                    // The wait was added concurrently with the removal of the bundle's waits.
+                    dependencyWait.cancel();
+                } else if (dependencyWait.warn(this.timerWheel)) {
+                    delayedDependencyWaits.add(dependencyWait);
+                }
+            }
+            logDelayedDependencies(delayedDependencyWaits);
+        }
+    }
+
+    private void logDelayedDependencies(List<DependencyWait> delayedDependencyWaits) {
+        if (delayedDependencyWaits.isEmpty()) {
+            return;
+        }
+
+        DependencyWait firstDependencyWait = delayedDependencyWaits.get(0);
+        Bundle bundle = firstDependencyWait.bundle;
+        boolean singleBundle = true;
+        for (DependencyWait dependencyWait : delayedDependencyWaits) {
+            if (dependencyWait.bundle != bundle) {
+                singleBundle = false;
+                break;
+            }
+        }
+
+        if (delayedDependencyWaits.size() == 1) {
+            ServiceDependency serviceDependency = firstDependencyWait.serviceDependency;
+            this.eventLogger.log(KernelLogEvents.APPLICATION_CONTEXT_DEPENDENCY_DELAYED, serviceDependency.getBeanName(),
+                bundle.getSymbolicName(), bundle.getVersion(), serviceDependency.getFilter());
+        } else {
+            StringBuilder dependencies = new StringBuilder();
+            for (DependencyWait dependencyWait : delayedDependencyWaits) {
+                if (dependencies.length() > 0) {
+                    dependencies.append(", ");
+                }
+                ServiceDependency serviceDependency = dependencyWait.serviceDependency;
+                dependencies.append('\'').append(serviceDependency.getBeanName()).append('\'');
+                if (!singleBundle) {
+                    dependencies.append(" in bundle '").append(dependencyWait.bundle.getSymbolicName()).append("' version '").append(
+                        dependencyWait.bundle.getVersion()).append('\'');
+                }
+                dependencies.append(" (filter '").append(serviceDependency.getFilter()).append("')");
+            }
+            if (singleBundle) {
+                this.eventLogger.log(KernelLogEvents.APPLICATION_CONTEXT_DEPENDENCIES_DELAYED, bundle.getSymbolicName(), bundle.getVersion(),
+                    delayedDependencyWaits.size(), dependencies.toString());
+            } else {
+                this.eventLogger.log(KernelLogEvents.APPLICATION_DEPENDENCIES_DELAYED, firstDependencyWait.scopeName, delayedDependencyWaits.size(),
+                    dependencies.toString());
+            }
         }
-        return tickers;
     }
 
     public void stop() {
@@ -253,6 +364,81 @@ public final class ApplicationContextDependencyMonitor implements EventHandler {
         return serviceDependencies;
     }
 
+    /**
+     * A {@link DependencyWait} tracks the warnings issued for an unsatisfied service dependency. The interval between
+     * warnings starts at a given initial interval and increases exponentially up to a given maximum interval.
+     * <p />
+     * 
+     * <strong>Concurrent Semantics</strong><br />
+     * 
+     * This class is thread safe.
+     */
+    private static final class DependencyWait {
+
+        private final Bundle bundle;
+
+        private final String scopeName;
+
+        private final ServiceDependency serviceDependency;
+
+        private final long maximumWarningInterval;
+
+        private long warningInterval; // protected by this
+
+        private Timeout<DependencyWait> timeout; // protected by this
+
+        private boolean warned = false; // protected by this
+
+        private boolean cancelled = false; // protected by this
+
+        private DependencyWait(Bundle bundle, String scopeName, ServiceDependency serviceDependency, long initialWarningInterval,
+            long maximumWarningInterval) {
+            this.bundle = bundle;
+            this.scopeName = scopeName;
+            this.serviceDependency = serviceDependency;
+            this.warningInterval = initialWarningInterval;
+            this.maximumWarningInterval = maximumWarningInterval;
+        }
+
+        /**
+         * Schedule the next warning in the given timer wheel, unless this wait has been cancelled.
+         */
+        private synchronized void schedule(HashedTimerWheel<DependencyWait> timerWheel) {
+            if (!this.cancelled) {
+                this.timeout = timerWheel.schedule(this, this.warningInterval);
+                this.warningInterval = Math.min(this.warningInterval * (100 + WARNING_INTERVAL_INCREASE_RATE_PERCENT) / 100,
+                    this.maximumWarningInterval);
+            }
+        }
+
+        /**
+         * Record a warning and schedule the next one, unless this wait has been cancelled.
+         * 
+         * @return <code>true</code> if and only if a warning should be issued
+         */
+        private synchronized boolean warn(HashedTimerWheel<DependencyWait> timerWheel) {
+            if (this.cancelled) {
+                return false;
+            }
+            this.warned = true;
+            schedule(timerWheel);
+            return true;
+        }
+
+        /**
+         * Cancel this wait.
+         * 
+         * @return <code>true</code> if and only if a warning has been issued
+         */
+        private synchronized boolean cancel() {
+            this.cancelled = true;
+            if (this.timeout != null) {
+                this.timeout.cancel();
+            }
+            return this.warned;
+        }
+    }
+
     private static final class ServiceDependency {
 
         private final String filter;
@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.core.internal.blueprint;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HashedTimerWheel} tracks any number of timeouts with a fixed resolution. Time is divided into ticks and each
+ * timeout is hashed, by the tick in which it expires, into one of a fixed number of slots. Scheduling and cancelling a
+ * timeout take constant time and the caller's thread calls {@link #advance()} once per tick to collect the timeouts
+ * which have expired, so that a single thread can drive every timeout in the wheel.
+ * <p />
+ * Cancelled timeouts are discarded when their slot is next examined. Time is read from a {@link Clock}, which is the
+ * system clock unless another is supplied.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ * @param <T> the type of the values held by the timeouts
+ */
+final class HashedTimerWheel<T> {
+
+    private final Clock clock;
+
+    private final long tickNanos;
+
+    private final long startNanos;
+
+    private final List<List<Timeout<T>>> slots;
+
+    private final int mask;
+
+    private final Object monitor = new Object();
+
+    private long currentTick; // protected by monitor
+
+    /**
+     * Creates a {@link HashedTimerWheel} with at least the given number of slots and with the given tick duration.
+     *
+     * @param minimumSlotCount the minimum number of slots, which is rounded up to a power of two
+     * @param tickMillis the duration of a tick in milliseconds
+     */
+    HashedTimerWheel(int minimumSlotCount, long tickMillis) {
+        this(minimumSlotCount, tickMillis, Clock.SYSTEM);
+    }
+
+    /**
+     * Creates a {@link HashedTimerWheel} with at least the given number of slots and with the given tick duration which
+     * reads the time from the given {@link Clock}.
+     *
+     * @param minimumSlotCount the minimum number of slots, which is rounded up to a power of two
+     * @param tickMillis the duration of a tick in milliseconds
+     * @param clock the <code>Clock</code>
+     */
+    HashedTimerWheel(int minimumSlotCount, long tickMillis, Clock clock) {
+        this.clock = clock;
+        this.startNanos = clock.nanoTime();
+        int slotCount = 1;
+        while (slotCount < minimumSlotCount) {
+            slotCount <<= 1;
+        }
+        this.slots = new ArrayList<List<Timeout<T>>>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            this.slots.add(new ArrayList<Timeout<T>>());
+        }
+        this.mask = slotCount - 1;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    }
+
+    /**
+     * Schedules a timeout for the given value which expires after the given delay, rounded up to a whole tick.
+     *
+     * @param value the value to be returned by {@link #advance()} once the timeout has expired
+     * @param delayMillis the delay in milliseconds
+     * @return the scheduled <code>Timeout</code>
+     */
+    Timeout<T> schedule(T value, long delayMillis) {
+        long deadlineNanos = this.clock.nanoTime() - this.startNanos + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        long deadlineTick = (deadlineNanos + this.tickNanos - 1) / this.tickNanos;
+
+        synchronized (this.monitor) {
+            Timeout<T> timeout = new Timeout<T>(value, Math.max(deadlineTick, this.currentTick + 1));
+            this.slots.get((int) (timeout.deadlineTick & this.mask)).add(timeout);
+            return timeout;
+        }
+    }
+
+    /**
+     * Advances the wheel to the current tick and returns the values of the timeouts which have expired since the
+     * previous call. If the previous call was more than one tick ago, every slot passed over in the meantime is
+     * examined.
+     *
+     * @return the possibly empty list of values whose timeouts have expired, in no particular order
+     */
+    List<T> advance() {
+        List<T> expired = new ArrayList<T>();
+        long targetTick = (this.clock.nanoTime() - this.startNanos) / this.tickNanos;
+
+        synchronized (this.monitor) {
+            long ticks = Math.min(targetTick - this.currentTick, this.slots.size());
+            for (long tick = targetTick - ticks + 1; tick <= targetTick; tick++) {
+                expire(this.slots.get((int) (tick & this.mask)), targetTick, expired);
+            }
+            this.currentTick = Math.max(this.currentTick, targetTick);
+        }
+        return expired;
+    }
+
+    private static <T> void expire(List<Timeout<T>> slot, long targetTick, List<T> expired) {
+        Iterator<Timeout<T>> timeouts = slot.iterator();
+        while (timeouts.hasNext()) {
+            Timeout<T> timeout = timeouts.next();
+            if (timeout.cancelled) {
+                timeouts.remove();
+            } else if (timeout.deadlineTick <= targetTick) {
+                timeouts.remove();
+                expired.add(timeout.value);
+            }
+        }
+    }
+
+    /**
+     * A {@link Clock} is a source of time for a {@link HashedTimerWheel}.
+     */
+    interface Clock {
+
+        /**
+         * A <code>Clock</code> which reads {@link System#nanoTime()}.
+         */
+        Clock SYSTEM = new Clock() {
+
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+        };
+
+        /**
+         * Returns the current value of this clock in nanoseconds. Only the difference between two values is meaningful.
+         *
+         * @return the current value
+         */
+        long nanoTime();
+    }
+
+    /**
+     * A {@link Timeout} is a value scheduled in a {@link HashedTimerWheel}.
+     * <p />
+     *
+     * <strong>Concurrent Semantics</strong><br />
+     *
+     * This class is thread safe.
+     *
+     * @param <T> the type of the value
+     */
+    static final class Timeout<T> {
+
+        private final T value;
+
+        private final long deadlineTick;
+
+        private volatile boolean cancelled = false;
+
+        private Timeout(T value, long deadlineTick) {
+            this.value = value;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * Cancels this timeout so that its value is not returned by {@link HashedTimerWheel#advance()}, unless it has
+         * been returned already.
+         */
+        void cancel() {
+            this.cancelled = true;
+        }
+    }
+}
@@ -36,6 +36,8 @@ public enum KernelLogEvents implements LogEvent {
     APPLICATION_CONTEXT_DEPENDENCY_DELAYED(100, Level.WARNING), //
     APPLICATION_CONTEXT_DEPENDENCY_SATISFIED(101, Level.INFO), //
     APPLICATION_CONTEXT_DEPENDENCY_TIMED_OUT(102, Level.ERROR), //
+    APPLICATION_CONTEXT_DEPENDENCIES_DELAYED(103, Level.WARNING), //
+    APPLICATION_DEPENDENCIES_DELAYED(104, Level.WARNING), //
     
     OVF_CONFIGURATION_FILE_DOES_NOT_EXIST(200, Level.WARNING), //
     OVF_READ_ERROR(201, Level.ERROR), //
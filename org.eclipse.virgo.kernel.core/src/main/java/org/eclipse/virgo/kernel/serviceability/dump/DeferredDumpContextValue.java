@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.serviceability.dump;
+
+/**
+ * A value in a dump's context which {@link ThrottlingDumpGenerator} creates only once it has decided to generate the
+ * dump, so that a dump which is dropped does not pay for the value. The dump's contributors see the created value.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * The value is created on the thread which requested the dump, before the request returns, so it may be a copy of
+ * state which that thread goes on to modify.
+ *
+ */
+public interface DeferredDumpContextValue {
+
+    /**
+     * Creates the value.
+     *
+     * @return the value
+     */
+    Object create();
+}
@@ -0,0 +1,69 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.serviceability.dump;
+
+import javax.management.MXBean;
+
+/**
+ * MBean for monitoring the dumps generated and dropped by the kernel's {@link ThrottlingDumpGenerator}.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations <code>must</code> be threadsafe.
+ *
+ */
+@MXBean
+public interface DumpThrottleMonitor {
+
+    /**
+     * Returns the number of dumps generated.
+     *
+     * @return the number of dumps generated
+     */
+    long getDumpsGenerated();
+
+    /**
+     * Returns the number of dumps waiting to be generated.
+     *
+     * @return the number of pending dumps
+     */
+    long getDumpsPending();
+
+    /**
+     * Returns the number of dumps dropped because too many dumps were already waiting to be generated.
+     *
+     * @return the number of dumps dropped because the queue was full
+     */
+    long getDumpsDroppedQueueFull();
+
+    /**
+     * Returns the number of dumps dropped because too many dumps with the same cause were requested recently.
+     *
+     * @return the number of dumps dropped by the rate limit
+     */
+    long getDumpsDroppedRateLimited();
+
+    /**
+     * Returns the number of dumps dropped because a dump with the same cause and failure was generated recently.
+     *
+     * @return the number of duplicate dumps dropped
+     */
+    long getDumpsDroppedDuplicate();
+
+    /**
+     * Returns the number of dumps dropped because the dump directory had used up its disk budget.
+     *
+     * @return the number of dumps dropped by the disk budget
+     */
+    long getDumpsDroppedDiskBudget();
+}
@@ -0,0 +1,489 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.serviceability.dump;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.eclipse.virgo.medic.dump.DumpGenerator;
+
+/**
+ * A {@link DumpGenerator} which protects the kernel from storms of dumps by decorating another
+ * <code>DumpGenerator</code>.
+ * <p/>
+ * Dumps are queued and generated by a single background thread so that the requesting thread is not stalled. If the
+ * queue is full the dump is dropped. A dump's context is read when the dump is generated, so a caller must not modify
+ * the context, or the objects in it, once it has requested the dump. A context value which is expensive to create,
+ * or which must be copied because the caller goes on to modify it, may be supplied as a
+ * {@link DeferredDumpContextValue}, which is created on the requesting thread only once the dump has been admitted.
+ * <p/>
+ * A dump is dropped if more than a given number of dumps with the same cause have been requested in the current rate
+ * interval, if a dump with the same cause and failure signature (exception classes and top stack frames) was generated
+ * in the current duplicate interval, or if the dump directory has used up its disk budget. A dump which is dropped
+ * after it has been admitted, because the queue is full or the disk budget is used up, does not count towards the
+ * rate limit and does not make later dumps with the same signature duplicates.
+ * <p/>
+ * The size of the dump directory is measured by the background thread when the first dump is generated and is then
+ * brought up to date by measuring only the dumps which have been added since. Once the budget has been used up, dumps
+ * are dropped before they are queued until the directory is next modified, provided that it had not been modified too
+ * recently to tell. The number of dumps dropped for each reason is available through {@link DumpThrottleMonitor}.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Threadsafe.
+ *
+ */
+public final class ThrottlingDumpGenerator implements DumpGenerator, DumpThrottleMonitor {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    public static final int DEFAULT_DUMPS_PER_INTERVAL = 3;
+
+    public static final long DEFAULT_RATE_INTERVAL = 60 * 1000; // one minute
+
+    public static final long DEFAULT_DUPLICATE_INTERVAL = 10 * 60 * 1000; // ten minutes
+
+    public static final long DEFAULT_DISK_BUDGET = 512L * 1024 * 1024; // 512 MB
+
+    private static final int MAX_RECENT_SIGNATURES = 256;
+
+    private static final int SIGNATURE_STACK_DEPTH = 8;
+
+    private static final String WORKER_THREAD_NAME = "dump-generator";
+
+    private static final long NOT_OVER_DISK_BUDGET = -1;
+
+    private static final long LAST_MODIFIED_RESOLUTION = 2000; // the coarsest resolution of common file systems
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Object monitor = new Object();
+
+    private final DumpGenerator dumpGenerator;
+
+    private final ExecutorService executor;
+
+    private final int queueCapacity;
+
+    private final int dumpsPerInterval;
+
+    private final long rateInterval;
+
+    private final long duplicateInterval;
+
+    private final File dumpDirectory;
+
+    private final long diskBudget;
+
+    private final Map<String, RateWindow> rateWindows = new HashMap<String, RateWindow>(); // protected by monitor
+
+    private final RecentSignatures recentSignatures = new RecentSignatures(); // protected by monitor
+
+    private final Map<String, Long> dumpSizes = new HashMap<String, Long>(); // accessed only by the executor's thread
+
+    private long dumpDirectorySize; // accessed only by the executor's thread
+
+    private volatile long overDiskBudgetLastModified = NOT_OVER_DISK_BUDGET;
+
+    private final AtomicLong dumpsGenerated = new AtomicLong();
+
+    private final AtomicLong dumpsPending = new AtomicLong();
+
+    private final AtomicLong dumpsDroppedQueueFull = new AtomicLong();
+
+    private final AtomicLong dumpsDroppedRateLimited = new AtomicLong();
+
+    private final AtomicLong dumpsDroppedDuplicate = new AtomicLong();
+
+    private final AtomicLong dumpsDroppedDiskBudget = new AtomicLong();
+
+    /**
+     * Creates a new <code>ThrottlingDumpGenerator</code> with default limits.
+     *
+     * @param dumpGenerator the <code>DumpGenerator</code> which generates the dumps
+     * @param dumpDirectory the directory the dumps are written to
+     */
+    public ThrottlingDumpGenerator(DumpGenerator dumpGenerator, File dumpDirectory) {
+        this(dumpGenerator, DEFAULT_QUEUE_CAPACITY, DEFAULT_DUMPS_PER_INTERVAL, DEFAULT_RATE_INTERVAL, DEFAULT_DUPLICATE_INTERVAL,
+            dumpDirectory, DEFAULT_DISK_BUDGET);
+    }
+
+    /**
+     * Creates a new <code>ThrottlingDumpGenerator</code>.
+     *
+     * @param dumpGenerator the <code>DumpGenerator</code> which generates the dumps
+     * @param queueCapacity the maximum number of dumps waiting to be generated
+     * @param dumpsPerInterval the maximum number of dumps with the same cause per rate interval
+     * @param rateInterval the length of the rate interval in milliseconds
+     * @param duplicateInterval the time in milliseconds for which a dump with the same signature is a duplicate
+     * @param dumpDirectory the directory the dumps are written to, or <code>null</code> if there is no disk budget
+     * @param diskBudget the maximum number of bytes in the dump directory
+     */
+    public ThrottlingDumpGenerator(DumpGenerator dumpGenerator, int queueCapacity, int dumpsPerInterval, long rateInterval,
+        long duplicateInterval, File dumpDirectory, long diskBudget) {
+        this(dumpGenerator, createExecutor(queueCapacity), queueCapacity, dumpsPerInterval, rateInterval, duplicateInterval, dumpDirectory,
+            diskBudget);
+    }
+
+    ThrottlingDumpGenerator(DumpGenerator dumpGenerator, ExecutorService executor, int queueCapacity, int dumpsPerInterval,
+        long rateInterval, long duplicateInterval, File dumpDirectory, long diskBudget) {
+        this.dumpGenerator = dumpGenerator;
+        this.executor = executor;
+        this.queueCapacity = queueCapacity;
+        this.dumpsPerInterval = dumpsPerInterval;
+        this.rateInterval = rateInterval;
+        this.duplicateInterval = duplicateInterval;
+        this.dumpDirectory = dumpDirectory;
+        this.diskBudget = diskBudget;
+    }
+
+    private static ExecutorService createExecutor(int queueCapacity) {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, WORKER_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Stops the thread which generates queued dumps. Any dumps still in the queue are not generated.
+     */
+    public void stop() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void generateDump(String cause, Throwable... throwables) {
+        generateDump(cause, null, throwables);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void generateDump(String cause, Map<String, Object> context, Throwable... throwables) {
+        String signature = throwables.length == 0 ? null : getSignature(cause, throwables);
+        long now = System.currentTimeMillis();
+        if (!admit(cause, signature, now)) {
+            return;
+        }
+
+        boolean queued = false;
+        try {
+            if (this.dumpsPending.incrementAndGet() <= this.queueCapacity) {
+                this.executor.execute(new PendingDump(cause, createContext(context), throwables, signature, now));
+                queued = true;
+            } else {
+                dropQueueFull(cause);
+            }
+        } catch (RejectedExecutionException e) {
+            if (!this.executor.isShutdown()) {
+                dropQueueFull(cause);
+            }
+        } finally {
+            if (!queued) {
+                this.dumpsPending.decrementAndGet();
+                release(cause, signature, now);
+            }
+        }
+    }
+
+    private void dropQueueFull(String cause) {
+        this.dumpsDroppedQueueFull.incrementAndGet();
+        this.logger.warn("Dump '{}' dropped as too many dumps are waiting to be generated", cause);
+    }
+
+    private static Map<String, Object> createContext(Map<String, Object> context) {
+        if (context == null) {
+            return null;
+        }
+        Map<String, Object> createdContext = null;
+        for (Map.Entry<String, Object> entry : context.entrySet()) {
+            if (entry.getValue() instanceof DeferredDumpContextValue) {
+                if (createdContext == null) {
+                    createdContext = new HashMap<String, Object>(context);
+                }
+                createdContext.put(entry.getKey(), ((DeferredDumpContextValue) entry.getValue()).create());
+            }
+        }
+        return createdContext == null ? context : createdContext;
+    }
+
+    private boolean admit(String cause, String signature, long now) {
+        if (isKnownToBeOverDiskBudget()) {
+            dropOverDiskBudget(cause);
+            return false;
+        }
+
+        synchronized (this.monitor) {
+            if (signature != null) {
+                Long lastGenerated = this.recentSignatures.get(signature);
+                if (lastGenerated != null && now - lastGenerated < this.duplicateInterval) {
+                    this.dumpsDroppedDuplicate.incrementAndGet();
+                    this.logger.debug("Dump '{}' dropped as a duplicate of a recent dump", cause);
+                    return false;
+                }
+            }
+
+            RateWindow rateWindow = this.rateWindows.get(cause);
+            if (rateWindow == null || now - rateWindow.start >= this.rateInterval) {
+                rateWindow = new RateWindow(now);
+                this.rateWindows.put(cause, rateWindow);
+            }
+            if (rateWindow.count >= this.dumpsPerInterval) {
+                this.dumpsDroppedRateLimited.incrementAndGet();
+                this.logger.warn("Dump '{}' dropped as too many dumps with the same cause have been requested recently", cause);
+                return false;
+            }
+            rateWindow.count++;
+
+            if (signature != null) {
+                this.recentSignatures.put(signature, now);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Releases the rate interval slot and the signature taken by a dump which was admitted at the given time but has
+     * not been generated.
+     */
+    private void release(String cause, String signature, long admitted) {
+        synchronized (this.monitor) {
+            RateWindow rateWindow = this.rateWindows.get(cause);
+            if (rateWindow != null && rateWindow.start <= admitted && rateWindow.count > 0) {
+                rateWindow.count--;
+            }
+            if (signature != null) {
+                Long lastGenerated = this.recentSignatures.get(signature);
+                if (lastGenerated != null && lastGenerated.longValue() == admitted) {
+                    this.recentSignatures.remove(signature);
+                }
+            }
+        }
+    }
+
+    private static String getSignature(String cause, Throwable[] throwables) {
+        StringBuilder signature = new StringBuilder(cause);
+        for (Throwable throwable : throwables) {
+            Throwable rootCause = throwable;
+            while (rootCause.getCause() != null && rootCause.getCause() != rootCause) {
+                rootCause = rootCause.getCause();
+            }
+            signature.append('|').append(throwable.getClass().getName()).append('|').append(rootCause.getClass().getName());
+
+            StackTraceElement[] stackTrace = throwable.getStackTrace();
+            for (int i = 0; i < stackTrace.length && i < SIGNATURE_STACK_DEPTH; i++) {
+                signature.append('|').append(stackTrace[i]);
+            }
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Returns whether the dump directory was over its disk budget when it was last measured and has not been modified
+     * since, which is determined without listing the directory. A directory whose last modification was too recent
+     * when it was measured for a later modification to be certain to change its last modified time is never known to
+     * be over budget.
+     */
+    private boolean isKnownToBeOverDiskBudget() {
+        long overDiskBudgetLastModified = this.overDiskBudgetLastModified;
+        return overDiskBudgetLastModified != NOT_OVER_DISK_BUDGET && this.dumpDirectory.lastModified() == overDiskBudgetLastModified;
+    }
+
+    private boolean withinDiskBudget(String cause) {
+        if (this.dumpDirectory != null) {
+            long lastModified = this.dumpDirectory.lastModified();
+            long measured = System.currentTimeMillis();
+            if (getDumpDirectorySize() >= this.diskBudget) {
+                this.overDiskBudgetLastModified = measured - lastModified >= LAST_MODIFIED_RESOLUTION ? lastModified : NOT_OVER_DISK_BUDGET;
+                dropOverDiskBudget(cause);
+                return false;
+            }
+            this.overDiskBudgetLastModified = NOT_OVER_DISK_BUDGET;
+        }
+        return true;
+    }
+
+    private void dropOverDiskBudget(String cause) {
+        this.dumpsDroppedDiskBudget.incrementAndGet();
+        this.logger.warn("Dump '{}' dropped as the dump directory '{}' has exceeded its disk budget", cause, this.dumpDirectory);
+    }
+
+    /**
+     * Returns the size of the dump directory. Only the dumps which have been added to the directory since it was last
+     * measured are measured, and the dumps which have been removed from it are subtracted.
+     */
+    private long getDumpDirectorySize() {
+        File[] dumps = this.dumpDirectory.listFiles();
+        Set<String> dumpNames = new HashSet<String>();
+        if (dumps != null) {
+            for (File dump : dumps) {
+                String dumpName = dump.getName();
+                dumpNames.add(dumpName);
+                if (!this.dumpSizes.containsKey(dumpName)) {
+                    long dumpSize = getSize(dump);
+                    this.dumpSizes.put(dumpName, dumpSize);
+                    this.dumpDirectorySize += dumpSize;
+                }
+            }
+        }
+
+        Iterator<Map.Entry<String, Long>> dumpSizes = this.dumpSizes.entrySet().iterator();
+        while (dumpSizes.hasNext()) {
+            Map.Entry<String, Long> dumpSize = dumpSizes.next();
+            if (!dumpNames.contains(dumpSize.getKey())) {
+                this.dumpDirectorySize -= dumpSize.getValue();
+                dumpSizes.remove();
+            }
+        }
+        return this.dumpDirectorySize;
+    }
+
+    private static long getSize(File file) {
+        File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += getSize(child);
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDumpsGenerated() {
+        return this.dumpsGenerated.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDumpsPending() {
+        return this.dumpsPending.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDumpsDroppedQueueFull() {
+        return this.dumpsDroppedQueueFull.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDumpsDroppedRateLimited() {
+        return this.dumpsDroppedRateLimited.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDumpsDroppedDuplicate() {
+        return this.dumpsDroppedDuplicate.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDumpsDroppedDiskBudget() {
+        return this.dumpsDroppedDiskBudget.get();
+    }
+
+    private final class PendingDump implements Runnable {
+
+        private final String cause;
+
+        private final Map<String, Object> context; // null if the dump has no context
+
+        private final Throwable[] throwables;
+
+        private final String signature; // null if the dump has no throwables
+
+        private final long admitted;
+
+        private PendingDump(String cause, Map<String, Object> context, Throwable[] throwables, String signature, long admitted) {
+            this.cause = cause;
+            this.context = context;
+            this.throwables = throwables;
+            this.signature = signature;
+            this.admitted = admitted;
+        }
+
+        public void run() {
+            dumpsPending.decrementAndGet();
+            if (withinDiskBudget(this.cause)) {
+                try {
+                    if (this.context == null) {
+                        dumpGenerator.generateDump(this.cause, this.throwables);
+                    } else {
+                        dumpGenerator.generateDump(this.cause, this.context, this.throwables);
+                    }
+                    dumpsGenerated.incrementAndGet();
+                    return;
+                } catch (RuntimeException e) {
+                    logger.error("Failed to generate dump '" + this.cause + "'", e);
+                }
+            }
+            release(this.cause, this.signature, this.admitted);
+        }
+    }
+
+    private static final class RateWindow {
+
+        private final long start;
+
+        private int count;
+
+        private RateWindow(long start) {
+            this.start = start;
+        }
+    }
+
+    private static final class RecentSignatures extends LinkedHashMap<String, Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private RecentSignatures() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_RECENT_SIGNATURES;
+        }
+    }
+}
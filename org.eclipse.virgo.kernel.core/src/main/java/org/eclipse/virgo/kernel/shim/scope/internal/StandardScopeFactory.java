@@ -11,9 +11,8 @@
 
 package org.eclipse.virgo.kernel.shim.scope.internal;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.virgo.kernel.diagnostics.KernelLogEvents;
 import org.eclipse.virgo.kernel.shim.scope.Scope;
@@ -25,6 +24,9 @@ import org.osgi.framework.ServiceReference;
 /**
  * Creates {@link Scope} instances for {@link ServiceReference ServiceReferences} and for lookups.
  * <p />
+ * Application scopes are cached by scope name so that repeated lookups of the same scope return the same instance
+ * without taking a lock. Destroying an application scope discards the cached instance and its properties.
+ * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
@@ -38,9 +40,14 @@ public final class StandardScopeFactory implements ScopeFactory {
     private final EventLogger eventLogger;
 
     /*
-     * Share application scope properties between equivalent application scope instances
+     * Cache application scopes, and hence their properties, by scope name
+     */
+    private final ConcurrentMap<String, AppScope> applicationScopes = new ConcurrentHashMap<String, AppScope>();
+
+    /*
+     * The application scope with a null name, which cannot be a key of applicationScopes
      */
-    private final Map<AppScope, ConcurrentHashMap<String, Object>> properties = new HashMap<AppScope, ConcurrentHashMap<String, Object>>();
+    private volatile AppScope nullNamedApplicationScope;
 
     public StandardScopeFactory(EventLogger eventLogger) {
         this.eventLogger = eventLogger;
@@ -80,16 +87,30 @@ public final class StandardScopeFactory implements ScopeFactory {
      * {@inheritDoc}
      */
     public Scope getApplicationScope(String applicationScopeName) {
-        synchronized (this.properties) {
-            AppScope appScope = new AppScope(applicationScopeName);
-            ConcurrentHashMap<String, Object> props = this.properties.get(appScope);
-            if (props == null) {
-                props = new ConcurrentHashMap<String, Object>();
-                this.properties.put(appScope, props);
+        if (applicationScopeName == null) {
+            return getNullNamedApplicationScope();
+        }
+
+        AppScope appScope = this.applicationScopes.get(applicationScopeName);
+        if (appScope == null) {
+            AppScope newAppScope = new AppScope(applicationScopeName);
+            newAppScope.setProperties(new ConcurrentHashMap<String, Object>());
+            appScope = this.applicationScopes.putIfAbsent(applicationScopeName, newAppScope);
+            if (appScope == null) {
+                appScope = newAppScope;
             }
-            appScope.setProperties(props);
+        }
+        return appScope;
+    }
 
-            return appScope;
+    private Scope getNullNamedApplicationScope() {
+        synchronized (this.applicationScopes) {
+            if (this.nullNamedApplicationScope == null) {
+                AppScope appScope = new AppScope(null);
+                appScope.setProperties(new ConcurrentHashMap<String, Object>());
+                this.nullNamedApplicationScope = appScope;
+            }
+            return this.nullNamedApplicationScope;
         }
     }
 
@@ -136,8 +157,15 @@ public final class StandardScopeFactory implements ScopeFactory {
     public void destroyApplicationScope(Scope applicationScope) {
         // TODO: reinstate Assert.isTrue(applicationScope instanceof AppScope, "wrong scope type");
         AppScope appScope = (AppScope) applicationScope;
-        synchronized (this.properties) {
-            this.properties.remove(appScope);
+        String scopeName = appScope.getScopeName();
+        if (scopeName == null) {
+            synchronized (this.applicationScopes) {
+                if (appScope.equals(this.nullNamedApplicationScope)) {
+                    this.nullNamedApplicationScope = null;
+                }
+            }
+        } else {
+            this.applicationScopes.remove(scopeName, appScope);
         }
     }
 
@@ -172,9 +200,7 @@ public final class StandardScopeFactory implements ScopeFactory {
         /**
          * {@inheritDoc}
          */
-        public int hashCode() {
-            return 0;
-        }
+        public abstract int hashCode();
 
         /**
          * {@inheritDoc}
@@ -250,10 +276,7 @@ public final class StandardScopeFactory implements ScopeFactory {
          * {@inheritDoc}
          */
         public int hashCode() {
-            final int prime = 31;
-            int result = super.hashCode();
-            result = prime * result + ((scopeName == null) ? 0 : scopeName.hashCode());
-            return result;
+            return (scopeName == null) ? 0 : scopeName.hashCode();
         }
 
         /**
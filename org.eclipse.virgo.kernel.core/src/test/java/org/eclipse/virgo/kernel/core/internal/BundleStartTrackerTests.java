@@ -15,13 +15,17 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.concurrent.CyclicBarrier;
 
 import org.junit.Test;
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.BundleException;
+import org.osgi.framework.BundleListener;
 import org.osgi.service.event.Event;
 import org.springframework.core.task.SyncTaskExecutor;
 
@@ -269,6 +273,178 @@ public class BundleStartTrackerTests {
         assertEquals(0, signal.failures.size());
     }
     
+    @Test
+    public void springDmDetectionIsCachedUntilBundleIsUpdated() throws BundleException {
+        StubBundleContext bundleContext = new StubBundleContext();
+        StubBundle bundle = new StubBundle();
+        bundle.setBundleContext(bundleContext);
+        
+        BundleStartTracker bundleStartTracker = new BundleStartTracker(new SyncTaskExecutor());
+        bundleStartTracker.initialize(bundleContext);
+        
+        UnitTestSignal signal = new UnitTestSignal();
+        bundleStartTracker.trackStart(bundle, signal);
+        
+        // The header is not read again, so the bundle is still treated as not powered by Spring DM.
+        bundle.addHeader("Spring-Context", "foo");
+        bundle.start();
+        assertEquals(1, signal.successCount);
+        
+        bundle.stop();
+        fireBundleEvent(bundleContext, new BundleEvent(BundleEvent.UPDATED, bundle));
+        
+        signal = new UnitTestSignal();
+        bundleStartTracker.trackStart(bundle, signal);
+        bundle.start();
+        assertEquals(0, signal.successCount);
+        
+        bundleStartTracker.handleEvent(new Event("org/osgi/service/blueprint/container/CREATED", createProperties(bundle, null)));
+        assertEquals(1, signal.successCount);
+        assertEquals(0, signal.failures.size());
+    }
+    
+    @Test
+    public void springDmDetectionIsEvictedWhenBundleIsUninstalled() throws BundleException {
+        StubBundleContext bundleContext = new StubBundleContext();
+        StubBundle bundle = new StubBundle();
+        bundle.setBundleContext(bundleContext);
+        
+        BundleStartTracker bundleStartTracker = new BundleStartTracker(new SyncTaskExecutor());
+        bundleStartTracker.initialize(bundleContext);
+        
+        bundleStartTracker.trackStart(bundle, null);
+        
+        bundle.addHeader("Spring-Context", "foo");
+        fireBundleEvent(bundleContext, new BundleEvent(BundleEvent.UNINSTALLED, bundle));
+        
+        UnitTestSignal signal = new UnitTestSignal();
+        bundleStartTracker.trackStart(bundle, signal);
+        bundle.start();
+        assertEquals(0, signal.successCount);
+        
+        bundleStartTracker.handleEvent(new Event("org/osgi/service/blueprint/container/CREATED", createProperties(bundle, null)));
+        assertEquals(1, signal.successCount);
+    }
+    
+    @Test
+    public void springDmDetectionIsRepeatedForANewRevision() throws BundleException {
+        StubBundleContext bundleContext = new StubBundleContext();
+        StubBundle bundle = new StubBundle();
+        bundle.setBundleContext(bundleContext);
+        
+        BundleStartTracker bundleStartTracker = new BundleStartTracker(new SyncTaskExecutor());
+        bundleStartTracker.initialize(bundleContext);
+        
+        bundleStartTracker.trackStart(bundle, null);
+        
+        // A new revision is detected even if the UPDATED event is missed.
+        bundle.addHeader("Spring-Context", "foo");
+        bundle.setLastModified(bundle.getLastModified() + 1);
+        
+        UnitTestSignal signal = new UnitTestSignal();
+        bundleStartTracker.trackStart(bundle, signal);
+        bundle.start();
+        assertEquals(0, signal.successCount);
+        
+        bundleStartTracker.handleEvent(new Event("org/osgi/service/blueprint/container/CREATED", createProperties(bundle, null)));
+        assertEquals(1, signal.successCount);
+    }
+    
+    @Test
+    public void eachSignalIsDrivenExactlyOnce() throws BundleException {
+        StubBundleContext bundleContext = new StubBundleContext();
+        StubBundle bundle = new StubBundle();
+        bundle.setBundleContext(bundleContext);
+        bundle.addHeader("Spring-Context", "foo");
+        
+        BundleStartTracker bundleStartTracker = new BundleStartTracker(new SyncTaskExecutor());
+        bundleStartTracker.initialize(bundleContext);
+        
+        UnitTestSignal signal1 = new UnitTestSignal();
+        UnitTestSignal signal2 = new UnitTestSignal();
+        bundleStartTracker.trackStart(bundle, signal1);
+        bundleStartTracker.trackStart(bundle, signal2);
+        bundle.start();
+        
+        bundleStartTracker.handleEvent(new Event("org/osgi/service/blueprint/container/CREATED", createProperties(bundle, null)));
+        
+        UnitTestSignal signal3 = new UnitTestSignal();
+        bundleStartTracker.trackStart(bundle, signal3);
+        bundleStartTracker.handleEvent(new Event("org/osgi/service/blueprint/container/CREATED", createProperties(bundle, null)));
+        bundle.stop();
+        
+        for (UnitTestSignal signal : Arrays.asList(signal1, signal2, signal3)) {
+            assertEquals(1, signal.successCount);
+            assertEquals(0, signal.failures.size());
+        }
+    }
+    
+    @Test
+    public void signalAddedConcurrentlyWithCompletionIsDrivenExactlyOnce() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            StubBundleContext bundleContext = new StubBundleContext();
+            final StubBundle bundle = new StubBundle();
+            bundle.addHeader("Spring-Context", "foo");
+            
+            final BundleStartTracker bundleStartTracker = new BundleStartTracker(new SyncTaskExecutor());
+            bundleStartTracker.initialize(bundleContext);
+            
+            UnitTestSignal queuedSignal = new UnitTestSignal();
+            bundleStartTracker.trackStart(bundle, queuedSignal);
+            
+            final UnitTestSignal concurrentSignal = new UnitTestSignal();
+            final Exception failure = i % 2 == 0 ? null : new Exception();
+            final CyclicBarrier barrier = new CyclicBarrier(2);
+            
+            Thread tracker = new Thread(new Runnable() {
+
+                public void run() {
+                    await(barrier);
+                    bundleStartTracker.trackStart(bundle, concurrentSignal);
+                }
+            });
+            tracker.start();
+            
+            await(barrier);
+            String topic = failure == null ? "org/osgi/service/blueprint/container/CREATED" : "org/osgi/service/blueprint/container/FAILURE";
+            bundleStartTracker.handleEvent(new Event(topic, createProperties(bundle, failure)));
+            tracker.join();
+            
+            for (UnitTestSignal signal : Arrays.asList(queuedSignal, concurrentSignal)) {
+                if (failure == null) {
+                    assertEquals(1, signal.successCount);
+                    assertEquals(0, signal.failures.size());
+                } else {
+                    assertEquals(0, signal.successCount);
+                    assertEquals(Arrays.asList(failure), signal.failures);
+                }
+            }
+        }
+    }
+    
+    private static Dictionary<String, Object> createProperties(Bundle bundle, Exception failure) {
+        Dictionary<String, Object> properties = new Hashtable<String, Object>();
+        properties.put("bundle", bundle);
+        if (failure != null) {
+            properties.put("exception", failure);
+        }
+        return properties;
+    }
+    
+    private static void fireBundleEvent(StubBundleContext bundleContext, BundleEvent event) {
+        for (BundleListener listener : bundleContext.getBundleListeners()) {
+            listener.bundleChanged(event);
+        }
+    }
+    
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+    
     private static final class UnitTestSignal implements Signal {
         
         private final List<Throwable> failures = new ArrayList<Throwable>();
@@ -278,14 +454,14 @@ public class BundleStartTrackerTests {
         /** 
          * {@inheritDoc}
          */
-        public void signalFailure(Throwable cause) {            
+        public synchronized void signalFailure(Throwable cause) {            
             this.failures.add(cause);
         }
 
         /** 
          * {@inheritDoc}
          */
-        public void signalSuccessfulCompletion() {
+        public synchronized void signalSuccessfulCompletion() {
             successCount++;            
         }        
     }
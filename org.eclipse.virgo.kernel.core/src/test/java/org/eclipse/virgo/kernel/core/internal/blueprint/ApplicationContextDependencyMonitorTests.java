@@ -13,6 +13,7 @@ package org.eclipse.virgo.kernel.core.internal.blueprint;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Dictionary;
 import java.util.Hashtable;
@@ -86,6 +87,65 @@ public class ApplicationContextDependencyMonitorTests {
         assertEquals("filter", inserts[3]);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void loggingOfWaitingEventForSeveralServices() throws InterruptedException {
+        Dictionary properties = createProperties();
+        properties.put("dependencies", new String[] { "filter1", "filter2" });
+        properties.put("bean.name", new String[] { "theBean1", "theBean2" });
+        properties.put("mandatory", new boolean[] { true, true });
+        this.dependencyMonitor.handleEvent(new Event("org/osgi/service/blueprint/container/WAITING", properties));
+
+        Thread.sleep(6000);
+
+        List<LoggedEvent> loggedEvents = this.eventLogger.getLoggedEvents();
+        assertEquals(1, loggedEvents.size());
+
+        LoggedEvent loggedEvent = loggedEvents.get(0);
+
+        assertEquals("KE0103W", loggedEvent.getCode());
+        Object[] inserts = loggedEvent.getInserts();
+        assertEquals(4, inserts.length);
+
+        assertEquals(this.bundle.getSymbolicName(), inserts[0]);
+        assertEquals(this.bundle.getVersion(), inserts[1]);
+        assertEquals(Integer.valueOf(2), inserts[2]);
+        String dependencies = (String) inserts[3];
+        assertTrue(dependencies.contains("'theBean1' (filter 'filter1')"));
+        assertTrue(dependencies.contains("'theBean2' (filter 'filter2')"));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void loggingOfWaitingEventsForSeveralBundlesInAnApplication() throws InterruptedException {
+        StubBundle otherBundle = new StubBundle("the.other.bundle", new Version(4, 5, 6));
+        this.bundle.addHeader("Module-Scope", "the.application");
+        otherBundle.addHeader("Module-Scope", "the.application");
+
+        Dictionary properties = createProperties("filter1", "theBean1", true);
+        this.dependencyMonitor.handleEvent(new Event("org/osgi/service/blueprint/container/WAITING", properties));
+        properties = createProperties("filter2", "theBean2", true);
+        properties.put(EventConstants.BUNDLE, otherBundle);
+        this.dependencyMonitor.handleEvent(new Event("org/osgi/service/blueprint/container/WAITING", properties));
+
+        Thread.sleep(6000);
+
+        List<LoggedEvent> loggedEvents = this.eventLogger.getLoggedEvents();
+        assertEquals(1, loggedEvents.size());
+
+        LoggedEvent loggedEvent = loggedEvents.get(0);
+
+        assertEquals("KE0104W", loggedEvent.getCode());
+        Object[] inserts = loggedEvent.getInserts();
+        assertEquals(3, inserts.length);
+
+        assertEquals("the.application", inserts[0]);
+        assertEquals(Integer.valueOf(2), inserts[1]);
+        String dependencies = (String) inserts[2];
+        assertTrue(dependencies.contains("'theBean1' in bundle 'the.bundle' version '1.2.3' (filter 'filter1')"));
+        assertTrue(dependencies.contains("'theBean2' in bundle 'the.other.bundle' version '4.5.6' (filter 'filter2')"));
+    }
+
     @Test
     public void loggingOfDependencySatisfied() throws InterruptedException {
         Event event = new Event("org/osgi/service/blueprint/container/WAITING", createProperties("filter", "theBean", true));
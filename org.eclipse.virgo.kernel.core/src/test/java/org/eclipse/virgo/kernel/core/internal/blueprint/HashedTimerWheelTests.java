@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.core.internal.blueprint;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.eclipse.virgo.kernel.core.internal.blueprint.HashedTimerWheel.Clock;
+import org.eclipse.virgo.kernel.core.internal.blueprint.HashedTimerWheel.Timeout;
+
+/**
+ */
+public class HashedTimerWheelTests {
+
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void timeoutsExpireInOrder() {
+        HashedTimerWheel<String> timerWheel = new HashedTimerWheel<String>(8, 10, this.clock);
+        timerWheel.schedule("b", 200);
+        timerWheel.schedule("a", 50);
+
+        this.clock.advance(40);
+        assertTrue(timerWheel.advance().isEmpty());
+
+        this.clock.advance(10);
+        assertEquals(Arrays.asList("a"), timerWheel.advance());
+
+        this.clock.advance(140);
+        assertTrue(timerWheel.advance().isEmpty());
+
+        this.clock.advance(10);
+        assertEquals(Arrays.asList("b"), timerWheel.advance());
+
+        this.clock.advance(1000);
+        assertTrue(timerWheel.advance().isEmpty());
+    }
+
+    @Test
+    public void delaysAreRoundedUpToWholeTicks() {
+        HashedTimerWheel<String> timerWheel = new HashedTimerWheel<String>(8, 10, this.clock);
+        this.clock.advance(5);
+        timerWheel.schedule("a", 1);
+
+        this.clock.advance(4);
+        assertTrue(timerWheel.advance().isEmpty());
+
+        this.clock.advance(1);
+        assertEquals(Arrays.asList("a"), timerWheel.advance());
+    }
+
+    @Test
+    public void timeoutsBeyondOneRevolution() {
+        HashedTimerWheel<String> timerWheel = new HashedTimerWheel<String>(4, 10, this.clock);
+        timerWheel.schedule("a", 300);
+
+        for (int i = 0; i < 29; i++) {
+            this.clock.advance(10);
+            assertTrue(timerWheel.advance().isEmpty());
+        }
+
+        this.clock.advance(10);
+        assertEquals(Arrays.asList("a"), timerWheel.advance());
+    }
+
+    @Test
+    public void slotsPassedOverAreExamined() {
+        HashedTimerWheel<String> timerWheel = new HashedTimerWheel<String>(8, 10, this.clock);
+        timerWheel.schedule("a", 20);
+        timerWheel.schedule("b", 50);
+        timerWheel.schedule("c", 500);
+
+        this.clock.advance(60);
+        List<String> expired = timerWheel.advance();
+        assertEquals(2, expired.size());
+        assertTrue(expired.containsAll(Arrays.asList("a", "b")));
+
+        this.clock.advance(440);
+        assertEquals(Arrays.asList("c"), timerWheel.advance());
+    }
+
+    @Test
+    public void cancelledTimeoutsDoNotExpire() {
+        HashedTimerWheel<String> timerWheel = new HashedTimerWheel<String>(8, 10, this.clock);
+        Timeout<String> timeout = timerWheel.schedule("a", 20);
+        timerWheel.schedule("b", 20);
+        timeout.cancel();
+
+        this.clock.advance(100);
+        assertEquals(Arrays.asList("b"), timerWheel.advance());
+    }
+
+    private static final class ManualClock implements Clock {
+
+        private long nanoTime = 1000;
+
+        public long nanoTime() {
+            return this.nanoTime;
+        }
+
+        private void advance(long millis) {
+            this.nanoTime += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+    }
+}
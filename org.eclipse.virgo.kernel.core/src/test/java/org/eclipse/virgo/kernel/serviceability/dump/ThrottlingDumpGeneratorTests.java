@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.serviceability.dump;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import org.eclipse.virgo.medic.dump.DumpGenerator;
+
+/**
+ */
+public class ThrottlingDumpGeneratorTests {
+
+    private static final long ONE_HOUR = 60 * 60 * 1000;
+
+    private static final Map<String, Object> CONTEXT = Collections.<String, Object> singletonMap("key", "value");
+
+    private final RecordingDumpGenerator recordingDumpGenerator = new RecordingDumpGenerator();
+
+    private ThrottlingDumpGenerator throttlingDumpGenerator;
+
+    @After
+    public void stop() {
+        if (this.throttlingDumpGenerator != null) {
+            this.throttlingDumpGenerator.stop();
+        }
+    }
+
+    @Test
+    public void dumpsAreGeneratedAsynchronously() throws InterruptedException {
+        this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, null);
+
+        this.throttlingDumpGenerator.generateDump("error", new RuntimeException());
+
+        assertEquals("error", this.recordingDumpGenerator.causes.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void dumpsWithContextAreGeneratedAsynchronously() throws InterruptedException {
+        BlockingDumpGenerator blockingDumpGenerator = new BlockingDumpGenerator();
+        this.throttlingDumpGenerator = new ThrottlingDumpGenerator(blockingDumpGenerator, null);
+
+        this.throttlingDumpGenerator.generateDump("resolutionFailure", CONTEXT);
+        assertTrue(blockingDumpGenerator.generating.await(10, TimeUnit.SECONDS));
+        assertEquals(CONTEXT, blockingDumpGenerator.context);
+        assertEquals(0, this.throttlingDumpGenerator.getDumpsGenerated());
+
+        blockingDumpGenerator.release.countDown();
+    }
+
+    @Test
+    public void duplicateDumpsAreDropped() {
+        this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, new SynchronousExecutorService(), 1, 10, ONE_HOUR, ONE_HOUR, null, 0);
+
+        for (int i = 0; i < 3; i++) {
+            this.throttlingDumpGenerator.generateDump("error", CONTEXT, createException());
+        }
+        this.throttlingDumpGenerator.generateDump("error", CONTEXT, new IllegalStateException());
+        this.throttlingDumpGenerator.generateDump("other", CONTEXT, createException());
+
+        assertEquals(3, this.throttlingDumpGenerator.getDumpsGenerated());
+        assertEquals(2, this.throttlingDumpGenerator.getDumpsDroppedDuplicate());
+    }
+
+    @Test
+    public void duplicatesExpire() {
+        this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, new SynchronousExecutorService(), 1, 10, ONE_HOUR, 0, null, 0);
+
+        for (int i = 0; i < 2; i++) {
+            this.throttlingDumpGenerator.generateDump("error", CONTEXT, createException());
+        }
+
+        assertEquals(2, this.throttlingDumpGenerator.getDumpsGenerated());
+        assertEquals(0, this.throttlingDumpGenerator.getDumpsDroppedDuplicate());
+    }
+
+    @Test
+    public void dumpsAreRateLimitedByCause() {
+        this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, new SynchronousExecutorService(), 1, 2, ONE_HOUR, ONE_HOUR, null, 0);
+
+        for (int i = 0; i < 4; i++) {
+            this.throttlingDumpGenerator.generateDump("resolutionFailure", CONTEXT);
+        }
+        this.throttlingDumpGenerator.generateDump("other", CONTEXT);
+
+        assertEquals(3, this.throttlingDumpGenerator.getDumpsGenerated());
+        assertEquals(2, this.throttlingDumpGenerator.getDumpsDroppedRateLimited());
+    }
+
+    @Test
+    public void dumpsAreDroppedWhenDiskBudgetIsExceeded() throws IOException {
+        File dumpDirectory = new File("target/dumps-" + System.currentTimeMillis());
+        assertTrue(dumpDirectory.mkdirs());
+        File dump = new File(dumpDirectory, "dump");
+        FileOutputStream out = new FileOutputStream(dump);
+        try {
+            out.write(new byte[16]);
+        } finally {
+            out.close();
+        }
+
+        try {
+            this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, new SynchronousExecutorService(), 1, 10, ONE_HOUR, ONE_HOUR, dumpDirectory,
+                32);
+            this.throttlingDumpGenerator.generateDump("first", CONTEXT);
+            assertEquals(1, this.throttlingDumpGenerator.getDumpsGenerated());
+
+            this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, new SynchronousExecutorService(), 1, 10, ONE_HOUR, ONE_HOUR, dumpDirectory,
+                16);
+            this.throttlingDumpGenerator.generateDump("second", CONTEXT);
+            assertEquals(0, this.throttlingDumpGenerator.getDumpsGenerated());
+            assertEquals(1, this.throttlingDumpGenerator.getDumpsDroppedDiskBudget());
+        } finally {
+            dump.delete();
+            dumpDirectory.delete();
+        }
+    }
+
+    @Test
+    public void dumpDirectoryUsageIsTrackedAsDumpsAreAddedAndRemoved() {
+        File dumpDirectory = new File("target/dumps-" + System.currentTimeMillis());
+        assertTrue(dumpDirectory.mkdirs());
+        FileWritingDumpGenerator fileWritingDumpGenerator = new FileWritingDumpGenerator(dumpDirectory, 16);
+
+        try {
+            this.throttlingDumpGenerator = new ThrottlingDumpGenerator(fileWritingDumpGenerator, new SynchronousExecutorService(), 1, 10, ONE_HOUR,
+                ONE_HOUR, dumpDirectory, 40);
+            for (int i = 0; i < 4; i++) {
+                this.throttlingDumpGenerator.generateDump("dump" + i, CONTEXT);
+            }
+            assertEquals(3, this.throttlingDumpGenerator.getDumpsGenerated());
+            assertEquals(1, this.throttlingDumpGenerator.getDumpsDroppedDiskBudget());
+
+            assertTrue(new File(dumpDirectory, "dump0").delete());
+            this.throttlingDumpGenerator.generateDump("dump4", CONTEXT);
+            assertEquals(4, this.throttlingDumpGenerator.getDumpsGenerated());
+            assertTrue(new File(dumpDirectory, "dump4").exists());
+        } finally {
+            for (File dump : dumpDirectory.listFiles()) {
+                dump.delete();
+            }
+            dumpDirectory.delete();
+        }
+    }
+
+    @Test
+    public void deferredContextValuesAreCreatedOnlyForDumpsWhichAreNotDropped() {
+        this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, new SynchronousExecutorService(), 1, 1, ONE_HOUR,
+            ONE_HOUR, null, 0);
+        CountingDeferredValue deferredValue = new CountingDeferredValue();
+
+        for (int i = 0; i < 3; i++) {
+            this.throttlingDumpGenerator.generateDump("resolutionFailure", deferredValue.createContext());
+        }
+
+        assertEquals(1, this.throttlingDumpGenerator.getDumpsGenerated());
+        assertEquals(1, deferredValue.created.get());
+        assertEquals("created", this.recordingDumpGenerator.contexts.poll().get("key"));
+    }
+
+    @Test
+    public void dumpsDroppedAfterAdmissionDoNotSuppressLaterDumps() throws IOException {
+        File dumpDirectory = new File("target/dumps-" + System.currentTimeMillis());
+        assertTrue(dumpDirectory.mkdirs());
+        File dump = new File(dumpDirectory, "dump");
+        FileOutputStream out = new FileOutputStream(dump);
+        try {
+            out.write(new byte[16]);
+        } finally {
+            out.close();
+        }
+        assertTrue(dumpDirectory.setLastModified(System.currentTimeMillis() - ONE_HOUR));
+        CountingDeferredValue deferredValue = new CountingDeferredValue();
+
+        try {
+            this.throttlingDumpGenerator = new ThrottlingDumpGenerator(this.recordingDumpGenerator, new SynchronousExecutorService(), 1, 1,
+                ONE_HOUR, ONE_HOUR, dumpDirectory, 16);
+            this.throttlingDumpGenerator.generateDump("error", deferredValue.createContext(), createException());
+            this.throttlingDumpGenerator.generateDump("error", deferredValue.createContext(), createException());
+            assertEquals(2, this.throttlingDumpGenerator.getDumpsDroppedDiskBudget());
+            assertEquals(1, deferredValue.created.get());
+
+            assertTrue(dump.delete());
+            this.throttlingDumpGenerator.generateDump("error", deferredValue.createContext(), createException());
+            assertEquals(1, this.throttlingDumpGenerator.getDumpsGenerated());
+            assertEquals(0, this.throttlingDumpGenerator.getDumpsDroppedDuplicate());
+            assertEquals(0, this.throttlingDumpGenerator.getDumpsDroppedRateLimited());
+        } finally {
+            dump.delete();
+            dumpDirectory.delete();
+        }
+    }
+
+    @Test
+    public void dumpsAreDroppedWhenQueueIsFull() throws InterruptedException {
+        BlockingDumpGenerator blockingDumpGenerator = new BlockingDumpGenerator();
+        this.throttlingDumpGenerator = new ThrottlingDumpGenerator(blockingDumpGenerator, 1, 10, ONE_HOUR, ONE_HOUR, null, 0);
+
+        this.throttlingDumpGenerator.generateDump("first");
+        assertTrue(blockingDumpGenerator.generating.await(10, TimeUnit.SECONDS));
+
+        this.throttlingDumpGenerator.generateDump("second");
+        this.throttlingDumpGenerator.generateDump("third");
+
+        assertEquals(1, this.throttlingDumpGenerator.getDumpsPending());
+        assertEquals(1, this.throttlingDumpGenerator.getDumpsDroppedQueueFull());
+
+        blockingDumpGenerator.release.countDown();
+    }
+
+    private static RuntimeException createException() {
+        return new RuntimeException(new IllegalArgumentException());
+    }
+
+    private static final class RecordingDumpGenerator implements DumpGenerator {
+
+        private final BlockingQueue<String> causes = new LinkedBlockingQueue<String>();
+
+        private final BlockingQueue<Map<String, Object>> contexts = new LinkedBlockingQueue<Map<String, Object>>();
+
+        public void generateDump(String cause, Throwable... throwables) {
+            this.causes.add(cause);
+        }
+
+        public void generateDump(String cause, Map<String, Object> context, Throwable... throwables) {
+            this.causes.add(cause);
+            this.contexts.add(context);
+        }
+    }
+
+    /**
+     * A {@link DeferredDumpContextValue} which counts the values it creates.
+     */
+    private static final class CountingDeferredValue implements DeferredDumpContextValue {
+
+        private final AtomicInteger created = new AtomicInteger();
+
+        public Object create() {
+            this.created.incrementAndGet();
+            return "created";
+        }
+
+        private Map<String, Object> createContext() {
+            Map<String, Object> context = new HashMap<String, Object>();
+            context.put("key", this);
+            return context;
+        }
+    }
+
+    private static final class BlockingDumpGenerator implements DumpGenerator {
+
+        private final CountDownLatch generating = new CountDownLatch(1);
+
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        private volatile Map<String, Object> context;
+
+        public void generateDump(String cause, Throwable... throwables) {
+            this.generating.countDown();
+            try {
+                this.release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public void generateDump(String cause, Map<String, Object> context, Throwable... throwables) {
+            this.context = context;
+            generateDump(cause, throwables);
+        }
+    }
+
+    /**
+     * A {@link DumpGenerator} which writes each dump to a file, named after the dump's cause, of a fixed size.
+     */
+    private static final class FileWritingDumpGenerator implements DumpGenerator {
+
+        private final File dumpDirectory;
+
+        private final int dumpSize;
+
+        private FileWritingDumpGenerator(File dumpDirectory, int dumpSize) {
+            this.dumpDirectory = dumpDirectory;
+            this.dumpSize = dumpSize;
+        }
+
+        public void generateDump(String cause, Throwable... throwables) {
+            try {
+                FileOutputStream out = new FileOutputStream(new File(this.dumpDirectory, cause));
+                try {
+                    out.write(new byte[this.dumpSize]);
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        public void generateDump(String cause, Map<String, Object> context, Throwable... throwables) {
+            generateDump(cause, throwables);
+        }
+    }
+
+    /**
+     * An {@link ExecutorService} which runs each task on the thread which submits it.
+     */
+    private static final class SynchronousExecutorService extends AbstractExecutorService {
+
+        private volatile boolean shutdown;
+
+        public void execute(Runnable command) {
+            command.run();
+        }
+
+        public void shutdown() {
+            this.shutdown = true;
+        }
+
+        public List<Runnable> shutdownNow() {
+            this.shutdown = true;
+            return Collections.emptyList();
+        }
+
+        public boolean isShutdown() {
+            return this.shutdown;
+        }
+
+        public boolean isTerminated() {
+            return this.shutdown;
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return this.shutdown;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer;
+
+import javax.management.MXBean;
+
+/**
+ * MBean for monitoring the dispatch of bundle events to the deployer's bundle artifacts.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations <code>must</code> be threadsafe.
+ *
+ */
+@MXBean
+public interface BundleEventDispatchMonitor {
+
+    /**
+     * Returns the number of bundles whose events are currently being dispatched.
+     *
+     * @return the number of registered bundles
+     */
+    int getRegisteredBundleCount();
+
+    /**
+     * Returns the number of bundle events received.
+     *
+     * @return the number of events received
+     */
+    long getReceivedEventCount();
+
+    /**
+     * Returns the number of bundle events that were dispatched to a bundle artifact.
+     *
+     * @return the number of events dispatched
+     */
+    long getDispatchedEventCount();
+
+    /**
+     * Returns the total time, in microseconds, spent dispatching bundle events.
+     *
+     * @return the total dispatch time
+     */
+    long getTotalDispatchTimeMicros();
+
+    /**
+     * Returns the mean time, in microseconds, spent dispatching a bundle event.
+     *
+     * @return the mean dispatch time
+     */
+    long getMeanDispatchTimeMicros();
+
+    /**
+     * Returns the longest time, in microseconds, spent dispatching a single bundle event.
+     *
+     * @return the maximum dispatch time
+     */
+    long getMaximumDispatchTimeMicros();
+
+    /**
+     * Resets the event counts and dispatch times.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer;
+
+import javax.management.MXBean;
+
+/**
+ * MBean for monitoring the throughput of the deployer and the time deployment operations spend waiting for each other.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations <code>must</code> be threadsafe.
+ *
+ */
+@MXBean
+public interface DeploymentThroughputMonitor {
+
+    /**
+     * Returns the number of deployments which completed successfully.
+     *
+     * @return the number of deployments
+     */
+    long getDeploymentCount();
+
+    /**
+     * Returns the number of deployments which failed.
+     *
+     * @return the number of failed deployments
+     */
+    long getFailedDeploymentCount();
+
+    /**
+     * Returns the number of undeployments which completed successfully.
+     *
+     * @return the number of undeployments
+     */
+    long getUndeploymentCount();
+
+    /**
+     * Returns the number of deployments currently in progress.
+     *
+     * @return the number of deployments in progress
+     */
+    int getInProgressDeploymentCount();
+
+    /**
+     * Returns the mean number of successful deployments per second since the statistics were last reset.
+     *
+     * @return the deployment rate
+     */
+    double getDeploymentsPerSecond();
+
+    /**
+     * Returns the mean time, in milliseconds, taken by a successful deployment, including any time spent waiting.
+     *
+     * @return the mean deployment time
+     */
+    long getMeanDeploymentTimeMillis();
+
+    /**
+     * Returns the total time, in microseconds, deployment operations have spent waiting for other deployment
+     * operations.
+     *
+     * @return the total wait time
+     */
+    long getTotalQueueWaitTimeMicros();
+
+    /**
+     * Returns the mean time, in microseconds, a deployment operation has spent waiting for other deployment operations
+     * each time it has had to acquire a lock shared with them.
+     *
+     * @return the mean wait time
+     */
+    long getMeanQueueWaitTimeMicros();
+
+    /**
+     * Returns the longest time, in microseconds, a deployment operation has spent waiting for another deployment
+     * operation.
+     *
+     * @return the maximum wait time
+     */
+    long getMaximumQueueWaitTimeMicros();
+
+    /**
+     * Resets the counts and times.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+/**
+ * MBean for monitoring the time install artifact lifecycle listeners take to handle each lifecycle transition.
+ * <p/>
+ * Statistics are keyed by the listener's class name followed by the name of the listener method, for example
+ * <code>com.example.SomeListener.onStarting</code>.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations <code>must</code> be threadsafe.
+ *
+ */
+@MXBean
+public interface InstallArtifactLifecycleListenerMonitor {
+
+    /**
+     * Returns the class names of the lifecycle listeners currently registered, in the order in which they are
+     * notified.
+     *
+     * @return the listener class names
+     */
+    String[] getListeners();
+
+    /**
+     * Returns the number of notifications delivered to each listener for each transition.
+     *
+     * @return the notification counts
+     */
+    Map<String, Long> getNotificationCounts();
+
+    /**
+     * Returns the mean time, in microseconds, each listener has taken to handle each transition.
+     *
+     * @return the mean notification times
+     */
+    Map<String, Long> getMeanNotificationTimesMicros();
+
+    /**
+     * Returns the longest time, in microseconds, each listener has taken to handle each transition.
+     *
+     * @return the maximum notification times
+     */
+    Map<String, Long> getMaximumNotificationTimesMicros();
+
+    /**
+     * Resets the counts and times.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+/**
+ * MBean for monitoring the time the deployer pipeline spends in each of the extensions, such as transformers and
+ * install artifact tree factories, that it drives.
+ * <p/>
+ * Statistics are keyed by the name of the pipeline stage followed by the class name of the extension, for example
+ * <code>transform:com.example.SomeTransformer</code>.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations <code>must</code> be threadsafe.
+ *
+ */
+@MXBean
+public interface PipelineProfileMonitor {
+
+    /**
+     * Returns the number of times each extension has been invoked.
+     *
+     * @return the invocation counts
+     */
+    Map<String, Long> getInvocationCounts();
+
+    /**
+     * Returns the total time, in microseconds, spent in each extension.
+     *
+     * @return the total times
+     */
+    Map<String, Long> getTotalTimesMicros();
+
+    /**
+     * Returns the mean time, in microseconds, spent in each invocation of each extension.
+     *
+     * @return the mean times
+     */
+    Map<String, Long> getMeanTimesMicros();
+
+    /**
+     * Returns the longest time, in microseconds, spent in a single invocation of each extension.
+     *
+     * @return the maximum times
+     */
+    Map<String, Long> getMaximumTimesMicros();
+
+    /**
+     * Resets the counts and times.
+     */
+    void resetStatistics();
+}
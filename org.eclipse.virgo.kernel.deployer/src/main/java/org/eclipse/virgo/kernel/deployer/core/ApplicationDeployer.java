@@ -12,6 +12,7 @@
 package org.eclipse.virgo.kernel.deployer.core;
 
 import java.net.URI;
+import java.util.List;
 
 import org.osgi.framework.Version;
 
@@ -184,6 +185,24 @@ public interface ApplicationDeployer {
      */
     DeploymentIdentity deploy(URI uri, DeploymentOptions options) throws DeploymentException;
 
+    /**
+     * Deploy a batch of artifacts with the given options. The artifacts are installed together so that their bundles
+     * are resolved and committed in a single pass rather than once per artifact. The artifacts are then started in the
+     * order given.
+     * <p/>
+     * The failure of one artifact does not prevent the others from being deployed. If any artifact fails to deploy, a
+     * {@link BatchDeploymentException} is thrown once the others have been deployed and reports the cause of each
+     * failure.
+     *
+     * @param uris the locations of the artifacts
+     * @param options the options for the deployment of each artifact
+     * @return the {@link DeploymentIdentity DeploymentIdentities} of the deployed artifacts in the order of the given
+     *         URIs
+     * @throws BatchDeploymentException if one or more of the artifacts failed to deploy
+     * @throws DeploymentException
+     */
+    DeploymentIdentity[] deploy(List<URI> uris, DeploymentOptions options) throws DeploymentException;
+
     /**
      * Deploy an artifact from the repository with the given type, name, and version. A successfully deployed
      * application is always recovered on warm restart. <br/>
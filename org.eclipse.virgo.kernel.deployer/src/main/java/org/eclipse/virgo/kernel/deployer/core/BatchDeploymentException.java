@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Signals that one or more of the artifacts of a batch deployment failed to deploy. The artifacts of the batch which
+ * did not fail have been deployed.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br/>
+ *
+ * This class is thread safe.
+ *
+ * @see ApplicationDeployer#deploy(List, ApplicationDeployer.DeploymentOptions)
+ */
+public class BatchDeploymentException extends DeploymentException {
+
+    private static final long serialVersionUID = 3712604729164830462L;
+
+    private final DeploymentIdentity[] deploymentIdentities;
+
+    private final Map<URI, DeploymentException> failures;
+
+    /**
+     * Creates a new <code>BatchDeploymentException</code>.
+     *
+     * @param deploymentIdentities the identities of the artifacts of the batch, in the order in which the artifacts
+     *        were supplied, with <code>null</code> for each artifact which failed to deploy
+     * @param failures the cause of each failure keyed by the URI of the artifact as supplied
+     */
+    public BatchDeploymentException(DeploymentIdentity[] deploymentIdentities, Map<URI, DeploymentException> failures) {
+        super(failures.size() + " of " + deploymentIdentities.length + " artifacts failed to deploy", isDiagnosed(failures));
+        this.deploymentIdentities = deploymentIdentities.clone();
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<URI, DeploymentException>(failures));
+    }
+
+    private static boolean isDiagnosed(Map<URI, DeploymentException> failures) {
+        for (DeploymentException failure : failures.values()) {
+            if (!failure.isDiagnosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the identities of the artifacts of the batch, in the order in which the artifacts were supplied, with
+     * <code>null</code> for each artifact which failed to deploy.
+     *
+     * @return the <code>DeploymentIdentity</code> array
+     */
+    public DeploymentIdentity[] getDeploymentIdentities() {
+        return this.deploymentIdentities.clone();
+    }
+
+    /**
+     * Returns the cause of each failure keyed by the URI of the artifact as it was supplied to the deployer.
+     *
+     * @return an unmodifiable map of failures
+     */
+    public Map<URI, DeploymentException> getFailures() {
+        return this.failures;
+    }
+}
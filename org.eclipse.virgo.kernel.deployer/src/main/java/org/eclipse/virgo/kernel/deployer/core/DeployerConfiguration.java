@@ -37,4 +37,12 @@ public interface DeployerConfiguration {
      * @return the pickup directory as a {@link PathReference}.
      */
     PathReference getDeploymentPickupDirectory();
+
+    /**
+     * Get whether the artifacts of a plan are started concurrently when the plan does not specify a start mode.
+     * 
+     * @return <code>true</code> if plan artifacts are started concurrently by default, <code>false</code> if they are
+     *         started one after another
+     */
+    boolean isConcurrentPlanStart();
 }
@@ -12,6 +12,7 @@
 package org.eclipse.virgo.kernel.deployer.core.internal;
 
 import java.net.URI;
+import java.util.Map;
 
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer.DeploymentOptions;
@@ -30,12 +31,13 @@ import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer.DeploymentOpti
 public interface ApplicationRecoverer {
 
     /**
-     * Redeploy the artifact that was originally deployed from the given URI.
+     * Redeploy the artifacts that were originally deployed from the given URIs. The artifacts are installed together so
+     * that their bundles are resolved in a single pass. The failure of one artifact does not prevent the others from
+     * being recovered.
      * 
-     * @param location URI of artifact
-     * @param options the {@link DeploymentOptions} of the artifact
-     * @throws DeploymentException 
+     * @param deployments the {@link DeploymentOptions} of each artifact keyed by the artifact's URI, in deployment order
+     * @return the cause of each failure keyed by the URI of the artifact that failed to be recovered
      */
-    void recoverDeployment(URI location, DeploymentOptions options) throws DeploymentException;
+    Map<URI, DeploymentException> recoverDeployments(Map<URI, DeploymentOptions> deployments);
 
 }
@@ -0,0 +1,362 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.service.packageadmin.PackageAdmin;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.eclipse.virgo.kernel.deployer.core.DeployerLogEvents;
+import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
+import org.eclipse.virgo.kernel.install.artifact.BundleInstallArtifact;
+import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
+import org.eclipse.virgo.kernel.install.environment.InstallEnvironment;
+import org.eclipse.virgo.kernel.install.pipeline.Pipeline;
+import org.eclipse.virgo.kernel.install.pipeline.stage.PipelineStage;
+import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyBundleDependenciesException;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiExportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiPackageResolutionFailure;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiRequiredBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiResolutionFailure;
+import org.eclipse.virgo.util.common.Tree;
+import org.eclipse.virgo.util.common.Tree.TreeVisitor;
+
+/**
+ * {@link BatchPipeline} drives a number of install trees through the stages of the main pipeline together so that the
+ * side state is resolved and committed once, and the committed bundles resolved once, for the whole batch rather than
+ * once per tree.
+ * <p />
+ * Each tree is transformed and installed in the shared side state separately. If the side state does not resolve, the
+ * tree owning the first unresolved bundle is failed, its bundles are removed from the side state, and the side state
+ * is resolved again. If the first unresolved bundle is not a bundle of the batch, the trees which depend on it, as
+ * diagnosed by the side state, are failed instead. If the committed bundles do not resolve, each tree is resolved
+ * separately so that failures are diagnosed per tree. A failure of one tree therefore does not prevent the other trees of the batch from being
+ * installed.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+final class BatchPipeline {
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Pipeline installPreparationPipeline;
+
+    private final PipelineStage failInstallStage;
+
+    private final PipelineStage endInstallStage;
+
+    private final PipelineStage beginResolveStage;
+
+    private final Pipeline resolvePipeline;
+
+    private final PipelineStage endResolveStage;
+
+    private final PackageAdmin packageAdmin;
+
+    /**
+     * Creates a <code>BatchPipeline</code> from the given stages of the main pipeline.
+     *
+     * @param installPreparationPipeline begins the install of a tree and installs it in the side state, compensating
+     *        on failure
+     * @param failInstallStage compensates for a failed install
+     * @param endInstallStage ends the install of a tree
+     * @param beginResolveStage begins the resolution of a tree
+     * @param resolvePipeline resolves the committed bundles of a tree, compensating on failure
+     * @param endResolveStage ends the resolution of a tree
+     * @param packageAdmin the <code>PackageAdmin</code> used to resolve the committed bundles
+     */
+    BatchPipeline(Pipeline installPreparationPipeline, PipelineStage failInstallStage, PipelineStage endInstallStage,
+        PipelineStage beginResolveStage, Pipeline resolvePipeline, PipelineStage endResolveStage, PackageAdmin packageAdmin) {
+        this.installPreparationPipeline = installPreparationPipeline;
+        this.failInstallStage = failInstallStage;
+        this.endInstallStage = endInstallStage;
+        this.beginResolveStage = beginResolveStage;
+        this.resolvePipeline = resolvePipeline;
+        this.endResolveStage = endResolveStage;
+        this.packageAdmin = packageAdmin;
+    }
+
+    /**
+     * Processes the given install trees, each in its own {@link InstallEnvironment}. The environments must share a
+     * single side state.
+     *
+     * @param installTrees the trees to be processed
+     * @param installEnvironments the environment of each tree, in the same order
+     * @return the failure of each tree, in the same order, or <code>null</code> for each tree which was processed
+     *         successfully
+     */
+    Exception[] process(List<Tree<InstallArtifact>> installTrees, List<InstallEnvironment> installEnvironments) {
+        int size = installTrees.size();
+        Exception[] failures = new Exception[size];
+        if (size == 0) {
+            return failures;
+        }
+
+        for (int i = 0; i < size; i++) {
+            try {
+                this.installPreparationPipeline.process(installTrees.get(i), installEnvironments.get(i));
+            } catch (Exception e) {
+                failures[i] = e;
+                uninstallQuasiBundles(installTrees.get(i));
+            }
+        }
+
+        QuasiFramework quasiFramework = installEnvironments.get(0).getQuasiFramework();
+        resolveSideState(quasiFramework, installTrees, installEnvironments, failures);
+
+        if (!anySucceeded(failures)) {
+            return failures;
+        }
+
+        try {
+            quasiFramework.commit();
+        } catch (BundleException e) {
+            DeploymentException de = new DeploymentException("commit failed", e);
+            for (int i = 0; i < size; i++) {
+                if (failures[i] == null) {
+                    failInstall(installTrees.get(i), installEnvironments.get(i), de);
+                    failures[i] = de;
+                }
+            }
+            return failures;
+        }
+
+        processStage(this.endInstallStage, installTrees, installEnvironments, failures);
+        processStage(this.beginResolveStage, installTrees, installEnvironments, failures);
+
+        if (!resolveBundles(installTrees, failures)) {
+            processStage(this.resolvePipeline, installTrees, installEnvironments, failures);
+        }
+
+        processStage(this.endResolveStage, installTrees, installEnvironments, failures);
+
+        return failures;
+    }
+
+    private void resolveSideState(QuasiFramework quasiFramework, List<Tree<InstallArtifact>> installTrees,
+        List<InstallEnvironment> installEnvironments, Exception[] failures) {
+        Map<Long, Integer> owners = new HashMap<Long, Integer>();
+        for (int i = 0; i < installTrees.size(); i++) {
+            if (failures[i] == null) {
+                for (QuasiBundle quasiBundle : getQuasiBundles(installTrees.get(i))) {
+                    owners.put(quasiBundle.getBundleId(), i);
+                }
+            }
+        }
+
+        List<QuasiResolutionFailure> resolutionFailures = quasiFramework.resolve();
+        while (!resolutionFailures.isEmpty()) {
+            QuasiBundle unresolvedQuasiBundle = resolutionFailures.get(0).getUnresolvedQuasiBundle();
+            UnableToSatisfyBundleDependenciesException failure = new UnableToSatisfyBundleDependenciesException(
+                unresolvedQuasiBundle.getSymbolicName(), unresolvedQuasiBundle.getVersion(), resolutionFailures.get(0).getDescription());
+
+            Integer owner = owners.get(unresolvedQuasiBundle.getBundleId());
+            if (owner != null) {
+                int i = owner.intValue();
+                logger.debug("Removing '{}' from batch as bundle '{}' is unresolved", installTrees.get(i).getValue(), unresolvedQuasiBundle);
+                failTree(i, failure, installTrees, installEnvironments, failures, owners);
+            } else if (!failDependentTrees(quasiFramework, unresolvedQuasiBundle, installTrees, installEnvironments, failures, owners)) {
+                // No tree of the batch can be shown to cause the failure so the side state cannot be resolved by failing any one tree.
+                for (int i = 0; i < installTrees.size(); i++) {
+                    if (failures[i] == null) {
+                        failInstall(installTrees.get(i), installEnvironments.get(i), failure);
+                        failures[i] = failure;
+                    }
+                }
+                return;
+            }
+
+            resolutionFailures = quasiFramework.resolve();
+        }
+    }
+
+    /**
+     * Fails the trees of the batch which have a bundle that is unresolved in the side state because it depends on the
+     * given unresolved bundle, which is not a bundle of the batch. If no tree can be shown to depend on it, the trees
+     * which have an unresolved bundle are failed instead.
+     *
+     * @return <code>true</code> if at least one tree was failed, <code>false</code> otherwise
+     */
+    private boolean failDependentTrees(QuasiFramework quasiFramework, QuasiBundle unresolvedQuasiBundle, List<Tree<InstallArtifact>> installTrees,
+        List<InstallEnvironment> installEnvironments, Exception[] failures, Map<Long, Integer> owners) {
+        Map<Integer, Exception> dependentTreeFailures = new LinkedHashMap<Integer, Exception>();
+        Map<Integer, Exception> unresolvedTreeFailures = new LinkedHashMap<Integer, Exception>();
+        for (int i = 0; i < installTrees.size(); i++) {
+            if (failures[i] != null) {
+                continue;
+            }
+            for (QuasiBundle quasiBundle : getQuasiBundles(installTrees.get(i))) {
+                if (quasiBundle.isResolved()) {
+                    continue;
+                }
+                List<QuasiResolutionFailure> diagnosis = quasiFramework.diagnose(quasiBundle.getBundleId());
+                String description = diagnosis.isEmpty() ? null : diagnosis.get(0).getDescription();
+                Exception failure = new UnableToSatisfyBundleDependenciesException(quasiBundle.getSymbolicName(), quasiBundle.getVersion(),
+                    description);
+                if (dependsOn(diagnosis, unresolvedQuasiBundle)) {
+                    dependentTreeFailures.put(i, failure);
+                    break;
+                }
+                if (!unresolvedTreeFailures.containsKey(i)) {
+                    unresolvedTreeFailures.put(i, failure);
+                }
+            }
+        }
+
+        Map<Integer, Exception> treeFailures = dependentTreeFailures.isEmpty() ? unresolvedTreeFailures : dependentTreeFailures;
+        for (Entry<Integer, Exception> treeFailure : treeFailures.entrySet()) {
+            int i = treeFailure.getKey().intValue();
+            logger.debug("Removing '{}' from batch as it depends on unresolved bundle '{}'", installTrees.get(i).getValue(), unresolvedQuasiBundle);
+            failTree(i, treeFailure.getValue(), installTrees, installEnvironments, failures, owners);
+        }
+        return !treeFailures.isEmpty();
+    }
+
+    private static boolean dependsOn(List<QuasiResolutionFailure> diagnosis, QuasiBundle quasiBundle) {
+        Set<String> exportedPackageNames = new HashSet<String>();
+        for (QuasiExportPackage exportPackage : quasiBundle.getExportPackages()) {
+            exportedPackageNames.add(exportPackage.getPackageName());
+        }
+        for (QuasiResolutionFailure resolutionFailure : diagnosis) {
+            if (resolutionFailure instanceof QuasiPackageResolutionFailure) {
+                QuasiPackageResolutionFailure packageResolutionFailure = (QuasiPackageResolutionFailure) resolutionFailure;
+                if (exportedPackageNames.contains(packageResolutionFailure.getPackage())
+                    || quasiBundle.getSymbolicName().equals(packageResolutionFailure.getPackageBundleSymbolicName())) {
+                    return true;
+                }
+            }
+            QuasiBundle unresolvedQuasiBundle = resolutionFailure.getUnresolvedQuasiBundle();
+            if (unresolvedQuasiBundle != null) {
+                for (QuasiRequiredBundle requiredBundle : unresolvedQuasiBundle.getRequiredBundles()) {
+                    if (quasiBundle.getSymbolicName().equals(requiredBundle.getRequiredBundleName())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void failTree(int i, Exception failure, List<Tree<InstallArtifact>> installTrees, List<InstallEnvironment> installEnvironments,
+        Exception[] failures, Map<Long, Integer> owners) {
+        failInstall(installTrees.get(i), installEnvironments.get(i), failure);
+        failures[i] = failure;
+        for (QuasiBundle quasiBundle : uninstallQuasiBundles(installTrees.get(i))) {
+            owners.remove(quasiBundle.getBundleId());
+        }
+    }
+
+    private boolean resolveBundles(List<Tree<InstallArtifact>> installTrees, Exception[] failures) {
+        BundleFinderVisitor visitor = new BundleFinderVisitor();
+        for (int i = 0; i < installTrees.size(); i++) {
+            if (failures[i] == null) {
+                installTrees.get(i).visit(visitor);
+            }
+        }
+        return this.packageAdmin.resolveBundles(visitor.getBundles());
+    }
+
+    private static void processStage(PipelineStage stage, List<Tree<InstallArtifact>> installTrees, List<InstallEnvironment> installEnvironments,
+        Exception[] failures) {
+        for (int i = 0; i < installTrees.size(); i++) {
+            if (failures[i] == null) {
+                try {
+                    stage.process(installTrees.get(i), installEnvironments.get(i));
+                } catch (Exception e) {
+                    failures[i] = e;
+                }
+            }
+        }
+    }
+
+    private void failInstall(Tree<InstallArtifact> installTree, InstallEnvironment installEnvironment, Exception e) {
+        try {
+            if (!(e instanceof DeploymentException) || !((DeploymentException) e).isDiagnosed()) {
+                installEnvironment.getInstallLog().logFailure(DeployerLogEvents.INSTALL_FAILURE, e);
+            } else {
+                installEnvironment.getInstallLog().logFailure(DeployerLogEvents.INSTALL_FAILURE, null);
+            }
+            this.failInstallStage.process(installTree, installEnvironment);
+        } catch (Exception ex) {
+            logger.warn(String.format("exception thrown while compensating for '%s'", e.getMessage()), ex);
+        }
+    }
+
+    private static List<QuasiBundle> uninstallQuasiBundles(Tree<InstallArtifact> installTree) {
+        List<QuasiBundle> quasiBundles = getQuasiBundles(installTree);
+        for (QuasiBundle quasiBundle : quasiBundles) {
+            quasiBundle.uninstall();
+        }
+        return quasiBundles;
+    }
+
+    private static List<QuasiBundle> getQuasiBundles(Tree<InstallArtifact> installTree) {
+        final List<QuasiBundle> quasiBundles = new ArrayList<QuasiBundle>();
+        installTree.visit(new TreeVisitor<InstallArtifact>() {
+
+            public boolean visit(Tree<InstallArtifact> tree) {
+                InstallArtifact installArtifact = tree.getValue();
+                if (installArtifact instanceof BundleInstallArtifact) {
+                    QuasiBundle quasiBundle = ((BundleInstallArtifact) installArtifact).getQuasiBundle();
+                    if (quasiBundle != null) {
+                        quasiBundles.add(quasiBundle);
+                    }
+                }
+                return true;
+            }
+        });
+        return quasiBundles;
+    }
+
+    private static boolean anySucceeded(Exception[] failures) {
+        for (Exception failure : failures) {
+            if (failure == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class BundleFinderVisitor implements TreeVisitor<InstallArtifact> {
+
+        private final List<Bundle> bundles = new ArrayList<Bundle>();
+
+        public boolean visit(Tree<InstallArtifact> tree) {
+            InstallArtifact installArtifact = tree.getValue();
+            if (installArtifact instanceof BundleInstallArtifact) {
+                this.bundles.add(((BundleInstallArtifact) installArtifact).getBundle());
+            }
+            return true;
+        }
+
+        public Bundle[] getBundles() {
+            return this.bundles.toArray(new Bundle[this.bundles.size()]);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.virgo.kernel.deployer.DeploymentThroughputMonitor;
+
+/**
+ * {@link DeploymentStatistics} records the deployments, undeployments, and lock waits of a
+ * {@link PipelinedApplicationDeployer} and publishes them as a {@link DeploymentThroughputMonitor}.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+final class DeploymentStatistics implements DeploymentThroughputMonitor {
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private static final long NANOS_PER_MILLI = 1000 * NANOS_PER_MICRO;
+
+    private static final double NANOS_PER_SECOND = 1000.0 * NANOS_PER_MILLI;
+
+    private final AtomicLong deploymentCount = new AtomicLong();
+
+    private final AtomicLong failedDeploymentCount = new AtomicLong();
+
+    private final AtomicLong undeploymentCount = new AtomicLong();
+
+    private final AtomicInteger inProgressDeploymentCount = new AtomicInteger();
+
+    private final AtomicLong totalDeploymentNanos = new AtomicLong();
+
+    private final AtomicLong waitCount = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    private final AtomicLong maximumWaitNanos = new AtomicLong();
+
+    private volatile long resetNanos = System.nanoTime();
+
+    /**
+     * Records the start of a deployment.
+     *
+     * @return the start time to be passed to {@link #deploymentEnded(long, boolean)}
+     */
+    long deploymentStarted() {
+        return deploymentsStarted(1);
+    }
+
+    /**
+     * Records the start of a number of deployments which are performed together.
+     *
+     * @param count the number of deployments
+     * @return the start time to be passed to {@link #deploymentEnded(long, boolean)} for each of the deployments
+     */
+    long deploymentsStarted(int count) {
+        this.inProgressDeploymentCount.addAndGet(count);
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the end of a deployment.
+     *
+     * @param startNanos the time returned by {@link #deploymentStarted()}
+     * @param succeeded <code>true</code> if and only if the deployment succeeded
+     */
+    void deploymentEnded(long startNanos, boolean succeeded) {
+        this.inProgressDeploymentCount.decrementAndGet();
+        if (succeeded) {
+            this.deploymentCount.incrementAndGet();
+            this.totalDeploymentNanos.addAndGet(System.nanoTime() - startNanos);
+        } else {
+            this.failedDeploymentCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Records a successful undeployment.
+     */
+    void undeployed() {
+        this.undeploymentCount.incrementAndGet();
+    }
+
+    /**
+     * Records the time spent waiting to acquire a lock.
+     *
+     * @param startNanos the time at which the wait started
+     */
+    void waited(long startNanos) {
+        long waitNanos = System.nanoTime() - startNanos;
+        this.waitCount.incrementAndGet();
+        this.totalWaitNanos.addAndGet(waitNanos);
+
+        long maximum = this.maximumWaitNanos.get();
+        while (waitNanos > maximum && !this.maximumWaitNanos.compareAndSet(maximum, waitNanos)) {
+            maximum = this.maximumWaitNanos.get();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDeploymentCount() {
+        return this.deploymentCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getFailedDeploymentCount() {
+        return this.failedDeploymentCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getUndeploymentCount() {
+        return this.undeploymentCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getInProgressDeploymentCount() {
+        return this.inProgressDeploymentCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double getDeploymentsPerSecond() {
+        long elapsedNanos = System.nanoTime() - this.resetNanos;
+        return elapsedNanos <= 0 ? 0 : this.deploymentCount.get() * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMeanDeploymentTimeMillis() {
+        long deployments = this.deploymentCount.get();
+        return deployments == 0 ? 0 : this.totalDeploymentNanos.get() / deployments / NANOS_PER_MILLI;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getTotalQueueWaitTimeMicros() {
+        return this.totalWaitNanos.get() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMeanQueueWaitTimeMicros() {
+        long waits = this.waitCount.get();
+        return waits == 0 ? 0 : this.totalWaitNanos.get() / waits / NANOS_PER_MICRO;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumQueueWaitTimeMicros() {
+        return this.maximumWaitNanos.get() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void resetStatistics() {
+        this.deploymentCount.set(0);
+        this.failedDeploymentCount.set(0);
+        this.undeploymentCount.set(0);
+        this.totalDeploymentNanos.set(0);
+        this.waitCount.set(0);
+        this.totalWaitNanos.set(0);
+        this.maximumWaitNanos.set(0);
+        this.resetNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link LocationLocks} provides a reentrant lock per deployment location so that operations on an artifact are
+ * serialised with each other but not with operations on artifacts deployed from other locations.
+ * <p />
+ * A lock is created when it is first needed and discarded when no thread holds it or is waiting for it. Threads which
+ * need several locks must acquire them together using {@link #lock(Collection)} so that they are always acquired in
+ * the same order.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+final class LocationLocks {
+
+    private final Object monitor = new Object();
+
+    private final Map<URI, LocationLock> locks = new HashMap<URI, LocationLock>();
+
+    /**
+     * Acquires the lock for the given location, waiting if another thread holds it.
+     *
+     * @param location the normalised location
+     */
+    void lock(URI location) {
+        LocationLock locationLock;
+        synchronized (this.monitor) {
+            locationLock = this.locks.get(location);
+            if (locationLock == null) {
+                locationLock = new LocationLock();
+                this.locks.put(location, locationLock);
+            }
+            locationLock.users++;
+        }
+        locationLock.lock.lock();
+    }
+
+    /**
+     * Releases the lock for the given location, which must be held by the current thread.
+     *
+     * @param location the normalised location
+     */
+    void unlock(URI location) {
+        synchronized (this.monitor) {
+            LocationLock locationLock = this.locks.get(location);
+            if (locationLock == null || !locationLock.lock.isHeldByCurrentThread()) {
+                throw new IllegalMonitorStateException("Lock for location '" + location + "' is not held by the current thread");
+            }
+            locationLock.lock.unlock();
+            if (--locationLock.users == 0) {
+                this.locks.remove(location);
+            }
+        }
+    }
+
+    /**
+     * Acquires the locks for all the given locations, in a consistent order.
+     *
+     * @param locations the normalised locations
+     * @return the locations whose locks were acquired, which must be passed to {@link #unlock(List)}
+     */
+    List<URI> lock(Collection<URI> locations) {
+        List<URI> locked = new ArrayList<URI>(new TreeSet<URI>(locations));
+        for (URI location : locked) {
+            lock(location);
+        }
+        return locked;
+    }
+
+    /**
+     * Releases the locks for the given locations.
+     *
+     * @param locations the locations returned by {@link #lock(Collection)}
+     */
+    void unlock(List<URI> locations) {
+        for (int i = locations.size() - 1; i >= 0; i--) {
+            unlock(locations.get(i));
+        }
+    }
+
+    /**
+     * Returns the number of locations whose locks are held or waited for.
+     *
+     * @return the number of locations in use
+     */
+    int getLocationCount() {
+        synchronized (this.monitor) {
+            return this.locks.size();
+        }
+    }
+
+    private static final class LocationLock {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private int users;
+    }
+}
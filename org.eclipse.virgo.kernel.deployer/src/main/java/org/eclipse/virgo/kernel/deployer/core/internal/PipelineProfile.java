@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import java.util.Map;
+
+import org.eclipse.virgo.kernel.deployer.PipelineProfileMonitor;
+import org.eclipse.virgo.kernel.serviceability.NonNull;
+
+/**
+ * {@link PipelineProfile} records the time pipeline stages spend in each of the extensions they drive and publishes
+ * it as a {@link PipelineProfileMonitor}.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+public final class PipelineProfile implements PipelineProfileMonitor {
+
+    private final TimingStatistics statistics = new TimingStatistics();
+
+    /**
+     * Records an invocation of the given extension by the given stage which started at the given time.
+     *
+     * @param stageName the name of the pipeline stage
+     * @param extension the extension which was invoked
+     * @param startNanos the value of {@link System#nanoTime()} when the invocation started
+     */
+    public void recordInvocation(@NonNull String stageName, @NonNull Object extension, long startNanos) {
+        this.statistics.getTimer(stageName + ":" + extension.getClass().getName()).record(startNanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getInvocationCounts() {
+        return this.statistics.getCounts();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getTotalTimesMicros() {
+        return this.statistics.getTotalTimesMicros();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getMeanTimesMicros() {
+        return this.statistics.getMeanTimesMicros();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getMaximumTimesMicros() {
+        return this.statistics.getMaximumTimesMicros();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void resetStatistics() {
+        this.statistics.reset();
+    }
+}
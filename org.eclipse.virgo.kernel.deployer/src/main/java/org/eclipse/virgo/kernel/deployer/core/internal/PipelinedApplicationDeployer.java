@@ -13,16 +13,25 @@ package org.eclipse.virgo.kernel.deployer.core.internal;
 
 import java.io.File;
 import java.net.URI;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.framework.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyBundleDependenciesException;
 import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyDependenciesException;
 
 import org.eclipse.virgo.kernel.core.KernelException;
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer;
+import org.eclipse.virgo.kernel.deployer.core.BatchDeploymentException;
 import org.eclipse.virgo.kernel.deployer.core.DeployUriNormaliser;
 import org.eclipse.virgo.kernel.deployer.core.DeployerConfiguration;
 import org.eclipse.virgo.kernel.deployer.core.DeployerLogEvents;
@@ -52,16 +61,24 @@ import org.eclipse.virgo.util.io.PathReference;
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
- * This class is thread safe.
+ * This class is thread safe. Operations on an artifact hold the lock for the artifact's normalised location, so that
+ * they are serialised with other operations on the same artifact but not with operations on other artifacts, except
+ * that deploying an artifact releases the lock before waiting for the artifact to start. Only driving the install
+ * pipeline, refreshing an artifact, and uninstalling an artifact, which resolve, commit, and refresh bundles in the OSGi
+ * framework, are serialised across all artifacts. Queries do not lock.
  * 
  */
 final class PipelinedApplicationDeployer implements ApplicationDeployer, ApplicationRecoverer {
 
     private static final String BUNDLE_TYPE = "bundle";
 
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
     private final EventLogger eventLogger;
 
-    private final Object monitor = new Object();
+    private final Object pipelineMonitor = new Object();
+
+    private final LocationLocks locationLocks = new LocationLocks();
 
     private final InstallEnvironmentFactory installEnvironmentFactory;
 
@@ -71,17 +88,21 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
 
     private final DeploymentListener deploymentListener;
 
-    private final Map<DeploymentIdentity, DeploymentOptions> deploymentOptionsMap = new HashMap<DeploymentIdentity, DeploymentOptions>();
+    private final Map<DeploymentIdentity, DeploymentOptions> deploymentOptionsMap = new ConcurrentHashMap<DeploymentIdentity, DeploymentOptions>();
 
     private final Pipeline pipeline;
 
+    private final BatchPipeline batchPipeline;
+
     private final DeployUriNormaliser deployUriNormaliser;
 
     private final int deployerConfiguredTimeoutInSeconds;
 
-    public PipelinedApplicationDeployer(Pipeline pipeline, InstallArtifactTreeInclosure installArtifactTreeInclosure,
+    private final DeploymentStatistics statistics;
+
+    public PipelinedApplicationDeployer(Pipeline pipeline, BatchPipeline batchPipeline, InstallArtifactTreeInclosure installArtifactTreeInclosure,
         InstallEnvironmentFactory installEnvironmentFactory, RuntimeArtifactModel ram, DeploymentListener deploymentListener,
-        EventLogger eventLogger, DeployUriNormaliser normaliser, DeployerConfiguration deployerConfiguration) {
+        EventLogger eventLogger, DeployUriNormaliser normaliser, DeployerConfiguration deployerConfiguration, DeploymentStatistics statistics) {
         this.eventLogger = eventLogger;
         this.installArtifactTreeInclosure = installArtifactTreeInclosure;
         this.installEnvironmentFactory = installEnvironmentFactory;
@@ -90,16 +111,59 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
         this.deployUriNormaliser = normaliser;
 
         this.pipeline = pipeline;
+        this.batchPipeline = batchPipeline;
         this.deployerConfiguredTimeoutInSeconds = deployerConfiguration.getDeploymentTimeoutSeconds();
+        this.statistics = statistics;
     }
 
     /**
      * {@inheritDoc}
      */
     public DeploymentIdentity deploy(URI location) throws DeploymentException {
-        synchronized (this.monitor) {
-            return deploy(location, new DeploymentOptions());
+        return deploy(location, new DeploymentOptions());
+    }
+
+    private void lockLocation(URI normalisedLocation) {
+        long start = System.nanoTime();
+        this.locationLocks.lock(normalisedLocation);
+        this.statistics.waited(start);
+    }
+
+    private List<URI> lockLocations(Set<URI> normalisedLocations) {
+        long start = System.nanoTime();
+        List<URI> lockedLocations = this.locationLocks.lock(normalisedLocations);
+        this.statistics.waited(start);
+        return lockedLocations;
+    }
+
+    /**
+     * Acquires the lock for the location of the artifact with the given identity.
+     * <p>
+     * The location is looked up before the lock is acquired, so it is checked again once the lock is held in case the
+     * artifact was undeployed, and perhaps deployed again from another location, in the meantime.
+     * 
+     * @return the location whose lock is held, or <code>null</code> if no artifact with the given identity is deployed,
+     *         in which case no lock is held
+     */
+    private URI lockLocation(DeploymentIdentity deploymentIdentity) {
+        URI location = this.ram.getLocation(deploymentIdentity);
+        while (location != null) {
+            lockLocation(location);
+            if (location.equals(this.ram.getLocation(deploymentIdentity))) {
+                return location;
+            }
+            unlockLocation(location);
+            location = this.ram.getLocation(deploymentIdentity);
         }
+        return null;
+    }
+
+    private void unlockLocation(URI normalisedLocation) {
+        this.locationLocks.unlock(normalisedLocation);
+    }
+
+    private void unlockLocations(List<URI> lockedLocations) {
+        this.locationLocks.unlock(lockedLocations);
     }
 
     private URI normaliseDeploymentUri(URI uri) throws DeploymentException {
@@ -120,45 +184,52 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
     public DeploymentIdentity install(URI uri, DeploymentOptions deploymentOptions) throws DeploymentException {
         URI normalisedUri = normaliseDeploymentUri(uri);
 
-        DeploymentIdentity deploymentIdentity = doInstall(normalisedUri, deploymentOptions);
+        DeploymentIdentity deploymentIdentity;
+        lockLocation(normalisedUri);
+        try {
+            deploymentIdentity = doInstall(normalisedUri, deploymentOptions);
+        } finally {
+            unlockLocation(normalisedUri);
+        }
         this.deploymentListener.deployed(normalisedUri, deploymentOptions);
 
         return deploymentIdentity;
     }
 
+    /**
+     * Installs the artifact at the given location. The caller must hold the lock for the location.
+     */
     private DeploymentIdentity doInstall(URI normalisedUri, DeploymentOptions deploymentOptions) throws DeploymentException {
-        synchronized (this.monitor) {
-            InstallArtifact existingArtifact = this.ram.get(normalisedUri);
+        InstallArtifact existingArtifact = this.ram.get(normalisedUri);
 
-            if (existingArtifact != null) {
-                DeploymentIdentity refreshedIdentity = updateAndRefreshExistingArtifact(normalisedUri, existingArtifact);
-                if (refreshedIdentity != null) {
-                    return refreshedIdentity;
-                }
+        if (existingArtifact != null) {
+            DeploymentIdentity refreshedIdentity = updateAndRefreshExistingArtifact(normalisedUri, existingArtifact);
+            if (refreshedIdentity != null) {
+                return refreshedIdentity;
             }
+        }
 
-            Tree<InstallArtifact> installTree = this.installArtifactTreeInclosure.createInstallTree(new File(normalisedUri));
-            DeploymentIdentity deploymentIdentity;
-
-            try {
-                deploymentIdentity = addTreeToModel(normalisedUri, installTree);
-            } catch (KernelException ke) {
-                throw new DeploymentException(ke.getMessage(), ke);
-            }
+        Tree<InstallArtifact> installTree = this.installArtifactTreeInclosure.createInstallTree(new File(normalisedUri));
+        DeploymentIdentity deploymentIdentity;
 
-            this.deploymentOptionsMap.put(deploymentIdentity, deploymentOptions);
-            try {
-                driveInstallPipeline(normalisedUri, installTree);
-            } catch (DeploymentException de) {
-                this.ram.delete(deploymentIdentity);
-                throw de;
-            } catch (RuntimeException re) {
-                this.ram.delete(deploymentIdentity);
-                throw re;
-            }
+        try {
+            deploymentIdentity = addTreeToModel(normalisedUri, installTree);
+        } catch (KernelException ke) {
+            throw new DeploymentException(ke.getMessage(), ke);
+        }
 
-            return deploymentIdentity;
+        this.deploymentOptionsMap.put(deploymentIdentity, deploymentOptions);
+        try {
+            driveInstallPipeline(normalisedUri, installTree);
+        } catch (DeploymentException de) {
+            this.ram.delete(deploymentIdentity);
+            throw de;
+        } catch (RuntimeException re) {
+            this.ram.delete(deploymentIdentity);
+            throw re;
         }
+
+        return deploymentIdentity;
     }
 
     private DeploymentIdentity updateAndRefreshExistingArtifact(URI normalisedLocation, InstallArtifact existingArtifact) throws DeploymentException {
@@ -183,22 +254,41 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
     public DeploymentIdentity deploy(URI location, DeploymentOptions deploymentOptions) throws DeploymentException {
         URI normalisedLocation = normaliseDeploymentUri(location);
 
-        InstallArtifact installedArtifact;
+        long start = this.statistics.deploymentStarted();
+        boolean succeeded = false;
         DeploymentIdentity deploymentIdentity;
 
-        synchronized (this.monitor) {
-            deploymentIdentity = install(location, deploymentOptions);
-            installedArtifact = this.ram.get(normalisedLocation);
-        }
-
         try {
-            start(installedArtifact, deploymentOptions.getSynchronous());
-        } catch (DeploymentException de) {
-            synchronized (this.monitor) {
-                stopArtifact(installedArtifact);
-                uninstallArtifact(installedArtifact);
+            InstallArtifact installedArtifact;
+            BlockingSignal startSignal;
+
+            lockLocation(normalisedLocation);
+            try {
+                deploymentIdentity = doInstall(normalisedLocation, deploymentOptions);
+                this.deploymentListener.deployed(normalisedLocation, deploymentOptions);
+                installedArtifact = this.ram.get(normalisedLocation);
+
+                try {
+                    startSignal = startArtifact(installedArtifact, deploymentOptions.getSynchronous());
+                } catch (DeploymentException de) {
+                    stopArtifact(installedArtifact);
+                    uninstallArtifact(installedArtifact);
+                    throw de;
+                }
+            } finally {
+                unlockLocation(normalisedLocation);
             }
-            throw de;
+
+            // A synchronous start can take up to the deployer timeout, so wait for it without holding the lock.
+            try {
+                awaitStart(installedArtifact, startSignal, deploymentOptions.getSynchronous());
+            } catch (DeploymentException de) {
+                stopAndUninstallIfStillDeployed(normalisedLocation, installedArtifact);
+                throw de;
+            }
+            succeeded = true;
+        } finally {
+            this.statistics.deploymentEnded(start, succeeded);
         }
 
         this.deploymentListener.deployed(normalisedLocation, deploymentOptions);
@@ -206,11 +296,132 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
         return deploymentIdentity;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public DeploymentIdentity[] deploy(List<URI> locations, DeploymentOptions deploymentOptions) throws DeploymentException {
+        DeploymentIdentity[] deploymentIdentities = new DeploymentIdentity[locations.size()];
+        DeploymentException[] failures = new DeploymentException[locations.size()];
+        URI[] normalisedLocations = new URI[locations.size()];
+        List<BatchEntry> batch = new ArrayList<BatchEntry>();
+
+        Set<URI> uniqueLocations = new HashSet<URI>();
+        for (int i = 0; i < locations.size(); i++) {
+            URI location = locations.get(i);
+            try {
+                URI normalisedLocation = normaliseDeploymentUri(location);
+                if (!uniqueLocations.add(normalisedLocation)) {
+                    throw new DeploymentException("Artifact at '" + location + "' occurs more than once in the batch");
+                }
+                normalisedLocations[i] = normalisedLocation;
+            } catch (DeploymentException de) {
+                failures[i] = de;
+            }
+        }
+
+        long start = this.statistics.deploymentsStarted(uniqueLocations.size());
+        List<URI> lockedLocations = lockLocations(uniqueLocations);
+        try {
+            List<BatchEntry> installBatch = new ArrayList<BatchEntry>();
+            for (int i = 0; i < locations.size(); i++) {
+                URI normalisedLocation = normalisedLocations[i];
+                if (normalisedLocation == null) {
+                    continue;
+                }
+                try {
+                    InstallArtifact existingArtifact = this.ram.get(normalisedLocation);
+                    if (existingArtifact != null) {
+                        DeploymentIdentity refreshedIdentity = updateAndRefreshExistingArtifact(normalisedLocation, existingArtifact);
+                        if (refreshedIdentity != null) {
+                            batch.add(new BatchEntry(i, normalisedLocation, null, existingArtifact, refreshedIdentity));
+                            continue;
+                        }
+                    }
+
+                    Tree<InstallArtifact> installTree = this.installArtifactTreeInclosure.createInstallTree(new File(normalisedLocation));
+                    DeploymentIdentity deploymentIdentity = addTreeToModel(normalisedLocation, installTree);
+                    this.deploymentOptionsMap.put(deploymentIdentity, deploymentOptions);
+                    BatchEntry entry = new BatchEntry(i, normalisedLocation, installTree, installTree.getValue(), deploymentIdentity);
+                    batch.add(entry);
+                    installBatch.add(entry);
+                } catch (DeploymentException de) {
+                    failures[i] = de;
+                } catch (KernelException ke) {
+                    failures[i] = new DeploymentException(ke.getMessage(), ke);
+                } catch (RuntimeException re) {
+                    failures[i] = new DeploymentException(re.getMessage(), re);
+                }
+            }
+
+            List<URI> installLocations = new ArrayList<URI>(installBatch.size());
+            List<Tree<InstallArtifact>> installTrees = new ArrayList<Tree<InstallArtifact>>(installBatch.size());
+            for (BatchEntry entry : installBatch) {
+                installLocations.add(entry.location);
+                installTrees.add(entry.installTree);
+            }
+
+            DeploymentException[] installFailures = driveBatchInstallPipeline(installLocations, installTrees);
+            for (int j = 0; j < installBatch.size(); j++) {
+                if (installFailures[j] != null) {
+                    BatchEntry entry = installBatch.get(j);
+                    this.ram.delete(entry.deploymentIdentity);
+                    this.deploymentOptionsMap.remove(entry.deploymentIdentity);
+                    failures[entry.index] = installFailures[j];
+                }
+            }
+
+            // Record each installed artifact for recovery before starting any of them, as a single deployment does.
+            for (BatchEntry entry : batch) {
+                if (failures[entry.index] == null) {
+                    this.deploymentListener.deployed(entry.location, deploymentOptions);
+                }
+            }
+
+            for (BatchEntry entry : batch) {
+                if (failures[entry.index] == null) {
+                    try {
+                        start(entry.installArtifact, deploymentOptions.getSynchronous());
+                        deploymentIdentities[entry.index] = entry.deploymentIdentity;
+                    } catch (DeploymentException de) {
+                        failures[entry.index] = de;
+                        this.deploymentOptionsMap.remove(entry.deploymentIdentity);
+                        try {
+                            stopArtifact(entry.installArtifact);
+                            uninstallArtifact(entry.installArtifact);
+                        } catch (DeploymentException e) {
+                            this.logger.warn(String.format("exception thrown while compensating for failed start of '%s'", entry.location), e);
+                        }
+                    }
+                }
+            }
+        } finally {
+            unlockLocations(lockedLocations);
+            for (int i = 0; i < normalisedLocations.length; i++) {
+                if (normalisedLocations[i] != null) {
+                    this.statistics.deploymentEnded(start, deploymentIdentities[i] != null);
+                }
+            }
+        }
+
+        Map<URI, DeploymentException> failureMap = new LinkedHashMap<URI, DeploymentException>();
+        for (int i = 0; i < failures.length; i++) {
+            if (deploymentIdentities[i] != null) {
+                this.deploymentListener.deployed(normalisedLocations[i], deploymentOptions);
+            } else if (failures[i] != null) {
+                failureMap.put(locations.get(i), failures[i]);
+            }
+        }
+        if (!failureMap.isEmpty()) {
+            throw new BatchDeploymentException(deploymentIdentities, failureMap);
+        }
+        return deploymentIdentities;
+    }
+
     private DeploymentIdentity updateAndRefresh(URI location, InstallArtifact installArtifact) throws DeploymentException {
         DeploymentIdentity deploymentIdentity = null;
         this.installArtifactTreeInclosure.updateStagingArea(new File(location), new ArtifactIdentity(installArtifact.getType(),
             installArtifact.getName(), installArtifact.getVersion(), installArtifact.getScopeName()));
-        if (installArtifact.refresh()) {
+        if (refreshArtifact(installArtifact)) {
             this.deploymentListener.refreshed(location);
 
             deploymentIdentity = new StandardDeploymentIdentity(installArtifact.getType(), installArtifact.getName(),
@@ -243,46 +454,120 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
     /**
      * {@inheritDoc}
      */
-    public void recoverDeployment(URI uri, DeploymentOptions options) throws DeploymentException {
+    public Map<URI, DeploymentException> recoverDeployments(Map<URI, DeploymentOptions> deployments) {
+        List<URI> lockedLocations = lockLocations(deployments.keySet());
+        try {
+            return doRecoverDeployments(deployments);
+        } finally {
+            unlockLocations(lockedLocations);
+        }
+    }
 
-        Tree<InstallArtifact> installTree = this.installArtifactTreeInclosure.recoverInstallTree(new File(uri), options);
+    private Map<URI, DeploymentException> doRecoverDeployments(Map<URI, DeploymentOptions> deployments) {
+        Map<URI, DeploymentException> failures = new LinkedHashMap<URI, DeploymentException>();
 
-        if (installTree == null) {
-            // Remove the URI from the recovery log.
-            this.deploymentListener.undeployed(uri);
-        } else {
-            driveInstallPipeline(uri, installTree);
+        List<URI> uris = new ArrayList<URI>(deployments.size());
+        List<Tree<InstallArtifact>> installTrees = new ArrayList<Tree<InstallArtifact>>(deployments.size());
+        for (Entry<URI, DeploymentOptions> deployment : deployments.entrySet()) {
+            URI uri = deployment.getKey();
+            try {
+                Tree<InstallArtifact> installTree = this.installArtifactTreeInclosure.recoverInstallTree(new File(uri), deployment.getValue());
+                if (installTree == null) {
+                    // Remove the URI from the recovery log.
+                    this.deploymentListener.undeployed(uri);
+                } else {
+                    uris.add(uri);
+                    installTrees.add(installTree);
+                }
+            } catch (RuntimeException re) {
+                failures.put(uri, new DeploymentException(re.getMessage(), re));
+            }
+        }
 
-            start(installTree.getValue(), options.getSynchronous());
+        DeploymentException[] installFailures = driveBatchInstallPipeline(uris, installTrees);
+
+        for (int i = 0; i < uris.size(); i++) {
+            URI uri = uris.get(i);
+            if (installFailures[i] != null) {
+                failures.put(uri, installFailures[i]);
+                continue;
+            }
 
+            Tree<InstallArtifact> installTree = installTrees.get(i);
             try {
+                start(installTree.getValue(), deployments.get(uri).getSynchronous());
                 addTreeToModel(uri, installTree);
-            } catch (KernelException e) {
-                throw new DeploymentException(e.getMessage(), e);
+            } catch (DeploymentException de) {
+                failures.put(uri, de);
+            } catch (KernelException ke) {
+                failures.put(uri, new DeploymentException(ke.getMessage(), ke));
+            } catch (RuntimeException re) {
+                failures.put(uri, new DeploymentException(re.getMessage(), re));
             }
         }
+
+        return failures;
     }
 
     private void driveInstallPipeline(URI uri, Tree<InstallArtifact> installTree) throws DeploymentException {
 
-        InstallEnvironment installEnvironment = this.installEnvironmentFactory.createInstallEnvironment(installTree.getValue());
-
         try {
-            this.pipeline.process(installTree, installEnvironment);
+            long start = System.nanoTime();
+            synchronized (this.pipelineMonitor) {
+                this.statistics.waited(start);
+                InstallEnvironment installEnvironment = this.installEnvironmentFactory.createInstallEnvironment(installTree.getValue());
+                this.pipeline.process(installTree, installEnvironment);
+            }
         } catch (UnableToSatisfyBundleDependenciesException utsbde) {
             logDependencySatisfactionException(uri, utsbde);
             throw new DeploymentException("Dependency satisfaction failed", utsbde);
         }
     }
 
+    private DeploymentException[] driveBatchInstallPipeline(List<URI> uris, List<Tree<InstallArtifact>> installTrees) {
+        List<InstallArtifact> installArtifacts = new ArrayList<InstallArtifact>(installTrees.size());
+        for (Tree<InstallArtifact> installTree : installTrees) {
+            installArtifacts.add(installTree.getValue());
+        }
+        Exception[] pipelineFailures;
+        long start = System.nanoTime();
+        synchronized (this.pipelineMonitor) {
+            this.statistics.waited(start);
+            List<InstallEnvironment> installEnvironments = this.installEnvironmentFactory.createInstallEnvironments(installArtifacts);
+            pipelineFailures = this.batchPipeline.process(installTrees, installEnvironments);
+        }
+
+        DeploymentException[] failures = new DeploymentException[pipelineFailures.length];
+        for (int i = 0; i < pipelineFailures.length; i++) {
+            Exception failure = pipelineFailures[i];
+            if (failure instanceof UnableToSatisfyBundleDependenciesException) {
+                logDependencySatisfactionException(uris.get(i), (UnableToSatisfyBundleDependenciesException) failure);
+                failures[i] = new DeploymentException("Dependency satisfaction failed", failure);
+            } else if (failure instanceof DeploymentException) {
+                failures[i] = (DeploymentException) failure;
+            } else if (failure != null) {
+                failures[i] = new DeploymentException(failure.getMessage(), failure);
+            }
+        }
+        return failures;
+    }
+
     private void logDependencySatisfactionException(URI uri, UnableToSatisfyDependenciesException ex) {
         this.eventLogger.log(DeployerLogEvents.UNABLE_TO_SATISFY_CONSTRAINTS, ex, uri, ex.getSymbolicName(), ex.getVersion(),
             ex.getFailureDescription());
     }
 
     private void start(InstallArtifact installArtifact, boolean synchronous) throws DeploymentException {
+        awaitStart(installArtifact, startArtifact(installArtifact, synchronous), synchronous);
+    }
+
+    private BlockingSignal startArtifact(InstallArtifact installArtifact, boolean synchronous) throws DeploymentException {
         BlockingSignal blockingSignal = new BlockingSignal(synchronous);
         installArtifact.start(blockingSignal);
+        return blockingSignal;
+    }
+
+    private void awaitStart(InstallArtifact installArtifact, BlockingSignal blockingSignal, boolean synchronous) throws DeploymentException {
         if (synchronous && this.deployerConfiguredTimeoutInSeconds > 0) {
             boolean complete = blockingSignal.awaitCompletion(this.deployerConfiguredTimeoutInSeconds);
             if (!complete) {
@@ -299,20 +584,16 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
      * {@inheritDoc}
      */
     public DeploymentIdentity[] getDeploymentIdentities() {
-        synchronized (this.monitor) {
-            return this.ram.getDeploymentIdentities();
-        }
+        return this.ram.getDeploymentIdentities();
     }
 
     /**
      * {@inheritDoc}
      */
     public DeploymentIdentity getDeploymentIdentity(URI location) {
-        synchronized (this.monitor) {
-            InstallArtifact installArtifact = this.ram.get(location);
-            if (installArtifact != null) {
-                return getDeploymentIdentity(installArtifact);
-            }
+        InstallArtifact installArtifact = this.ram.get(location);
+        if (installArtifact != null) {
+            return getDeploymentIdentity(installArtifact);
         }
         return null;
     }
@@ -336,9 +617,7 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
             this.eventLogger.log(DeployerLogEvents.UNSUPPORTED_URI_SCHEME, location.toString(), location.getScheme());
             return false;
         }
-        synchronized (this.monitor) {
-            return this.ram.get(normalisedLocation) != null;
-        }
+        return this.ram.get(normalisedLocation) != null;
     }
 
     /**
@@ -353,7 +632,8 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
         }
 
         DeploymentIdentity deploymentIdentity;
-        synchronized (this.monitor) {
+        lockLocation(normalisedLocation);
+        try {
             InstallArtifact installArtifact = this.ram.get(normalisedLocation);
             if (installArtifact == null) {
                 this.eventLogger.log(DeployerLogEvents.REFRESH_REQUEST_URI_NOT_FOUND, location.toString());
@@ -386,22 +666,34 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
                     throw new DeploymentException("refresh failed", e);
                 }
             }
+        } finally {
+            unlockLocation(normalisedLocation);
         }
         return deploymentIdentity;
     }
 
     private boolean refreshInternal(String symbolicName, InstallArtifact installArtifact) throws DeploymentException {
         if (installArtifact instanceof PlanInstallArtifact) {
-            return ((PlanInstallArtifact) installArtifact).refresh(symbolicName);
+            long start = System.nanoTime();
+            synchronized (this.pipelineMonitor) {
+                this.statistics.waited(start);
+                return ((PlanInstallArtifact) installArtifact).refresh(symbolicName);
+            }
         } else {
+            return refreshArtifact(installArtifact);
+        }
+    }
+
+    private boolean refreshArtifact(InstallArtifact installArtifact) throws DeploymentException {
+        long start = System.nanoTime();
+        synchronized (this.pipelineMonitor) {
+            this.statistics.waited(start);
             return installArtifact.refresh();
         }
     }
 
     private DeploymentIdentity redeploy(DeploymentIdentity toUndeploy, URI toDeploy, DeploymentOptions deploymentOptions) throws DeploymentException {
-        synchronized (this.monitor) {
-            undeployInternal(toUndeploy, true, false);
-        }
+        undeployInternal(toUndeploy, true, false);
         return deploy(toDeploy, deploymentOptions);
     }
 
@@ -410,16 +702,20 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
      */
     public void refreshBundle(String bundleSymbolicName, String bundleVersion) throws DeploymentException {
         DeploymentIdentity deploymentIdentity = new StandardDeploymentIdentity(BUNDLE_TYPE, bundleSymbolicName, bundleVersion);
-        InstallArtifact bundleInstallArtifact;
-        synchronized (this.monitor) {
-            bundleInstallArtifact = this.ram.get(deploymentIdentity);
-        }
-        if (bundleInstallArtifact == null) {
-            this.eventLogger.log(DeployerLogEvents.REFRESH_ARTEFACT_NOT_FOUND, BUNDLE_TYPE, bundleSymbolicName, bundleVersion);
-            throw new DeploymentException("Refresh not possible as no " + BUNDLE_TYPE + " with name " + bundleSymbolicName + " and version "
-                + bundleVersion + " is deployed");
+        URI location = lockLocation(deploymentIdentity);
+        try {
+            InstallArtifact bundleInstallArtifact = this.ram.get(deploymentIdentity);
+            if (bundleInstallArtifact == null) {
+                this.eventLogger.log(DeployerLogEvents.REFRESH_ARTEFACT_NOT_FOUND, BUNDLE_TYPE, bundleSymbolicName, bundleVersion);
+                throw new DeploymentException("Refresh not possible as no " + BUNDLE_TYPE + " with name " + bundleSymbolicName + " and version "
+                    + bundleVersion + " is deployed");
+            }
+            refreshArtifact(bundleInstallArtifact);
+        } finally {
+            if (location != null) {
+                unlockLocation(location);
+            }
         }
-        bundleInstallArtifact.refresh();
     }
 
     /**
@@ -466,31 +762,40 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
      */
     public void undeploy(String type, String symbolicName, String version) throws DeploymentException {
         DeploymentIdentity deploymentIdentity = new StandardDeploymentIdentity(type, symbolicName, version);
-        synchronized (this.monitor) {
-            undeployInternal(deploymentIdentity, false, false);
-        }
+        undeploy(deploymentIdentity, false, false);
     }
 
     /**
      * {@inheritDoc}
      */
     public void undeploy(DeploymentIdentity deploymentIdentity) throws DeploymentException {
-        synchronized (this.monitor) {
-            undeployInternal(deploymentIdentity, false, false);
-        }
+        undeploy(deploymentIdentity, false, false);
     }
 
     /**
      * {@inheritDoc}
      */
     public void undeploy(DeploymentIdentity deploymentIdentity, boolean deleted) throws DeploymentException {
-        synchronized (this.monitor) {
-            undeployInternal(deploymentIdentity, false, true);
+        undeploy(deploymentIdentity, false, true);
+    }
+
+    /**
+     * Undeploys the artifact with the given identity while holding the lock for its location.
+     */
+    private void undeploy(DeploymentIdentity deploymentIdentity, boolean redeploying, boolean deleted) throws DeploymentException {
+        URI location = lockLocation(deploymentIdentity);
+        try {
+            undeployInternal(deploymentIdentity, redeploying, deleted);
+        } finally {
+            if (location != null) {
+                unlockLocation(location);
+            }
         }
     }
 
     /**
-     * All the undeploy work goes on in here -- it is assumed that any required monitors are already held by the caller.
+     * All the undeploy work goes on in here -- it is assumed that the lock for the artifact's location is already held by
+     * the caller.
      * <p>
      * The deleted parameter indicates whether the undeployment is a consequence of the artifact having been deleted.
      * This affects the processing of "deployer owned" artifacts which undeploy would normally delete automatically. If
@@ -519,23 +824,22 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
     }
 
     private URI doUndeploy(DeploymentIdentity deploymentIdentity) throws DeploymentException {
-        synchronized (this.monitor) {
-            InstallArtifact installArtifact = this.ram.get(deploymentIdentity);
-            if (installArtifact == null) {
-                String type = deploymentIdentity.getType();
-                String symbolicName = deploymentIdentity.getSymbolicName();
-                String version = deploymentIdentity.getVersion();
-                this.eventLogger.log(DeployerLogEvents.UNDEPLOY_ARTEFACT_NOT_FOUND, type, symbolicName, version);
-                throw new DeploymentException("Undeploy not possible as no " + type + " with name " + symbolicName + " and version " + version
-                    + " is deployed");
-            } else {
-                URI location = this.ram.getLocation(deploymentIdentity);
+        InstallArtifact installArtifact = this.ram.get(deploymentIdentity);
+        if (installArtifact == null) {
+            String type = deploymentIdentity.getType();
+            String symbolicName = deploymentIdentity.getSymbolicName();
+            String version = deploymentIdentity.getVersion();
+            this.eventLogger.log(DeployerLogEvents.UNDEPLOY_ARTEFACT_NOT_FOUND, type, symbolicName, version);
+            throw new DeploymentException("Undeploy not possible as no " + type + " with name " + symbolicName + " and version " + version
+                + " is deployed");
+        } else {
+            URI location = this.ram.getLocation(deploymentIdentity);
 
-                stopArtifact(installArtifact);
-                uninstallArtifact(installArtifact);
+            stopArtifact(installArtifact);
+            uninstallArtifact(installArtifact);
+            this.statistics.undeployed();
 
-                return location;
-            }
+            return location;
         }
     }
 
@@ -545,8 +849,53 @@ final class PipelinedApplicationDeployer implements ApplicationDeployer, Applica
 
     }
 
+    /**
+     * Uninstalls the given artifact. Uninstalling a bundle refreshes packages in the OSGi framework, so this is
+     * serialised with driving the install pipeline.
+     */
     private void uninstallArtifact(InstallArtifact installArtifact) throws DeploymentException {
-        installArtifact.uninstall();
+        long start = System.nanoTime();
+        synchronized (this.pipelineMonitor) {
+            this.statistics.waited(start);
+            installArtifact.uninstall();
+        }
+    }
+
+    /**
+     * Stops and uninstalls the given artifact after it failed to start, unless it has been undeployed, or replaced by
+     * another artifact from the same location, since the lock for the location was released.
+     */
+    private void stopAndUninstallIfStillDeployed(URI normalisedLocation, InstallArtifact installArtifact) throws DeploymentException {
+        lockLocation(normalisedLocation);
+        try {
+            if (this.ram.get(normalisedLocation) == installArtifact) {
+                stopArtifact(installArtifact);
+                uninstallArtifact(installArtifact);
+            }
+        } finally {
+            unlockLocation(normalisedLocation);
+        }
+    }
+
+    private static final class BatchEntry {
+
+        private final int index;
+
+        private final URI location;
+
+        private final Tree<InstallArtifact> installTree;
+
+        private final InstallArtifact installArtifact;
+
+        private final DeploymentIdentity deploymentIdentity;
+
+        BatchEntry(int index, URI location, Tree<InstallArtifact> installTree, InstallArtifact installArtifact, DeploymentIdentity deploymentIdentity) {
+            this.index = index;
+            this.location = location;
+            this.installTree = installTree;
+            this.installArtifact = installArtifact;
+            this.deploymentIdentity = deploymentIdentity;
+        }
     }
 
 }
@@ -21,11 +21,11 @@ import org.eclipse.virgo.kernel.install.pipeline.stage.resolve.internal.CommitSt
 import org.eclipse.virgo.kernel.install.pipeline.stage.resolve.internal.QuasiInstallStage;
 import org.eclipse.virgo.kernel.install.pipeline.stage.resolve.internal.QuasiResolveStage;
 import org.eclipse.virgo.kernel.install.pipeline.stage.resolve.internal.ResolveStage;
+import org.eclipse.virgo.kernel.install.pipeline.stage.transform.Transformer;
 import org.eclipse.virgo.kernel.install.pipeline.stage.transform.internal.TransformationStage;
 import org.eclipse.virgo.kernel.install.pipeline.stage.visit.Visitor;
 import org.eclipse.virgo.kernel.install.pipeline.stage.visit.internal.VisitationStage;
 import org.eclipse.virgo.kernel.serviceability.NonNull;
-import org.osgi.framework.BundleContext;
 import org.osgi.service.packageadmin.PackageAdmin;
 
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
@@ -43,7 +43,9 @@ final class Plumber {
 
     private final PackageAdmin packageAdmin;
 
-    private final BundleContext bundleContext;
+    private final RankedServiceTracker<Transformer> transformerTracker;
+
+    private final PipelineProfile pipelineProfile;
 
     private final PipelineFactory pipelineFactory;
 
@@ -51,17 +53,68 @@ final class Plumber {
 
     private final Pipeline refreshSubpipeline;
 
+    private final BatchPipeline batchPipeline;
+
     private final QuasiFrameworkFactory quasiFrameworkFactory;
 
-    public Plumber(@NonNull PackageAdmin packageAdmin, @NonNull BundleContext bundleContext, @NonNull PipelineFactory pipelineFactory,
-        @NonNull QuasiFrameworkFactory quasiFrameworkFactory) {
+    private final VisitationStage beginInstallStage = new VisitationStage(new Visitor() {
+
+        public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
+            ((AbstractInstallArtifact) installArtifact).beginInstall();
+
+        }
+    });
+
+    private final VisitationStage endInstallStage = new VisitationStage(new Visitor() {
+
+        public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
+            ((AbstractInstallArtifact) installArtifact).endInstall();
+
+        }
+    }, false);
+
+    private final VisitationStage failInstallStage = new VisitationStage(new Visitor() {
+
+        public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
+            ((AbstractInstallArtifact) installArtifact).failInstall();
+
+        }
+    }, false);
+
+    private final VisitationStage beginResolveStage = new VisitationStage(new Visitor() {
+
+        public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
+            ((AbstractInstallArtifact) installArtifact).beginResolve();
+
+        }
+    });
+
+    private final VisitationStage endResolveStage = new VisitationStage(new Visitor() {
+
+        public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
+            ((AbstractInstallArtifact) installArtifact).endResolve();
+
+        }
+    });
+
+    private final VisitationStage failResolveStage = new VisitationStage(new Visitor() {
+
+        public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
+            ((AbstractInstallArtifact) installArtifact).failResolve();
+
+        }
+    });
+
+    public Plumber(@NonNull PackageAdmin packageAdmin, @NonNull RankedServiceTracker<Transformer> transformerTracker,
+        @NonNull PipelineProfile pipelineProfile, @NonNull PipelineFactory pipelineFactory, @NonNull QuasiFrameworkFactory quasiFrameworkFactory) {
         this.packageAdmin = packageAdmin;
-        this.bundleContext = bundleContext;
+        this.transformerTracker = transformerTracker;
+        this.pipelineProfile = pipelineProfile;
         this.pipelineFactory = pipelineFactory;
         this.quasiFrameworkFactory = quasiFrameworkFactory;
         this.refreshSubpipeline = this.pipelineFactory.create();
         this.pipeline = this.pipelineFactory.create();
-        initialisePipelines();
+        this.batchPipeline = initialisePipelines();
     }
 
     public Pipeline getMainPipeline() {
@@ -72,15 +125,27 @@ final class Plumber {
         return this.refreshSubpipeline;
     }
 
-    private void initialisePipelines() {
+    /**
+     * Returns a {@link BatchPipeline} which drives a number of install trees through the stages of the main pipeline
+     * with a single side state resolution and commit.
+     * 
+     * @return the <code>BatchPipeline</code>
+     */
+    public BatchPipeline getBatchPipeline() {
+        return this.batchPipeline;
+    }
+
+    private BatchPipeline initialisePipelines() {
         // new ManifestUpgrader(), new ImportExpander(this.bundleInstaller), new
         // PlanResolver(this.installArtifactTreeInclosure));
 
-        TransformationStage transformationStage = new TransformationStage(this.bundleContext);
+        TransformationStage transformationStage = new TransformationStage(this.transformerTracker, this.pipelineProfile);
 
         plumbRefreshPipeline(transformationStage);
 
         plumbMainPipeline(transformationStage);
+
+        return plumbBatchPipeline(transformationStage);
     }
 
     /**
@@ -93,68 +158,39 @@ final class Plumber {
     }
 
     private void plumbMainPipelineInstallStages(TransformationStage transformationStage) {
-        VisitationStage beginInstallStage = new VisitationStage(new Visitor() {
-
-            public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
-                ((AbstractInstallArtifact) installArtifact).beginInstall();
-
-            }
-        });
-
-        VisitationStage endInstallStage = new VisitationStage(new Visitor() {
-
-            public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
-                ((AbstractInstallArtifact) installArtifact).endInstall();
-
-            }
-        }, false);
-
-        VisitationStage failInstallStage = new VisitationStage(new Visitor() {
-
-            public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
-                ((AbstractInstallArtifact) installArtifact).failInstall();
-
-            }
-        }, false);
-
-        Pipeline installStages = this.pipelineFactory.createCompensatingPipeline(failInstallStage);
+        Pipeline installStages = this.pipelineFactory.createCompensatingPipeline(this.failInstallStage);
 
         installStages.appendStage(transformationStage).appendStage(new QuasiInstallStage()).appendStage(new QuasiResolveStage()).appendStage(
             new CommitStage());
 
-        this.pipeline.appendStage(beginInstallStage).appendStage(installStages).appendStage(endInstallStage);
+        this.pipeline.appendStage(this.beginInstallStage).appendStage(installStages).appendStage(this.endInstallStage);
     }
 
     private void plumbMainPipelineResolveStages() {
-        VisitationStage beginResolveStage = new VisitationStage(new Visitor() {
-
-            public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
-                ((AbstractInstallArtifact) installArtifact).beginResolve();
-
-            }
-        });
-
-        VisitationStage endResolveStage = new VisitationStage(new Visitor() {
-
-            public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
-                ((AbstractInstallArtifact) installArtifact).endResolve();
-
-            }
-        });
+        this.pipeline.appendStage(this.beginResolveStage).appendStage(createResolveStages()).appendStage(this.endResolveStage);
+    }
 
-        VisitationStage failResolveStage = new VisitationStage(new Visitor() {
+    private Pipeline createResolveStages() {
+        Pipeline resolveStages = this.pipelineFactory.createCompensatingPipeline(this.failResolveStage);
 
-            public void operate(InstallArtifact installArtifact, InstallEnvironment installEnvironment) throws DeploymentException {
-                ((AbstractInstallArtifact) installArtifact).failResolve();
+        resolveStages.appendStage(new ResolveStage(this.packageAdmin, this.quasiFrameworkFactory));
 
-            }
-        });
+        return resolveStages;
+    }
 
-        Pipeline resolveStages = this.pipelineFactory.createCompensatingPipeline(failResolveStage);
+    /**
+     * Build the batch pipeline from the stages of the main pipeline, leaving the side state resolution and commit and
+     * the resolution of the committed bundles to the batch pipeline itself.
+     */
+    private BatchPipeline plumbBatchPipeline(TransformationStage transformationStage) {
+        Pipeline installStages = this.pipelineFactory.createCompensatingPipeline(this.failInstallStage);
+        installStages.appendStage(transformationStage).appendStage(new QuasiInstallStage());
 
-        resolveStages.appendStage(new ResolveStage(this.packageAdmin, this.quasiFrameworkFactory));
+        Pipeline installPreparationPipeline = this.pipelineFactory.create();
+        installPreparationPipeline.appendStage(this.beginInstallStage).appendStage(installStages);
 
-        this.pipeline.appendStage(beginResolveStage).appendStage(resolveStages).appendStage(endResolveStage);
+        return new BatchPipeline(installPreparationPipeline, this.failInstallStage, this.endInstallStage, this.beginResolveStage,
+            createResolveStages(), this.endResolveStage, this.packageAdmin);
     }
 
     private void plumbRefreshPipeline(TransformationStage transformationStage) {
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+import org.eclipse.virgo.kernel.serviceability.NonNull;
+
+/**
+ * {@link RankedServiceTracker} tracks the services of a given type in the service registry and holds them in an
+ * immutable list ordered by their {@link ServiceReference ServiceReferences}, that is by service ranking and service
+ * id. The list is replaced whenever a service is registered, modified, or unregistered, so that the services can be
+ * driven in order without querying the service registry.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ * @param <S> the type of the services
+ */
+public final class RankedServiceTracker<S> {
+
+    private static final Comparator<ServiceReference> SERVICE_REFERENCE_ORDER = new Comparator<ServiceReference>() {
+
+        public int compare(ServiceReference reference1, ServiceReference reference2) {
+            return reference1.compareTo(reference2);
+        }
+    };
+
+    private final Object monitor = new Object();
+
+    private final BundleContext bundleContext;
+
+    private final Class<S> serviceType;
+
+    private final ServiceTracker serviceTracker;
+
+    private final Map<ServiceReference, S> trackedServices = new HashMap<ServiceReference, S>(); // protected by monitor
+
+    private volatile List<S> services = Collections.emptyList();
+
+    public RankedServiceTracker(@NonNull BundleContext bundleContext, @NonNull Class<S> serviceType) {
+        this.bundleContext = bundleContext;
+        this.serviceType = serviceType;
+        this.serviceTracker = new ServiceTracker(bundleContext, serviceType.getName(), new RankingServiceTrackerCustomizer());
+    }
+
+    public void open() {
+        this.serviceTracker.open();
+    }
+
+    public void close() {
+        this.serviceTracker.close();
+    }
+
+    /**
+     * Returns the services currently registered, ordered by service ranking and service id.
+     *
+     * @return an unmodifiable list of the services
+     */
+    public List<S> getServices() {
+        return this.services;
+    }
+
+    private void rebuildServices() {
+        synchronized (this.monitor) {
+            List<ServiceReference> references = new ArrayList<ServiceReference>(this.trackedServices.keySet());
+            Collections.sort(references, SERVICE_REFERENCE_ORDER);
+
+            List<S> newServices = new ArrayList<S>(references.size());
+            for (ServiceReference reference : references) {
+                newServices.add(this.trackedServices.get(reference));
+            }
+            this.services = Collections.unmodifiableList(newServices);
+        }
+    }
+
+    final class RankingServiceTrackerCustomizer implements ServiceTrackerCustomizer {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Object addingService(ServiceReference reference) {
+            Object service = bundleContext.getService(reference);
+            if (serviceType.isInstance(service)) {
+                synchronized (monitor) {
+                    trackedServices.put(reference, serviceType.cast(service));
+                    rebuildServices();
+                }
+            }
+            return service;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void modifiedService(ServiceReference reference, Object service) {
+            rebuildServices();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void removedService(ServiceReference reference, Object service) {
+            synchronized (monitor) {
+                trackedServices.remove(reference);
+                rebuildServices();
+            }
+            bundleContext.ungetService(reference);
+        }
+    }
+}
@@ -29,6 +29,7 @@ final class StandardDeployerConfiguration implements DeployerConfiguration {
 
     private final int deploymentTimeoutSeconds;
     private final PathReference deploymentPickupDirectory;
+    private final boolean concurrentPlanStart;
     
     /**
      * Construct a deployment configuration using the given <code>deploymentTimeout</code>,
@@ -38,8 +39,21 @@ final class StandardDeployerConfiguration implements DeployerConfiguration {
      * @param pickupDirectory The deployer's pickup directory
      */
     StandardDeployerConfiguration(int deploymentTimeout, File pickupDirectory) {        
+        this(deploymentTimeout, pickupDirectory, false);
+    }
+
+    /**
+     * Construct a deployment configuration using the given <code>deploymentTimeout</code>,
+     * <code>pickupDirectory</code>, and default plan start mode.
+     * 
+     * @param deploymentTimeout The timeout period, in seconds
+     * @param pickupDirectory The deployer's pickup directory
+     * @param concurrentPlanStart Whether plan artifacts are started concurrently by default
+     */
+    StandardDeployerConfiguration(int deploymentTimeout, File pickupDirectory, boolean concurrentPlanStart) {        
         this.deploymentTimeoutSeconds = deploymentTimeout;
         this.deploymentPickupDirectory = new PathReference(pickupDirectory);
+        this.concurrentPlanStart = concurrentPlanStart;
     }
 
     /**
@@ -56,10 +70,18 @@ final class StandardDeployerConfiguration implements DeployerConfiguration {
         return this.deploymentPickupDirectory;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isConcurrentPlanStart() {
+        return this.concurrentPlanStart;
+    }
+    
     /** 
      * {@inheritDoc}
      */
     public String toString() {
-        return String.format("Timeout: '%s', Pickup directory: '%s'", this.deploymentTimeoutSeconds, this.deploymentPickupDirectory);
+        return String.format("Timeout: '%s', Pickup directory: '%s', Concurrent plan start: '%s'", this.deploymentTimeoutSeconds,
+            this.deploymentPickupDirectory, this.concurrentPlanStart);
     }
 }
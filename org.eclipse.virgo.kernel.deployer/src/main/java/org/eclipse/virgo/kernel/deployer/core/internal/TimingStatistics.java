@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.virgo.kernel.serviceability.NonNull;
+
+/**
+ * {@link TimingStatistics} records the number, total duration, and maximum duration of timed operations by key. Only
+ * keys whose operations have been timed since the statistics were last reset are reported.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+public final class TimingStatistics {
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+
+    /**
+     * Returns the {@link Timer} for the given key, creating it if necessary. A caller which times the same operation
+     * repeatedly may hold on to the <code>Timer</code> rather than looking it up each time.
+     *
+     * @param key the key of the timed operation
+     * @return the <code>Timer</code>
+     */
+    public Timer getTimer(@NonNull String key) {
+        Timer timer = this.timers.get(key);
+        if (timer == null) {
+            Timer newTimer = new Timer();
+            timer = this.timers.putIfAbsent(key, newTimer);
+            if (timer == null) {
+                timer = newTimer;
+            }
+        }
+        return timer;
+    }
+
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<String, Long>();
+        for (Entry<String, Timer> entry : this.timers.entrySet()) {
+            long count = entry.getValue().count.get();
+            if (count > 0) {
+                counts.put(entry.getKey(), Long.valueOf(count));
+            }
+        }
+        return counts;
+    }
+
+    public Map<String, Long> getTotalTimesMicros() {
+        Map<String, Long> totalTimes = new TreeMap<String, Long>();
+        for (Entry<String, Timer> entry : this.timers.entrySet()) {
+            Timer timer = entry.getValue();
+            if (timer.count.get() > 0) {
+                totalTimes.put(entry.getKey(), Long.valueOf(timer.totalNanos.get() / NANOS_PER_MICRO));
+            }
+        }
+        return totalTimes;
+    }
+
+    public Map<String, Long> getMeanTimesMicros() {
+        Map<String, Long> meanTimes = new TreeMap<String, Long>();
+        for (Entry<String, Timer> entry : this.timers.entrySet()) {
+            Timer timer = entry.getValue();
+            long count = timer.count.get();
+            if (count > 0) {
+                meanTimes.put(entry.getKey(), Long.valueOf(timer.totalNanos.get() / count / NANOS_PER_MICRO));
+            }
+        }
+        return meanTimes;
+    }
+
+    public Map<String, Long> getMaximumTimesMicros() {
+        Map<String, Long> maximumTimes = new TreeMap<String, Long>();
+        for (Entry<String, Timer> entry : this.timers.entrySet()) {
+            Timer timer = entry.getValue();
+            if (timer.count.get() > 0) {
+                maximumTimes.put(entry.getKey(), Long.valueOf(timer.maximumNanos.get() / NANOS_PER_MICRO));
+            }
+        }
+        return maximumTimes;
+    }
+
+    public void reset() {
+        for (Timer timer : this.timers.values()) {
+            timer.reset();
+        }
+    }
+
+    /**
+     * {@link Timer} records the timings of one operation.
+     * <p />
+     *
+     * <strong>Concurrent Semantics</strong><br />
+     *
+     * This class is thread safe.
+     *
+     */
+    public static final class Timer {
+
+        private final AtomicLong count = new AtomicLong();
+
+        private final AtomicLong totalNanos = new AtomicLong();
+
+        private final AtomicLong maximumNanos = new AtomicLong();
+
+        private Timer() {
+        }
+
+        /**
+         * Records an operation which started at the given time and has just finished.
+         *
+         * @param startNanos the value of {@link System#nanoTime()} when the operation started
+         */
+        public void record(long startNanos) {
+            long nanos = System.nanoTime() - startNanos;
+            this.count.incrementAndGet();
+            this.totalNanos.addAndGet(nanos);
+
+            long maximum = this.maximumNanos.get();
+            while (nanos > maximum && !this.maximumNanos.compareAndSet(maximum, nanos)) {
+                maximum = this.maximumNanos.get();
+            }
+        }
+
+        private void reset() {
+            this.count.set(0);
+            this.totalNanos.set(0);
+            this.maximumNanos.set(0);
+        }
+    }
+}
@@ -12,18 +12,25 @@
 package org.eclipse.virgo.kernel.deployer.core.internal.recovery;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Reader;
-import java.io.Writer;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,226 +42,503 @@ import org.eclipse.virgo.util.io.PathReference;
 /**
  * {@link DeployerRecoveryLog} maintains the deployer's recoverable state across restarts.
  * <p />
- * 
+ * The state is kept in a journal of binary records, each of which is prefixed by its length and a CRC-32 checksum of
+ * its contents. A record which is incomplete or fails its checksum, for example because the kernel crashed while it
+ * was being written, ends the journal and is discarded when the journal is next opened.
+ * <p />
+ * Records are written through a single {@link FileChannel} and forced to disk before {@link #add} or {@link #remove}
+ * returns. Records added concurrently by several threads are written and forced together, so that a burst of
+ * deployments costs a few forces rather than one per deployment.
+ * <p />
+ * When the journal holds many more records than there are deployed artifacts, it is compacted on a background thread
+ * by writing the current state to a new file and renaming the new file over the journal. A journal written by a
+ * previous version of the deployer in the old text format is converted when it is first opened.
+ * <p />
+ *
  * <strong>Concurrent Semantics</strong><br />
- * 
+ *
  * This class is thread safe.
- * 
+ *
  */
 final class DeployerRecoveryLog {
 
-    private static final String REDEPLOY_FILE_NAME = "deployed";
+    private static final String JOURNAL_FILE_NAME = "journal";
+
+    private static final String COMPACTION_FILE_NAME = "journal.compact";
+
+    private static final String LEGACY_REDEPLOY_FILE_NAME = "deployed";
+
+    private static final String LEGACY_REDEPLOY_COMPRESSION_FILE_NAME = "deployed.compress";
+
+    private static final int MAGIC = 0x56524c31; // "VRL1"
+
+    private static final int HEADER_LENGTH = 4;
 
-    private static final String REDEPLOY_COMPRESSION_FILE_NAME = "deployed.compress";
+    private static final int RECORD_PREFIX_LENGTH = 8;
 
-    private static final int INITIAL_REDEPLOY_DATA_SIZE = 32 * 1024;
+    private static final int MAXIMUM_RECORD_LENGTH = 64 * 1024;
 
-    private static final int COMPRESSION_THRESHOLD = 10;
+    private static final byte ADD_RECORD = 1;
 
-    private static final int COMMAND_LENGTH = 3;
+    private static final byte REMOVE_RECORD = 2;
 
-    private static final String UNDEPLOY_URI_COMMAND = "---";
+    private static final int RECOVERABLE = 1;
 
-    private static final String URI_SEPARATOR = ";";
+    private static final int DEPLOYER_OWNED = 2;
+
+    private static final int SYNCHRONOUS = 4;
+
+    private static final int COMPACTION_THRESHOLD = 10;
+
+    private static final int COMPACTION_MINIMUM_RECORDS = 64;
+
+    private static final String URI_ENCODING = "UTF-8";
 
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private final PathReference redeployDataset;
+    private final PathReference journal;
 
-    private final PathReference redeployCompressionDataset;
+    private final PathReference compactionJournal;
 
     private final long redeployFileLastModified;
 
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "deployer-recovery-log-compaction");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Object monitor = new Object();
+
+    private final Map<URI, DeploymentOptions> recoveryState = new LinkedHashMap<URI, DeploymentOptions>();
+
+    private Batch openBatch = new Batch();
+
+    private boolean writing = false;
+
+    private boolean compactionScheduled = false;
+
+    private int recordCount;
+
+    // Only accessed by the thread which has set writing.
+    private FileChannel journalChannel;
+
+    // Only accessed by the thread which has set writing.
+    private boolean closed = false;
+
     DeployerRecoveryLog(PathReference workArea) {
         PathReference recoveryArea = workArea.newChild("recovery");
         recoveryArea.createDirectory();
 
-        this.redeployDataset = recoveryArea.newChild(REDEPLOY_FILE_NAME);
-        this.redeployFileLastModified = this.redeployDataset.toFile().lastModified();
-        this.redeployCompressionDataset = recoveryArea.newChild(REDEPLOY_COMPRESSION_FILE_NAME);
+        this.journal = recoveryArea.newChild(JOURNAL_FILE_NAME);
+        this.compactionJournal = recoveryArea.newChild(COMPACTION_FILE_NAME);
 
-        // Recover from a crash during compression
-        if (!this.redeployDataset.exists() && this.redeployCompressionDataset.exists()) {
-            this.redeployCompressionDataset.copy(this.redeployDataset);
-            if (!this.redeployCompressionDataset.delete()) {
-                logger.warn("Could not delete '%s' in recovery after compression failure.", this.redeployCompressionDataset);
-            }
+        // Recover from a crash during compaction
+        if (!this.journal.exists() && this.compactionJournal.exists()) {
+            this.compactionJournal.moveTo(this.journal);
+        } else {
+            this.compactionJournal.delete();
+        }
+
+        if (!this.journal.exists()) {
+            convertLegacyRedeployDataset(recoveryArea);
+        }
+
+        this.redeployFileLastModified = this.journal.toFile().lastModified();
+
+        try {
+            this.journalChannel = openJournal();
+        } catch (IOException e) {
+            throw new FatalDeploymentException("Failed to open recovery log '" + this.journal + "'", e);
         }
     }
 
     /**
      * Get the URIs that need to be recovered along with their deployment options.
-     * 
+     *
      * @return a map of URI to deployment options
      */
     public Map<URI, DeploymentOptions> getRecoveryState() {
-        Map<URI, DeploymentOptions> redeploySet = new LinkedHashMap<URI, DeploymentOptions>(20);
+        synchronized (this.monitor) {
+            return new LinkedHashMap<URI, DeploymentOptions>(this.recoveryState);
+        }
+    }
+
+    /**
+     * Add the given location and deployment options to the recovery state.
+     *
+     * @param location
+     * @param deploymentOptions
+     */
+    void add(URI location, DeploymentOptions deploymentOptions) {
+        append(location, deploymentOptions, createRecord(ADD_RECORD, toFlags(deploymentOptions), location));
+    }
+
+    /**
+     * Remove the given location and associated deployment options from the recovery state.
+     *
+     * @param location
+     */
+    void remove(URI location) {
+        append(location, null, createRecord(REMOVE_RECORD, 0, location));
+    }
+
+    /**
+     * Stops background compaction and closes the journal.
+     */
+    void close() {
+        this.compactionExecutor.shutdown();
+        acquireWriting();
+        try {
+            this.closed = true;
+            this.journalChannel.close();
+        } catch (IOException e) {
+            logger.warn("Problem closing recovery log", e);
+        } finally {
+            releaseWriting();
+        }
+    }
 
-        String redeployData = readRedployData();
+    /**
+     * Appends the given record to the journal and waits for it to be forced to disk. The first thread to find no
+     * write in progress writes the records of every thread waiting for its batch.
+     */
+    private void append(URI location, DeploymentOptions deploymentOptions, byte[] record) {
+        Batch batch;
+        synchronized (this.monitor) {
+            if (deploymentOptions == null) {
+                this.recoveryState.remove(location);
+            } else {
+                this.recoveryState.put(location, deploymentOptions);
+            }
 
-        int recordCount = 0;
-        int undeployCount = 0;
+            batch = this.openBatch;
+            batch.add(record);
 
-        for (String uriCommandString : redeployData.split(URI_SEPARATOR)) {
-            recordCount++;
-            // Skip short command strings as there will typically be one
-            // at the end of the dataset.
-            if (uriCommandString.length() >= COMMAND_LENGTH) {
-                String uriCommand = uriCommandString.substring(0, COMMAND_LENGTH);
-                String uriString = uriCommandString.substring(COMMAND_LENGTH);
+            boolean interrupted = false;
+            while (this.writing && !batch.written) {
                 try {
-                    URI uri = new URI(uriString);
-                    if (UNDEPLOY_URI_COMMAND.equals(uriCommand)) {
-                        undeployCount++;
-                        redeploySet.remove(uri);
-                    } else {
-                        char[] commands = uriCommand.toCharArray();
-                        DeploymentOptions options = new DeploymentOptions(fromCommandOption(commands[0]), fromCommandOption(commands[1]),
-                            fromCommandOption(commands[2]));
-
-                        redeploySet.put(uri, options);
-                    }
-                } catch (URISyntaxException e) {
-                    logger.error("Invalid URI in command string '%s' read from redeploy dataset", e, uriCommandString);
-                    // skip and carry on
+                    this.monitor.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
             }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (batch.written) {
+                checkBatch(batch);
+                return;
+            }
+
+            // The batch has not been written and no write is in progress, so the batch is still open.
+            this.writing = true;
+            this.openBatch = new Batch();
         }
 
-        // If there is a significant amount of wasted space in the redeploy
-        // dataset, rewrite it.
-        if (COMPRESSION_THRESHOLD * undeployCount > recordCount) {
-            rewriteRedeploySet(redeploySet);
+        IOException failure = null;
+        try {
+            writeFully(this.journalChannel, ByteBuffer.wrap(batch.records.toByteArray()));
+            this.journalChannel.force(false);
+        } catch (IOException e) {
+            failure = e;
         }
 
-        return redeploySet;
+        synchronized (this.monitor) {
+            batch.written = true;
+            batch.failure = failure;
+            if (failure == null) {
+                this.recordCount += batch.recordCount;
+                scheduleCompactionIfNecessary();
+            }
+            this.writing = false;
+            this.monitor.notifyAll();
+            checkBatch(batch);
+        }
     }
 
-    private String readRedployData() {
-        StringBuffer redeployData = new StringBuffer(INITIAL_REDEPLOY_DATA_SIZE);
-        Reader redeployDataReader;
+    private static void checkBatch(Batch batch) {
+        if (batch.failure != null) {
+            throw new FatalDeploymentException("Failed to record (un)deployment", batch.failure);
+        }
+    }
+
+    private void scheduleCompactionIfNecessary() {
+        if (!this.compactionScheduled && this.recordCount >= COMPACTION_MINIMUM_RECORDS
+            && this.recordCount > COMPACTION_THRESHOLD * this.recoveryState.size()) {
+            this.compactionScheduled = true;
+            this.compactionExecutor.execute(new Runnable() {
+
+                public void run() {
+                    compact();
+                }
+            });
+        }
+    }
+
+    /**
+     * Rewrites the journal so that it contains only the current recovery state. To avoid corruption if a crash occurs,
+     * the state is written to a compaction file which is then renamed over the journal.
+     * <p/>
+     * Records added while the journal is being compacted are appended to the new journal. Some of them may already be
+     * reflected in the compacted state, but replaying them again has no effect.
+     */
+    void compact() {
+        Map<URI, DeploymentOptions> state;
+        acquireWriting();
         try {
-            redeployDataReader = new BufferedReader(new FileReader(redeployDataset.toFile()));
+            if (this.closed) {
+                return;
+            }
+            synchronized (this.monitor) {
+                this.compactionScheduled = false;
+                state = new LinkedHashMap<URI, DeploymentOptions>(this.recoveryState);
+            }
+
             try {
-                char[] chars = new char[INITIAL_REDEPLOY_DATA_SIZE];
-                int numRead;
-                while (-1 != (numRead = redeployDataReader.read(chars))) {
-                    redeployData.append(String.valueOf(chars, 0, numRead));
-                }
+                writeJournal(this.compactionJournal, state);
+            } catch (IOException e) {
+                logger.warn("Problem while compacting recovery log", e);
+                this.compactionJournal.delete();
+                return;
+            }
 
+            try {
+                this.journalChannel.close();
             } catch (IOException e) {
-                logger.error("Problem reading redeploy dataset", e);
-            } finally {
+                logger.warn("Problem closing recovery log before compaction", e);
+            }
+
+            if (!this.compactionJournal.toFile().renameTo(this.journal.toFile())) {
+                // Some platforms do not rename over an existing file. A crash before the move completes is recovered
+                // when the log is next opened.
+                this.journal.delete();
+                this.compactionJournal.moveTo(this.journal);
+            }
+
+            try {
+                this.journalChannel = openJournalForAppend();
+            } catch (IOException e) {
+                throw new FatalDeploymentException("Failed to reopen recovery log '" + this.journal + "' after compaction", e);
+            }
+
+            synchronized (this.monitor) {
+                this.recordCount = state.size();
+            }
+        } finally {
+            releaseWriting();
+        }
+    }
+
+    private void acquireWriting() {
+        synchronized (this.monitor) {
+            boolean interrupted = false;
+            while (this.writing) {
                 try {
-                    redeployDataReader.close();
-                } catch (IOException e) {
-                    logger.error("Problem closing redeploy dataset", e);
+                    this.monitor.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
                 }
             }
-        } catch (FileNotFoundException e) {
-            // Ignore - this is acceptable if there are no deployed applications
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            this.writing = true;
+        }
+    }
+
+    private void releaseWriting() {
+        synchronized (this.monitor) {
+            this.writing = false;
+            this.monitor.notifyAll();
         }
-        return redeployData.toString();
     }
 
     /**
-     * Write the given set of URIs to the redeploy dataset. To avoid corruption if a crash occurs, write to a redeploy
-     * compression file and then switch this for the redeploy dataset.
-     * 
-     * @param redeploySet the URIs to be written
+     * Opens the journal, reading its records into the recovery state and discarding any incomplete or corrupt records
+     * at its end.
      */
-    private void rewriteRedeploySet(Map<URI, DeploymentOptions> redeploySet) {
-        this.redeployCompressionDataset.delete();
-        Writer redeployDataWriter;
+    private FileChannel openJournal() throws IOException {
+        if (!this.journal.exists()) {
+            writeJournal(this.journal, this.recoveryState);
+            return openJournalForAppend();
+        }
+
+        FileChannel channel = new RandomAccessFile(this.journal.toFile(), "rw").getChannel();
+        boolean opened = false;
         try {
-            redeployDataWriter = new BufferedWriter(new FileWriter(this.redeployCompressionDataset.toFile()));
-            for (Entry<URI, DeploymentOptions> redeployEntry : redeploySet.entrySet()) {
-                recordUriCommand(redeployDataWriter, redeployEntry.getKey(), getCommandString(redeployEntry.getValue()));
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            channel.position(0);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+            }
+            buffer.flip();
+
+            if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC) {
+                logger.error("Recovery log '{}' is not in a recognised format and will be ignored", this.journal);
+                channel.truncate(0);
+                writeFully(channel, header());
+                channel.force(false);
+                opened = true;
+                return channel;
+            }
+
+            int validLength = readRecords(buffer);
+            if (validLength < channel.size()) {
+                logger.warn("Discarding {} bytes of incomplete or corrupt records from the end of recovery log '{}'", channel.size() - validLength,
+                    this.journal);
+                channel.truncate(validLength);
+                channel.force(false);
+            }
+            channel.position(validLength);
+            opened = true;
+            return channel;
+        } finally {
+            if (!opened) {
+                channel.close();
             }
-            redeployDataWriter.close();
-        } catch (IOException e) {
-            logger.warn("Problem while rewriting redeploy dataset", e);
-            // Return without replacing the redeploy dataset.
         }
-        // Now switch the files
-        this.redeployDataset.delete();
-        this.redeployCompressionDataset.moveTo(this.redeployDataset);
     }
 
-    /**
-     * Add the given location and deployment options to the recovery state.
-     * 
-     * @param location
-     * @param deploymentOptions
-     */
-    void add(URI location, DeploymentOptions deploymentOptions) {
-        recordUriCommand(location, getCommandString(deploymentOptions));
+    private FileChannel openJournalForAppend() throws IOException {
+        FileChannel channel = new RandomAccessFile(this.journal.toFile(), "rw").getChannel();
+        channel.position(channel.size());
+        return channel;
     }
 
     /**
-     * Return the command string for tagging the type of a log record based on the given deployment options.
-     * 
-     * @param deploymentOptions
-     * @return the command string
+     * Reads records from the given buffer into the recovery state, stopping at the first incomplete or corrupt record.
+     *
+     * @return the length of the valid prefix of the journal
      */
-    private String getCommandString(DeploymentOptions deploymentOptions) {
-        //boolean recoverable, boolean deployerOwned, boolean synchronous
-        StringBuilder command = new StringBuilder().append(toCommandOption(deploymentOptions.getRecoverable())).append(
-            toCommandOption(deploymentOptions.getDeployerOwned())).append(toCommandOption(deploymentOptions.getSynchronous()));
-        return command.toString();
+    private int readRecords(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        int validLength = buffer.position();
+        while (buffer.remaining() >= RECORD_PREFIX_LENGTH) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 2 || length > MAXIMUM_RECORD_LENGTH || length > buffer.remaining()) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            buffer.get(record);
+            crc.reset();
+            crc.update(record);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            try {
+                URI uri = new URI(new String(record, 2, length - 2, URI_ENCODING));
+                if (record[0] == ADD_RECORD) {
+                    this.recoveryState.put(uri, fromFlags(record[1]));
+                } else if (record[0] == REMOVE_RECORD) {
+                    this.recoveryState.remove(uri);
+                }
+            } catch (URISyntaxException e) {
+                logger.error("Invalid URI in record read from recovery log", e);
+                // skip and carry on
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+
+            this.recordCount++;
+            validLength = buffer.position();
+        }
+        return validLength;
     }
 
-    /**
-     * Remove the given location and associated deployment options from the recovery state.
-     * 
-     * @param location
-     */
-    void remove(URI location) {
-        recordUriCommand(location, UNDEPLOY_URI_COMMAND);
+    private static void writeJournal(PathReference journalFile, Map<URI, DeploymentOptions> state) throws IOException {
+        FileOutputStream out = new FileOutputStream(journalFile.toFile());
+        try {
+            FileChannel channel = out.getChannel();
+            writeFully(channel, header());
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            for (Entry<URI, DeploymentOptions> entry : state.entrySet()) {
+                byte[] record = createRecord(ADD_RECORD, toFlags(entry.getValue()), entry.getKey());
+                records.write(record, 0, record.length);
+            }
+            writeFully(channel, ByteBuffer.wrap(records.toByteArray()));
+            channel.force(true);
+        } finally {
+            out.close();
+        }
     }
 
-    private void recordUriCommand(URI uri, String command) {
-        Writer writer;
+    private static ByteBuffer header() {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC);
+        header.flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] createRecord(byte type, int flags, URI location) {
+        byte[] uri;
         try {
-            writer = new FileWriter(this.redeployDataset.toFile(), true);
-            recordUriCommand(writer, uri, command);
-            writer.close();
-        } catch (IOException e) {
-            throw new FatalDeploymentException("Failed to record (un)deployment", e);
+            uri = location.toString().getBytes(URI_ENCODING);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
         }
 
+        int length = 2 + uri.length;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_LENGTH + length);
+        record.putInt(length);
+        record.putInt(0);
+        record.put(type);
+        record.put((byte) flags);
+        record.put(uri);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_PREFIX_LENGTH, length);
+        record.putInt(4, (int) crc.getValue());
+        return record.array();
     }
 
-    private static void recordUriCommand(Writer writer, URI uri, String command) throws IOException {
-        writer.write(command);
-        writer.write(uri.toString());
-        writer.write(URI_SEPARATOR);
+    private static int toFlags(DeploymentOptions deploymentOptions) {
+        return (deploymentOptions.getRecoverable() ? RECOVERABLE : 0) | (deploymentOptions.getDeployerOwned() ? DEPLOYER_OWNED : 0)
+            | (deploymentOptions.getSynchronous() ? SYNCHRONOUS : 0);
     }
 
-    /**
-     * Converts boolean deployment option flag to a string representation for the logged command option
-     * 
-     * @param deploymentOption
-     * @return
-     */
-    private static char toCommandOption(boolean deploymentOption) {
-        return deploymentOption ? 'Y' : 'N';
+    private static DeploymentOptions fromFlags(int flags) {
+        return new DeploymentOptions((flags & RECOVERABLE) != 0, (flags & DEPLOYER_OWNED) != 0, (flags & SYNCHRONOUS) != 0);
     }
 
     /**
-     * Converts from a String command option to a boolean deployment option flag
-     * 
-     * @param commandOption
-     * @return
+     * Converts a redeploy dataset written in the text format used by previous versions into a journal.
      */
-    private static boolean fromCommandOption(char commandOption) {
-        return 'Y' == commandOption ? true : false;
+    private void convertLegacyRedeployDataset(PathReference recoveryArea) {
+        PathReference legacyDataset = recoveryArea.newChild(LEGACY_REDEPLOY_FILE_NAME);
+        PathReference legacyCompressionDataset = recoveryArea.newChild(LEGACY_REDEPLOY_COMPRESSION_FILE_NAME);
+        PathReference source = legacyDataset.exists() ? legacyDataset : legacyCompressionDataset;
+        if (!source.exists()) {
+            return;
+        }
+
+        Map<URI, DeploymentOptions> state = LegacyRedeployDatasetReader.read(source);
+        try {
+            writeJournal(this.compactionJournal, state);
+            this.compactionJournal.moveTo(this.journal);
+            legacyDataset.delete();
+            legacyCompressionDataset.delete();
+        } catch (IOException e) {
+            throw new FatalDeploymentException("Failed to convert redeploy dataset '" + source + "'", e);
+        }
     }
 
     /**
      * Get the last modified time of the deployer's recovery file. Any applications in the pickup directory with a later
      * last modified time will need to be redeployed.
-     * 
+     *
      * @return the last modified time of the deployer's recovery file
      */
     public long getRedeployFileLastModified() {
@@ -263,12 +547,88 @@ final class DeployerRecoveryLog {
 
     /**
      * Update the last modified time of the deployer's recovery file.
-     * 
+     *
      * @return <code>true</code> iff the operation succeeded
      */
     // TODO Make package private
     public boolean setRedeployFileLastModified() {
-        return this.redeployDataset.touch();
+        return this.journal.touch();
     }
 
+    /**
+     * The records appended by threads which are waiting for the same write.
+     */
+    private static final class Batch {
+
+        private final ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+        private int recordCount;
+
+        private boolean written;
+
+        private IOException failure;
+
+        void add(byte[] record) {
+            this.records.write(record, 0, record.length);
+            this.recordCount++;
+        }
+    }
+
+    /**
+     * Reads the <code>;</code> separated text format used by previous versions, in which each URI is preceded by a
+     * three character command of <code>Y</code> and <code>N</code> option flags or <code>---</code> for removal.
+     */
+    private static final class LegacyRedeployDatasetReader {
+
+        private static final int COMMAND_LENGTH = 3;
+
+        private static final String UNDEPLOY_URI_COMMAND = "---";
+
+        private static final String URI_SEPARATOR = ";";
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(LegacyRedeployDatasetReader.class);
+
+        static Map<URI, DeploymentOptions> read(PathReference dataset) {
+            Map<URI, DeploymentOptions> redeploySet = new LinkedHashMap<URI, DeploymentOptions>();
+            for (String uriCommandString : readData(dataset).split(URI_SEPARATOR)) {
+                if (uriCommandString.length() >= COMMAND_LENGTH) {
+                    String uriCommand = uriCommandString.substring(0, COMMAND_LENGTH);
+                    try {
+                        URI uri = new URI(uriCommandString.substring(COMMAND_LENGTH));
+                        if (UNDEPLOY_URI_COMMAND.equals(uriCommand)) {
+                            redeploySet.remove(uri);
+                        } else {
+                            redeploySet.put(uri, new DeploymentOptions(uriCommand.charAt(0) == 'Y', uriCommand.charAt(1) == 'Y',
+                                uriCommand.charAt(2) == 'Y'));
+                        }
+                    } catch (URISyntaxException e) {
+                        LOGGER.error("Invalid URI in command string '%s' read from redeploy dataset", e, uriCommandString);
+                        // skip and carry on
+                    }
+                }
+            }
+            return redeploySet;
+        }
+
+        private static String readData(PathReference dataset) {
+            StringBuilder data = new StringBuilder();
+            try {
+                Reader reader = new BufferedReader(new FileReader(dataset.toFile()));
+                try {
+                    char[] chars = new char[8192];
+                    int numRead;
+                    while (-1 != (numRead = reader.read(chars))) {
+                        data.append(chars, 0, numRead);
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (FileNotFoundException e) {
+                // Ignore - this is acceptable if there are no deployed applications
+            } catch (IOException e) {
+                LOGGER.error("Problem reading redeploy dataset", e);
+            }
+            return data.toString();
+        }
+    }
 }
@@ -29,7 +29,7 @@ import org.eclipse.virgo.medic.eventlog.EventLogger;
 
 /**
  * A <code>RecoveryAgent</code> is an {@link EventHandler} that waits for <code>systemartifacts/DEPLOYED</code> and, if
- * recovery is enabled, drives recovery on all redeploy entries in the recovery state.
+ * recovery is enabled, drives recovery on all redeploy entries in the recovery state as a single batch.
  * The recovery is run in another thread.
  * When complete (or if not enabled), fires the <code>recovery/COMPLETED</code> event.
  * <p />
@@ -64,16 +64,13 @@ final class RecoveryAgent implements EventHandler {
             Thread recoveryThread = new Thread(new Runnable() {
                 public void run() {
                 	try {	                    
-	                    for (Entry<URI, DeploymentOptions> redeployEntry : recoveryState.entrySet()) {
-	                        URI uri = redeployEntry.getKey();
-	                        DeploymentOptions deploymentOptions = redeployEntry.getValue();
-	                        try {
-	                            recoverer.recoverDeployment(uri, deploymentOptions);
-	                        } catch (DeploymentException e) {
-	                            eventLogger.log(DeployerLogEvents.RECOVERY_FAILED, e, uri);
-	                        } catch (FatalDeploymentException e) {
-	                            eventLogger.log(DeployerLogEvents.RECOVERY_FAILED, e, uri);
-	                        }
+	                    Map<URI, DeploymentException> failures = recoverer.recoverDeployments(recoveryState);
+	                    for (Entry<URI, DeploymentException> failure : failures.entrySet()) {
+	                        eventLogger.log(DeployerLogEvents.RECOVERY_FAILED, failure.getValue(), failure.getKey());
+	                    }
+	                } catch (FatalDeploymentException e) {
+	                    for (URI uri : recoveryState.keySet()) {
+	                        eventLogger.log(DeployerLogEvents.RECOVERY_FAILED, e, uri);
 	                    }
                 	} finally {
                 		recoveryComplete();
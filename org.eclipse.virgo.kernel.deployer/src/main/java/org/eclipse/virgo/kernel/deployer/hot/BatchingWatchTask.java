@@ -0,0 +1,328 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.hot;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.eclipse.virgo.util.io.FileSystemEvent;
+
+/**
+ * Task that monitors a given directory and notifies a {@link HotDeploymentFileSystemListener} of changes in batches.
+ * <p/>
+ * A change to an entry of the directory is not reported until the entry's size and last modified time have stopped
+ * changing for a quiet period, so that partially copied files are not acted on. Changes which settle together, such as
+ * a number of files copied into the directory at once, are reported in a single batch. A change that is still settling
+ * does not hold up other, settled changes indefinitely: once the oldest outstanding change has waited for
+ * {@value #MAXIMUM_DELAY_QUIET_PERIODS} quiet periods, whatever has settled is reported.
+ * <p/>
+ * Each scan examines only the entries of the directory itself. The contents of an entry which is a directory, such as
+ * an exploded archive, are examined only while a change to the entry is settling, so that a directory which is still
+ * being copied is not reported until its contents have stopped changing.
+ * <p/>
+ * Entries present when the task starts are reported, in the first batch, as {@link FileSystemEvent#INITIAL}.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Not threadsafe. A <code>BatchingWatchTask</code> is run by a single watcher thread.
+ *
+ */
+final class BatchingWatchTask implements Runnable {
+
+    private static final int MAXIMUM_DELAY_QUIET_PERIODS = 10;
+
+    private static final long MINIMUM_SCAN_INTERVAL_MILLIS = 100;
+
+    private static final long MAXIMUM_SCAN_INTERVAL_MILLIS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final File watchDir;
+
+    private final Pattern excludePattern;
+
+    private final HotDeploymentFileSystemListener listener;
+
+    private final long quietPeriodMillis;
+
+    private final long scanIntervalMillis;
+
+    private final Map<String, Signature> known = new HashMap<String, Signature>();
+
+    private final Map<String, PendingChange> pending = new LinkedHashMap<String, PendingChange>();
+
+    private boolean initialScanComplete = false;
+
+    BatchingWatchTask(File watchDir, String excludePattern, HotDeploymentFileSystemListener listener, long quietPeriodMillis) {
+        this.watchDir = watchDir;
+        this.excludePattern = Pattern.compile(excludePattern);
+        this.listener = listener;
+        this.quietPeriodMillis = quietPeriodMillis;
+        this.scanIntervalMillis = Math.max(MINIMUM_SCAN_INTERVAL_MILLIS, Math.min(MAXIMUM_SCAN_INTERVAL_MILLIS, quietPeriodMillis / 2));
+    }
+
+    /**
+     * Watches the configured directory for modifications.
+     */
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(this.scanIntervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            try {
+                scan(System.currentTimeMillis());
+            } catch (Exception e) {
+                logger.error("Error watching directory '{}'", e, this.watchDir.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Scans the directory once, reporting any batch of changes that is ready.
+     *
+     * @param now the current time in milliseconds
+     */
+    void scan(long now) {
+        Map<String, File> current = listEntries();
+
+        if (!this.initialScanComplete) {
+            this.initialScanComplete = true;
+            Map<String, FileSystemEvent> initialBatch = new LinkedHashMap<String, FileSystemEvent>();
+            for (Entry<String, File> entry : current.entrySet()) {
+                this.known.put(entry.getKey(), Signature.of(entry.getValue()));
+                initialBatch.put(entry.getKey(), FileSystemEvent.INITIAL);
+            }
+            deliver(initialBatch);
+            return;
+        }
+
+        recordChanges(current, now);
+
+        Map<String, FileSystemEvent> batch = removeSettledChanges(now);
+        deliver(batch);
+    }
+
+    private Map<String, File> listEntries() {
+        Map<String, File> entries = new LinkedHashMap<String, File>();
+        File[] files = this.watchDir.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (!this.excludePattern.matcher(file.getName()).matches()) {
+                    entries.put(file.getPath(), file);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void recordChanges(Map<String, File> current, long now) {
+        for (Entry<String, File> entry : current.entrySet()) {
+            String path = entry.getKey();
+            File file = entry.getValue();
+            Signature signature = Signature.of(file);
+            PendingChange pendingChange = this.pending.get(path);
+
+            if (pendingChange == null) {
+                if (!signature.equals(this.known.get(path))) {
+                    FileSystemEvent event = this.known.containsKey(path) ? FileSystemEvent.MODIFIED : FileSystemEvent.CREATED;
+                    this.pending.put(path, new PendingChange(event, signature, Signature.ofContents(file), now));
+                }
+            } else {
+                Signature contentsSignature = Signature.ofContents(file);
+                if (!signature.equals(pendingChange.signature) || !Signature.equal(contentsSignature, pendingChange.contentsSignature)) {
+                    FileSystemEvent event = this.known.containsKey(path) ? FileSystemEvent.MODIFIED : FileSystemEvent.CREATED;
+                    pendingChange.update(event, signature, contentsSignature, now);
+                }
+            }
+        }
+
+        for (String path : this.known.keySet()) {
+            if (!current.containsKey(path)) {
+                PendingChange pendingChange = this.pending.get(path);
+                if (pendingChange == null) {
+                    this.pending.put(path, new PendingChange(FileSystemEvent.DELETED, null, null, now));
+                } else if (pendingChange.event != FileSystemEvent.DELETED) {
+                    pendingChange.update(FileSystemEvent.DELETED, null, null, now);
+                }
+            }
+        }
+
+        Iterator<Entry<String, PendingChange>> iterator = this.pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            String path = iterator.next().getKey();
+            if (!this.known.containsKey(path) && !current.containsKey(path)) {
+                // Created and removed again before settling.
+                iterator.remove();
+            }
+        }
+    }
+
+    private Map<String, FileSystemEvent> removeSettledChanges(long now) {
+        Map<String, FileSystemEvent> batch = new LinkedHashMap<String, FileSystemEvent>();
+        if (this.pending.isEmpty()) {
+            return batch;
+        }
+
+        boolean allSettled = true;
+        boolean overdue = false;
+        for (PendingChange pendingChange : this.pending.values()) {
+            if (!pendingChange.isSettled(now, this.quietPeriodMillis)) {
+                allSettled = false;
+            }
+            if (now - pendingChange.firstChange >= MAXIMUM_DELAY_QUIET_PERIODS * this.quietPeriodMillis) {
+                overdue = true;
+            }
+        }
+
+        if (allSettled || overdue) {
+            Iterator<Entry<String, PendingChange>> iterator = this.pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry<String, PendingChange> entry = iterator.next();
+                PendingChange pendingChange = entry.getValue();
+                if (pendingChange.isSettled(now, this.quietPeriodMillis)) {
+                    String path = entry.getKey();
+                    batch.put(path, pendingChange.event);
+                    if (pendingChange.event == FileSystemEvent.DELETED) {
+                        this.known.remove(path);
+                    } else {
+                        this.known.put(path, pendingChange.signature);
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void deliver(Map<String, FileSystemEvent> batch) {
+        if (!batch.isEmpty()) {
+            logger.debug("Processing batch of {} changes in '{}'", batch.size(), this.watchDir.getAbsolutePath());
+            this.listener.onChanges(batch);
+        }
+    }
+
+    private static final class PendingChange {
+
+        private FileSystemEvent event;
+
+        private Signature signature; // null if the entry has been deleted
+
+        private Signature contentsSignature; // null unless the entry is a directory
+
+        private long lastChange;
+
+        private final long firstChange;
+
+        PendingChange(FileSystemEvent event, Signature signature, Signature contentsSignature, long now) {
+            this.event = event;
+            this.signature = signature;
+            this.contentsSignature = contentsSignature;
+            this.lastChange = now;
+            this.firstChange = now;
+        }
+
+        void update(FileSystemEvent event, Signature signature, Signature contentsSignature, long now) {
+            this.event = event;
+            this.signature = signature;
+            this.contentsSignature = contentsSignature;
+            this.lastChange = now;
+        }
+
+        boolean isSettled(long now, long quietPeriodMillis) {
+            return now - this.lastChange >= quietPeriodMillis;
+        }
+    }
+
+    /**
+     * The size and last modified time of an entry or, for the contents of a directory, the total size, latest
+     * modification time and number of the files it contains.
+     */
+    private static final class Signature {
+
+        private final long length;
+
+        private final long lastModified;
+
+        private final int fileCount;
+
+        private Signature(long length, long lastModified, int fileCount) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.fileCount = fileCount;
+        }
+
+        /**
+         * Returns the signature of the given entry itself, which does not examine the contents of a directory.
+         */
+        static Signature of(File file) {
+            return new Signature(file.length(), file.lastModified(), 1);
+        }
+
+        /**
+         * Returns the signature of the contents of the given directory, which walks the directory, or
+         * <code>null</code> if the given file is not a directory.
+         */
+        static Signature ofContents(File file) {
+            File[] children = file.listFiles();
+            if (children == null) {
+                return null;
+            }
+            long length = 0;
+            long lastModified = file.lastModified();
+            int fileCount = 0;
+            for (File child : children) {
+                Signature childSignature = child.isDirectory() ? ofContents(child) : of(child);
+                if (childSignature != null) {
+                    length += childSignature.length;
+                    lastModified = Math.max(lastModified, childSignature.lastModified);
+                    fileCount += childSignature.fileCount;
+                }
+            }
+            return new Signature(length, lastModified, fileCount);
+        }
+
+        static boolean equal(Signature signature1, Signature signature2) {
+            return signature1 == null ? signature2 == null : signature1.equals(signature2);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (this.length ^ this.lastModified) + this.fileCount;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Signature)) {
+                return false;
+            }
+            Signature other = (Signature) obj;
+            return this.length == other.length && this.lastModified == other.lastModified && this.fileCount == other.fileCount;
+        }
+    }
+}
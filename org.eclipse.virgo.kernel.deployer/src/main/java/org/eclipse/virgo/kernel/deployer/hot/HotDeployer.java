@@ -39,6 +39,8 @@ public final class HotDeployer implements EventHandler {
 
     private static final String EXCLUDE_PATTERN = "\\.DS_Store";
 
+    private static final long DEFAULT_QUIET_PERIOD_MILLIS = 1000;
+
     private static final String TOPIC_RECOVERY_COMPLETED = "org/eclipse/virgo/kernel/deployer/recovery/COMPLETED";
 
     private Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -50,7 +52,7 @@ public final class HotDeployer implements EventHandler {
     private final Thread thread;
 
     /**
-     * Creates a new <code>HotDeployer</code>.
+     * Creates a new <code>HotDeployer</code> which polls the pickup directory with a {@link FileSystemChecker}.
      * 
      * @param deployerConfiguration the {@link DeployerConfiguration} parameters.
      * @param deployer the {@link ApplicationDeployer} to deploy to.
@@ -58,15 +60,36 @@ public final class HotDeployer implements EventHandler {
      */
     public HotDeployer(@NonNull DeployerConfiguration deployerConfiguration, @NonNull ApplicationDeployer deployer,
          EventLogger eventLogger) {
+        this(deployerConfiguration, deployer, eventLogger, false, DEFAULT_QUIET_PERIOD_MILLIS);
+    }
+
+    /**
+     * Creates a new <code>HotDeployer</code>.
+     * 
+     * @param deployerConfiguration the {@link DeployerConfiguration} parameters.
+     * @param deployer the {@link ApplicationDeployer} to deploy to.
+     * @param eventLogger where to log events
+     * @param batching <code>true</code> to report changes in batches once they have settled, <code>false</code> to poll
+     *        with a {@link FileSystemChecker} and report each change as it is seen
+     * @param quietPeriodMillis the time for which a changed file must remain unchanged before a batching hot deployer
+     *        acts on it
+     */
+    public HotDeployer(@NonNull DeployerConfiguration deployerConfiguration, @NonNull ApplicationDeployer deployer,
+         EventLogger eventLogger, boolean batching, long quietPeriodMillis) {
         this.pickupDir = createHotDeployDir(deployerConfiguration.getDeploymentPickupDirectory());
-        FileSystemChecker checker = createFileSystemChecker(deployer, eventLogger);
-        this.thread = new Thread(new WatchTask(checker, this.pickupDir), "fs-watcher");
+        HotDeploymentFileSystemListener listener = new HotDeploymentFileSystemListener(deployer, eventLogger);
+        Runnable watchTask;
+        if (batching) {
+            watchTask = new BatchingWatchTask(this.pickupDir, EXCLUDE_PATTERN, listener, quietPeriodMillis);
+        } else {
+            watchTask = new WatchTask(createFileSystemChecker(listener), this.pickupDir);
+        }
+        this.thread = new Thread(watchTask, "fs-watcher");
     }
 
-	private FileSystemChecker createFileSystemChecker(
-			ApplicationDeployer deployer, EventLogger eventLogger) {
+	private FileSystemChecker createFileSystemChecker(HotDeploymentFileSystemListener listener) {
 		FileSystemChecker checker = new FileSystemChecker(this.pickupDir, EXCLUDE_PATTERN, this.logger);
-        checker.addListener(new HotDeploymentFileSystemListener(deployer, eventLogger));
+        checker.addListener(listener);
 		return checker;
 	}
 
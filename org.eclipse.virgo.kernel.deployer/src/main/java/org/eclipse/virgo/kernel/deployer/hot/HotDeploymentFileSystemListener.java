@@ -14,12 +14,17 @@ package org.eclipse.virgo.kernel.deployer.hot;
 import java.io.File;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer;
+import org.eclipse.virgo.kernel.deployer.core.BatchDeploymentException;
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.deployer.core.DeploymentIdentity;
 import org.eclipse.virgo.kernel.deployer.core.FatalDeploymentException;
@@ -92,6 +97,67 @@ final class HotDeploymentFileSystemListener implements FileSystemListener {
         }
     }
 
+    /**
+     * Reacts to a batch of changes in the pickup directory. Deletions are processed first so that an artifact which
+     * has been replaced by a file of a different name is undeployed before its replacement is deployed. The remaining
+     * artifacts are then passed to the {@link ApplicationDeployer} as a single batch.
+     * 
+     * @param changes the changes, in the order they were detected, keyed by path
+     */
+    void onChanges(Map<String, FileSystemEvent> changes) {
+        for (Entry<String, FileSystemEvent> change : changes.entrySet()) {
+            if (change.getValue() == FileSystemEvent.DELETED) {
+                onChange(change.getKey(), change.getValue());
+            }
+        }
+
+        Map<URI, String> batch = new LinkedHashMap<URI, String>();
+        for (Entry<String, FileSystemEvent> change : changes.entrySet()) {
+            String path = change.getKey();
+            FileSystemEvent event = change.getValue();
+            if (event != FileSystemEvent.DELETED) {
+                String fileName = new PathReference(path).getName();
+                this.eventLogger.log(HotDeployerLogEvents.HOT_DEPLOY_PROCESSING_FILE, event, fileName);
+                try {
+                    if (event == FileSystemEvent.INITIAL && isDeployed(path)) {
+                        this.eventLogger.log(HotDeployerLogEvents.HOT_DEPLOY_SKIPPED, fileName);
+                    } else {
+                        logger.info("Batch deploying path '{}'.", path);
+                        batch.put(getDefinitiveUri(path), path);
+                    }
+                } catch (Exception ex) {
+                    determineFailureAndLogMessage(event, fileName, ex);
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            deploy(batch, changes);
+        }
+    }
+
+    /**
+     * Deploys the given batch of applications asynchronously, logging the failure of each application that fails to
+     * deploy.
+     * 
+     * @param batch the source artefact path of each application keyed by its URI
+     * @param changes the changes which gave rise to the batch keyed by path
+     */
+    private void deploy(Map<URI, String> batch, Map<String, FileSystemEvent> changes) {
+        try {
+            this.deployer.deploy(new ArrayList<URI>(batch.keySet()), new DeploymentOptions(true, true, false));
+        } catch (BatchDeploymentException bde) {
+            for (Entry<URI, DeploymentException> failure : bde.getFailures().entrySet()) {
+                String path = batch.get(failure.getKey());
+                determineFailureAndLogMessage(changes.get(path), new PathReference(path).getName(), failure.getValue());
+            }
+        } catch (Exception ex) {
+            for (String path : batch.values()) {
+                determineFailureAndLogMessage(changes.get(path), new PathReference(path).getName(), ex);
+            }
+        }
+    }
+
     /**
      * Determines the {@link LogEvent} that corresponds the {@link FileSystemEvent}.
      */
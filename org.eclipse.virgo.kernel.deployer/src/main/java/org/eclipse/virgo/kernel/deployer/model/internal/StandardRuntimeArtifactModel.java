@@ -32,10 +32,13 @@ import org.eclipse.virgo.kernel.serviceability.NonNull;
 /**
  * {@link StandardRuntimeArtifactModel} is the default {@link RuntimeArtifactModel} implementation.
  * <p />
+ * The model is held in an immutable {@link ModelState} which is replaced, under a lock, whenever an artifact is added or
+ * deleted. Queries read the current state without locking and so are not delayed by concurrent updates.
+ * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
- * This class is thread safe.
+ * This class is thread safe. Queries are lock free.
  * 
  */
 final class StandardRuntimeArtifactModel implements RuntimeArtifactModel {
@@ -46,11 +49,7 @@ final class StandardRuntimeArtifactModel implements RuntimeArtifactModel {
 
     private final Object monitor = new Object();
 
-    private final Map<URI, InstallArtifact> artifactByUri = new HashMap<URI, InstallArtifact>();
-
-    private final Map<DeploymentIdentity, URI> uriByIdentity = new HashMap<DeploymentIdentity, URI>();
-
-    private final Map<String, URI> uriByFileName = new HashMap<String, URI>();
+    private volatile ModelState state = new ModelState();
     
     private final DeployUriNormaliser uriNormaliser;
         
@@ -65,40 +64,43 @@ final class StandardRuntimeArtifactModel implements RuntimeArtifactModel {
         DuplicateLocationException, DuplicateDeploymentIdentityException, DeploymentException {
         synchronized (this.monitor) {
 
+            ModelState currentState = this.state;
+
             // Check the precondition and throw an exception if it is violated.
-            checkLocation(location, installArtifact);
+            checkLocation(currentState, location, installArtifact);
 
             String fileName = getFileName(location);
-            checkFileName(location, installArtifact, fileName);
+            checkFileName(currentState, location, installArtifact, fileName);
 
             DeploymentIdentity deploymentIdentity = getDeploymentIdentity(installArtifact);
-            checkDeploymentIdentity(location, installArtifact, deploymentIdentity);
+            checkDeploymentIdentity(currentState, location, installArtifact, deploymentIdentity);
 
             // The precondition is true, so update the state. The invariants are preserved.
-            updateState(location, installArtifact, fileName, deploymentIdentity);
+            this.state = currentState.add(location, installArtifact, fileName, deploymentIdentity);
 
             return deploymentIdentity;
         }
     }
 
-    private void checkLocation(URI location, InstallArtifact installArtifact) throws DuplicateLocationException {
-        if (this.artifactByUri.containsKey(location)) {
-            InstallArtifact clashingArtifact = this.artifactByUri.get(location);
+    private void checkLocation(ModelState currentState, URI location, InstallArtifact installArtifact) throws DuplicateLocationException {
+        if (currentState.artifactByUri.containsKey(location)) {
+            InstallArtifact clashingArtifact = currentState.artifactByUri.get(location);
             throw new DuplicateLocationException(getClashMessage(location, installArtifact, clashingArtifact));
         }
     }
 
-    private void checkFileName(URI location, InstallArtifact installArtifact, String fileName) throws DuplicateFileNameException {
-        if (this.uriByFileName.containsKey(fileName)) {
-            InstallArtifact clashingArtifact = this.artifactByUri.get(this.uriByFileName.get(fileName));
+    private void checkFileName(ModelState currentState, URI location, InstallArtifact installArtifact, String fileName)
+        throws DuplicateFileNameException {
+        if (currentState.uriByFileName.containsKey(fileName)) {
+            InstallArtifact clashingArtifact = currentState.artifactByUri.get(currentState.uriByFileName.get(fileName));
             throw new DuplicateFileNameException(getClashMessage(location, installArtifact, clashingArtifact));
         }
     }
 
-    private void checkDeploymentIdentity(URI location, InstallArtifact installArtifact, DeploymentIdentity deploymentIdentity)
-        throws DuplicateDeploymentIdentityException {
-        if (this.uriByIdentity.containsKey(deploymentIdentity)) {
-            InstallArtifact clashingArtifact = this.artifactByUri.get(this.uriByIdentity.get(deploymentIdentity));
+    private void checkDeploymentIdentity(ModelState currentState, URI location, InstallArtifact installArtifact,
+        DeploymentIdentity deploymentIdentity) throws DuplicateDeploymentIdentityException {
+        if (currentState.uriByIdentity.containsKey(deploymentIdentity)) {
+            InstallArtifact clashingArtifact = currentState.artifactByUri.get(currentState.uriByIdentity.get(deploymentIdentity));
             throw new DuplicateDeploymentIdentityException(getClashMessage(location, installArtifact, clashingArtifact));
         }
     }
@@ -125,38 +127,31 @@ final class StandardRuntimeArtifactModel implements RuntimeArtifactModel {
      * {@inheritDoc}
      */
     public InstallArtifact get(@NonNull DeploymentIdentity deploymentIdentity) {
-        synchronized (this.monitor) {
-            URI location = this.uriByIdentity.get(deploymentIdentity);
-            return location == null ? null : this.artifactByUri.get(location);
-        }
+        ModelState currentState = this.state;
+        URI location = currentState.uriByIdentity.get(deploymentIdentity);
+        return location == null ? null : currentState.artifactByUri.get(location);
     }
 
     /**
      * {@inheritDoc}
      */
     public InstallArtifact get(@NonNull URI location) {
-        synchronized (this.monitor) {
-            return this.artifactByUri.get(location);
-        }
+        return this.state.artifactByUri.get(location);
     }
 
     /**
      * {@inheritDoc}
      */
     public URI getLocation(DeploymentIdentity deploymentIdentity) {
-        synchronized (this.monitor) {
-            return this.uriByIdentity.get(deploymentIdentity);
-        }
+        return this.state.uriByIdentity.get(deploymentIdentity);
     }
 
     /**
      * {@inheritDoc}
      */
     public DeploymentIdentity[] getDeploymentIdentities() {
-        synchronized (this.monitor) {
-            Set<DeploymentIdentity> deploymentIdentities = this.uriByIdentity.keySet();
-            return deploymentIdentities.toArray(new DeploymentIdentity[deploymentIdentities.size()]);
-        }
+        Set<DeploymentIdentity> deploymentIdentities = this.state.uriByIdentity.keySet();
+        return deploymentIdentities.toArray(new DeploymentIdentity[deploymentIdentities.size()]);
     }
 
     /**
@@ -164,36 +159,67 @@ final class StandardRuntimeArtifactModel implements RuntimeArtifactModel {
      */
     public InstallArtifact delete(DeploymentIdentity deploymentIdentity) throws DeploymentException {
         synchronized (this.monitor) {
-            URI location = this.uriByIdentity.get(deploymentIdentity);
+            ModelState currentState = this.state;
+            URI location = currentState.uriByIdentity.get(deploymentIdentity);
 
             if (location == null) {
                 return null;
             }
 
-            InstallArtifact installArtifact = this.artifactByUri.get(location);
+            InstallArtifact installArtifact = currentState.artifactByUri.get(location);
             Assert.notNull(installArtifact,
                 "Broken invariant: artifactByUri is missing an entry for URI '%s' but this URI is present in uriByIdentity for '%s'", location,
                 deploymentIdentity);
             String fileName = getFileName(location);
 
-            Assert.isTrue(this.uriByFileName.containsKey(fileName),
+            Assert.isTrue(currentState.uriByFileName.containsKey(fileName),
                 "Broken invariant: uriByFileName is missing an entry for file name '%s' but URI '%s' is present in uriByIdentity for '%s'", fileName,
                 location, deploymentIdentity);
-            removeState(deploymentIdentity, location, fileName);
+            this.state = currentState.remove(deploymentIdentity, location, fileName);
             return installArtifact;
         }
     }
 
-    private void updateState(URI location, InstallArtifact installArtifact, String fileName, DeploymentIdentity deploymentIdentity) {
-        this.artifactByUri.put(location, installArtifact);
-        this.uriByIdentity.put(deploymentIdentity, location);
-        this.uriByFileName.put(fileName, location);
-    }
+    /**
+     * An immutable snapshot of the model. The maps of a published snapshot are never modified.
+     */
+    private static final class ModelState {
 
-    private void removeState(DeploymentIdentity deploymentIdentity, URI location, String fileName) {
-        this.artifactByUri.remove(location);
-        this.uriByIdentity.remove(deploymentIdentity);
-        this.uriByFileName.remove(fileName);
-    }
+        private final Map<URI, InstallArtifact> artifactByUri;
+
+        private final Map<DeploymentIdentity, URI> uriByIdentity;
+
+        private final Map<String, URI> uriByFileName;
+
+        ModelState() {
+            this(new HashMap<URI, InstallArtifact>(), new HashMap<DeploymentIdentity, URI>(), new HashMap<String, URI>());
+        }
+
+        private ModelState(Map<URI, InstallArtifact> artifactByUri, Map<DeploymentIdentity, URI> uriByIdentity, Map<String, URI> uriByFileName) {
+            this.artifactByUri = artifactByUri;
+            this.uriByIdentity = uriByIdentity;
+            this.uriByFileName = uriByFileName;
+        }
+
+        ModelState add(URI location, InstallArtifact installArtifact, String fileName, DeploymentIdentity deploymentIdentity) {
+            ModelState newState = copy();
+            newState.artifactByUri.put(location, installArtifact);
+            newState.uriByIdentity.put(deploymentIdentity, location);
+            newState.uriByFileName.put(fileName, location);
+            return newState;
+        }
 
+        ModelState remove(DeploymentIdentity deploymentIdentity, URI location, String fileName) {
+            ModelState newState = copy();
+            newState.artifactByUri.remove(location);
+            newState.uriByIdentity.remove(deploymentIdentity);
+            newState.uriByFileName.remove(fileName);
+            return newState;
+        }
+
+        private ModelState copy() {
+            return new ModelState(new HashMap<URI, InstallArtifact>(this.artifactByUri), new HashMap<DeploymentIdentity, URI>(this.uriByIdentity),
+                new HashMap<String, URI>(this.uriByFileName));
+        }
+    }
 }
@@ -11,22 +11,17 @@
 
 package org.eclipse.virgo.kernel.install.artifact.internal;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactState;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifactLifecycleListener;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact.State;
-import org.osgi.framework.BundleContext;
-
-import org.eclipse.virgo.kernel.osgi.framework.OsgiFrameworkUtils;
-import org.eclipse.virgo.kernel.osgi.framework.OsgiServiceHolder;
+import org.eclipse.virgo.kernel.install.artifact.internal.InstallArtifactLifecycleListenerTracker.Transition;
 
 /**
  * {@link ArtifactStateMonitor} logs {@link InstallArtifact} state changes and notifies
- * {@link InstallArtifactLifecycleListener InstallArtifactLifecycleListeners}.
+ * {@link InstallArtifactLifecycleListener InstallArtifactLifecycleListeners}. The listeners are obtained from a shared
+ * {@link InstallArtifactLifecycleListenerTracker} rather than being looked up for each state change.
  * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
@@ -36,17 +31,17 @@ import org.eclipse.virgo.kernel.osgi.framework.OsgiServiceHolder;
  */
 public class ArtifactStateMonitor {
 
-    private final BundleContext bundleContext;
+    private final InstallArtifactLifecycleListenerTracker listenerTracker;
    
     private final ArtifactState artifactState;
 
-    private ArtifactStateMonitor(BundleContext bundleContext, ArtifactState artifactState) {
-        this.bundleContext = bundleContext;
+    private ArtifactStateMonitor(InstallArtifactLifecycleListenerTracker listenerTracker, ArtifactState artifactState) {
+        this.listenerTracker = listenerTracker;
         this.artifactState = artifactState;
     }
     
-    public ArtifactStateMonitor(BundleContext bundleContext) {
-        this(bundleContext, new ArtifactState());
+    public ArtifactStateMonitor(InstallArtifactLifecycleListenerTracker listenerTracker) {
+        this(listenerTracker, new ArtifactState());
     }
 
     /**
@@ -95,78 +90,78 @@ public class ArtifactStateMonitor {
 
     public void onInstalling(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setInstalling()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onInstalling(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.INSTALLING, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onInstallFailed(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setInitial()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onInstallFailed(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.INSTALL_FAILED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onInstalled(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setInstalled()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onInstalled(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.INSTALLED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onResolving(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setResolving()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onResolving(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.RESOLVING, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onResolveFailed(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setInstalled()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onResolveFailed(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.RESOLVE_FAILED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onResolved(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setResolved()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onResolved(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.RESOLVED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
@@ -174,151 +169,130 @@ public class ArtifactStateMonitor {
     public boolean onStarting(InstallArtifact installArtifact) throws DeploymentException {
         boolean stateChanged = this.artifactState.setStarting();
         if (stateChanged) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onStarting(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.STARTING, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
         return stateChanged;
     }
 
     public void onStartFailed(InstallArtifact installArtifact, Throwable cause) throws DeploymentException {
-        List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-        try {
-            for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+        for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+            long startNanos = System.nanoTime();
+            try {
                 listener.onStartFailed(installArtifact, cause);
+            } finally {
+                this.listenerTracker.recordNotification(listener, Transition.START_FAILED, startNanos);
             }
-        } finally {
-            ungetListeners(listenerHolders);
         }
     }
 
     public void onStarted(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setActive()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onStarted(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.STARTED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onStopping(InstallArtifact installArtifact) {
         if (this.artifactState.setStopping()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onStopping(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.STOPPING, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onStopFailed(InstallArtifact installArtifact, Throwable cause) throws DeploymentException {
         if (this.artifactState.setActive()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onStopFailed(installArtifact, cause);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.STOP_FAILED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onStopped(InstallArtifact installArtifact) {
         if (this.artifactState.setResolved()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onStopped(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.STOPPED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onUnresolved(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setInstalled()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onUnresolved(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.UNRESOLVED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
     
     public void onUninstalling(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setUninstalling()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onUninstalling(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.UNINSTALLING, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onUninstallFailed(InstallArtifact installArtifact, Throwable cause) throws DeploymentException {
         if (this.artifactState.setResolved()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onUninstallFailed(installArtifact, cause);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.UNINSTALL_FAILED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
 
     public void onUninstalled(InstallArtifact installArtifact) throws DeploymentException {
         if (this.artifactState.setUninstalled()) {
-            List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders = getListenerHolders();
-            try {
-                for (InstallArtifactLifecycleListener listener : getListeners(listenerHolders)) {
+            for (InstallArtifactLifecycleListener listener : this.listenerTracker.getListenersInOrder()) {
+                long startNanos = System.nanoTime();
+                try {
                     listener.onUninstalled(installArtifact);
+                } finally {
+                    this.listenerTracker.recordNotification(listener, Transition.UNINSTALLED, startNanos);
                 }
-            } finally {
-                ungetListeners(listenerHolders);
             }
         }
     }
-
-    private List<OsgiServiceHolder<InstallArtifactLifecycleListener>> getListenerHolders() {
-        return OsgiFrameworkUtils.getServices(this.bundleContext, InstallArtifactLifecycleListener.class);
-    }
-
-    private List<InstallArtifactLifecycleListener> getListeners(List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders) {
-        List<InstallArtifactLifecycleListener> listeners;
-        listeners = new ArrayList<InstallArtifactLifecycleListener>(listenerHolders.size());
-
-        for (OsgiServiceHolder<InstallArtifactLifecycleListener> listenerHolder : listenerHolders) {
-            listeners.add(listenerHolder.getService());
-        }
-        return listeners;
-    }
-
-    private void ungetListeners(List<OsgiServiceHolder<InstallArtifactLifecycleListener>> listenerHolders) {
-        for (OsgiServiceHolder<InstallArtifactLifecycleListener> listenerHolder : listenerHolders) {
-            this.bundleContext.ungetService(listenerHolder.getServiceReference());
-        }
-    }
-
 }
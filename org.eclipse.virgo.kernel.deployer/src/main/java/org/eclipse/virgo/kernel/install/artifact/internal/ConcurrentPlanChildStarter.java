@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.install.artifact.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.eclipse.virgo.kernel.core.Signal;
+import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
+import org.eclipse.virgo.kernel.deployer.core.internal.SignalJunction;
+import org.eclipse.virgo.kernel.install.artifact.BundleInstallArtifact;
+import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiExportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiRequiredBundle;
+import org.eclipse.virgo.kernel.serviceability.NonNull;
+import org.eclipse.virgo.util.common.Tree;
+import org.eclipse.virgo.util.common.Tree.TreeVisitor;
+
+/**
+ * {@link ConcurrentPlanChildStarter} starts the children of a plan concurrently using a bounded
+ * {@link ExecutorService}.
+ * <p />
+ * A child is not started until each of its prerequisites has been started. A child's prerequisites are the siblings
+ * containing bundles that, according to the quasi resolution of the plan, export packages to or are required by the
+ * bundles in the child. Children which contain no bundles, such as configuration artifacts, are started only after all
+ * preceding siblings have been started and before any following siblings are started. Dependencies which would form a
+ * cycle are ignored in favour of the order of the children in the plan.
+ * <p />
+ * {@link #start} returns once every child's start method has returned, so a synchronous start failure is thrown to the
+ * caller just as it would be if the children were started one after another. Asynchronous completion is driven through
+ * the given {@link SignalJunction} as usual.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+final class ConcurrentPlanChildStarter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrentPlanChildStarter.class);
+
+    private static final ThreadLocal<Boolean> STARTING_CHILD = new ThreadLocal<Boolean>();
+
+    private final ExecutorService executorService;
+
+    ConcurrentPlanChildStarter(@NonNull ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Starts the given children, driving the given signals, and returns once each child's start method has returned.
+     *
+     * @param children the children of the plan
+     * @param signals the signals to drive, one per child
+     * @param signalJunction the <code>SignalJunction</code> that the signals belong to
+     * @throws DeploymentException if a child fails to start synchronously
+     */
+    void start(List<Tree<InstallArtifact>> children, List<Signal> signals, SignalJunction signalJunction) throws DeploymentException {
+        int numChildren = children.size();
+
+        if (Boolean.TRUE.equals(STARTING_CHILD.get())) {
+            // A nested plan being started by one of our threads. Waiting here for more of our threads could exhaust the pool.
+            startSequentially(children, signals, signalJunction);
+            return;
+        }
+
+        List<Set<Integer>> prerequisites = determinePrerequisites(children);
+
+        StartState startState = new StartState(children, signals, signalJunction, prerequisites);
+        for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+            if (prerequisites.get(childIndex).isEmpty()) {
+                submit(startState, childIndex);
+            }
+        }
+
+        startState.awaitStarted();
+    }
+
+    private static void startSequentially(List<Tree<InstallArtifact>> children, List<Signal> signals, SignalJunction signalJunction)
+        throws DeploymentException {
+        for (int childIndex = 0; childIndex < children.size() && !signalJunction.failed(); childIndex++) {
+            children.get(childIndex).getValue().start(signals.get(childIndex));
+        }
+    }
+
+    private void submit(StartState startState, int childIndex) {
+        ChildStartingRunnable runnable = new ChildStartingRunnable(startState, childIndex);
+        try {
+            this.executorService.execute(runnable);
+        } catch (RejectedExecutionException ree) {
+            LOGGER.debug("Start of child {} rejected by executor. Starting it on the current thread", Integer.valueOf(childIndex));
+            runnable.run();
+        }
+    }
+
+    /**
+     * Determines the prerequisites of each child, as indices of its siblings.
+     *
+     * @param children the children of the plan
+     * @return a list holding the set of prerequisite indices for each child
+     */
+    static List<Set<Integer>> determinePrerequisites(List<Tree<InstallArtifact>> children) {
+        int numChildren = children.size();
+
+        Map<Long, Integer> owningChildByBundleId = new HashMap<Long, Integer>();
+        List<List<QuasiBundle>> childBundles = new ArrayList<List<QuasiBundle>>(numChildren);
+        List<Set<Integer>> prerequisites = new ArrayList<Set<Integer>>(numChildren);
+
+        for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+            List<QuasiBundle> quasiBundles = collectQuasiBundles(children.get(childIndex));
+            childBundles.add(quasiBundles);
+            prerequisites.add(new HashSet<Integer>());
+            for (QuasiBundle quasiBundle : quasiBundles) {
+                owningChildByBundleId.put(Long.valueOf(quasiBundle.getBundleId()), Integer.valueOf(childIndex));
+            }
+        }
+
+        int lastBarrier = -1;
+        for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+            List<QuasiBundle> quasiBundles = childBundles.get(childIndex);
+            if (quasiBundles.isEmpty()) {
+                for (int preceding = lastBarrier + 1; preceding < childIndex; preceding++) {
+                    prerequisites.get(childIndex).add(Integer.valueOf(preceding));
+                }
+                if (lastBarrier >= 0) {
+                    prerequisites.get(childIndex).add(Integer.valueOf(lastBarrier));
+                }
+                lastBarrier = childIndex;
+            } else {
+                if (lastBarrier >= 0) {
+                    prerequisites.get(childIndex).add(Integer.valueOf(lastBarrier));
+                }
+                for (Long providerId : getProviderBundleIds(quasiBundles)) {
+                    Integer provider = owningChildByBundleId.get(providerId);
+                    if (provider != null && provider.intValue() != childIndex && !dependsOn(prerequisites, provider.intValue(), childIndex)) {
+                        prerequisites.get(childIndex).add(provider);
+                    }
+                }
+            }
+        }
+
+        return prerequisites;
+    }
+
+    private static List<QuasiBundle> collectQuasiBundles(Tree<InstallArtifact> child) {
+        final List<QuasiBundle> quasiBundles = new ArrayList<QuasiBundle>();
+        child.visit(new TreeVisitor<InstallArtifact>() {
+
+            public boolean visit(Tree<InstallArtifact> tree) {
+                InstallArtifact artifact = tree.getValue();
+                if (artifact instanceof BundleInstallArtifact) {
+                    QuasiBundle quasiBundle = ((BundleInstallArtifact) artifact).getQuasiBundle();
+                    if (quasiBundle != null) {
+                        quasiBundles.add(quasiBundle);
+                    }
+                }
+                return true;
+            }
+        });
+        return quasiBundles;
+    }
+
+    private static Set<Long> getProviderBundleIds(List<QuasiBundle> quasiBundles) {
+        Set<Long> providerIds = new HashSet<Long>();
+        for (QuasiBundle quasiBundle : quasiBundles) {
+            for (QuasiImportPackage importPackage : quasiBundle.getImportPackages()) {
+                QuasiExportPackage provider = importPackage.getProvider();
+                if (provider != null) {
+                    providerIds.add(Long.valueOf(provider.getExportingBundle().getBundleId()));
+                }
+            }
+            for (QuasiRequiredBundle requiredBundle : quasiBundle.getRequiredBundles()) {
+                QuasiBundle provider = requiredBundle.getProvider();
+                if (provider != null) {
+                    providerIds.add(Long.valueOf(provider.getBundleId()));
+                }
+            }
+        }
+        return providerIds;
+    }
+
+    private static boolean dependsOn(List<Set<Integer>> prerequisites, int from, int to) {
+        Set<Integer> visited = new HashSet<Integer>();
+        List<Integer> pending = new ArrayList<Integer>();
+        pending.add(Integer.valueOf(from));
+        while (!pending.isEmpty()) {
+            Integer current = pending.remove(pending.size() - 1);
+            if (current.intValue() == to) {
+                return true;
+            }
+            if (visited.add(current)) {
+                pending.addAll(prerequisites.get(current.intValue()));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The state of a single concurrent start of a plan's children.
+     */
+    private final class StartState {
+
+        private final List<Tree<InstallArtifact>> children;
+
+        private final List<Signal> signals;
+
+        private final SignalJunction signalJunction;
+
+        private final List<List<Integer>> dependents;
+
+        private final AtomicInteger[] outstandingPrerequisites;
+
+        private final CountDownLatch started;
+
+        private final AtomicReference<Throwable> firstFailure = new AtomicReference<Throwable>();
+
+        StartState(List<Tree<InstallArtifact>> children, List<Signal> signals, SignalJunction signalJunction, List<Set<Integer>> prerequisites) {
+            int numChildren = children.size();
+            this.children = children;
+            this.signals = signals;
+            this.signalJunction = signalJunction;
+            this.started = new CountDownLatch(numChildren);
+            this.outstandingPrerequisites = new AtomicInteger[numChildren];
+            this.dependents = new ArrayList<List<Integer>>(numChildren);
+
+            for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+                this.dependents.add(new ArrayList<Integer>());
+                this.outstandingPrerequisites[childIndex] = new AtomicInteger(prerequisites.get(childIndex).size());
+            }
+            for (int childIndex = 0; childIndex < numChildren; childIndex++) {
+                for (Integer prerequisite : prerequisites.get(childIndex)) {
+                    this.dependents.get(prerequisite.intValue()).add(Integer.valueOf(childIndex));
+                }
+            }
+        }
+
+        void startChild(int childIndex) {
+            try {
+                if (this.firstFailure.get() == null && !this.signalJunction.failed()) {
+                    InstallArtifact childArtifact = this.children.get(childIndex).getValue();
+                    Signal signal = this.signals.get(childIndex);
+
+                    LOGGER.debug("Starting {} with signal {} from {}", new Object[] { childArtifact, signal, this.signalJunction });
+
+                    STARTING_CHILD.set(Boolean.TRUE);
+                    try {
+                        childArtifact.start(signal);
+                    } finally {
+                        STARTING_CHILD.remove();
+                    }
+                }
+            } catch (Throwable t) {
+                this.firstFailure.compareAndSet(null, t);
+            } finally {
+                this.started.countDown();
+                for (Integer dependent : this.dependents.get(childIndex)) {
+                    if (this.outstandingPrerequisites[dependent.intValue()].decrementAndGet() == 0) {
+                        submit(this, dependent.intValue());
+                    }
+                }
+            }
+        }
+
+        void awaitStarted() throws DeploymentException {
+            try {
+                this.started.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new DeploymentException("Interrupted while starting plan children", ie);
+            }
+
+            Throwable failure = this.firstFailure.get();
+            if (failure instanceof DeploymentException) {
+                throw (DeploymentException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new DeploymentException("Failed to start plan child", failure);
+            }
+        }
+    }
+
+    private static final class ChildStartingRunnable implements Runnable {
+
+        private final StartState startState;
+
+        private final int childIndex;
+
+        ChildStartingRunnable(StartState startState, int childIndex) {
+            this.startState = startState;
+            this.childIndex = childIndex;
+        }
+
+        public void run() {
+            this.startState.startChild(this.childIndex);
+        }
+    }
+}
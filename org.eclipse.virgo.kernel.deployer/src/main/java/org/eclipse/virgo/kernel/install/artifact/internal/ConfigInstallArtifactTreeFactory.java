@@ -13,10 +13,8 @@ package org.eclipse.virgo.kernel.install.artifact.internal;
 
 import java.util.Map;
 
-import org.osgi.framework.BundleContext;
 import org.osgi.service.cm.ConfigurationAdmin;
 
-
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentity;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentityDeterminer;
@@ -41,14 +39,14 @@ final class ConfigInstallArtifactTreeFactory implements InstallArtifactTreeFacto
 
     private static final String PROPERTIES_TYPE = ArtifactIdentityDeterminer.CONFIGURATION_TYPE;
 
-    private final BundleContext bundleContext;
+    private final InstallArtifactLifecycleListenerTracker listenerTracker;
 
     private final ConfigLifecycleEngine lifecycleEngine;
 
     private final EventLogger eventLogger;
 
-    ConfigInstallArtifactTreeFactory(BundleContext bundleContext, ConfigurationAdmin configurationAdmin, EventLogger eventLogger) {
-        this.bundleContext = bundleContext;
+    ConfigInstallArtifactTreeFactory(InstallArtifactLifecycleListenerTracker listenerTracker, ConfigurationAdmin configurationAdmin, EventLogger eventLogger) {
+        this.listenerTracker = listenerTracker;
         this.lifecycleEngine = new ConfigLifecycleEngine(configurationAdmin);
         this.eventLogger = eventLogger;
     }
@@ -59,7 +57,7 @@ final class ConfigInstallArtifactTreeFactory implements InstallArtifactTreeFacto
     public Tree<InstallArtifact> constructInstallArtifactTree(ArtifactIdentity artifactIdentity, ArtifactStorage artifactStorage,
         Map<String, String> deploymentProperties, String repositoryName) throws DeploymentException {
         if (PROPERTIES_TYPE.equalsIgnoreCase(artifactIdentity.getType())) {
-            ArtifactStateMonitor artifactStateMonitor = new ArtifactStateMonitor(this.bundleContext);
+            ArtifactStateMonitor artifactStateMonitor = new ArtifactStateMonitor(this.listenerTracker);
             InstallArtifact configInstallArtifact = new ConfigInstallArtifact(artifactIdentity, artifactStorage, this.lifecycleEngine,
                 this.lifecycleEngine, this.lifecycleEngine, artifactStateMonitor, repositoryName, eventLogger);
             return constructInstallTree(configInstallArtifact);
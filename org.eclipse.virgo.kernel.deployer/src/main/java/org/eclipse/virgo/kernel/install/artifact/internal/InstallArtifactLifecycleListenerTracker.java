@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.install.artifact.internal;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.BundleContext;
+
+import org.eclipse.virgo.kernel.deployer.InstallArtifactLifecycleListenerMonitor;
+import org.eclipse.virgo.kernel.deployer.core.internal.RankedServiceTracker;
+import org.eclipse.virgo.kernel.deployer.core.internal.TimingStatistics;
+import org.eclipse.virgo.kernel.install.artifact.InstallArtifactLifecycleListener;
+import org.eclipse.virgo.kernel.serviceability.NonNull;
+
+/**
+ * {@link InstallArtifactLifecycleListenerTracker} tracks the {@link InstallArtifactLifecycleListener
+ * InstallArtifactLifecycleListeners} in the service registry on behalf of every {@link ArtifactStateMonitor}. The
+ * listeners are held by a {@link RankedServiceTracker} in the order of their service references, so that notifying the
+ * listeners of a lifecycle transition does not query the service registry.
+ * <p />
+ * The time each listener takes to handle each transition is recorded and exposed through
+ * {@link InstallArtifactLifecycleListenerMonitor}. Statistics are kept by listener class name so that they survive the
+ * listener being re-registered.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+public final class InstallArtifactLifecycleListenerTracker implements InstallArtifactLifecycleListenerMonitor {
+
+    /**
+     * The lifecycle transitions of which listeners are notified.
+     */
+    enum Transition {
+        INSTALLING("onInstalling"), //
+        INSTALL_FAILED("onInstallFailed"), //
+        INSTALLED("onInstalled"), //
+        RESOLVING("onResolving"), //
+        RESOLVE_FAILED("onResolveFailed"), //
+        RESOLVED("onResolved"), //
+        STARTING("onStarting"), //
+        START_FAILED("onStartFailed"), //
+        STARTED("onStarted"), //
+        STOPPING("onStopping"), //
+        STOP_FAILED("onStopFailed"), //
+        STOPPED("onStopped"), //
+        UNRESOLVED("onUnresolved"), //
+        UNINSTALLING("onUninstalling"), //
+        UNINSTALL_FAILED("onUninstallFailed"), //
+        UNINSTALLED("onUninstalled");
+
+        private final String methodName;
+
+        private Transition(String methodName) {
+            this.methodName = methodName;
+        }
+    }
+
+    private final RankedServiceTracker<InstallArtifactLifecycleListener> listenerTracker;
+
+    private final TimingStatistics statistics = new TimingStatistics();
+
+    private final ConcurrentMap<String, TimingStatistics.Timer[]> timers = new ConcurrentHashMap<String, TimingStatistics.Timer[]>();
+
+    public InstallArtifactLifecycleListenerTracker(@NonNull BundleContext bundleContext) {
+        this.listenerTracker = new RankedServiceTracker<InstallArtifactLifecycleListener>(bundleContext,
+            InstallArtifactLifecycleListener.class);
+    }
+
+    public void init() {
+        this.listenerTracker.open();
+    }
+
+    public void destroy() {
+        this.listenerTracker.close();
+    }
+
+    /**
+     * Returns the currently registered listeners in the order in which they should be notified.
+     *
+     * @return an unmodifiable list of the listeners
+     */
+    List<InstallArtifactLifecycleListener> getListenersInOrder() {
+        return this.listenerTracker.getServices();
+    }
+
+    /**
+     * Records a notification of the given listener of the given transition which started at the given time.
+     *
+     * @param listener the listener which was notified
+     * @param transition the transition
+     * @param startNanos the value of {@link System#nanoTime()} when the notification started
+     */
+    void recordNotification(InstallArtifactLifecycleListener listener, Transition transition, long startNanos) {
+        getTimers(listener.getClass().getName())[transition.ordinal()].record(startNanos);
+    }
+
+    private TimingStatistics.Timer[] getTimers(String listenerClassName) {
+        TimingStatistics.Timer[] listenerTimers = this.timers.get(listenerClassName);
+        if (listenerTimers == null) {
+            Transition[] transitions = Transition.values();
+            TimingStatistics.Timer[] newTimers = new TimingStatistics.Timer[transitions.length];
+            for (Transition transition : transitions) {
+                newTimers[transition.ordinal()] = this.statistics.getTimer(listenerClassName + "." + transition.methodName);
+            }
+            listenerTimers = this.timers.putIfAbsent(listenerClassName, newTimers);
+            if (listenerTimers == null) {
+                listenerTimers = newTimers;
+            }
+        }
+        return listenerTimers;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String[] getListeners() {
+        List<InstallArtifactLifecycleListener> currentListeners = getListenersInOrder();
+        String[] listenerClassNames = new String[currentListeners.size()];
+        for (int i = 0; i < listenerClassNames.length; i++) {
+            listenerClassNames[i] = currentListeners.get(i).getClass().getName();
+        }
+        return listenerClassNames;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getNotificationCounts() {
+        return this.statistics.getCounts();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getMeanNotificationTimesMicros() {
+        return this.statistics.getMeanTimesMicros();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> getMaximumNotificationTimesMicros() {
+        return this.statistics.getMaximumTimesMicros();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void resetStatistics() {
+        this.statistics.reset();
+    }
+}
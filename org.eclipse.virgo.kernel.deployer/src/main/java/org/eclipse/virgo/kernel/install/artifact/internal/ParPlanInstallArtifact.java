@@ -73,9 +73,9 @@ final class ParPlanInstallArtifact extends StandardPlanInstallArtifact {
         @NonNull ScopeFactory scopeFactory, @NonNull EventLogger eventLogger, @NonNull InstallArtifactTreeFactory bundleInstallArtifactTreeFactory,
         @NonNull InstallArtifactRefreshHandler refreshHandler, String repositoryName,
         @NonNull InstallArtifactTreeFactory configInstallArtifactTreeFactory, @NonNull ArtifactStorageFactory artifactStorageFactory,
-        @NonNull ArtifactIdentityDeterminer artifactIdentityDeterminer) throws DeploymentException {
+        @NonNull ArtifactIdentityDeterminer artifactIdentityDeterminer, ConcurrentPlanChildStarter concurrentChildStarter) throws DeploymentException {
         super(identity, true, true, artifactStorage, artifactStateMonitor, scopeServiceRepository, scopeFactory, eventLogger, refreshHandler,
-            repositoryName, EMPTY_ARTIFACT_SPECIFICATION_LIST);
+            repositoryName, EMPTY_ARTIFACT_SPECIFICATION_LIST, concurrentChildStarter);
 
         this.artifactStorageFactory = artifactStorageFactory;
         this.configInstallArtifactTreeFactory = configInstallArtifactTreeFactory;
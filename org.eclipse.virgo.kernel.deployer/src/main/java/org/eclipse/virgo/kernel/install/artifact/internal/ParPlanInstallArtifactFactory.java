@@ -11,9 +11,6 @@
 
 package org.eclipse.virgo.kernel.install.artifact.internal;
 
-import org.osgi.framework.BundleContext;
-
-
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentity;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentityDeterminer;
@@ -39,7 +36,7 @@ final class ParPlanInstallArtifactFactory {
 
     private final EventLogger eventLogger;
 
-    private final BundleContext bundleContext;
+    private final InstallArtifactLifecycleListenerTracker listenerTracker;
 
     private final BundleInstallArtifactTreeFactory bundleInstallArtifactTreeFactory;
 
@@ -55,12 +52,15 @@ final class ParPlanInstallArtifactFactory {
     
     private final ArtifactIdentityDeterminer artifactIdentityDeterminer;
 
-    ParPlanInstallArtifactFactory(EventLogger eventLogger, BundleContext bundleContext,
+    private final ConcurrentPlanChildStarter concurrentChildStarter;
+
+    ParPlanInstallArtifactFactory(EventLogger eventLogger, InstallArtifactLifecycleListenerTracker listenerTracker,
         BundleInstallArtifactTreeFactory bundleInstallArtifactTreeFactory, ScopeServiceRepository scopeServiceRepository, ScopeFactory scopeFactory,
         InstallArtifactRefreshHandler refreshHandler, ConfigInstallArtifactTreeFactory configInstallArtifactTreeFactory,
-        ArtifactStorageFactory artifactStorageFactory, ArtifactIdentityDeterminer artifactIdentityDeterminer) {
+        ArtifactStorageFactory artifactStorageFactory, ArtifactIdentityDeterminer artifactIdentityDeterminer,
+        ConcurrentPlanChildStarter concurrentChildStarter) {
         this.eventLogger = eventLogger;
-        this.bundleContext = bundleContext;
+        this.listenerTracker = listenerTracker;
         this.bundleInstallArtifactTreeFactory = bundleInstallArtifactTreeFactory;
         this.scopeServiceRepository = scopeServiceRepository;
         this.scopeFactory = scopeFactory;
@@ -68,12 +68,13 @@ final class ParPlanInstallArtifactFactory {
         this.configInstallArtifactTreeFactory = configInstallArtifactTreeFactory;
         this.artifactStorageFactory = artifactStorageFactory;
         this.artifactIdentityDeterminer = artifactIdentityDeterminer;
+        this.concurrentChildStarter = concurrentChildStarter;
     }
 
     ParPlanInstallArtifact createParPlanInstallArtifact(@NonNull ArtifactIdentity artifactIdentity, @NonNull ArtifactStorage artifactStorage, String repositoryName) throws DeploymentException {
-        ArtifactStateMonitor artifactStateMonitor = new ArtifactStateMonitor(this.bundleContext);
+        ArtifactStateMonitor artifactStateMonitor = new ArtifactStateMonitor(this.listenerTracker);
         return new ParPlanInstallArtifact(artifactIdentity, artifactStorage, artifactStateMonitor, scopeServiceRepository, scopeFactory, eventLogger,
             bundleInstallArtifactTreeFactory, refreshHandler, repositoryName, this.configInstallArtifactTreeFactory,
-            this.artifactStorageFactory, this.artifactIdentityDeterminer);
+            this.artifactStorageFactory, this.artifactIdentityDeterminer, this.concurrentChildStarter);
     }
 }
@@ -16,12 +16,11 @@ import static org.eclipse.virgo.kernel.install.artifact.ArtifactIdentityDetermin
 
 import java.io.InputStream;
 import java.util.Map;
-
-import org.osgi.framework.BundleContext;
-
+import java.util.concurrent.ExecutorService;
 
 import org.eclipse.virgo.kernel.artifact.plan.PlanDescriptor;
 import org.eclipse.virgo.kernel.artifact.plan.PlanReader;
+import org.eclipse.virgo.kernel.deployer.core.DeployerConfiguration;
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentity;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentityDeterminer;
@@ -49,7 +48,7 @@ import org.eclipse.virgo.util.io.IOUtils;
  */
 final class PlanInstallArtifactTreeFactory implements InstallArtifactTreeFactory {
 
-    private final BundleContext bundleContext;
+    private final InstallArtifactLifecycleListenerTracker listenerTracker;
 
     private final ScopeServiceRepository scopeServiceRepository;
 
@@ -61,19 +60,27 @@ final class PlanInstallArtifactTreeFactory implements InstallArtifactTreeFactory
 
     private final ParPlanInstallArtifactFactory parFactory;
 
-    public PlanInstallArtifactTreeFactory(@NonNull BundleContext bundleContext, @NonNull ScopeServiceRepository scopeServiceRepository,
+    private final DeployerConfiguration deployerConfiguration;
+
+    private final ConcurrentPlanChildStarter concurrentChildStarter;
+
+    public PlanInstallArtifactTreeFactory(@NonNull InstallArtifactLifecycleListenerTracker listenerTracker, @NonNull ScopeServiceRepository scopeServiceRepository,
         @NonNull ScopeFactory scopeFactory, @NonNull EventLogger eventLogger,
         @NonNull BundleInstallArtifactTreeFactory bundleInstallArtifactTreeFactory, @NonNull InstallArtifactRefreshHandler refreshHandler,
         @NonNull ConfigInstallArtifactTreeFactory configInstallArtifactTreeFactory, @NonNull ArtifactStorageFactory artifactStorageFactory,
-        @NonNull ArtifactIdentityDeterminer artifactIdentityDeterminer) {
-        this.bundleContext = bundleContext;
+        @NonNull ArtifactIdentityDeterminer artifactIdentityDeterminer, @NonNull DeployerConfiguration deployerConfiguration,
+        @NonNull ExecutorService planStartExecutor) {
+        this.listenerTracker = listenerTracker;
         this.scopeServiceRepository = scopeServiceRepository;
         this.scopeFactory = scopeFactory;
         this.eventLogger = eventLogger;
         this.refreshHandler = refreshHandler;
+        this.deployerConfiguration = deployerConfiguration;
+        this.concurrentChildStarter = new ConcurrentPlanChildStarter(planStartExecutor);
 
-        this.parFactory = new ParPlanInstallArtifactFactory(eventLogger, bundleContext, bundleInstallArtifactTreeFactory, scopeServiceRepository,
-            scopeFactory, refreshHandler, configInstallArtifactTreeFactory, artifactStorageFactory, artifactIdentityDeterminer);
+        this.parFactory = new ParPlanInstallArtifactFactory(eventLogger, listenerTracker, bundleInstallArtifactTreeFactory, scopeServiceRepository,
+            scopeFactory, refreshHandler, configInstallArtifactTreeFactory, artifactStorageFactory, artifactIdentityDeterminer,
+            deployerConfiguration.isConcurrentPlanStart() ? this.concurrentChildStarter : null);
     }
 
     /**
@@ -120,14 +127,22 @@ final class PlanInstallArtifactTreeFactory implements InstallArtifactTreeFactory
         StandardPlanInstallArtifact planInstallArtifact;
 
         planInstallArtifact = new StandardPlanInstallArtifact(artifactIdentity, planDescriptor.getAtomic(), planDescriptor.getScoped(),
-            artifactStorage, new ArtifactStateMonitor(this.bundleContext), this.scopeServiceRepository, this.scopeFactory,
-            this.eventLogger, this.refreshHandler, repositoryName, planDescriptor.getArtifactSpecifications());
+            artifactStorage, new ArtifactStateMonitor(this.listenerTracker), this.scopeServiceRepository, this.scopeFactory,
+            this.eventLogger, this.refreshHandler, repositoryName, planDescriptor.getArtifactSpecifications(), getConcurrentChildStarter(planDescriptor));
 
         Tree<InstallArtifact> tree = constructInstallTree(planInstallArtifact);
         planInstallArtifact.setTree(tree);
         return tree;
     }
 
+    private ConcurrentPlanChildStarter getConcurrentChildStarter(PlanDescriptor planDescriptor) {
+        Boolean concurrentStart = planDescriptor.getConcurrentStart();
+        if (concurrentStart == null) {
+            concurrentStart = Boolean.valueOf(this.deployerConfiguration.isConcurrentPlanStart());
+        }
+        return concurrentStart.booleanValue() ? this.concurrentChildStarter : null;
+    }
+
     private Tree<InstallArtifact> constructInstallTree(InstallArtifact rootArtifact) {
         return new ThreadSafeArrayListTree<InstallArtifact>(rootArtifact);
     }
@@ -13,20 +13,17 @@ package org.eclipse.virgo.kernel.install.artifact.internal;
 
 import java.io.File;
 import java.net.URI;
-import java.util.List;
 import java.util.Map;
 
-import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.eclipse.virgo.kernel.osgi.framework.OsgiFrameworkUtils;
-import org.eclipse.virgo.kernel.osgi.framework.OsgiServiceHolder;
-
 import org.eclipse.virgo.kernel.artifact.ArtifactSpecification;
 import org.eclipse.virgo.kernel.deployer.core.DeployerLogEvents;
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer.DeploymentOptions;
+import org.eclipse.virgo.kernel.deployer.core.internal.PipelineProfile;
+import org.eclipse.virgo.kernel.deployer.core.internal.RankedServiceTracker;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentity;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentityDeterminer;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactStorage;
@@ -45,6 +42,9 @@ import org.eclipse.virgo.util.osgi.VersionRange;
  * {@link StandardInstallArtifactTreeInclosure} is a default implementation of {@link InstallArtifactTreeInclosure} that
  * can create with bundles, configuration files, and plans.
  * <p />
+ * The {@link InstallArtifactTreeFactory InstallArtifactTreeFactories} are tracked in the service registry and are
+ * tried in service ranking order. The time spent in each factory is recorded in a {@link PipelineProfile}.
+ * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
@@ -53,11 +53,15 @@ import org.eclipse.virgo.util.osgi.VersionRange;
  */
 public final class StandardInstallArtifactTreeInclosure implements InstallArtifactTreeInclosure {
 
+    private static final String STAGE_NAME = "constructInstallArtifactTree";
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     private final EventLogger eventLogger;
 
-    private final BundleContext bundleContext;
+    private final RankedServiceTracker<InstallArtifactTreeFactory> installArtifactTreeFactoryTracker;
+
+    private final PipelineProfile pipelineProfile;
 
     private final Repository repository;
 
@@ -65,13 +69,15 @@ public final class StandardInstallArtifactTreeInclosure implements InstallArtifa
 
     private final ArtifactIdentityDeterminer artifactIdentityDeterminer;
 
-    public StandardInstallArtifactTreeInclosure(@NonNull ArtifactStorageFactory artifactStorageFactory, @NonNull BundleContext bundleContext,
-        @NonNull Repository repository, @NonNull EventLogger eventLogger, @NonNull ArtifactIdentityDeterminer artifactIdentityDeterminer) {
+    public StandardInstallArtifactTreeInclosure(@NonNull ArtifactStorageFactory artifactStorageFactory,
+        @NonNull RankedServiceTracker<InstallArtifactTreeFactory> installArtifactTreeFactoryTracker, @NonNull Repository repository,
+        @NonNull EventLogger eventLogger, @NonNull ArtifactIdentityDeterminer artifactIdentityDeterminer, @NonNull PipelineProfile pipelineProfile) {
         this.repository = repository;
         this.artifactStorageFactory = artifactStorageFactory;
         this.eventLogger = eventLogger;
-        this.bundleContext = bundleContext;
+        this.installArtifactTreeFactoryTracker = installArtifactTreeFactoryTracker;
         this.artifactIdentityDeterminer = artifactIdentityDeterminer;
+        this.pipelineProfile = pipelineProfile;
     }
 
     /**
@@ -145,21 +151,15 @@ public final class StandardInstallArtifactTreeInclosure implements InstallArtifa
     private Tree<InstallArtifact> constructInstallArtifactTree(ArtifactIdentity identity, Map<String, String> deploymentProperties,
         ArtifactStorage artifactStorage, String repositoryName) throws DeploymentException {
         Tree<InstallArtifact> tree = null;
-        List<OsgiServiceHolder<InstallArtifactTreeFactory>> iatfHolders = OsgiFrameworkUtils.getServices(this.bundleContext,
-            InstallArtifactTreeFactory.class);
-
-        for (OsgiServiceHolder<InstallArtifactTreeFactory> iatfHolder : iatfHolders) {
-
-            InstallArtifactTreeFactory iatf = iatfHolder.getService();
+        for (InstallArtifactTreeFactory iatf : this.installArtifactTreeFactoryTracker.getServices()) {
+            long startNanos = System.nanoTime();
             try {
-                if (iatf != null) {
-                    tree = iatf.constructInstallArtifactTree(identity, artifactStorage, deploymentProperties, repositoryName);
-                    if (tree != null) {
-                        break;
-                    }
-                }
+                tree = iatf.constructInstallArtifactTree(identity, artifactStorage, deploymentProperties, repositoryName);
             } finally {
-                this.bundleContext.ungetService(iatfHolder.getServiceReference());
+                this.pipelineProfile.recordInvocation(STAGE_NAME, iatf, startNanos);
+            }
+            if (tree != null) {
+                break;
             }
         }
 
@@ -62,6 +62,8 @@ public class StandardPlanInstallArtifact extends AbstractInstallArtifact impleme
     
     private final List<ArtifactSpecification> artifactSpecifications;
     
+    private final ConcurrentPlanChildStarter concurrentChildStarter;
+    
     protected final EventLogger eventLogger;
 
     private Scope applicationScope;
@@ -70,6 +72,18 @@ public class StandardPlanInstallArtifact extends AbstractInstallArtifact impleme
         @NonNull ArtifactStateMonitor artifactStateMonitor, @NonNull ScopeServiceRepository scopeServiceRepository,
         @NonNull ScopeFactory scopeFactory, @NonNull EventLogger eventLogger, @NonNull InstallArtifactRefreshHandler refreshHandler,
         String repositoryName, List<ArtifactSpecification> artifactSpecifications) throws DeploymentException {
+        this(artifactIdentity, atomic, scoped, artifactStorage, artifactStateMonitor, scopeServiceRepository, scopeFactory, eventLogger,
+            refreshHandler, repositoryName, artifactSpecifications, null);
+    }
+
+    /**
+     * Constructs a {@link StandardPlanInstallArtifact} which starts its children concurrently using the given
+     * {@link ConcurrentPlanChildStarter} or, if it is <code>null</code>, one after another.
+     */
+    protected StandardPlanInstallArtifact(@NonNull ArtifactIdentity artifactIdentity, boolean atomic, boolean scoped, @NonNull ArtifactStorage artifactStorage,
+        @NonNull ArtifactStateMonitor artifactStateMonitor, @NonNull ScopeServiceRepository scopeServiceRepository,
+        @NonNull ScopeFactory scopeFactory, @NonNull EventLogger eventLogger, @NonNull InstallArtifactRefreshHandler refreshHandler,
+        String repositoryName, List<ArtifactSpecification> artifactSpecifications, ConcurrentPlanChildStarter concurrentChildStarter) throws DeploymentException {
         super(artifactIdentity, artifactStorage, artifactStateMonitor, repositoryName, eventLogger);
         
         policeNestedScopes(artifactIdentity, scoped, eventLogger);
@@ -81,6 +95,7 @@ public class StandardPlanInstallArtifact extends AbstractInstallArtifact impleme
         this.atomic = atomic;
         this.scoped = scoped;
         this.artifactSpecifications = artifactSpecifications;
+        this.concurrentChildStarter = concurrentChildStarter;
     }
     
     private void policeNestedScopes(ArtifactIdentity artifactIdentity, boolean scoped, EventLogger eventLogger) throws DeploymentException {
@@ -113,6 +128,11 @@ public class StandardPlanInstallArtifact extends AbstractInstallArtifact impleme
         
         List<Signal> subSignals = signalJunction.getSignals();
 
+        if (this.concurrentChildStarter != null) {
+            this.concurrentChildStarter.start(children, subSignals, signalJunction);
+            return;
+        }
+
         for (int childIndex = 0; childIndex < numChildren && !signalJunction.failed(); childIndex++) {
             InstallArtifact childArtifact = children.get(childIndex).getValue();
             Signal subSignal = subSignals.get(childIndex);
@@ -12,14 +12,18 @@
 package org.eclipse.virgo.kernel.install.artifact.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
@@ -40,6 +44,10 @@ import org.eclipse.virgo.util.math.Sets;
  * <p/>
  * 
  * The service model information is used to determine which service lookups are automatically application scoped.
+ * <p/>
+ * The services of each scope are held in an immutable snapshot, indexed by service type, which is replaced whenever a
+ * service is recorded. Lookups therefore take no lock and only consider services of the requested type. Compiled
+ * filters are kept in a small least recently used cache.
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
@@ -48,9 +56,26 @@ import org.eclipse.virgo.util.math.Sets;
  */
 final class StandardScopeServiceRepository implements ScopeServiceRepository {
 
+    private static final int FILTER_CACHE_SIZE = 256;
+
+    /*
+     * Stands in for a null scope name, which cannot be a key of scopeServices.
+     */
+    private static final String NULL_SCOPE_NAME = new String("<null scope>");
+
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
-    private final Map<String, List<Service>> scopeServices = new HashMap<String, List<Service>>();
+    private final ConcurrentMap<String, ScopeServices> scopeServices = new ConcurrentHashMap<String, ScopeServices>();
+
+    private final Map<String, Filter> filterCache = new LinkedHashMap<String, Filter>(FILTER_CACHE_SIZE, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Filter> eldest) {
+            return size() > FILTER_CACHE_SIZE;
+        }
+    };
 
     private final Object monitor = new Object();
 
@@ -68,12 +93,12 @@ final class StandardScopeServiceRepository implements ScopeServiceRepository {
                 properties = new Hashtable<Object, Object>();
             }
             setStandardProperties(types, properties);
-            List<Service> servicesForScope = this.scopeServices.get(scopeName);
+            String key = toKey(scopeName);
+            ScopeServices servicesForScope = this.scopeServices.get(key);
             if (servicesForScope == null) {
-                servicesForScope = new ArrayList<Service>();
-                this.scopeServices.put(scopeName, servicesForScope);
+                servicesForScope = ScopeServices.EMPTY;
             }
-            servicesForScope.add(new Service(types, properties));
+            this.scopeServices.put(key, servicesForScope.with(new Service(types, properties)));
         }
     }
 
@@ -102,20 +127,38 @@ final class StandardScopeServiceRepository implements ScopeServiceRepository {
      * {@inheritDoc}
      */
     public boolean scopeHasMatchingService(String scopeName, String type, String filter) throws InvalidSyntaxException {
-        synchronized (this.monitor) {
-            List<Service> servicesForScope = this.scopeServices.get(scopeName);
-            boolean matches = false;
-            if (servicesForScope != null) {
-                Filter f = (filter == null ? null : FrameworkUtil.createFilter(filter));
-                for (Service service : servicesForScope) {
-                    if (service.matches(type, f)) {
-                        matches = true;
-                        break;
-                    }
-                }
+        ScopeServices servicesForScope = this.scopeServices.get(toKey(scopeName));
+        if (servicesForScope == null) {
+            return false;
+        }
+
+        List<Service> candidates = servicesForScope.getServices(type);
+        if (candidates.isEmpty()) {
+            return false;
+        }
+
+        Filter f = (filter == null ? null : getFilter(filter));
+        for (Service service : candidates) {
+            if (service.matches(f)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Filter getFilter(String filter) throws InvalidSyntaxException {
+        synchronized (this.filterCache) {
+            Filter f = this.filterCache.get(filter);
+            if (f != null) {
+                return f;
             }
-            return matches;
         }
+
+        Filter f = FrameworkUtil.createFilter(filter);
+        synchronized (this.filterCache) {
+            this.filterCache.put(filter, f);
+        }
+        return f;
     }
 
     /** 
@@ -123,8 +166,7 @@ final class StandardScopeServiceRepository implements ScopeServiceRepository {
      */
     public void clearScope(String scopeName) {
         synchronized (this.monitor) {
-            this.scopeServices.remove(scopeName);
-
+            this.scopeServices.remove(toKey(scopeName));
         }
     }
 
@@ -133,12 +175,57 @@ final class StandardScopeServiceRepository implements ScopeServiceRepository {
      */
     public Set<String> knownScopes() {
         Set<String> scopes = new HashSet<String>();
-        synchronized (this.monitor) {
-            scopes.addAll(this.scopeServices.keySet());
+        for (String key : this.scopeServices.keySet()) {
+            scopes.add(key == NULL_SCOPE_NAME ? null : key);
         }
         return scopes;
     }
 
+    private static String toKey(String scopeName) {
+        return scopeName == null ? NULL_SCOPE_NAME : scopeName;
+    }
+
+    /**
+     * An immutable snapshot of the services of a scope, indexed by service type.
+     */
+    private static final class ScopeServices {
+
+        static final ScopeServices EMPTY = new ScopeServices(Collections.<Service> emptyList(), Collections.<String, List<Service>> emptyMap());
+
+        private final List<Service> allServices;
+
+        private final Map<String, List<Service>> servicesByType;
+
+        private ScopeServices(List<Service> allServices, Map<String, List<Service>> servicesByType) {
+            this.allServices = allServices;
+            this.servicesByType = servicesByType;
+        }
+
+        ScopeServices with(Service service) {
+            List<Service> newAllServices = new ArrayList<Service>(this.allServices.size() + 1);
+            newAllServices.addAll(this.allServices);
+            newAllServices.add(service);
+
+            Map<String, List<Service>> newServicesByType = new HashMap<String, List<Service>>(this.servicesByType);
+            for (String type : service.getTypes()) {
+                List<Service> existing = this.servicesByType.get(type);
+                List<Service> servicesOfType = existing == null ? new ArrayList<Service>(1) : new ArrayList<Service>(existing);
+                servicesOfType.add(service);
+                newServicesByType.put(type, servicesOfType);
+            }
+
+            return new ScopeServices(newAllServices, newServicesByType);
+        }
+
+        List<Service> getServices(String type) {
+            if (type == null) {
+                return this.allServices;
+            }
+            List<Service> servicesOfType = this.servicesByType.get(type);
+            return servicesOfType == null ? Collections.<Service> emptyList() : servicesOfType;
+        }
+    }
+
     private static final class Service {
 
         private final Set<String> types;
@@ -150,12 +237,12 @@ final class StandardScopeServiceRepository implements ScopeServiceRepository {
             this.properties = properties;
         }
 
-        public boolean matches(String type, Filter filter) {
-            if (type == null || this.types.contains(type)) {
-                return filter == null || filter.match(this.properties);
-            } else {
-                return false;
-            }
+        Set<String> getTypes() {
+            return this.types;
+        }
+
+        public boolean matches(Filter filter) {
+            return filter == null || filter.match(this.properties);
         }
     }
 
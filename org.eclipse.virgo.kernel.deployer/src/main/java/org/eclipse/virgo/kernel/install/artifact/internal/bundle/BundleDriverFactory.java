@@ -15,7 +15,6 @@ import org.eclipse.virgo.kernel.core.BundleStarter;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentity;
 import org.eclipse.virgo.kernel.install.artifact.internal.ArtifactStateMonitor;
 import org.eclipse.virgo.kernel.shim.serviceability.TracingService;
-import org.osgi.framework.BundleContext;
 
 import org.eclipse.virgo.kernel.osgi.framework.OsgiFramework;
 import org.eclipse.virgo.kernel.osgi.framework.PackageAdminUtil;
@@ -35,7 +34,7 @@ final class BundleDriverFactory {
     
     private final OsgiFramework osgiFramework;
     
-    private final BundleContext regionBundleContext;
+    private final BundleEventDispatcher bundleEventDispatcher;
     
     private final BundleStarter bundleStarter;
     
@@ -43,16 +42,16 @@ final class BundleDriverFactory {
     
     private final PackageAdminUtil packageAdminUtil;
     
-    public BundleDriverFactory(OsgiFramework osgiFramework, BundleContext regionBundleContext, BundleStarter bundleStarter,
+    public BundleDriverFactory(OsgiFramework osgiFramework, BundleEventDispatcher bundleEventDispatcher, BundleStarter bundleStarter,
         TracingService tracingService, PackageAdminUtil packageAdminUtil) {
         this.osgiFramework = osgiFramework;
-        this.regionBundleContext = regionBundleContext;
+        this.bundleEventDispatcher = bundleEventDispatcher;
         this.bundleStarter = bundleStarter;
         this.tracingService = tracingService;
         this.packageAdminUtil = packageAdminUtil;
     }
 
     StandardBundleDriver createBundleDriver(ArtifactIdentity identity, ArtifactStateMonitor artifactStateMonitor) {
-        return new StandardBundleDriver(this.osgiFramework, this.regionBundleContext, this.bundleStarter, this.tracingService, this.packageAdminUtil, identity.getScopeName(), artifactStateMonitor);
+        return new StandardBundleDriver(this.osgiFramework, this.bundleEventDispatcher, this.bundleStarter, this.tracingService, this.packageAdminUtil, identity.getScopeName(), artifactStateMonitor);
     }
 }
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.install.artifact.internal.bundle;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.SynchronousBundleListener;
+
+import org.eclipse.virgo.kernel.deployer.BundleEventDispatchMonitor;
+import org.eclipse.virgo.kernel.serviceability.NonNull;
+
+/**
+ * {@link BundleEventDispatcher} is a single {@link SynchronousBundleListener} which routes each {@link BundleEvent} to
+ * the listener registered for the event's bundle, looked up by bundle id. This avoids every bundle artifact's listener
+ * being called for every bundle event.
+ * <p />
+ * The dispatcher adds itself as a listener to the given {@link BundleContext} when the first listener is registered and
+ * remains a listener until {@link #stop} is called.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+public final class BundleEventDispatcher implements SynchronousBundleListener, BundleEventDispatchMonitor {
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final Object monitor = new Object();
+
+    private final BundleContext bundleContext;
+
+    private final ConcurrentMap<Long, BundleListener> listeners = new ConcurrentHashMap<Long, BundleListener>();
+
+    private final AtomicLong receivedEventCount = new AtomicLong();
+
+    private final AtomicLong dispatchedEventCount = new AtomicLong();
+
+    private final AtomicLong totalDispatchNanos = new AtomicLong();
+
+    private final AtomicLong maximumDispatchNanos = new AtomicLong();
+
+    private boolean listening = false;
+
+    public BundleEventDispatcher(@NonNull BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    /**
+     * Registers the given listener to receive the events of the given bundle, replacing any listener already
+     * registered for the bundle.
+     *
+     * @param bundle the bundle whose events are to be dispatched
+     * @param listener the listener to receive the events
+     */
+    void register(@NonNull Bundle bundle, @NonNull BundleListener listener) {
+        ensureListening();
+        this.listeners.put(Long.valueOf(bundle.getBundleId()), listener);
+    }
+
+    /**
+     * Unregisters the given listener for the given bundle. If a different listener has since been registered for the
+     * bundle, it remains registered.
+     *
+     * @param bundle the bundle whose events were being dispatched
+     * @param listener the listener to unregister
+     */
+    void unregister(@NonNull Bundle bundle, @NonNull BundleListener listener) {
+        this.listeners.remove(Long.valueOf(bundle.getBundleId()), listener);
+    }
+
+    private void ensureListening() {
+        synchronized (this.monitor) {
+            if (!this.listening) {
+                this.bundleContext.addBundleListener(this);
+                this.listening = true;
+            }
+        }
+    }
+
+    /**
+     * Stops dispatching bundle events.
+     */
+    public void stop() {
+        synchronized (this.monitor) {
+            if (this.listening) {
+                this.bundleContext.removeBundleListener(this);
+                this.listening = false;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void bundleChanged(BundleEvent event) {
+        this.receivedEventCount.incrementAndGet();
+
+        BundleListener listener = this.listeners.get(Long.valueOf(event.getBundle().getBundleId()));
+        if (listener != null) {
+            long start = System.nanoTime();
+            try {
+                listener.bundleChanged(event);
+            } finally {
+                recordDispatch(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private void recordDispatch(long dispatchNanos) {
+        this.dispatchedEventCount.incrementAndGet();
+        this.totalDispatchNanos.addAndGet(dispatchNanos);
+
+        long maximum = this.maximumDispatchNanos.get();
+        while (dispatchNanos > maximum && !this.maximumDispatchNanos.compareAndSet(maximum, dispatchNanos)) {
+            maximum = this.maximumDispatchNanos.get();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getRegisteredBundleCount() {
+        return this.listeners.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getReceivedEventCount() {
+        return this.receivedEventCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getDispatchedEventCount() {
+        return this.dispatchedEventCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getTotalDispatchTimeMicros() {
+        return this.totalDispatchNanos.get() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMeanDispatchTimeMicros() {
+        long dispatched = this.dispatchedEventCount.get();
+        return dispatched == 0 ? 0 : this.totalDispatchNanos.get() / dispatched / NANOS_PER_MICRO;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumDispatchTimeMicros() {
+        return this.maximumDispatchNanos.get() / NANOS_PER_MICRO;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void resetStatistics() {
+        this.receivedEventCount.set(0);
+        this.dispatchedEventCount.set(0);
+        this.totalDispatchNanos.set(0);
+        this.maximumDispatchNanos.set(0);
+    }
+}
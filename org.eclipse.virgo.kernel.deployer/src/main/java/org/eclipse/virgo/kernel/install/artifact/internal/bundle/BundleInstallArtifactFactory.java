@@ -16,7 +16,6 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.jar.JarFile;
 
-import org.osgi.framework.BundleContext;
 import org.osgi.framework.Version;
 
 
@@ -28,6 +27,7 @@ import org.eclipse.virgo.kernel.install.artifact.ArtifactIdentityDeterminer;
 import org.eclipse.virgo.kernel.install.artifact.ArtifactStorage;
 import org.eclipse.virgo.kernel.install.artifact.BundleInstallArtifact;
 import org.eclipse.virgo.kernel.install.artifact.internal.ArtifactStateMonitor;
+import org.eclipse.virgo.kernel.install.artifact.internal.InstallArtifactLifecycleListenerTracker;
 import org.eclipse.virgo.kernel.install.artifact.internal.InstallArtifactRefreshHandler;
 import org.eclipse.virgo.medic.eventlog.EventLogger;
 import org.eclipse.virgo.util.io.IOUtils;
@@ -48,7 +48,7 @@ final class BundleInstallArtifactFactory {
 
     private static final Version DEFAULT_BUNDLE_VERSION = Version.emptyVersion;
 
-    private final BundleContext kernelBundleContext;
+    private final InstallArtifactLifecycleListenerTracker listenerTracker;
 
     private final InstallArtifactRefreshHandler refreshHandler;
 
@@ -58,9 +58,9 @@ final class BundleInstallArtifactFactory {
     
     private final ArtifactIdentityDeterminer identityDeterminer;
 
-    BundleInstallArtifactFactory(BundleContext kernelBundleContext, InstallArtifactRefreshHandler refreshHandler,
+    BundleInstallArtifactFactory(InstallArtifactLifecycleListenerTracker listenerTracker, InstallArtifactRefreshHandler refreshHandler,
         BundleDriverFactory bundleDriverFactory, EventLogger eventLogger, ArtifactIdentityDeterminer identityDeterminer) {
-        this.kernelBundleContext = kernelBundleContext;
+        this.listenerTracker = listenerTracker;
         this.refreshHandler = refreshHandler;
         this.bundleDriverFactory = bundleDriverFactory;
         this.eventLogger = eventLogger;
@@ -69,7 +69,7 @@ final class BundleInstallArtifactFactory {
 
     BundleInstallArtifact createBundleInstallArtifact(ArtifactIdentity identity, ArtifactStorage artifactStorage, String repositoryName) throws DeploymentException {
 
-        ArtifactStateMonitor artifactStateMonitor = new ArtifactStateMonitor(this.kernelBundleContext);
+        ArtifactStateMonitor artifactStateMonitor = new ArtifactStateMonitor(this.listenerTracker);
 
         StandardBundleDriver bundleDriver = this.bundleDriverFactory.createBundleDriver(identity, artifactStateMonitor);
 
@@ -13,8 +13,6 @@ package org.eclipse.virgo.kernel.install.artifact.internal.bundle;
 
 import java.util.Map;
 
-import org.osgi.framework.BundleContext;
-
 import org.eclipse.virgo.kernel.osgi.framework.OsgiFramework;
 import org.eclipse.virgo.kernel.osgi.framework.PackageAdminUtil;
 
@@ -26,6 +24,7 @@ import org.eclipse.virgo.kernel.install.artifact.ArtifactStorage;
 import org.eclipse.virgo.kernel.install.artifact.BundleInstallArtifact;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifactTreeFactory;
+import org.eclipse.virgo.kernel.install.artifact.internal.InstallArtifactLifecycleListenerTracker;
 import org.eclipse.virgo.kernel.install.artifact.internal.InstallArtifactRefreshHandler;
 import org.eclipse.virgo.kernel.serviceability.NonNull;
 import org.eclipse.virgo.kernel.shim.serviceability.TracingService;
@@ -47,14 +46,14 @@ public final class BundleInstallArtifactTreeFactory implements InstallArtifactTr
 
     private final BundleInstallArtifactFactory bundleArtifactFactory;
 
-    public BundleInstallArtifactTreeFactory(@NonNull OsgiFramework osgiFramework, @NonNull BundleContext kernelBundleContext,
+    public BundleInstallArtifactTreeFactory(@NonNull OsgiFramework osgiFramework, @NonNull InstallArtifactLifecycleListenerTracker listenerTracker,
         @NonNull InstallArtifactRefreshHandler refreshHandler, @NonNull BundleStarter bundleStarter, @NonNull TracingService tracingService,
-        @NonNull PackageAdminUtil packageAdminUtil, @NonNull BundleContext regionBundleContext, EventLogger eventLogger, ArtifactIdentityDeterminer identityDeterminer) {
+        @NonNull PackageAdminUtil packageAdminUtil, @NonNull BundleEventDispatcher bundleEventDispatcher, EventLogger eventLogger, ArtifactIdentityDeterminer identityDeterminer) {
 
-        BundleDriverFactory bundleDriverFactory = new BundleDriverFactory(osgiFramework, regionBundleContext, bundleStarter, tracingService,
+        BundleDriverFactory bundleDriverFactory = new BundleDriverFactory(osgiFramework, bundleEventDispatcher, bundleStarter, tracingService,
             packageAdminUtil);
 
-        this.bundleArtifactFactory = new BundleInstallArtifactFactory(kernelBundleContext, refreshHandler, bundleDriverFactory, eventLogger, identityDeterminer);
+        this.bundleArtifactFactory = new BundleInstallArtifactFactory(listenerTracker, refreshHandler, bundleDriverFactory, eventLogger, identityDeterminer);
     }
 
     /**
@@ -12,9 +12,7 @@
 package org.eclipse.virgo.kernel.install.artifact.internal.bundle;
 
 import org.osgi.framework.Bundle;
-import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleException;
-import org.osgi.framework.BundleListener;
 
 import org.eclipse.virgo.kernel.osgi.framework.OsgiFramework;
 import org.eclipse.virgo.kernel.osgi.framework.PackageAdminUtil;
@@ -50,7 +48,7 @@ final class StandardBundleDriver implements BundleDriver {
 
     private final PackageAdminUtil packageAdminUtil;
     
-    private final BundleContext bundleContext;
+    private final BundleEventDispatcher bundleEventDispatcher;
     
     private final OsgiFramework osgi;
     
@@ -69,14 +67,14 @@ final class StandardBundleDriver implements BundleDriver {
     /**
      * Creates a {@link StandardBundleDriver} for the given {@link Bundle} and {@link ArtifactState}.
      * @param osgiFramework framework
-     * @param bundleContext context
+     * @param bundleEventDispatcher dispatcher of the bundle's events
      * @param bundleStarter to start bundles
      * @param tracingService to trace bundle operations
      * @param packageAdminUtil utilities for package administration
      */
-    StandardBundleDriver(OsgiFramework osgiFramework, BundleContext bundleContext, BundleStarter bundleStarter, TracingService tracingService, PackageAdminUtil packageAdminUtil, String scopeName, ArtifactStateMonitor artifactStateMonitor) {
+    StandardBundleDriver(OsgiFramework osgiFramework, BundleEventDispatcher bundleEventDispatcher, BundleStarter bundleStarter, TracingService tracingService, PackageAdminUtil packageAdminUtil, String scopeName, ArtifactStateMonitor artifactStateMonitor) {
         this.osgi = osgiFramework;
-        this.bundleContext = bundleContext;
+        this.bundleEventDispatcher = bundleEventDispatcher;
         this.tracingService = tracingService;
         this.packageAdminUtil = packageAdminUtil;
         this.bundleStarter = bundleStarter;
@@ -89,7 +87,8 @@ final class StandardBundleDriver implements BundleDriver {
     }
 
     public void setBundle(Bundle bundle) {
-        BundleListener bundleListener = null;
+        BundleDriverBundleListener bundleListener = null;
+        Bundle registeredBundle = null;
         
         synchronized (this.monitor) {
             if (this.bundle == null) {
@@ -97,12 +96,13 @@ final class StandardBundleDriver implements BundleDriver {
                 if (this.bundle != null) {
                     this.bundleListener = new BundleDriverBundleListener(this.installArtifact, this.bundle, this.artifactStateMonitor);
                     bundleListener = this.bundleListener;
+                    registeredBundle = this.bundle;
                 }
             }
         }
         
         if (bundleListener != null) {
-            this.bundleContext.addBundleListener(bundleListener);
+            this.bundleEventDispatcher.register(registeredBundle, bundleListener);
         }
     }
 
@@ -289,11 +289,11 @@ final class StandardBundleDriver implements BundleDriver {
             popThreadContext();
         }
         
-        BundleListener localBundleListener = this.bundleListener;
+        BundleDriverBundleListener localBundleListener = this.bundleListener;
         this.bundleListener = null;
         
         if (localBundleListener != null) {
-            this.bundleContext.removeBundleListener(localBundleListener);
+            this.bundleEventDispatcher.unregister(bundle, localBundleListener);
         }
         
         this.packageAdminUtil.synchronouslyRefreshPackages(new Bundle[] {bundle});
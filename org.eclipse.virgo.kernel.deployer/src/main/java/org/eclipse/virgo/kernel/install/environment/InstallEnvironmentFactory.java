@@ -11,6 +11,8 @@
 
 package org.eclipse.virgo.kernel.install.environment;
 
+import java.util.List;
+
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
 
 /**
@@ -32,4 +34,13 @@ public interface InstallEnvironmentFactory {
      */
     InstallEnvironment createInstallEnvironment(InstallArtifact installArtifact);
 
+    /**
+     * Returns a new {@link InstallEnvironment} for each of the given root {@link InstallArtifact InstallArtifacts}. The
+     * environments share a single side state so that the artifacts can be resolved and committed together.
+     * 
+     * @param installArtifacts the root <code>InstallArtifacts</code> being installed
+     * @return an <code>InstallEnvironment</code> for each of the given artifacts, in the same order
+     */
+    List<InstallEnvironment> createInstallEnvironments(List<InstallArtifact> installArtifacts);
+
 }
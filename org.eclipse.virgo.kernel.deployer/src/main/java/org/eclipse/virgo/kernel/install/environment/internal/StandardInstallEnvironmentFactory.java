@@ -11,6 +11,10 @@
 
 package org.eclipse.virgo.kernel.install.environment.internal;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
 
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
@@ -45,4 +49,16 @@ final class StandardInstallEnvironmentFactory implements InstallEnvironmentFacto
         return new StandardInstallEnvironment(null, new StandardInstallLog(this.eventLogger, installArtifact), this.quasiFrameworkFactory.create());
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public List<InstallEnvironment> createInstallEnvironments(List<InstallArtifact> installArtifacts) {
+        QuasiFramework quasiFramework = this.quasiFrameworkFactory.create();
+        List<InstallEnvironment> installEnvironments = new ArrayList<InstallEnvironment>(installArtifacts.size());
+        for (InstallArtifact installArtifact : installArtifacts) {
+            installEnvironments.add(new StandardInstallEnvironment(null, new StandardInstallLog(this.eventLogger, installArtifact), quasiFramework));
+        }
+        return installEnvironments;
+    }
+
 }
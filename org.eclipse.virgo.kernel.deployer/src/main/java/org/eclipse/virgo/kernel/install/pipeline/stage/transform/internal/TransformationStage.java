@@ -11,15 +11,11 @@
 
 package org.eclipse.virgo.kernel.install.pipeline.stage.transform.internal;
 
-import java.util.List;
-
-import org.osgi.framework.BundleContext;
-
-import org.eclipse.virgo.kernel.osgi.framework.OsgiFrameworkUtils;
-import org.eclipse.virgo.kernel.osgi.framework.OsgiServiceHolder;
 import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyBundleDependenciesException;
 
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
+import org.eclipse.virgo.kernel.deployer.core.internal.PipelineProfile;
+import org.eclipse.virgo.kernel.deployer.core.internal.RankedServiceTracker;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
 import org.eclipse.virgo.kernel.install.environment.InstallEnvironment;
 import org.eclipse.virgo.kernel.install.pipeline.stage.AbstractPipelineStage;
@@ -27,8 +23,9 @@ import org.eclipse.virgo.kernel.install.pipeline.stage.transform.Transformer;
 import org.eclipse.virgo.util.common.Tree;
 
 /**
- * A pipeline stage that drives {@link Transformer Transformers}. Transformers are retrieved from the OSGi service
- * registry and are driven in the order defined by their service ranking and service id.
+ * A pipeline stage that drives {@link Transformer Transformers}. Transformers are tracked in the OSGi service registry
+ * and are driven in the order defined by their service ranking and service id. The time spent in each transformer is
+ * recorded in a {@link PipelineProfile}.
  * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
@@ -38,10 +35,15 @@ import org.eclipse.virgo.util.common.Tree;
  */
 public final class TransformationStage extends AbstractPipelineStage {
 
-    private final BundleContext bundleContext;
+    private static final String STAGE_NAME = "transform";
+
+    private final RankedServiceTracker<Transformer> transformerTracker;
+
+    private final PipelineProfile pipelineProfile;
 
-    public TransformationStage(BundleContext bundleContext) {
-        this.bundleContext = bundleContext;
+    public TransformationStage(RankedServiceTracker<Transformer> transformerTracker, PipelineProfile pipelineProfile) {
+        this.transformerTracker = transformerTracker;
+        this.pipelineProfile = pipelineProfile;
     }
 
     /** 
@@ -50,10 +52,13 @@ public final class TransformationStage extends AbstractPipelineStage {
     @Override
     protected void doProcessTree(Tree<InstallArtifact> installTree, InstallEnvironment installEnvironment) throws DeploymentException,
         UnableToSatisfyBundleDependenciesException {
-        List<OsgiServiceHolder<Transformer>> services = OsgiFrameworkUtils.getServices(this.bundleContext, Transformer.class);
-        for (OsgiServiceHolder<Transformer> transformerHolder : services) {
-            transformerHolder.getService().transform(installTree, installEnvironment);
-            this.bundleContext.ungetService(transformerHolder.getServiceReference());
+        for (Transformer transformer : this.transformerTracker.getServices()) {
+            long startNanos = System.nanoTime();
+            try {
+                transformer.transform(installTree, installEnvironment);
+            } finally {
+                this.pipelineProfile.recordInvocation(STAGE_NAME, transformer, startNanos);
+            }
         }
     }
 }
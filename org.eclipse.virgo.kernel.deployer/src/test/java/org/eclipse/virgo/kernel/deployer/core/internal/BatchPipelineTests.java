@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleException;
+import org.osgi.framework.Version;
+import org.osgi.service.packageadmin.PackageAdmin;
+
+import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
+import org.eclipse.virgo.kernel.install.artifact.BundleInstallArtifact;
+import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
+import org.eclipse.virgo.kernel.install.environment.InstallEnvironment;
+import org.eclipse.virgo.kernel.install.environment.InstallLog;
+import org.eclipse.virgo.kernel.install.pipeline.Pipeline;
+import org.eclipse.virgo.kernel.install.pipeline.stage.PipelineStage;
+import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyBundleDependenciesException;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiExportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiRequiredBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiResolutionFailure;
+import org.eclipse.virgo.util.common.ThreadSafeArrayListTree;
+import org.eclipse.virgo.util.common.Tree;
+import org.eclipse.virgo.util.osgi.manifest.BundleManifest;
+
+/**
+ */
+public class BatchPipelineTests {
+
+    private StubQuasiFramework quasiFramework;
+
+    private RecordingPipeline installPreparationPipeline;
+
+    private RecordingPipeline failInstallStage;
+
+    private RecordingPipeline endResolveStage;
+
+    private BatchPipeline batchPipeline;
+
+    private List<Tree<InstallArtifact>> installTrees;
+
+    private List<InstallEnvironment> installEnvironments;
+
+    @Before
+    public void setUp() {
+        this.quasiFramework = new StubQuasiFramework();
+        this.installPreparationPipeline = new RecordingPipeline();
+        this.failInstallStage = new RecordingPipeline();
+        this.endResolveStage = new RecordingPipeline();
+
+        PackageAdmin packageAdmin = createMock(PackageAdmin.class);
+        expect(packageAdmin.resolveBundles((Bundle[]) anyObject())).andReturn(true).anyTimes();
+        replay(packageAdmin);
+
+        this.batchPipeline = new BatchPipeline(this.installPreparationPipeline, this.failInstallStage, new RecordingPipeline(),
+            new RecordingPipeline(), new RecordingPipeline(), this.endResolveStage, packageAdmin);
+
+        this.installTrees = new ArrayList<Tree<InstallArtifact>>();
+        this.installEnvironments = new ArrayList<InstallEnvironment>();
+    }
+
+    @Test
+    public void brokenAndUnresolvableTreesDoNotPreventOtherTreesFromDeploying() {
+        StubQuasiBundle good1 = addTree("good1", true);
+        StubQuasiBundle broken = addTree("broken", true);
+        StubQuasiBundle unresolvable = addTree("unresolvable", false);
+        StubQuasiBundle good2 = addTree("good2", true);
+
+        DeploymentException installFailure = new DeploymentException("broken");
+        this.installPreparationPipeline.fail(this.installTrees.get(1), installFailure);
+
+        Exception[] failures = this.batchPipeline.process(this.installTrees, this.installEnvironments);
+
+        assertNull(failures[0]);
+        assertSame(installFailure, failures[1]);
+        assertTrue(failures[2] instanceof UnableToSatisfyBundleDependenciesException);
+        assertNull(failures[3]);
+
+        assertEquals(asSet(good1, good2), this.quasiFramework.installedBundles);
+        assertTrue(broken.uninstalled);
+        assertTrue(unresolvable.uninstalled);
+        assertEquals(1, this.quasiFramework.commitCount);
+
+        assertEquals(asList(this.installTrees.get(2)), this.failInstallStage.processedTrees);
+        assertEquals(asList(this.installTrees.get(0), this.installTrees.get(3)), this.endResolveStage.processedTrees);
+    }
+
+    @Test
+    public void onlyTreesWhichDependOnAnUnresolvedBundleOutsideTheBatchAreFailed() {
+        StubQuasiBundle outsider = new StubQuasiBundle(100, "outsider", true);
+        this.quasiFramework.install(outsider);
+
+        addTree("good", true);
+        StubQuasiBundle dependent = addTree("dependent", true);
+        dependent.requiredBundle = outsider;
+        outsider.conflictingBundle = dependent;
+
+        Exception[] failures = this.batchPipeline.process(this.installTrees, this.installEnvironments);
+
+        assertNull(failures[0]);
+        assertTrue(failures[1] instanceof UnableToSatisfyBundleDependenciesException);
+        assertEquals("dependent", ((UnableToSatisfyBundleDependenciesException) failures[1]).getSymbolicName());
+        assertTrue(dependent.uninstalled);
+        assertFalse(outsider.uninstalled);
+        assertEquals(1, this.quasiFramework.commitCount);
+        assertEquals(asList(this.installTrees.get(0)), this.endResolveStage.processedTrees);
+    }
+
+    private StubQuasiBundle addTree(String symbolicName, boolean resolvable) {
+        StubQuasiBundle quasiBundle = new StubQuasiBundle(this.installTrees.size(), symbolicName, resolvable);
+        this.quasiFramework.install(quasiBundle);
+
+        BundleInstallArtifact installArtifact = createNiceMock(BundleInstallArtifact.class);
+        expect(installArtifact.getQuasiBundle()).andReturn(quasiBundle).anyTimes();
+        expect(installArtifact.getName()).andReturn(symbolicName).anyTimes();
+        replay(installArtifact);
+        this.installTrees.add(new ThreadSafeArrayListTree<InstallArtifact>(installArtifact));
+
+        InstallLog installLog = createNiceMock(InstallLog.class);
+        InstallEnvironment installEnvironment = createNiceMock(InstallEnvironment.class);
+        expect(installEnvironment.getQuasiFramework()).andReturn(this.quasiFramework).anyTimes();
+        expect(installEnvironment.getInstallLog()).andReturn(installLog).anyTimes();
+        replay(installLog, installEnvironment);
+        this.installEnvironments.add(installEnvironment);
+
+        return quasiBundle;
+    }
+
+    private static <T> Set<T> asSet(T... elements) {
+        Set<T> set = new HashSet<T>();
+        Collections.addAll(set, elements);
+        return set;
+    }
+
+    private static <T> List<T> asList(T... elements) {
+        List<T> list = new ArrayList<T>();
+        Collections.addAll(list, elements);
+        return list;
+    }
+
+    private static final class RecordingPipeline implements Pipeline {
+
+        private final List<Tree<InstallArtifact>> processedTrees = new ArrayList<Tree<InstallArtifact>>();
+
+        private Tree<InstallArtifact> failingTree;
+
+        private DeploymentException failure;
+
+        void fail(Tree<InstallArtifact> installTree, DeploymentException deploymentException) {
+            this.failingTree = installTree;
+            this.failure = deploymentException;
+        }
+
+        public void process(Tree<InstallArtifact> installTree, InstallEnvironment installEnvironment) throws DeploymentException {
+            if (installTree == this.failingTree) {
+                throw this.failure;
+            }
+            this.processedTrees.add(installTree);
+        }
+
+        public Pipeline appendStage(PipelineStage stage) {
+            return this;
+        }
+    }
+
+    private static final class StubQuasiFramework implements QuasiFramework {
+
+        private final Set<StubQuasiBundle> installedBundles = new HashSet<StubQuasiBundle>();
+
+        private final List<StubQuasiBundle> installOrder = new ArrayList<StubQuasiBundle>();
+
+        private int commitCount;
+
+        void install(StubQuasiBundle quasiBundle) {
+            quasiBundle.quasiFramework = this;
+            this.installedBundles.add(quasiBundle);
+            this.installOrder.add(quasiBundle);
+        }
+
+        public List<QuasiResolutionFailure> resolve() {
+            List<QuasiResolutionFailure> failures = new ArrayList<QuasiResolutionFailure>();
+            for (StubQuasiBundle quasiBundle : this.installOrder) {
+                if (this.installedBundles.contains(quasiBundle) && !quasiBundle.isResolved()) {
+                    failures.add(new StubQuasiResolutionFailure(quasiBundle));
+                }
+            }
+            return failures;
+        }
+
+        public List<QuasiResolutionFailure> diagnose(long bundleId) {
+            for (StubQuasiBundle quasiBundle : this.installedBundles) {
+                if (quasiBundle.getBundleId() == bundleId) {
+                    return Collections.<QuasiResolutionFailure> singletonList(new StubQuasiResolutionFailure(quasiBundle));
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        public void commit() throws BundleException {
+            this.commitCount++;
+        }
+
+        public QuasiBundle install(URI location, BundleManifest bundleManifest) throws BundleException {
+            throw new UnsupportedOperationException();
+        }
+
+        public List<QuasiBundle> getBundles() {
+            return new ArrayList<QuasiBundle>(this.installedBundles);
+        }
+
+        public QuasiBundle getBundle(long bundleId) {
+            throw new UnsupportedOperationException();
+        }
+
+        public QuasiBundle getBundle(String name, Version version) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class StubQuasiResolutionFailure implements QuasiResolutionFailure {
+
+        private final QuasiBundle unresolvedQuasiBundle;
+
+        StubQuasiResolutionFailure(QuasiBundle unresolvedQuasiBundle) {
+            this.unresolvedQuasiBundle = unresolvedQuasiBundle;
+        }
+
+        public String getDescription() {
+            return this.unresolvedQuasiBundle.getSymbolicName() + " is unresolved";
+        }
+
+        public QuasiBundle getUnresolvedQuasiBundle() {
+            return this.unresolvedQuasiBundle;
+        }
+    }
+
+    private static final class StubQuasiBundle implements QuasiBundle {
+
+        private final long bundleId;
+
+        private final String symbolicName;
+
+        private final boolean resolvable;
+
+        private StubQuasiFramework quasiFramework;
+
+        private StubQuasiBundle requiredBundle;
+
+        private StubQuasiBundle conflictingBundle;
+
+        private boolean uninstalled;
+
+        StubQuasiBundle(long bundleId, String symbolicName, boolean resolvable) {
+            this.bundleId = bundleId;
+            this.symbolicName = symbolicName;
+            this.resolvable = resolvable;
+        }
+
+        public boolean isResolved() {
+            if (this.conflictingBundle != null && this.quasiFramework.installedBundles.contains(this.conflictingBundle)) {
+                return false;
+            }
+            return this.resolvable && (this.requiredBundle == null || this.requiredBundle.isResolved());
+        }
+
+        public void uninstall() {
+            this.uninstalled = true;
+            this.quasiFramework.installedBundles.remove(this);
+        }
+
+        public long getBundleId() {
+            return this.bundleId;
+        }
+
+        public String getSymbolicName() {
+            return this.symbolicName;
+        }
+
+        public Version getVersion() {
+            return Version.emptyVersion;
+        }
+
+        public List<QuasiRequiredBundle> getRequiredBundles() {
+            if (this.requiredBundle == null) {
+                return Collections.emptyList();
+            }
+            QuasiRequiredBundle quasiRequiredBundle = createNiceMock(QuasiRequiredBundle.class);
+            expect(quasiRequiredBundle.getRequiredBundleName()).andReturn(this.requiredBundle.getSymbolicName()).anyTimes();
+            replay(quasiRequiredBundle);
+            return Collections.singletonList(quasiRequiredBundle);
+        }
+
+        public List<QuasiExportPackage> getExportPackages() {
+            return Collections.emptyList();
+        }
+
+        public List<QuasiImportPackage> getImportPackages() {
+            return Collections.emptyList();
+        }
+
+        public Bundle getBundle() {
+            return null;
+        }
+
+        public List<QuasiBundle> getFragments() {
+            return Collections.emptyList();
+        }
+
+        public List<QuasiBundle> getHosts() {
+            return Collections.emptyList();
+        }
+
+        public List<QuasiBundle> getDependents() {
+            return Collections.emptyList();
+        }
+
+        public File getBundleFile() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return this.symbolicName;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ */
+public class LocationLocksTests {
+
+    private static final URI A = URI.create("file:/a.jar");
+
+    private static final URI B = URI.create("file:/b.jar");
+
+    private final LocationLocks locationLocks = new LocationLocks();
+
+    @Test
+    public void differentLocationsDoNotBlock() throws Exception {
+        this.locationLocks.lock(A);
+        try {
+            assertTrue(lockInOtherThread(B).await(5, TimeUnit.SECONDS));
+        } finally {
+            this.locationLocks.unlock(A);
+        }
+    }
+
+    @Test
+    public void sameLocationBlocks() throws Exception {
+        CountDownLatch locked;
+        this.locationLocks.lock(A);
+        try {
+            locked = lockInOtherThread(A);
+            assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+        } finally {
+            this.locationLocks.unlock(A);
+        }
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void reentrancy() {
+        this.locationLocks.lock(A);
+        this.locationLocks.lock(A);
+        this.locationLocks.unlock(A);
+        assertEquals(1, this.locationLocks.getLocationCount());
+        this.locationLocks.unlock(A);
+        assertEquals(0, this.locationLocks.getLocationCount());
+    }
+
+    @Test
+    public void multipleLocations() {
+        List<URI> locked = this.locationLocks.lock(Arrays.asList(B, A, B));
+        assertEquals(Arrays.asList(A, B), locked);
+        assertEquals(2, this.locationLocks.getLocationCount());
+        this.locationLocks.unlock(locked);
+        assertEquals(0, this.locationLocks.getLocationCount());
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void unlockWithoutLock() {
+        this.locationLocks.unlock(A);
+    }
+
+    private CountDownLatch lockInOtherThread(final URI location) {
+        final CountDownLatch locked = new CountDownLatch(1);
+        new Thread(new Runnable() {
+
+            public void run() {
+                locationLocks.lock(location);
+                try {
+                    locked.countDown();
+                } finally {
+                    locationLocks.unlock(location);
+                }
+            }
+        }).start();
+        return locked;
+    }
+}
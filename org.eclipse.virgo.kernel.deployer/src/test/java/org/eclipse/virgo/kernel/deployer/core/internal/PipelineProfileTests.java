@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ */
+public class PipelineProfileTests {
+
+    private final PipelineProfile pipelineProfile = new PipelineProfile();
+
+    @Test
+    public void invocationsAreRecordedPerStageAndExtension() {
+        long startNanos = System.nanoTime();
+        this.pipelineProfile.recordInvocation("a", "extension", startNanos);
+        this.pipelineProfile.recordInvocation("a", "extension", startNanos);
+        this.pipelineProfile.recordInvocation("b", "extension", startNanos);
+        this.pipelineProfile.recordInvocation("b", Integer.valueOf(1), startNanos);
+
+        Map<String, Long> counts = this.pipelineProfile.getInvocationCounts();
+        assertEquals(3, counts.size());
+        assertEquals(Long.valueOf(2), counts.get("a:java.lang.String"));
+        assertEquals(Long.valueOf(1), counts.get("b:java.lang.String"));
+        assertEquals(Long.valueOf(1), counts.get("b:java.lang.Integer"));
+
+        assertEquals(counts.keySet(), this.pipelineProfile.getTotalTimesMicros().keySet());
+        assertEquals(counts.keySet(), this.pipelineProfile.getMeanTimesMicros().keySet());
+        assertEquals(counts.keySet(), this.pipelineProfile.getMaximumTimesMicros().keySet());
+    }
+
+    @Test
+    public void resetStatistics() {
+        this.pipelineProfile.recordInvocation("a", "extension", System.nanoTime());
+        this.pipelineProfile.resetStatistics();
+        assertTrue(this.pipelineProfile.getInvocationCounts().isEmpty());
+        assertTrue(this.pipelineProfile.getMaximumTimesMicros().isEmpty());
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ */
+public class RankedServiceTrackerTests {
+
+    private final BundleContext bundleContext = createNiceMock(BundleContext.class);
+
+    private final RankedServiceReference referenceA = new RankedServiceReference(1, 0);
+
+    private final RankedServiceReference referenceB = new RankedServiceReference(2, 5);
+
+    private final RankedServiceReference referenceC = new RankedServiceReference(3, 0);
+
+    private RankedServiceTracker<String> tracker;
+
+    private ServiceTrackerCustomizer customizer;
+
+    @Before
+    public void setUp() {
+        expect(this.bundleContext.getService(this.referenceA)).andReturn("a");
+        expect(this.bundleContext.getService(this.referenceB)).andReturn("b");
+        expect(this.bundleContext.getService(this.referenceC)).andReturn("c");
+        expect(this.bundleContext.ungetService(this.referenceB)).andReturn(true);
+        replay(this.bundleContext);
+
+        this.tracker = new RankedServiceTracker<String>(this.bundleContext, String.class);
+        this.customizer = this.tracker.new RankingServiceTrackerCustomizer();
+    }
+
+    @Test
+    public void servicesAreInServiceReferenceOrder() {
+        assertTrue(this.tracker.getServices().isEmpty());
+
+        this.customizer.addingService(this.referenceA);
+        this.customizer.addingService(this.referenceB);
+        this.customizer.addingService(this.referenceC);
+
+        assertEquals(Arrays.asList("c", "a", "b"), this.tracker.getServices());
+    }
+
+    @Test
+    public void modifiedServiceIsReordered() {
+        this.customizer.addingService(this.referenceA);
+        this.customizer.addingService(this.referenceB);
+        this.customizer.addingService(this.referenceC);
+
+        this.referenceB.ranking = -1;
+        this.customizer.modifiedService(this.referenceB, "b");
+        assertEquals(Arrays.asList("b", "c", "a"), this.tracker.getServices());
+
+        this.referenceC.ranking = 10;
+        this.customizer.modifiedService(this.referenceC, "c");
+        assertEquals(Arrays.asList("b", "a", "c"), this.tracker.getServices());
+    }
+
+    @Test
+    public void removedServiceIsDropped() {
+        this.customizer.addingService(this.referenceA);
+        this.customizer.addingService(this.referenceB);
+        this.customizer.addingService(this.referenceC);
+
+        this.customizer.removedService(this.referenceB, "b");
+        assertEquals(Arrays.asList("c", "a"), this.tracker.getServices());
+
+        verify(this.bundleContext);
+    }
+
+    /**
+     * A {@link ServiceReference} whose ranking may be changed, ordered as the framework orders service references.
+     */
+    private static final class RankedServiceReference implements ServiceReference {
+
+        private final long serviceId;
+
+        private int ranking;
+
+        private RankedServiceReference(long serviceId, int ranking) {
+            this.serviceId = serviceId;
+            this.ranking = ranking;
+        }
+
+        public int compareTo(Object reference) {
+            RankedServiceReference other = (RankedServiceReference) reference;
+            if (this.ranking != other.ranking) {
+                return this.ranking < other.ranking ? -1 : 1;
+            }
+            if (this.serviceId == other.serviceId) {
+                return 0;
+            }
+            return this.serviceId > other.serviceId ? -1 : 1;
+        }
+
+        public Object getProperty(String key) {
+            if (Constants.SERVICE_ID.equals(key)) {
+                return Long.valueOf(this.serviceId);
+            }
+            if (Constants.SERVICE_RANKING.equals(key)) {
+                return Integer.valueOf(this.ranking);
+            }
+            return null;
+        }
+
+        public String[] getPropertyKeys() {
+            return new String[] { Constants.SERVICE_ID, Constants.SERVICE_RANKING };
+        }
+
+        public Bundle getBundle() {
+            return null;
+        }
+
+        public Bundle[] getUsingBundles() {
+            return null;
+        }
+
+        public boolean isAssignableTo(Bundle bundle, String className) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.core.internal.recovery;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer.DeploymentOptions;
+import org.eclipse.virgo.util.io.PathReference;
+
+/**
+ * Measures the cost of 10,000 deploy and undeploy cycles against a {@link DeployerRecoveryLog}, from one thread and
+ * from several threads, and the cost of recovering the resulting state.
+ * <p/>
+ * Each cycle forces the log to disk, so this benchmark takes far longer than a unit test. It is not named
+ * <code>*Tests</code> and so is left out of the build's test run; run it by hand when changing the log format or its
+ * group commit.
+ */
+public class DeployerRecoveryLogBenchmark {
+
+    private static final int CYCLES = 10000;
+
+    private static final int THREADS = 8;
+
+    private static final int DEPLOYED_ARTIFACTS = 200;
+
+    private static final DeploymentOptions DEPLOYMENT_OPTIONS = new DeploymentOptions(true, true, false);
+
+    private final PathReference deployArea = new PathReference("target/benchmarkDeployArea");
+
+    @Before
+    public void cleanup() {
+        this.deployArea.delete(true);
+        this.deployArea.createDirectory();
+    }
+
+    @Test
+    public void deployUndeployCycles() throws Exception {
+        DeployerRecoveryLog log = new DeployerRecoveryLog(this.deployArea);
+        deployArtifacts(log);
+
+        long start = System.nanoTime();
+        cycle(log, 0, CYCLES);
+        long singleThreadedMillis = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        final DeployerRecoveryLog sharedLog = log;
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            new Thread(new Runnable() {
+
+                public void run() {
+                    try {
+                        cycle(sharedLog, thread, CYCLES / THREADS);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+        long multiThreadedMillis = (System.nanoTime() - start) / 1000000;
+        log.close();
+
+        System.out.println(String.format("%d deploy/undeploy cycles: %6d ms from one thread, %6d ms from %d threads", CYCLES,
+            singleThreadedMillis, multiThreadedMillis, THREADS));
+
+        start = System.nanoTime();
+        log = new DeployerRecoveryLog(this.deployArea);
+        assertEquals(DEPLOYED_ARTIFACTS, log.getRecoveryState().size());
+        long recoveryMicros = (System.nanoTime() - start) / 1000;
+        log.close();
+
+        System.out.println(String.format("cold recovery of %d artifacts: %6d us", DEPLOYED_ARTIFACTS, recoveryMicros));
+    }
+
+    @Test
+    public void coldRecoveryAfterCycles() throws Exception {
+        DeployerRecoveryLog log = new DeployerRecoveryLog(this.deployArea);
+        deployArtifacts(log);
+        cycle(log, 0, CYCLES);
+        log.close();
+
+        long start = System.nanoTime();
+        log = new DeployerRecoveryLog(this.deployArea);
+        assertEquals(DEPLOYED_ARTIFACTS, log.getRecoveryState().size());
+        long recoveryMicros = (System.nanoTime() - start) / 1000;
+        log.close();
+
+        System.out.println(String.format("cold recovery of %d artifacts after %d cycles: %6d us", DEPLOYED_ARTIFACTS, CYCLES, recoveryMicros));
+    }
+
+    private static void deployArtifacts(DeployerRecoveryLog log) {
+        for (int i = 0; i < DEPLOYED_ARTIFACTS; i++) {
+            log.add(new File("deployed/app" + i).toURI(), DEPLOYMENT_OPTIONS);
+        }
+    }
+
+    private static void cycle(DeployerRecoveryLog log, int thread, int cycles) {
+        for (int i = 0; i < cycles; i++) {
+            URI uri = new File("cycled/thread" + thread + "/app" + i).toURI();
+            log.add(uri, DEPLOYMENT_OPTIONS);
+            log.remove(uri);
+        }
+    }
+}
@@ -17,6 +17,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.URI;
 import java.util.Map;
 
@@ -107,4 +110,110 @@ public class DeployerRecoveryLogTests {
         }
         assertEquals(1, log.getRecoveryState().size());
     }
+
+    @Test
+    public void compaction() {
+        DeployerRecoveryLog log = new DeployerRecoveryLog(deployArea);
+        URI app1 = new File("app/one").toURI();
+        URI app2 = new File("app/two").toURI();
+        log.add(app2, new ApplicationDeployer.DeploymentOptions(false, false, false));
+        for (int i = 0; i < 100; i++) {
+            log.add(app1, new ApplicationDeployer.DeploymentOptions(true, true, true));
+            log.remove(app1);
+        }
+        log.add(app1, new ApplicationDeployer.DeploymentOptions(true, true, true));
+
+        log.compact();
+        assertTrue(journalFile().length() < 3 * (app1.toString().length() + 10));
+
+        URI app3 = new File("app/three").toURI();
+        log.add(app3, new ApplicationDeployer.DeploymentOptions(true, false, true));
+        log.close();
+
+        Map<URI, DeploymentOptions> recoveryState = new DeployerRecoveryLog(deployArea).getRecoveryState();
+        assertEquals(3, recoveryState.size());
+        assertFalse(recoveryState.get(app2).getRecoverable());
+        assertTrue(recoveryState.get(app1).getDeployerOwned());
+        assertFalse(recoveryState.get(app3).getDeployerOwned());
+    }
+
+    @Test
+    public void incompleteRecordIsDiscarded() throws IOException {
+        DeployerRecoveryLog log = new DeployerRecoveryLog(deployArea);
+        URI app1 = new File("app/one").toURI();
+        URI app2 = new File("app/two").toURI();
+        log.add(app1, new ApplicationDeployer.DeploymentOptions(true, true, true));
+        log.add(app2, new ApplicationDeployer.DeploymentOptions(true, true, true));
+        log.close();
+
+        truncateJournal(3);
+
+        log = new DeployerRecoveryLog(deployArea);
+        Map<URI, DeploymentOptions> recoveryState = log.getRecoveryState();
+        assertEquals(1, recoveryState.size());
+        assertTrue(recoveryState.containsKey(app1));
+
+        log.add(app2, new ApplicationDeployer.DeploymentOptions(true, true, true));
+        log.close();
+        assertEquals(2, new DeployerRecoveryLog(deployArea).getRecoveryState().size());
+    }
+
+    @Test
+    public void corruptRecordIsDiscarded() throws IOException {
+        DeployerRecoveryLog log = new DeployerRecoveryLog(deployArea);
+        URI app1 = new File("app/one").toURI();
+        URI app2 = new File("app/two").toURI();
+        log.add(app1, new ApplicationDeployer.DeploymentOptions(true, true, true));
+        log.add(app2, new ApplicationDeployer.DeploymentOptions(true, true, true));
+        log.close();
+
+        RandomAccessFile journal = new RandomAccessFile(journalFile(), "rw");
+        try {
+            journal.seek(journal.length() - 1);
+            journal.write('x');
+        } finally {
+            journal.close();
+        }
+
+        Map<URI, DeploymentOptions> recoveryState = new DeployerRecoveryLog(deployArea).getRecoveryState();
+        assertEquals(1, recoveryState.size());
+        assertTrue(recoveryState.containsKey(app1));
+    }
+
+    @Test
+    public void legacyDatasetIsConverted() throws IOException {
+        URI app1 = new File("app/one").toURI();
+        URI app2 = new File("app/two").toURI();
+        PathReference recoveryArea = deployArea.newChild("recovery");
+        recoveryArea.createDirectory();
+        FileWriter writer = new FileWriter(recoveryArea.newChild("deployed").toFile());
+        try {
+            writer.write("YNY" + app1 + ";NNN" + app2 + ";---" + app2 + ";");
+        } finally {
+            writer.close();
+        }
+
+        Map<URI, DeploymentOptions> recoveryState = new DeployerRecoveryLog(deployArea).getRecoveryState();
+        assertEquals(1, recoveryState.size());
+        DeploymentOptions deploymentOptions = recoveryState.get(app1);
+        assertTrue(deploymentOptions.getRecoverable());
+        assertFalse(deploymentOptions.getDeployerOwned());
+        assertTrue(deploymentOptions.getSynchronous());
+        assertFalse(recoveryArea.newChild("deployed").exists());
+
+        assertEquals(1, new DeployerRecoveryLog(deployArea).getRecoveryState().size());
+    }
+
+    private File journalFile() {
+        return deployArea.newChild("recovery").newChild("journal").toFile();
+    }
+
+    private void truncateJournal(int bytes) throws IOException {
+        RandomAccessFile journal = new RandomAccessFile(journalFile(), "rw");
+        try {
+            journal.setLength(journal.length() - bytes);
+        } finally {
+            journal.close();
+        }
+    }
 }
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.deployer.hot;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer;
+import org.eclipse.virgo.kernel.deployer.core.DeploymentIdentity;
+import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer.DeploymentOptions;
+import org.eclipse.virgo.medic.test.eventlog.MockEventLogger;
+import org.eclipse.virgo.util.io.PathReference;
+
+/**
+ */
+public class BatchingWatchTaskTests {
+
+    private static final long QUIET_PERIOD = 1000;
+
+    private static final PathReference PICKUP_DIR = new PathReference("target/batching-pickup");
+
+    private ApplicationDeployer deployer;
+
+    private DeploymentIdentity deploymentIdentity;
+
+    private BatchingWatchTask watchTask;
+
+    @Before
+    public void setUp() {
+        PICKUP_DIR.delete(true);
+        PICKUP_DIR.createDirectory();
+        this.deployer = createMock(ApplicationDeployer.class);
+        this.deploymentIdentity = createMock(DeploymentIdentity.class);
+        this.watchTask = new BatchingWatchTask(PICKUP_DIR.toFile(), "\\.DS_Store", new HotDeploymentFileSystemListener(this.deployer,
+            new MockEventLogger()), QUIET_PERIOD);
+    }
+
+    @After
+    public void cleanUp() {
+        PICKUP_DIR.delete(true);
+    }
+
+    @Test
+    public void changesAreNotReportedUntilTheyHaveSettled() throws Exception {
+        replay(this.deployer);
+        this.watchTask.scan(0);
+
+        File a = write("a.jar", 10);
+        File b = write("b.jar", 10);
+        this.watchTask.scan(1000);
+        this.watchTask.scan(1500);
+        verify(this.deployer);
+
+        reset(this.deployer);
+        expect(this.deployer.deploy(eq(Arrays.asList(a.toURI(), b.toURI())), isA(DeploymentOptions.class))).andReturn(
+            new DeploymentIdentity[] { this.deploymentIdentity, this.deploymentIdentity });
+        replay(this.deployer);
+        this.watchTask.scan(2000);
+        this.watchTask.scan(2500);
+        verify(this.deployer);
+    }
+
+    @Test
+    public void aChangingFileHoldsUpTheBatch() throws Exception {
+        replay(this.deployer);
+        this.watchTask.scan(0);
+
+        File a = write("a.jar", 10);
+        File b = write("b.jar", 10);
+        this.watchTask.scan(1000);
+        write("a.jar", 20);
+        this.watchTask.scan(1500);
+        this.watchTask.scan(2000);
+        verify(this.deployer);
+
+        reset(this.deployer);
+        expect(this.deployer.deploy(eq(Arrays.asList(a.toURI(), b.toURI())), isA(DeploymentOptions.class))).andReturn(
+            new DeploymentIdentity[] { this.deploymentIdentity, this.deploymentIdentity });
+        replay(this.deployer);
+        this.watchTask.scan(2500);
+        verify(this.deployer);
+    }
+
+    @Test
+    public void aDirectoryWhoseContentsAreChangingHoldsUpTheBatch() throws Exception {
+        replay(this.deployer);
+        this.watchTask.scan(0);
+
+        File nested = new File(PICKUP_DIR.toFile(), "app/WEB-INF");
+        nested.mkdirs();
+        write("app/WEB-INF/web.xml", 10);
+        File app = new File(PICKUP_DIR.toFile(), "app");
+        this.watchTask.scan(1000);
+        write("app/WEB-INF/classes.jar", 10);
+        this.watchTask.scan(1500);
+        this.watchTask.scan(2000);
+        verify(this.deployer);
+
+        reset(this.deployer);
+        expect(this.deployer.deploy(eq(Arrays.asList(app.toURI())), isA(DeploymentOptions.class))).andReturn(
+            new DeploymentIdentity[] { this.deploymentIdentity });
+        replay(this.deployer);
+        this.watchTask.scan(2500);
+        verify(this.deployer);
+    }
+
+    @Test
+    public void initialEntriesAreConditionallyDeployed() throws Exception {
+        File a = write("a.jar", 10);
+        expect(this.deployer.isDeployed(a.toURI())).andReturn(true);
+        replay(this.deployer);
+        this.watchTask.scan(0);
+        this.watchTask.scan(5000);
+        verify(this.deployer);
+    }
+
+    @Test
+    public void deletionIsReported() throws Exception {
+        File a = write("a.jar", 10);
+        expect(this.deployer.isDeployed(a.toURI())).andReturn(true);
+        replay(this.deployer);
+        this.watchTask.scan(0);
+        verify(this.deployer);
+
+        reset(this.deployer);
+        expect(this.deployer.getDeploymentIdentity(a.toURI())).andReturn(this.deploymentIdentity);
+        this.deployer.undeploy(this.deploymentIdentity);
+        replay(this.deployer);
+        a.delete();
+        this.watchTask.scan(1000);
+        this.watchTask.scan(2000);
+        verify(this.deployer);
+    }
+
+    private static File write(String name, int length) throws IOException {
+        File file = new File(PICKUP_DIR.toFile(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -17,13 +17,21 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer;
+import org.eclipse.virgo.kernel.deployer.core.BatchDeploymentException;
+import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.deployer.core.DeploymentIdentity;
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer.DeploymentOptions;
 import org.eclipse.virgo.kernel.deployer.hot.HotDeploymentFileSystemListener;
@@ -38,10 +46,13 @@ public class HotDeployerFileSystemListenerTests {
 
     private DeploymentIdentity deploymentIdentity;
 
+    private MockEventLogger eventLogger;
+
     @Before
     public void initialise() {
         deployer = createMock(ApplicationDeployer.class);
-        listener = new HotDeploymentFileSystemListener(deployer, new MockEventLogger());
+        eventLogger = new MockEventLogger();
+        listener = new HotDeploymentFileSystemListener(deployer, eventLogger);
         deploymentIdentity = createMock(DeploymentIdentity.class);
     }
 
@@ -102,4 +113,47 @@ public class HotDeployerFileSystemListenerTests {
         verify(deployer);
     }
 
+    @Test
+    public void batchOfChanges() throws Exception {
+        File deleted = new File("path/to/deleted");
+        File created = new File("path/to/created");
+        File modified = new File("path/to/modified");
+        File existing = new File("path/to/existing");
+        File initial = new File("path/to/initial");
+
+        expect(deployer.getDeploymentIdentity(deleted.toURI())).andReturn(this.deploymentIdentity);
+        deployer.undeploy(this.deploymentIdentity);
+        expect(deployer.isDeployed(existing.toURI())).andReturn(true);
+        expect(deployer.isDeployed(initial.toURI())).andReturn(false);
+        expect(deployer.deploy(eq(Arrays.asList(created.toURI(), modified.toURI(), initial.toURI())), isA(DeploymentOptions.class))).andReturn(
+            new DeploymentIdentity[] { deploymentIdentity, deploymentIdentity, deploymentIdentity });
+        replay(deployer);
+
+        Map<String, FileSystemEvent> changes = new LinkedHashMap<String, FileSystemEvent>();
+        changes.put("path/to/created", FileSystemEvent.CREATED);
+        changes.put("path/to/deleted", FileSystemEvent.DELETED);
+        changes.put("path/to/modified", FileSystemEvent.MODIFIED);
+        changes.put("path/to/existing", FileSystemEvent.INITIAL);
+        changes.put("path/to/initial", FileSystemEvent.INITIAL);
+        listener.onChanges(changes);
+        verify(deployer);
+    }
+
+    @Test
+    public void failureInBatch() throws Exception {
+        File created = new File("path/to/created");
+        File failed = new File("path/to/failed");
+        Map<URI, DeploymentException> failures = Collections.singletonMap(failed.toURI(), new DeploymentException("failed"));
+        expect(deployer.deploy(eq(Arrays.asList(created.toURI(), failed.toURI())), isA(DeploymentOptions.class))).andThrow(
+            new BatchDeploymentException(new DeploymentIdentity[] { deploymentIdentity, null }, failures));
+        replay(deployer);
+
+        Map<String, FileSystemEvent> changes = new LinkedHashMap<String, FileSystemEvent>();
+        changes.put("path/to/created", FileSystemEvent.CREATED);
+        changes.put("path/to/failed", FileSystemEvent.CREATED);
+        listener.onChanges(changes);
+        verify(deployer);
+        assertTrue(eventLogger.isLogged(HotDeployerLogEvents.HOT_DEPLOY_FAILED.getEventCode()));
+    }
+
 }
@@ -11,9 +11,9 @@
 
 package org.eclipse.virgo.kernel.install.artifact.internal;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.osgi.framework.BundleContext;
 
 
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
@@ -21,12 +21,15 @@ import org.eclipse.virgo.kernel.deployer.core.StubInstallArtifactLifecycleListen
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifactLifecycleListener;
 import org.eclipse.virgo.kernel.install.artifact.internal.ArtifactStateMonitor;
 import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+import org.eclipse.virgo.teststubs.osgi.support.ObjectClassFilter;
 
 /**
  */
 public class ArtifactStateMonitorTests {
 
-    BundleContext bundleContext;
+    StubBundleContext bundleContext;
+
+    InstallArtifactLifecycleListenerTracker listenerTracker;
 
     ArtifactStateMonitor asm;
 
@@ -35,11 +38,19 @@ public class ArtifactStateMonitorTests {
     @Before
     public void setUp() {
         this.bundleContext = new StubBundleContext();
-        this.asm = new ArtifactStateMonitor(this.bundleContext);
+        this.bundleContext.addFilter(new ObjectClassFilter(InstallArtifactLifecycleListener.class.getName()));
+        this.listenerTracker = new InstallArtifactLifecycleListenerTracker(this.bundleContext);
+        this.listenerTracker.init();
+        this.asm = new ArtifactStateMonitor(this.listenerTracker);
         this.listener = new StubInstallArtifactLifecycleListener();
         this.bundleContext.registerService(InstallArtifactLifecycleListener.class.getName(), this.listener, null);
     }
 
+    @After
+    public void tearDown() {
+        this.listenerTracker.destroy();
+    }
+
     @Test
     public void testInstalling() throws DeploymentException {
         this.listener.assertLifecycleCounts(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
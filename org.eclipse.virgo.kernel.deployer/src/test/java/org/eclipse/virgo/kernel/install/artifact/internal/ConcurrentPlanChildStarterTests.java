@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.install.artifact.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Test;
+
+import org.eclipse.virgo.kernel.core.Signal;
+import org.eclipse.virgo.kernel.deployer.core.internal.SignalJunction;
+import org.eclipse.virgo.kernel.install.artifact.BundleInstallArtifact;
+import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiExportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiRequiredBundle;
+import org.eclipse.virgo.util.common.ThreadSafeArrayListTree;
+import org.eclipse.virgo.util.common.Tree;
+
+/**
+ */
+public class ConcurrentPlanChildStarterTests {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    private final List<String> startOrder = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void prerequisitesFollowImportsAndConfigurationBarriers() {
+        QuasiBundle provider = createQuasiBundle(1, new QuasiBundle[0]);
+        QuasiBundle consumer = createQuasiBundle(2, new QuasiBundle[] { provider });
+
+        List<Tree<InstallArtifact>> children = new ArrayList<Tree<InstallArtifact>>();
+        children.add(tree(createBundleArtifact(consumer)));
+        children.add(tree(createBundleArtifact(provider)));
+        children.add(tree(createArtifact()));
+        children.add(tree(createBundleArtifact(createQuasiBundle(3, new QuasiBundle[0]))));
+        for (Tree<InstallArtifact> child : children) {
+            replay(child.getValue());
+        }
+
+        List<Set<Integer>> prerequisites = ConcurrentPlanChildStarter.determinePrerequisites(children);
+
+        assertEquals(Collections.singleton(Integer.valueOf(1)), prerequisites.get(0));
+        assertTrue(prerequisites.get(1).isEmpty());
+        assertEquals(2, prerequisites.get(2).size());
+        assertEquals(Collections.singleton(Integer.valueOf(2)), prerequisites.get(3));
+    }
+
+    @Test
+    public void cyclicDependenciesDoNotPreventStart() throws Exception {
+        QuasiBundle[] providers = new QuasiBundle[1];
+        QuasiBundle first = createQuasiBundle(1, providers);
+        QuasiBundle second = createQuasiBundle(2, new QuasiBundle[] { first });
+        providers[0] = second;
+
+        List<Tree<InstallArtifact>> children = new ArrayList<Tree<InstallArtifact>>();
+        children.add(tree(createBundleArtifact(first)));
+        children.add(tree(createBundleArtifact(second)));
+
+        startAndVerify(children, "first", "second");
+        assertEquals(2, this.startOrder.size());
+    }
+
+    @Test
+    public void providerIsStartedBeforeConsumer() throws Exception {
+        QuasiBundle provider = createQuasiBundle(1, new QuasiBundle[0]);
+        QuasiBundle consumer = createQuasiBundle(2, new QuasiBundle[] { provider });
+
+        List<Tree<InstallArtifact>> children = new ArrayList<Tree<InstallArtifact>>();
+        children.add(tree(createBundleArtifact(consumer)));
+        children.add(tree(createBundleArtifact(provider)));
+
+        startAndVerify(children, "consumer", "provider");
+        assertEquals(2, this.startOrder.size());
+        assertEquals("provider", this.startOrder.get(0));
+        assertEquals("consumer", this.startOrder.get(1));
+    }
+
+    private void startAndVerify(List<Tree<InstallArtifact>> children, String... names) throws Exception {
+        final boolean[] completed = new boolean[1];
+        SignalJunction signalJunction = new SignalJunction(new Signal() {
+
+            public void signalFailure(Throwable cause) {
+            }
+
+            public void signalSuccessfulCompletion() {
+                completed[0] = true;
+            }
+        }, children.size());
+
+        List<Signal> signals = signalJunction.getSignals();
+        for (int i = 0; i < children.size(); i++) {
+            InstallArtifact artifact = children.get(i).getValue();
+            final Signal signal = signals.get(i);
+            final String name = names[i];
+            artifact.start(signal);
+            expectLastCall().andAnswer(new IAnswer<Object>() {
+
+                public Object answer() throws Throwable {
+                    startOrder.add(name);
+                    signal.signalSuccessfulCompletion();
+                    return null;
+                }
+            });
+            replay(artifact);
+        }
+
+        new ConcurrentPlanChildStarter(this.executor).start(children, signals, signalJunction);
+
+        for (Tree<InstallArtifact> child : children) {
+            verify(child.getValue());
+        }
+        assertTrue(completed[0]);
+    }
+
+    private static Tree<InstallArtifact> tree(InstallArtifact artifact) {
+        return new ThreadSafeArrayListTree<InstallArtifact>(artifact);
+    }
+
+    private static InstallArtifact createArtifact() {
+        return createMock(InstallArtifact.class);
+    }
+
+    private static BundleInstallArtifact createBundleArtifact(QuasiBundle quasiBundle) {
+        BundleInstallArtifact artifact = createMock(BundleInstallArtifact.class);
+        expect(artifact.getQuasiBundle()).andReturn(quasiBundle).anyTimes();
+        return artifact;
+    }
+
+    /**
+     * Creates a QuasiBundle which imports a package from each of the given providers. The providers are looked up lazily
+     * so that the array may be filled in after this method returns.
+     */
+    private static QuasiBundle createQuasiBundle(long bundleId, final QuasiBundle[] providers) {
+        QuasiBundle quasiBundle = createMock(QuasiBundle.class);
+        expect(quasiBundle.getBundleId()).andReturn(bundleId).anyTimes();
+        expect(quasiBundle.getRequiredBundles()).andReturn(Collections.<QuasiRequiredBundle> emptyList()).anyTimes();
+        expect(quasiBundle.getImportPackages()).andAnswer(new IAnswer<List<QuasiImportPackage>>() {
+
+            public List<QuasiImportPackage> answer() throws Throwable {
+                List<QuasiImportPackage> importPackages = new ArrayList<QuasiImportPackage>();
+                for (QuasiBundle provider : providers) {
+                    QuasiExportPackage exportPackage = createMock(QuasiExportPackage.class);
+                    expect(exportPackage.getExportingBundle()).andReturn(provider).anyTimes();
+                    replay(exportPackage);
+
+                    QuasiImportPackage importPackage = createMock(QuasiImportPackage.class);
+                    expect(importPackage.getProvider()).andReturn(exportPackage).anyTimes();
+                    replay(importPackage);
+
+                    importPackages.add(importPackage);
+                }
+                return importPackages;
+            }
+        }).anyTimes();
+        replay(quasiBundle);
+        return quasiBundle;
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.install.artifact.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.ServiceRegistration;
+
+import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
+import org.eclipse.virgo.kernel.deployer.core.StubInstallArtifactLifecycleListener;
+import org.eclipse.virgo.kernel.install.artifact.InstallArtifactLifecycleListener;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+import org.eclipse.virgo.teststubs.osgi.support.ObjectClassFilter;
+
+/**
+ */
+public class InstallArtifactLifecycleListenerTrackerTests {
+
+    private static final String STUB_LISTENER_CLASS_NAME = StubInstallArtifactLifecycleListener.class.getName();
+
+    private StubBundleContext bundleContext;
+
+    private InstallArtifactLifecycleListenerTracker listenerTracker;
+
+    @Before
+    public void setUp() {
+        this.bundleContext = new StubBundleContext();
+        this.bundleContext.addFilter(new ObjectClassFilter(InstallArtifactLifecycleListener.class.getName()));
+        this.listenerTracker = new InstallArtifactLifecycleListenerTracker(this.bundleContext);
+        this.listenerTracker.init();
+    }
+
+    @After
+    public void tearDown() {
+        this.listenerTracker.destroy();
+    }
+
+    @Test
+    public void listenersAreTrackedAsTheyComeAndGo() {
+        assertEquals(0, this.listenerTracker.getListenersInOrder().size());
+
+        ServiceRegistration registration = this.bundleContext.registerService(InstallArtifactLifecycleListener.class.getName(),
+            new StubInstallArtifactLifecycleListener(), null);
+        assertEquals(1, this.listenerTracker.getListenersInOrder().size());
+        assertEquals(STUB_LISTENER_CLASS_NAME, this.listenerTracker.getListeners()[0]);
+
+        registration.unregister();
+        assertEquals(0, this.listenerTracker.getListenersInOrder().size());
+        assertEquals(0, this.listenerTracker.getListeners().length);
+    }
+
+    @Test
+    public void notificationsAreRecordedPerTransition() throws DeploymentException {
+        StubInstallArtifactLifecycleListener listener = new StubInstallArtifactLifecycleListener();
+        this.bundleContext.registerService(InstallArtifactLifecycleListener.class.getName(), listener, null);
+
+        ArtifactStateMonitor artifactStateMonitor = new ArtifactStateMonitor(this.listenerTracker);
+        artifactStateMonitor.onInstalling(null);
+        artifactStateMonitor.onInstalled(null);
+        artifactStateMonitor.onStartFailed(null, null);
+        artifactStateMonitor.onStartFailed(null, null);
+
+        Map<String, Long> counts = this.listenerTracker.getNotificationCounts();
+        assertEquals(3, counts.size());
+        assertEquals(Long.valueOf(1), counts.get(STUB_LISTENER_CLASS_NAME + ".onInstalling"));
+        assertEquals(Long.valueOf(1), counts.get(STUB_LISTENER_CLASS_NAME + ".onInstalled"));
+        assertEquals(Long.valueOf(2), counts.get(STUB_LISTENER_CLASS_NAME + ".onStartFailed"));
+        assertEquals(counts.keySet(), this.listenerTracker.getMeanNotificationTimesMicros().keySet());
+        assertEquals(counts.keySet(), this.listenerTracker.getMaximumNotificationTimesMicros().keySet());
+
+        this.listenerTracker.resetStatistics();
+        assertTrue(this.listenerTracker.getNotificationCounts().isEmpty());
+    }
+}
@@ -20,6 +20,7 @@ import java.util.Properties;
 import org.eclipse.virgo.kernel.install.artifact.ScopeServiceRepository;
 import org.eclipse.virgo.kernel.install.artifact.internal.StandardScopeServiceRepository;
 import org.junit.Test;
+import org.osgi.framework.InvalidSyntaxException;
 
 
 /**
@@ -81,4 +82,35 @@ public class ScopeServiceRepositoryTests {
         repository.recordService(TEST_SCOPE, new String[]{String.class.getName()}, null);
         assertTrue(repository.scopeHasMatchingService(TEST_SCOPE, null, "(objectClass=java.lang.String)"));
     }
+    
+    @Test
+    public void testUnknownScope() throws Exception {
+        ScopeServiceRepository repository = new StandardScopeServiceRepository();
+        repository.recordService(TEST_SCOPE, new String[]{String.class.getName()}, null);
+        assertFalse(repository.scopeHasMatchingService("unknown", String.class.getName(), "(foo=bar)"));
+    }
+    
+    @Test
+    public void testFilterAppliedToEachServiceOfType() throws Exception {
+        ScopeServiceRepository repository = new StandardScopeServiceRepository();
+        Properties p1 = new Properties();
+        p1.setProperty("foo", "bar");
+        repository.recordService(TEST_SCOPE, new String[]{String.class.getName()}, p1);
+        Properties p2 = new Properties();
+        p2.setProperty("foo", "baz");
+        repository.recordService(TEST_SCOPE, new String[]{String.class.getName(), Integer.class.getName()}, p2);
+        for (int i = 0; i < 2; i++) {
+            assertTrue(repository.scopeHasMatchingService(TEST_SCOPE, String.class.getName(), "(foo=bar)"));
+            assertTrue(repository.scopeHasMatchingService(TEST_SCOPE, String.class.getName(), "(foo=baz)"));
+            assertFalse(repository.scopeHasMatchingService(TEST_SCOPE, Integer.class.getName(), "(foo=bar)"));
+            assertTrue(repository.scopeHasMatchingService(TEST_SCOPE, Integer.class.getName(), "(foo=baz)"));
+        }
+    }
+    
+    @Test(expected = InvalidSyntaxException.class)
+    public void testInvalidFilter() throws Exception {
+        ScopeServiceRepository repository = new StandardScopeServiceRepository();
+        repository.recordService(TEST_SCOPE, new String[]{String.class.getName()}, null);
+        repository.scopeHasMatchingService(TEST_SCOPE, String.class.getName(), "(foo=bar");
+    }
 }
@@ -27,6 +27,7 @@ import java.net.URI;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.Version;
@@ -39,8 +40,11 @@ import org.eclipse.virgo.kernel.artifact.fs.StandardArtifactFSFactory;
 import org.eclipse.virgo.kernel.core.BundleStarter;
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer.DeploymentOptions;
+import org.eclipse.virgo.kernel.deployer.core.internal.PipelineProfile;
+import org.eclipse.virgo.kernel.deployer.core.internal.RankedServiceTracker;
 import org.eclipse.virgo.kernel.install.artifact.BundleInstallArtifact;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
+import org.eclipse.virgo.kernel.install.artifact.InstallArtifactLifecycleListener;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifactTreeFactory;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifactTreeInclosure;
 import org.eclipse.virgo.kernel.install.artifact.internal.ArtifactStorageFactory;
@@ -48,12 +52,14 @@ import org.eclipse.virgo.kernel.install.artifact.internal.StandardArtifactIdenti
 import org.eclipse.virgo.kernel.install.artifact.internal.StandardArtifactStorageFactory;
 import org.eclipse.virgo.kernel.install.artifact.internal.StandardInstallArtifactRefreshHandler;
 import org.eclipse.virgo.kernel.install.artifact.internal.StandardInstallArtifactTreeInclosure;
+import org.eclipse.virgo.kernel.install.artifact.internal.bundle.BundleEventDispatcher;
 import org.eclipse.virgo.kernel.install.artifact.internal.bundle.BundleInstallArtifactTreeFactory;
 import org.eclipse.virgo.kernel.install.environment.InstallEnvironmentFactory;
 import org.eclipse.virgo.kernel.install.pipeline.Pipeline;
 import org.eclipse.virgo.kernel.shim.serviceability.TracingService;
 import org.eclipse.virgo.medic.test.eventlog.MockEventLogger;
 import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+import org.eclipse.virgo.teststubs.osgi.support.ObjectClassFilter;
 import org.eclipse.virgo.repository.ArtifactBridge;
 import org.eclipse.virgo.repository.Repository;
 import org.eclipse.virgo.repository.RepositoryAwareArtifactDescriptor;
@@ -92,6 +98,10 @@ public class StandardInstallArtifactTreeInclosureTests {
 
     private Set<ArtifactBridge> testArtifactBridges = new HashSet<ArtifactBridge>();
 
+    private InstallArtifactLifecycleListenerTracker listenerTracker;
+
+    private RankedServiceTracker<InstallArtifactTreeFactory> installArtifactTreeFactoryTracker;
+
     @Before
     public void setUp() {
         this.bundleURI = new File("src/test/resources/artifacts/simple.jar").toURI();
@@ -104,6 +114,16 @@ public class StandardInstallArtifactTreeInclosureTests {
         this.testArtifactBridges.add(new StubArtifactBridge("bundle", ".jar"));
     }
 
+    @After
+    public void tearDown() {
+        if (this.installArtifactTreeFactoryTracker != null) {
+            this.installArtifactTreeFactoryTracker.close();
+        }
+        if (this.listenerTracker != null) {
+            this.listenerTracker.destroy();
+        }
+    }
+
     private void replayMocks() {
         replay(this.osgiFramework, this.bundleStarter, this.tracingService, this.packageAdminUtil, this.repository, this.artifactDescriptor);
     }
@@ -116,6 +136,20 @@ public class StandardInstallArtifactTreeInclosureTests {
         reset(this.osgiFramework, this.bundleStarter, this.tracingService, this.packageAdminUtil, this.repository, this.artifactDescriptor);
     }
 
+    private RankedServiceTracker<InstallArtifactTreeFactory> openInstallArtifactTreeFactoryTracker(StubBundleContext bundleContext) {
+        bundleContext.addFilter(new ObjectClassFilter(InstallArtifactTreeFactory.class.getName()));
+        this.installArtifactTreeFactoryTracker = new RankedServiceTracker<InstallArtifactTreeFactory>(bundleContext, InstallArtifactTreeFactory.class);
+        this.installArtifactTreeFactoryTracker.open();
+        return this.installArtifactTreeFactoryTracker;
+    }
+
+    private InstallArtifactLifecycleListenerTracker openListenerTracker(StubBundleContext bundleContext) {
+        bundleContext.addFilter(new ObjectClassFilter(InstallArtifactLifecycleListener.class.getName()));
+        this.listenerTracker = new InstallArtifactLifecycleListenerTracker(bundleContext);
+        this.listenerTracker.init();
+        return this.listenerTracker;
+    }
+
     @Test
     public void testBundle() throws DeploymentException, IOException {
         StubBundleContext bundleContext = new StubBundleContext();
@@ -133,10 +167,11 @@ public class StandardInstallArtifactTreeInclosureTests {
         StandardInstallArtifactRefreshHandler refreshHelper = new StandardInstallArtifactRefreshHandler(installEnvironmentFactory, refreshPipeline);
 
         bundleContext.registerService(InstallArtifactTreeFactory.class.getName(), new BundleInstallArtifactTreeFactory(this.osgiFramework,
-            bundleContext, refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, userRegionBundleContext, new MockEventLogger(), null), null);
+            openListenerTracker(bundleContext), refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, new BundleEventDispatcher(userRegionBundleContext), new MockEventLogger(), null), null);
 
-        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory, bundleContext, this.repository,
-            new MockEventLogger(), artifactIdentityDeterminer);
+        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory,
+            openInstallArtifactTreeFactoryTracker(bundleContext), this.repository, new MockEventLogger(), artifactIdentityDeterminer,
+            new PipelineProfile());
 
         ArtifactSpecification specification = new ArtifactSpecification("bundle", "a", new VersionRange("2.0.0"));
         InstallArtifact installArtifact = this.installArtifactFactory.createInstallTree(specification).getValue();
@@ -163,10 +198,11 @@ public class StandardInstallArtifactTreeInclosureTests {
         StandardInstallArtifactRefreshHandler refreshHelper = new StandardInstallArtifactRefreshHandler(installEnvironmentFactory, refreshPipeline);
 
         bundleContext.registerService(InstallArtifactTreeFactory.class.getName(), new BundleInstallArtifactTreeFactory(this.osgiFramework,
-            bundleContext, refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, userRegionBundleContext, new MockEventLogger(), null), null);
+            openListenerTracker(bundleContext), refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, new BundleEventDispatcher(userRegionBundleContext), new MockEventLogger(), null), null);
 
-        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory, bundleContext, this.repository,
-            new MockEventLogger(), artifactIdentityDeterminer);
+        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory,
+            openInstallArtifactTreeFactoryTracker(bundleContext), this.repository, new MockEventLogger(), artifactIdentityDeterminer,
+            new PipelineProfile());
 
         Tree<InstallArtifact> installArtifactTree = this.installArtifactFactory.createInstallTree(new File(this.bundleURI));
         checkBundleImplicitTypeAndVersion(installArtifactTree.getValue());
@@ -188,10 +224,11 @@ public class StandardInstallArtifactTreeInclosureTests {
         StandardInstallArtifactRefreshHandler refreshHelper = new StandardInstallArtifactRefreshHandler(installEnvironmentFactory, refreshPipeline);
 
         bundleContext.registerService(InstallArtifactTreeFactory.class.getName(), new BundleInstallArtifactTreeFactory(this.osgiFramework,
-            bundleContext, refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, userRegionBundleContext, new MockEventLogger(), null), null);
+            openListenerTracker(bundleContext), refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, new BundleEventDispatcher(userRegionBundleContext), new MockEventLogger(), null), null);
 
-        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory, bundleContext, this.repository,
-            new MockEventLogger(), artifactIdentityDeterminer);
+        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory,
+            openInstallArtifactTreeFactoryTracker(bundleContext), this.repository, new MockEventLogger(), artifactIdentityDeterminer,
+            new PipelineProfile());
 
         Tree<InstallArtifact> installArtifactTree = this.installArtifactFactory.createInstallTree(new File("src/test/resources/artifacts/nobsn.jar"));
         InstallArtifact installArtifact = installArtifactTree.getValue();
@@ -217,10 +254,11 @@ public class StandardInstallArtifactTreeInclosureTests {
         StandardArtifactIdentityDeterminer artifactIdentityDeterminer = new StandardArtifactIdentityDeterminer(testArtifactBridges);
         
         bundleContext.registerService(InstallArtifactTreeFactory.class.getName(), new BundleInstallArtifactTreeFactory(this.osgiFramework,
-            bundleContext, refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, userRegionBundleContext, new MockEventLogger(), null), null);
+            openListenerTracker(bundleContext), refreshHelper, this.bundleStarter, this.tracingService, this.packageAdminUtil, new BundleEventDispatcher(userRegionBundleContext), new MockEventLogger(), null), null);
 
-        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory, bundleContext, this.repository,
-            new MockEventLogger(), artifactIdentityDeterminer);
+        this.installArtifactFactory = new StandardInstallArtifactTreeInclosure(this.artifactStorageFactory,
+            openInstallArtifactTreeFactoryTracker(bundleContext), this.repository, new MockEventLogger(), artifactIdentityDeterminer,
+            new PipelineProfile());
 
         Tree<InstallArtifact> installArtifactTree = this.installArtifactFactory.createInstallTree(new File(this.bundleURI));
         checkBundleImplicitTypeAndVersion(installArtifactTree.getValue());
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.install.artifact.internal.bundle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundle;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+
+/**
+ */
+public class BundleEventDispatcherTests {
+
+    private final StubBundleContext bundleContext = new StubBundleContext();
+
+    private final BundleEventDispatcher dispatcher = new BundleEventDispatcher(this.bundleContext);
+
+    private final StubBundle bundle1 = new StubBundle(1L, "bundle.one", Version.emptyVersion, "one");
+
+    private final StubBundle bundle2 = new StubBundle(2L, "bundle.two", Version.emptyVersion, "two");
+
+    @Test
+    public void eventsAreRoutedToTheOwningListener() {
+        RecordingBundleListener listener1 = new RecordingBundleListener();
+        RecordingBundleListener listener2 = new RecordingBundleListener();
+
+        this.dispatcher.register(this.bundle1, listener1);
+        this.dispatcher.register(this.bundle2, listener2);
+
+        assertEquals(1, this.bundleContext.getBundleListeners().size());
+        assertSame(this.dispatcher, this.bundleContext.getBundleListeners().get(0));
+
+        BundleEvent event = new BundleEvent(BundleEvent.STARTED, this.bundle2);
+        this.dispatcher.bundleChanged(event);
+        this.dispatcher.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, new StubBundle(3L, "bundle.three", Version.emptyVersion, "three")));
+
+        assertEquals(0, listener1.events.size());
+        assertEquals(1, listener2.events.size());
+        assertSame(event, listener2.events.get(0));
+
+        assertEquals(2, this.dispatcher.getRegisteredBundleCount());
+        assertEquals(2, this.dispatcher.getReceivedEventCount());
+        assertEquals(1, this.dispatcher.getDispatchedEventCount());
+    }
+
+    @Test
+    public void unregisteredListenerReceivesNoEvents() {
+        RecordingBundleListener listener = new RecordingBundleListener();
+
+        this.dispatcher.register(this.bundle1, listener);
+        this.dispatcher.unregister(this.bundle1, listener);
+        this.dispatcher.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, this.bundle1));
+
+        assertEquals(0, listener.events.size());
+        assertEquals(0, this.dispatcher.getRegisteredBundleCount());
+    }
+
+    @Test
+    public void unregisterDoesNotRemoveAReplacementListener() {
+        RecordingBundleListener listener = new RecordingBundleListener();
+        RecordingBundleListener replacement = new RecordingBundleListener();
+
+        this.dispatcher.register(this.bundle1, listener);
+        this.dispatcher.register(this.bundle1, replacement);
+        this.dispatcher.unregister(this.bundle1, listener);
+        this.dispatcher.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, this.bundle1));
+
+        assertEquals(0, listener.events.size());
+        assertEquals(1, replacement.events.size());
+    }
+
+    @Test
+    public void stopRemovesTheDispatcherAndResetClearsStatistics() {
+        this.dispatcher.register(this.bundle1, new RecordingBundleListener());
+        this.dispatcher.bundleChanged(new BundleEvent(BundleEvent.RESOLVED, this.bundle1));
+
+        this.dispatcher.stop();
+        assertEquals(0, this.bundleContext.getBundleListeners().size());
+
+        this.dispatcher.resetStatistics();
+        assertEquals(0, this.dispatcher.getReceivedEventCount());
+        assertEquals(0, this.dispatcher.getDispatchedEventCount());
+        assertEquals(0, this.dispatcher.getTotalDispatchTimeMicros());
+        assertEquals(0, this.dispatcher.getMaximumDispatchTimeMicros());
+    }
+
+    private static final class RecordingBundleListener implements BundleListener {
+
+        private final List<BundleEvent> events = new ArrayList<BundleEvent>();
+
+        public void bundleChanged(BundleEvent event) {
+            this.events.add(event);
+        }
+    }
+}
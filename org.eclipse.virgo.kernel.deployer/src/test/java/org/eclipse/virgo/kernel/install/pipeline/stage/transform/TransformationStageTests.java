@@ -17,7 +17,9 @@ import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.osgi.framework.ServiceRegistration;
@@ -25,6 +27,8 @@ import org.osgi.framework.ServiceRegistration;
 import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyBundleDependenciesException;
 
 import org.eclipse.virgo.kernel.deployer.core.DeploymentException;
+import org.eclipse.virgo.kernel.deployer.core.internal.PipelineProfile;
+import org.eclipse.virgo.kernel.deployer.core.internal.RankedServiceTracker;
 import org.eclipse.virgo.kernel.install.artifact.InstallArtifact;
 import org.eclipse.virgo.kernel.install.environment.InstallEnvironment;
 import org.eclipse.virgo.kernel.install.environment.InstallLog;
@@ -32,6 +36,7 @@ import org.eclipse.virgo.kernel.install.pipeline.stage.PipelineStage;
 import org.eclipse.virgo.kernel.install.pipeline.stage.transform.Transformer;
 import org.eclipse.virgo.kernel.install.pipeline.stage.transform.internal.TransformationStage;
 import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+import org.eclipse.virgo.teststubs.osgi.support.ObjectClassFilter;
 import org.eclipse.virgo.util.common.Tree;
 
 /**
@@ -59,13 +64,20 @@ public class TransformationStageTests {
 
     private StubBundleContext bundleContext = new StubBundleContext();
 
+    private RankedServiceTracker<Transformer> transformerTracker;
+
+    private final PipelineProfile pipelineProfile = new PipelineProfile();
+
     @SuppressWarnings("unchecked")
     @Before
     public void setUp() {        
         this.installTree = createMock(Tree.class);
         this.transformer1 = createMock(Transformer.class);
         this.transformer2 = createMock(Transformer.class);
-        this.transformationStage = new TransformationStage(bundleContext);
+        this.bundleContext.addFilter(new ObjectClassFilter(Transformer.class.getName()));
+        this.transformerTracker = new RankedServiceTracker<Transformer>(this.bundleContext, Transformer.class);
+        this.transformerTracker.open();
+        this.transformationStage = new TransformationStage(this.transformerTracker, this.pipelineProfile);
         this.installEnvironment = createMock(InstallEnvironment.class);
         this.installLog = createMock(InstallLog.class);
 
@@ -74,6 +86,11 @@ public class TransformationStageTests {
         expectLastCall().anyTimes();
     }
 
+    @After
+    public void tearDown() {
+        this.transformerTracker.close();
+    }
+
     @Test
     public void transformation() throws DeploymentException, UnableToSatisfyBundleDependenciesException {
         this.transformer1.transform(this.installTree, this.installEnvironment);
@@ -98,5 +115,11 @@ public class TransformationStageTests {
         this.transformationStage.process(this.installTree, this.installEnvironment);
         
         verify(this.transformer1, this.transformer2, this.installEnvironment, this.installLog);        
+
+        long invocationCount = 0;
+        for (Long count : this.pipelineProfile.getInvocationCounts().values()) {
+            invocationCount += count;
+        }
+        assertEquals(3, invocationCount);
     }
 }
@@ -22,13 +22,14 @@ import org.eclipse.virgo.kernel.serviceability.NonNull;
 
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiExportPackage;
-import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
 
 /**
  * Implementation of {@link DependencyDeterminer} that returns the dependents of a {@link org.osgi.framework.Bundle
  * Bundle}. The dependents consist of any bundle that has been wired to as a result of <code>Import-Package</code>.
+ * The wires are read from the shared {@link QuasiStateSnapshot} rather than from a copy of the framework state.
  * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
@@ -51,14 +52,15 @@ public final class BundleDependencyDeterminer implements DependencyDeterminer {
      * {@inheritDoc}
      */
     public Set<Artifact> getDependents(Artifact rootArtifact) {
-        Set<Artifact> artifacts = new HashSet<Artifact>();
-        QuasiBundle rootBundle = getBundle(rootArtifact);
+        QuasiStateSnapshot snapshot = quasiFrameworkFactory.getStateSnapshot();
+        QuasiBundle rootBundle = snapshot.getBundle(rootArtifact.getName(), rootArtifact.getVersion());
 
         if (rootBundle == null) {
             return Collections.<Artifact> emptySet();
         }
 
-        for (QuasiImportPackage importPackage : rootBundle.getImportPackages()) {
+        Set<Artifact> artifacts = new HashSet<Artifact>();
+        for (QuasiImportPackage importPackage : snapshot.getWiredImportPackages(rootBundle.getBundleId())) {
             QuasiExportPackage provider = importPackage.getProvider();
             if (provider != null) {
                 QuasiBundle bundle = provider.getExportingBundle();
@@ -68,14 +70,4 @@ public final class BundleDependencyDeterminer implements DependencyDeterminer {
 
         return artifacts;
     }
-
-    private QuasiBundle getBundle(Artifact artifact) {
-        QuasiFramework framework = quasiFrameworkFactory.create();
-        for (QuasiBundle bundle : framework.getBundles()) {
-            if (artifact.getName().equals(bundle.getSymbolicName()) && artifact.getVersion().equals(bundle.getVersion())) {
-                return bundle;
-            }
-        }
-        return null;
-    }
 }
@@ -28,9 +28,9 @@ import org.eclipse.virgo.kernel.model.internal.bundle.BundleDependencyDeterminer
 import org.eclipse.virgo.kernel.serviceability.Assert.FatalAssertionException;
 import org.junit.Test;
 
-import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
-import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
+import org.osgi.framework.Version;
 
 public class BundleDependencyDeterminerTests {
 
@@ -52,15 +52,15 @@ public class BundleDependencyDeterminerTests {
 
     @Test
     public void unknownBundle() {
-        QuasiFramework framework = createMock(QuasiFramework.class);
-        expect(quasiFrameworkFactory.create()).andReturn(framework);
-        expect(framework.getBundles()).andReturn(Collections.<QuasiBundle> emptyList());
-        replay(quasiFrameworkFactory, framework);
+        QuasiStateSnapshot snapshot = createMock(QuasiStateSnapshot.class);
+        expect(quasiFrameworkFactory.getStateSnapshot()).andReturn(snapshot);
+        expect(snapshot.getBundle("test-name", Version.emptyVersion)).andReturn(null);
+        replay(quasiFrameworkFactory, snapshot);
 
         Set<Artifact> dependents = this.determiner.getDependents(new StubCompositeArtifact());
         assertEquals(Collections.<Artifact> emptySet(), dependents);
 
-        verify(quasiFrameworkFactory, framework);
+        verify(quasiFrameworkFactory, snapshot);
     }
 
 }
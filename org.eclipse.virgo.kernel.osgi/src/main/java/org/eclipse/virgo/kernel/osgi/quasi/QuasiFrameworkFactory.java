@@ -39,4 +39,12 @@ public interface QuasiFrameworkFactory {
      */
     QuasiFramework create(File stateDump);
 
+    /**
+     * Returns a read-only {@link QuasiStateSnapshot} of the current OSGi framework state. The snapshot is shared and is
+     * only taken again once the OSGi framework state has changed.
+     * 
+     * @return the <code>QuasiStateSnapshot</code>, which is never <code>null</code>
+     */
+    QuasiStateSnapshot getStateSnapshot();
+
 }
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.osgi.quasi;
+
+import java.util.List;
+
+import org.osgi.framework.Version;
+
+/**
+ * {@link QuasiStateSnapshot} is a read-only snapshot of the resolved OSGi framework state. Unlike a
+ * {@link QuasiFramework}, a snapshot is shared between callers and cannot be modified, so it is suitable for queries
+ * which only inspect the framework state. The bundles, package wires, and the exporters and importers of each package
+ * are indexed when the snapshot is taken.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations of this interface must be thread safe.
+ *
+ */
+public interface QuasiStateSnapshot {
+
+    /**
+     * Returns a list of {@link QuasiBundle} that represent all the bundles in this {@link QuasiStateSnapshot}.
+     *
+     * @return a non<code>null</code> list of <code>QuasiBundle</code>
+     */
+    List<QuasiBundle> getBundles();
+
+    /**
+     * Returns a {@link QuasiBundle} with the given bundle id.
+     *
+     * @param bundleId
+     * @return <code>QuasiBundle</code> or <code>null</code> if the id is not known.
+     */
+    QuasiBundle getBundle(long bundleId);
+
+    /**
+     * Returns a {@link QuasiBundle} with the given bundle name and version.
+     *
+     * @param name
+     * @param version
+     * @return <code>QuasiBundle</code> or <code>null</code> if the name/version is not found.
+     */
+    QuasiBundle getBundle(String name, Version version);
+
+    /**
+     * Returns the package imports of the bundle with the given bundle id which are wired to a provider.
+     *
+     * @param bundleId
+     * @return a non<code>null</code> list of {@link QuasiImportPackage}, which is empty if the id is not known
+     */
+    List<QuasiImportPackage> getWiredImportPackages(long bundleId);
+
+    /**
+     * Returns the exports of the package with the given name.
+     *
+     * @param packageName
+     * @return a non<code>null</code> list of {@link QuasiExportPackage}
+     */
+    List<QuasiExportPackage> getExportPackages(String packageName);
+
+    /**
+     * Returns the imports of the package with the given name.
+     *
+     * @param packageName
+     * @return a non<code>null</code> list of {@link QuasiImportPackage}
+     */
+    List<QuasiImportPackage> getImportPackages(String packageName);
+}
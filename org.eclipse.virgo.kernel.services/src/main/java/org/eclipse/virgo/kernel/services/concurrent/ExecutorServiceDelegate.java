@@ -12,7 +12,9 @@
 package org.eclipse.virgo.kernel.services.concurrent;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.virgo.kernel.shim.serviceability.TracingService;
 
@@ -21,6 +23,9 @@ import org.eclipse.virgo.kernel.shim.serviceability.TracingService;
  * Delegate object that encapsulates common operations for {@link ExecutorService} implementations.
  * <p/>
  * Each {@link ExecutorService} should maintain its own instance of <code>ExecutorServiceDelegate</code>.
+ * <p/>
+ * Execution and queue wait times are measured in nanoseconds and recorded in {@link LatencyHistogram histograms} without
+ * locking. Times are reported in milliseconds.
  * 
  * <strong>Concurrent Semantics</strong><br/>
  * 
@@ -29,11 +34,17 @@ import org.eclipse.virgo.kernel.shim.serviceability.TracingService;
  */
 final class ExecutorServiceDelegate {
 
+    private static final double MEDIAN = 50;
+
+    private static final double NINETY_NINTH_PERCENTILE = 99;
+
     private final ApplicationNameAccessor accessor;
 
-    private final Object monitor = new Object();
+    private final LatencyHistogram executionTimes = new LatencyHistogram();
 
-    private long totalExecutionTime;
+    private final LatencyHistogram queueWaitTimes = new LatencyHistogram();
+
+    private final StripedCounter rejectedCount = new StripedCounter();
 
     public ExecutorServiceDelegate(TracingService tracingService) {
         this.accessor = new ApplicationNameAccessor(tracingService);
@@ -46,9 +57,8 @@ final class ExecutorServiceDelegate {
      * @see ThreadPoolExecutor#getCompletedTaskCount()
      */
     public long getAverageExecutionTime(long completedTaskCount) {
-        synchronized (this.monitor) {
-            return completedTaskCount == 0 ? this.totalExecutionTime : this.totalExecutionTime / completedTaskCount;
-        }
+        long executionTime = getExecutionTime();
+        return completedTaskCount == 0 ? executionTime : executionTime / completedTaskCount;
     }
 
     /**
@@ -58,9 +68,93 @@ final class ExecutorServiceDelegate {
      * @see ThreadPoolExecutor#getCompletedTaskCount()
      */
     public long getExecutionTime() {
-        synchronized (this.monitor) {
-            return this.totalExecutionTime;
-        }
+        return toMillis(this.executionTimes.getTotal());
+    }
+
+    /**
+     * Gets an estimate of the median time spent processing a task.
+     * 
+     * @return the median execution time.
+     */
+    public long getExecutionTimeP50() {
+        return toMillis(this.executionTimes.getPercentile(MEDIAN));
+    }
+
+    /**
+     * Gets an estimate of the time within which 99% of tasks were processed.
+     * 
+     * @return the 99th percentile execution time.
+     */
+    public long getExecutionTimeP99() {
+        return toMillis(this.executionTimes.getPercentile(NINETY_NINTH_PERCENTILE));
+    }
+
+    /**
+     * Gets the longest time spent processing a task.
+     * 
+     * @return the maximum execution time.
+     */
+    public long getMaximumExecutionTime() {
+        return toMillis(this.executionTimes.getMaximum());
+    }
+
+    /**
+     * Gets the total time tasks spent waiting to be processed.
+     * 
+     * @return the total queue wait time.
+     */
+    public long getQueueWaitTime() {
+        return toMillis(this.queueWaitTimes.getTotal());
+    }
+
+    /**
+     * Gets the average time tasks spent waiting to be processed.
+     * 
+     * @return the average queue wait time.
+     */
+    public long getAverageQueueWaitTime() {
+        long count = this.queueWaitTimes.getCount();
+        return count == 0 ? 0 : toMillis(this.queueWaitTimes.getTotal() / count);
+    }
+
+    /**
+     * Gets an estimate of the median time tasks spent waiting to be processed.
+     * 
+     * @return the median queue wait time.
+     */
+    public long getQueueWaitTimeP50() {
+        return toMillis(this.queueWaitTimes.getPercentile(MEDIAN));
+    }
+
+    /**
+     * Gets an estimate of the time within which 99% of tasks started to be processed.
+     * 
+     * @return the 99th percentile queue wait time.
+     */
+    public long getQueueWaitTimeP99() {
+        return toMillis(this.queueWaitTimes.getPercentile(NINETY_NINTH_PERCENTILE));
+    }
+
+    /**
+     * Gets the longest time a task spent waiting to be processed.
+     * 
+     * @return the maximum queue wait time.
+     */
+    public long getMaximumQueueWaitTime() {
+        return toMillis(this.queueWaitTimes.getMaximum());
+    }
+
+    /**
+     * Gets the number of tasks which have been rejected.
+     * 
+     * @return the rejected task count.
+     */
+    public long getRejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
     }
 
     /**
@@ -73,6 +167,20 @@ final class ExecutorServiceDelegate {
         return new KernelRunnable(delegate);
     }
 
+    /**
+     * Creates a {@link RejectedExecutionHandler} wrapper that counts the tasks rejected by the supplied
+     * {@link RejectedExecutionHandler}.
+     * 
+     * @param delegate the <code>RejectedExecutionHandler</code> to count the rejections of.
+     * @return the wrapper.
+     */
+    public RejectedExecutionHandler decorate(RejectedExecutionHandler delegate) {
+        if (delegate instanceof CountingRejectedExecutionHandler && ((CountingRejectedExecutionHandler) delegate).getOuter() == this) {
+            return delegate;
+        }
+        return new CountingRejectedExecutionHandler(delegate);
+    }
+
     /**
      * Simple {@link Runnable} that tracks execution statistics for another, wrapped <code>Runnable</code> instance.
      * <p/>
@@ -88,33 +196,64 @@ final class ExecutorServiceDelegate {
 
         private final String applicationName;
 
+        private final long submitTime;
+
         /**
          * @param delegate
          */
         public KernelRunnable(Runnable delegate) {
             this.delegate = delegate;
             this.applicationName = accessor.getCurrentApplicationName();
+            this.submitTime = System.nanoTime();
         }
 
         /**
          * {@inheritDoc}
          */
         public void run() {
-            long timeBefore = System.currentTimeMillis();
+            long startTime = System.nanoTime();
+            queueWaitTimes.record(startTime - this.submitTime);
             accessor.setCurrentApplicationName(this.applicationName);
             try {
                 this.delegate.run();
             } finally {
                 accessor.setCurrentApplicationName(null);
-                ExecutorServiceDelegate outer = ExecutorServiceDelegate.this;
-                long time = System.currentTimeMillis() - timeBefore;
-                synchronized (outer.monitor) {
-                    outer.totalExecutionTime += time;
-                }
+                executionTimes.record(System.nanoTime() - startTime);
             }
         }
     }
 
+    /**
+     * {@link RejectedExecutionHandler} that counts the rejections of another, wrapped
+     * <code>RejectedExecutionHandler</code> instance.
+     * <p/>
+     * 
+     * <strong>Concurrent Semantics</strong><br/>
+     * 
+     * Threadsafe.
+     * 
+     */
+    private final class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+
+        private final RejectedExecutionHandler delegate;
+
+        public CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        private ExecutorServiceDelegate getOuter() {
+            return ExecutorServiceDelegate.this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejectedCount.add(1);
+            this.delegate.rejectedExecution(r, executor);
+        }
+    }
+
     /**
      * Wrapper around {@link TracingService} that handles the service proxy disappearing.
      * <p/>
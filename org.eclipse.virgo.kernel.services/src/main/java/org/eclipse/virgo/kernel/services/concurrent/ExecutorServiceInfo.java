@@ -41,6 +41,69 @@ public interface ExecutorServiceInfo {
      */
     long getExecutionTime();
 
+    /**
+     * Gets an estimate of the median execution time of executed tasks in mili seconds.
+     * 
+     * @return the median execution time.
+     */
+    long getExecutionTimeP50();
+
+    /**
+     * Gets an estimate, in mili seconds, of the execution time within which 99% of executed tasks completed.
+     * 
+     * @return the 99th percentile execution time.
+     */
+    long getExecutionTimeP99();
+
+    /**
+     * Gets the longest execution time of an executed task in mili seconds.
+     * 
+     * @return the maximum execution time.
+     */
+    long getMaximumExecutionTime();
+
+    /**
+     * Gets the total time executed tasks spent waiting to be executed in mili seconds.
+     * 
+     * @return the total queue wait time.
+     */
+    long getQueueWaitTime();
+
+    /**
+     * Gets the average time executed tasks spent waiting to be executed in mili seconds.
+     * 
+     * @return the average queue wait time.
+     */
+    long getAverageQueueWaitTime();
+
+    /**
+     * Gets an estimate of the median time executed tasks spent waiting to be executed in mili seconds.
+     * 
+     * @return the median queue wait time.
+     */
+    long getQueueWaitTimeP50();
+
+    /**
+     * Gets an estimate, in mili seconds, of the time within which 99% of executed tasks started executing.
+     * 
+     * @return the 99th percentile queue wait time.
+     */
+    long getQueueWaitTimeP99();
+
+    /**
+     * Gets the longest time an executed task spent waiting to be executed in mili seconds.
+     * 
+     * @return the maximum queue wait time.
+     */
+    long getMaximumQueueWaitTime();
+
+    /**
+     * Gets the number of tasks rejected by this executor.
+     * 
+     * @return the rejected task count.
+     */
+    long getRejectedCount();
+
     /**
      * Gets the number of active tasks within this executor.
      * 
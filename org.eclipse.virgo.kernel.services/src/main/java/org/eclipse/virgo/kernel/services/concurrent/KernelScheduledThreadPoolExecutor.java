@@ -57,9 +57,13 @@ public final class KernelScheduledThreadPoolExecutor extends ScheduledThreadPool
      * @see ScheduledThreadPoolExecutor#ScheduledThreadPoolExecutor(int, RejectedExecutionHandler)
      */
     public KernelScheduledThreadPoolExecutor(int corePoolSize, String poolName, TracingService tracingService, RejectedExecutionHandler handler) {
-        super(corePoolSize, createThreadFactory(poolName), determineHandler(handler));
+        this(corePoolSize, poolName, new ExecutorServiceDelegate(tracingService), handler);
+    }
+
+    private KernelScheduledThreadPoolExecutor(int corePoolSize, String poolName, ExecutorServiceDelegate delegate, RejectedExecutionHandler handler) {
+        super(corePoolSize, createThreadFactory(poolName), delegate.decorate(determineHandler(handler)));
         this.poolName = poolName;
-        this.delegate = new ExecutorServiceDelegate(tracingService);
+        this.delegate = delegate;
     }
 
     /**
@@ -70,6 +74,14 @@ public final class KernelScheduledThreadPoolExecutor extends ScheduledThreadPool
         super.execute(this.delegate.decorate(command));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(this.delegate.decorate(handler));
+    }
+
     /**
      * Gets an estimate of the average amount of time spent processing successful tasks.
      * 
@@ -90,6 +102,69 @@ public final class KernelScheduledThreadPoolExecutor extends ScheduledThreadPool
         return this.delegate.getExecutionTime();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long getExecutionTimeP50() {
+        return this.delegate.getExecutionTimeP50();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getExecutionTimeP99() {
+        return this.delegate.getExecutionTimeP99();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumExecutionTime() {
+        return this.delegate.getMaximumExecutionTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTime() {
+        return this.delegate.getQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAverageQueueWaitTime() {
+        return this.delegate.getAverageQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTimeP50() {
+        return this.delegate.getQueueWaitTimeP50();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTimeP99() {
+        return this.delegate.getQueueWaitTimeP99();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumQueueWaitTime() {
+        return this.delegate.getMaximumQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getRejectedCount() {
+        return this.delegate.getRejectedCount();
+    }
+
     /**
      * Get the unique name of the Pool used in this executor service
      * 
@@ -66,9 +66,15 @@ public final class KernelThreadPoolExecutor extends ThreadPoolExecutor implement
      */
     public KernelThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
         BlockingQueue<Runnable> workQueue, String poolName, TracingService tracingService, RejectedExecutionHandler handler) {
-        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, createThreadFactory(poolName), determineHandler(handler));
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, poolName, new ExecutorServiceDelegate(tracingService), handler);
+    }
+
+    private KernelThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+        BlockingQueue<Runnable> workQueue, String poolName, ExecutorServiceDelegate delegate, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, createThreadFactory(poolName),
+            delegate.decorate(determineHandler(handler)));
         this.poolName = poolName;
-        this.delegate = new ExecutorServiceDelegate(tracingService);
+        this.delegate = delegate;
     }
 
     /**
@@ -80,6 +86,14 @@ public final class KernelThreadPoolExecutor extends ThreadPoolExecutor implement
         super.execute(decorated);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(this.delegate.decorate(handler));
+    }
+
     /**
      * Gets an estimate of the average amount of time spent processing successful tasks.
      * 
@@ -100,6 +114,69 @@ public final class KernelThreadPoolExecutor extends ThreadPoolExecutor implement
         return this.delegate.getExecutionTime();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long getExecutionTimeP50() {
+        return this.delegate.getExecutionTimeP50();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getExecutionTimeP99() {
+        return this.delegate.getExecutionTimeP99();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumExecutionTime() {
+        return this.delegate.getMaximumExecutionTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTime() {
+        return this.delegate.getQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAverageQueueWaitTime() {
+        return this.delegate.getAverageQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTimeP50() {
+        return this.delegate.getQueueWaitTimeP50();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTimeP99() {
+        return this.delegate.getQueueWaitTimeP99();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumQueueWaitTime() {
+        return this.delegate.getMaximumQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getRejectedCount() {
+        return this.delegate.getRejectedCount();
+    }
+
     /**
      * Get the unique name of the Pool used in this executor service
      * 
@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.services.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations in nanoseconds. Each power of two is divided into four buckets, so a percentile is reported
+ * as the upper bound of its bucket, which is at most a quarter larger than the recorded duration. The total and maximum
+ * durations are recorded exactly.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Threadsafe. Concurrent recordings update different buckets unless their durations are close. Values read while
+ * durations are being recorded need not include the concurrent recordings.
+ *
+ */
+final class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 248; // covers every non-negative long
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final StripedCounter total = new StripedCounter();
+
+    private final AtomicLong maximum = new AtomicLong();
+
+    /**
+     * Records the supplied duration.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void record(long nanos) {
+        long duration = Math.max(nanos, 0);
+        this.buckets.incrementAndGet(bucketIndex(duration));
+        this.total.add(duration);
+
+        long maximum = this.maximum.get();
+        while (duration > maximum && !this.maximum.compareAndSet(maximum, duration)) {
+            maximum = this.maximum.get();
+        }
+    }
+
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return the count
+     */
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += this.buckets.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sum of the durations recorded.
+     *
+     * @return the total in nanoseconds
+     */
+    long getTotal() {
+        return this.total.sum();
+    }
+
+    /**
+     * Returns the longest duration recorded.
+     *
+     * @return the maximum in nanoseconds
+     */
+    long getMaximum() {
+        return this.maximum.get();
+    }
+
+    /**
+     * Returns the duration which the given percentage of the recorded durations do not exceed.
+     *
+     * @param percentile the percentage, greater than zero and at most one hundred
+     * @return the percentile in nanoseconds, or zero if no durations have been recorded
+     */
+    long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(count * percentile / 100);
+        long cumulativeCount = 0;
+        int index = 0;
+        while (index < BUCKET_COUNT - 1) {
+            cumulativeCount += counts[index];
+            if (cumulativeCount >= threshold) {
+                break;
+            }
+            index++;
+        }
+        return Math.min(bucketUpperBound(index), getMaximum());
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < 4) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) ((nanos >>> (exponent - 2)) & 3);
+        return ((exponent - 1) << 2) + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < 4) {
+            return index;
+        }
+        int shift = (index >>> 2) - 1;
+        long lowerBound = (long) (4 + (index & 3)) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.services.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which spreads its updates over a number of stripes, chosen by thread, so that threads updating the counter
+ * concurrently rarely contend. Each stripe occupies its own cache line. Reading the counter sums the stripes.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Threadsafe. A sum read while the counter is being updated need not include the concurrent updates.
+ *
+ */
+final class StripedCounter {
+
+    private static final int MAX_STRIPES = 32;
+
+    private static final int PADDING = 8; // longs per 64 byte cache line
+
+    private static final int STRIPE_MASK = stripeMask();
+
+    private final AtomicLongArray stripes = new AtomicLongArray((STRIPE_MASK + 1) * PADDING);
+
+    private static int stripeMask() {
+        int stripes = 1;
+        while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes - 1;
+    }
+
+    /**
+     * Adds the supplied value to the counter.
+     *
+     * @param value the value to add
+     */
+    void add(long value) {
+        this.stripes.addAndGet((int) (Thread.currentThread().getId() & STRIPE_MASK) * PADDING, value);
+    }
+
+    /**
+     * Returns the sum of the values added to the counter.
+     *
+     * @return the sum
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < this.stripes.length(); i += PADDING) {
+            sum += this.stripes.get(i);
+        }
+        return sum;
+    }
+}
@@ -58,6 +58,78 @@ public class StandardExecutorServiceInfo implements ExecutorServiceInfo {
         return executorService == null ? -1 : executorService.getExecutionTime();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long getExecutionTimeP50() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getExecutionTimeP50();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getExecutionTimeP99() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getExecutionTimeP99();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumExecutionTime() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getMaximumExecutionTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTime() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getAverageQueueWaitTime() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getAverageQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTimeP50() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getQueueWaitTimeP50();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getQueueWaitTimeP99() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getQueueWaitTimeP99();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMaximumQueueWaitTime() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getMaximumQueueWaitTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getRejectedCount() {
+        ExecutorServiceStatistics executorService = this.managedExecutorService.get();
+        return executorService == null ? -1 : executorService.getRejectedCount();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -13,10 +13,13 @@ package org.eclipse.virgo.kernel.services.concurrent;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import org.eclipse.virgo.kernel.services.concurrent.KernelThreadPoolExecutor;
@@ -93,6 +96,63 @@ public class KernelThreadPoolExecutorTests extends AbstractExecutorTests {
         assertTrue(executor.getExecutionTime() > 0);
     }
 
+    @Test
+    public void statisticsOnSuccessfulTasks() throws InterruptedException {
+        KernelThreadPoolExecutor executor = getExecutor();
+        for (int i = 0; i < 10; i++) {
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        e.printStackTrace();
+                    }
+                }
+
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(executor.getExecutionTimeP50() >= 20);
+        assertTrue(executor.getExecutionTimeP99() >= executor.getExecutionTimeP50());
+        assertTrue(executor.getMaximumExecutionTime() >= executor.getExecutionTimeP99());
+        assertTrue(executor.getQueueWaitTimeP99() > 0);
+        assertTrue(executor.getMaximumQueueWaitTime() >= executor.getQueueWaitTimeP99());
+        assertTrue(executor.getQueueWaitTime() >= executor.getMaximumQueueWaitTime());
+        assertTrue(executor.getAverageQueueWaitTime() > 0);
+        assertEquals(0, executor.getRejectedCount());
+    }
+
+    @Test
+    public void rejectionsCounted() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Runnable blocker = new Runnable() {
+
+            public void run() {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+
+        };
+
+        KernelThreadPoolExecutor executor = new KernelThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1), null,
+            this.tracingService);
+        executor.execute(blocker);
+        executor.execute(blocker);
+        try {
+            executor.execute(blocker);
+            fail("Task should have been rejected");
+        } catch (RejectedExecutionException e) {
+        }
+        latch.countDown();
+        assertEquals(1, executor.getRejectedCount());
+    }
+
     @Test
     public void traceNamePropagated() throws InterruptedException {
         this.tracingService.setCurrentApplicationName("foo");
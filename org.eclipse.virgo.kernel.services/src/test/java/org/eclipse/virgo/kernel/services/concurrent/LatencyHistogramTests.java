@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.services.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ */
+public class LatencyHistogramTests {
+
+    @Test
+    public void empty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotal());
+        assertEquals(0, histogram.getMaximum());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void totalAndMaximumAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(123456789);
+        histogram.record(5);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(123457794, histogram.getTotal());
+        assertEquals(123456789, histogram.getMaximum());
+        assertEquals(123456789, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesAreWithinAQuarter() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+
+        long median = histogram.getPercentile(50);
+        assertTrue(median >= 500000 && median <= 625000);
+        long ninetyNinth = histogram.getPercentile(99);
+        assertTrue(ninetyNinth >= 990000 && ninetyNinth <= 1000000);
+    }
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long nanos = 0; nanos < 1000; nanos++) {
+            int index = LatencyHistogram.bucketIndex(nanos);
+            assertTrue(nanos <= LatencyHistogram.bucketUpperBound(index));
+            assertTrue(index == 0 || nanos > LatencyHistogram.bucketUpperBound(index - 1));
+        }
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(Long.MAX_VALUE)));
+    }
+}
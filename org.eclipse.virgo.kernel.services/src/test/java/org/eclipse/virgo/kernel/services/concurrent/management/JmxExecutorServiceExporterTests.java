@@ -78,6 +78,69 @@ public class JmxExecutorServiceExporterTests {
             return 0;
         }
 
+        /** 
+         * {@inheritDoc}
+         */
+        public long getExecutionTimeP50() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getExecutionTimeP99() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getMaximumExecutionTime() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getQueueWaitTime() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getAverageQueueWaitTime() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getQueueWaitTimeP50() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getQueueWaitTimeP99() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getMaximumQueueWaitTime() {
+            return 0;
+        }
+
+        /** 
+         * {@inheritDoc}
+         */
+        public long getRejectedCount() {
+            return 0;
+        }
+
         /** 
          * {@inheritDoc}
          */
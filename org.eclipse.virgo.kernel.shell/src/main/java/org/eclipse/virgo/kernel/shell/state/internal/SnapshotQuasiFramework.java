@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.shell.state.internal;
+
+import java.net.URI;
+import java.util.List;
+
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiResolutionFailure;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
+import org.eclipse.virgo.util.osgi.manifest.BundleManifest;
+
+/**
+ * <p>
+ * SnapshotQuasiFramework presents a shared {@link QuasiStateSnapshot} as a read-only {@link QuasiFramework} so that it
+ * can be decorated by {@link StandardQuasiLiveFramework}. Operations which would modify the state are not supported.
+ * </p>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * SnapshotQuasiFramework is threadsafe
+ *
+ */
+final class SnapshotQuasiFramework implements QuasiFramework {
+
+    private final QuasiStateSnapshot snapshot;
+
+    SnapshotQuasiFramework(QuasiStateSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QuasiBundle getBundle(long bundleId) {
+        return this.snapshot.getBundle(bundleId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QuasiBundle getBundle(String name, Version version) {
+        return this.snapshot.getBundle(name, version);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<QuasiBundle> getBundles() {
+        return this.snapshot.getBundles();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QuasiBundle install(URI location, BundleManifest bundleManifest) {
+        throw new UnsupportedOperationException("Unable to install a bundle in to a state snapshot.");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<QuasiResolutionFailure> resolve() {
+        throw new UnsupportedOperationException("Unable to resolve a state snapshot.");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<QuasiResolutionFailure> diagnose(long bundleId) {
+        throw new UnsupportedOperationException("Unable to diagnose a state snapshot.");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void commit() {
+        throw new UnsupportedOperationException("Unable to commit a state snapshot.");
+    }
+}
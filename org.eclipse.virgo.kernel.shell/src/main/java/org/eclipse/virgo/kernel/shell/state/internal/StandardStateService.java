@@ -29,13 +29,15 @@ import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiResolutionFailure;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
 import org.eclipse.virgo.kernel.shell.state.QuasiLiveBundle;
 import org.eclipse.virgo.kernel.shell.state.QuasiLiveService;
 import org.eclipse.virgo.kernel.shell.state.QuasiPackage;
 import org.eclipse.virgo.kernel.shell.state.StateService;
 
 /**
- * 
+ * Queries against the live state read the shared {@link QuasiStateSnapshot} rather than a copy of the framework state.
+ * Resolver reports and queries against a state dump still use a {@link QuasiFramework} of their own.
  */
 final public class StandardStateService implements StateService {
 
@@ -104,7 +106,7 @@ final public class StandardStateService implements StateService {
      * {@inheritDoc}
      */
     public List<QuasiResolutionFailure> getResolverReport(File source, long bundleId) {
-        QuasiFramework framework = this.getQuasiFramework(source);
+        QuasiFramework framework = source == null ? this.quasiFrameworkFactory.create() : this.quasiFrameworkFactory.create(source);
         return framework.diagnose(bundleId);
     }
 
@@ -135,6 +137,10 @@ final public class StandardStateService implements StateService {
      * {@inheritDoc}
      */
     public QuasiPackage getPackages(File source, String packageName) {
+        if (packageName != null && source == null) {
+            QuasiStateSnapshot snapshot = this.quasiFrameworkFactory.getStateSnapshot();
+            return new StandardQuasiPackage(snapshot.getExportPackages(packageName), snapshot.getImportPackages(packageName), packageName);
+        }
         QuasiFramework framework = this.getQuasiFramework(source);
         if (packageName != null) {
             List<QuasiImportPackage> importers = new ArrayList<QuasiImportPackage>();
@@ -177,7 +183,7 @@ final public class StandardStateService implements StateService {
 
     private QuasiFramework getQuasiFramework(File source) {
         if (source == null) {
-            return new StandardQuasiLiveFramework(this.quasiFrameworkFactory.create(), this.bundleContext);
+            return new StandardQuasiLiveFramework(new SnapshotQuasiFramework(this.quasiFrameworkFactory.getStateSnapshot()), this.bundleContext);
         } else {
             return this.quasiFrameworkFactory.create(source);
         }
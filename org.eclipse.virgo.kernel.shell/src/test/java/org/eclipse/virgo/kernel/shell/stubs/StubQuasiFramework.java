@@ -19,8 +19,11 @@ import org.osgi.framework.BundleException;
 import org.osgi.framework.Version;
 
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiExportPackage;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiResolutionFailure;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
 import org.eclipse.virgo.teststubs.osgi.framework.StubBundle;
 import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
 import org.eclipse.virgo.teststubs.osgi.framework.StubServiceReference;
@@ -35,7 +38,7 @@ import org.eclipse.virgo.util.osgi.manifest.BundleManifest;
  * <p />
  *
  */
-public class StubQuasiFramework implements QuasiFramework{
+public class StubQuasiFramework implements QuasiFramework, QuasiStateSnapshot {
     
     private final StubBundle stubBundle; 
     private final StubBundleContext stubBundleContext;
@@ -82,4 +85,16 @@ public class StubQuasiFramework implements QuasiFramework{
         return null;
     }
 
+    public List<QuasiImportPackage> getWiredImportPackages(long bundleId) {
+        return new ArrayList<QuasiImportPackage>();
+    }
+
+    public List<QuasiExportPackage> getExportPackages(String packageName) {
+        return new ArrayList<QuasiExportPackage>();
+    }
+
+    public List<QuasiImportPackage> getImportPackages(String packageName) {
+        return new ArrayList<QuasiImportPackage>();
+    }
+
 }
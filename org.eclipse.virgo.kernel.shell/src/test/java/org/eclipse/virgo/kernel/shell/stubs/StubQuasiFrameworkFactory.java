@@ -15,6 +15,7 @@ import java.io.File;
 
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
 
 /**
  */
@@ -27,5 +28,9 @@ public class StubQuasiFrameworkFactory implements QuasiFrameworkFactory {
     public QuasiFramework create(File arg0) {
         return new StubQuasiFramework();
     }
+
+    public QuasiStateSnapshot getStateSnapshot() {
+        return new StubQuasiFramework();
+    }
     
 }
@@ -11,6 +11,7 @@
 
 package org.eclipse.virgo.kernel.userregion.internal;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Dictionary;
 import java.util.HashSet;
@@ -43,10 +44,15 @@ import org.eclipse.virgo.osgi.extensions.equinox.hooks.MetaInfResourceClassLoade
 import org.eclipse.virgo.kernel.core.Shutdown;
 import org.eclipse.virgo.kernel.deployer.core.ApplicationDeployer;
 import org.eclipse.virgo.kernel.deployer.core.DeployUriNormaliser;
+import org.eclipse.virgo.kernel.management.ManagementExporter;
 import org.eclipse.virgo.kernel.shim.scope.ScopeFactory;
+import org.eclipse.virgo.kernel.userregion.internal.equinox.ClassLoaderMonitor;
 import org.eclipse.virgo.kernel.userregion.internal.equinox.EquinoxHookRegistrar;
 import org.eclipse.virgo.kernel.userregion.internal.equinox.EquinoxOsgiFramework;
+import org.eclipse.virgo.kernel.userregion.internal.equinox.ExpandedManifestCache;
+import org.eclipse.virgo.kernel.userregion.internal.equinox.ManifestCacheMonitor;
 import org.eclipse.virgo.kernel.userregion.internal.equinox.ResolutionDumpContributor;
+import org.eclipse.virgo.kernel.userregion.internal.equinox.StandardClassLoaderMonitor;
 import org.eclipse.virgo.kernel.userregion.internal.equinox.StandardPackageAdminUtil;
 import org.eclipse.virgo.kernel.userregion.internal.equinox.TransformedManifestProvidingBundleFileWrapper;
 import org.eclipse.virgo.kernel.userregion.internal.importexpansion.ImportExpansionHandler;
@@ -79,10 +85,22 @@ public class Activator implements BundleActivator {
 
     private static final String PROPERTY_USER_REGION_COMMANDLINE_ARTIFACTS = "commandLineArtifacts";
 
+    private static final String PROPERTY_KERNEL_DOMAIN = "org.eclipse.virgo.kernel.domain";
+
+    private static final String DEFAULT_KERNEL_DOMAIN = "org.eclipse.virgo.kernel";
+
+    private static final String MANIFEST_CACHE_DIRECTORY_NAME = "manifest-cache";
+
     private final ServiceRegistrationTracker registrationTracker = new ServiceRegistrationTracker();
 
     private volatile EquinoxHookRegistrar hookRegistrar;
 
+    private volatile ImportExpansionHandler importExpansionHandler;
+
+    private volatile ManagementExporter<ManifestCacheMonitor> manifestCacheExporter;
+
+    private volatile ManagementExporter<ClassLoaderMonitor> classLoaderMonitorExporter;
+
     /**
      * {@inheritDoc}
      */
@@ -94,9 +112,12 @@ public class Activator implements BundleActivator {
         EventLogger eventLogger = OsgiFrameworkUtils.getService(context, EventLogger.class).getService();
 
         ImportExpansionHandler importExpansionHandler = createImportExpansionHandler(context, packageAdmin, repository, eventLogger);
+        this.importExpansionHandler = importExpansionHandler;
         this.registrationTracker.track(context.registerService(ImportExpander.class.getName(), importExpansionHandler, null));
 
-        TransformedManifestProvidingBundleFileWrapper bundleTransformerHandler = createBundleTransformationHandler(importExpansionHandler);
+        ExpandedManifestCache manifestCache = createManifestCache(context, repository, importExpansionHandler);
+        TransformedManifestProvidingBundleFileWrapper bundleTransformerHandler = createBundleTransformationHandler(importExpansionHandler,
+            manifestCache);
 
         OsgiFramework osgiFramework = createOsgiFramework(context, packageAdmin, bundleTransformerHandler);
         this.registrationTracker.track(context.registerService(OsgiFramework.class.getName(), osgiFramework, null));
@@ -142,8 +163,29 @@ public class Activator implements BundleActivator {
         return new StandardQuasiFrameworkFactory(bundleContext, detective, repository, bundleTransformerHandler);
     }
 
-    private TransformedManifestProvidingBundleFileWrapper createBundleTransformationHandler(ImportExpansionHandler importExpander) {
-        return new TransformedManifestProvidingBundleFileWrapper(importExpander);
+    private TransformedManifestProvidingBundleFileWrapper createBundleTransformationHandler(ImportExpansionHandler importExpander,
+        ExpandedManifestCache manifestCache) {
+        return new TransformedManifestProvidingBundleFileWrapper(importExpander, manifestCache);
+    }
+
+    private ExpandedManifestCache createManifestCache(BundleContext context, Repository repository, ImportExpansionHandler importExpansionHandler) {
+        File cacheDirectory = context.getDataFile(MANIFEST_CACHE_DIRECTORY_NAME);
+        if (cacheDirectory == null) {
+            return null;
+        }
+
+        ExpandedManifestCache manifestCache = new ExpandedManifestCache(cacheDirectory, repository, importExpansionHandler);
+
+        ManagementExporter<ManifestCacheMonitor> manifestCacheExporter = new ManagementExporter<ManifestCacheMonitor>(manifestCache,
+            getKernelDomain(context) + ":category=Control,type=ManifestCacheMonitor");
+        try {
+            manifestCacheExporter.export();
+            this.manifestCacheExporter = manifestCacheExporter;
+        } catch (RuntimeException e) {
+            // The failure has been logged and the cache is usable without being monitored.
+        }
+
+        return manifestCache;
     }
 
     private ImportExpansionHandler createImportExpansionHandler(BundleContext context, PackageAdmin packageAdmin, Repository repository,
@@ -162,7 +204,30 @@ public class Activator implements BundleActivator {
     private EquinoxHookRegistrar createHookRegistrar(BundleContext context, PackageAdmin packageAdmin,
         TransformedManifestProvidingBundleFileWrapper bundleFileWrapper) {
         MetaInfResourceClassLoaderDelegateHook hook = new MetaInfResourceClassLoaderDelegateHook(context, packageAdmin);
-        return new EquinoxHookRegistrar(bundleFileWrapper, hook);
+        return new EquinoxHookRegistrar(bundleFileWrapper, hook, createClassLoaderMonitor(context));
+    }
+
+    private StandardClassLoaderMonitor createClassLoaderMonitor(BundleContext context) {
+        StandardClassLoaderMonitor classLoaderMonitor = new StandardClassLoaderMonitor();
+
+        ManagementExporter<ClassLoaderMonitor> classLoaderMonitorExporter = new ManagementExporter<ClassLoaderMonitor>(classLoaderMonitor,
+            getKernelDomain(context) + ":category=Control,type=ClassLoaderMonitor");
+        try {
+            classLoaderMonitorExporter.export();
+            this.classLoaderMonitorExporter = classLoaderMonitorExporter;
+        } catch (RuntimeException e) {
+            // The failure has been logged and class loading is unaffected.
+        }
+
+        return classLoaderMonitor;
+    }
+
+    private static String getKernelDomain(BundleContext context) {
+        String domain = context.getProperty(PROPERTY_KERNEL_DOMAIN);
+        if (domain == null || domain.length() == 0) {
+            domain = DEFAULT_KERNEL_DOMAIN;
+        }
+        return domain;
     }
 
     private PackageAdminUtil createPackageAdminUtil(BundleContext context) {
@@ -200,6 +265,27 @@ public class Activator implements BundleActivator {
             hookRegistrar.destroy();
             this.hookRegistrar = null;
         }
+
+        ImportExpansionHandler importExpansionHandler = this.importExpansionHandler;
+
+        if (importExpansionHandler != null) {
+            importExpansionHandler.stop();
+            this.importExpansionHandler = null;
+        }
+
+        ManagementExporter<ManifestCacheMonitor> manifestCacheExporter = this.manifestCacheExporter;
+
+        if (manifestCacheExporter != null) {
+            manifestCacheExporter.unExport();
+            this.manifestCacheExporter = null;
+        }
+
+        ManagementExporter<ClassLoaderMonitor> classLoaderMonitorExporter = this.classLoaderMonitorExporter;
+
+        if (classLoaderMonitorExporter != null) {
+            classLoaderMonitorExporter.unExport();
+            this.classLoaderMonitorExporter = null;
+        }
     }
 
     private static final class ServiceScopingHookRegisteringRunnable implements Runnable {
@@ -217,7 +303,7 @@ public class Activator implements BundleActivator {
         }
 
         public void run() {
-            ScopeFactory scopeFactory = OsgiFrameworkUtils.getService(context, ScopeFactory.class).getService();
+            CachingScopeFactory scopeFactory = new CachingScopeFactory(OsgiFrameworkUtils.getService(context, ScopeFactory.class).getService());
             Shutdown shutdown = OsgiFrameworkUtils.getService(context, Shutdown.class).getService();
 
             try {
@@ -225,7 +311,9 @@ public class Activator implements BundleActivator {
 
                 ServiceScopingStrategy serviceScopingStrategy = new ServiceScopingStrategy(scopeFactory, scopeServiceRepository);
 
-                ServiceScopingRegistryHook serviceScopingRegistryHook = new ServiceScopingRegistryHook(serviceScopingStrategy);
+                ServiceScopingRegistryHook serviceScopingRegistryHook = new ServiceScopingRegistryHook(serviceScopingStrategy, scopeFactory);
+
+                context.addBundleListener(scopeFactory);
 
                 this.registrationTracker.track(context.registerService(new String[] { "org.osgi.framework.hooks.service.FindHook",
                     "org.osgi.framework.hooks.service.EventHook" }, serviceScopingRegistryHook, null));
@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.SynchronousBundleListener;
+
+import org.eclipse.virgo.kernel.shim.scope.Scope;
+import org.eclipse.virgo.kernel.shim.scope.ScopeFactory;
+
+/**
+ * {@link CachingScopeFactory} is a {@link ScopeFactory} which caches the scope names of bundles, by bundle id, and of
+ * services, by service id, so that bundle headers and service properties are not read on every service lookup.
+ * <p />
+ * Scope names rather than {@link Scope} instances are cached so that each lookup is still satisfied by the current
+ * generation of an application scope. A bundle's entry is filled when the bundle is installed and discarded when the
+ * bundle is updated or uninstalled. Each bundle entry records the revision, by last modified time, of the bundle it
+ * was determined from, so an entry put by a lookup which raced an update is not used for the updated bundle. A service's entry is discarded when the service is modified or unregistered, which
+ * {@link ServiceScopingRegistryHook} reports as it sees each service event.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Thread safe.
+ *
+ */
+final class CachingScopeFactory implements ScopeFactory, SynchronousBundleListener {
+
+    /*
+     * Marks cache entries for the global scope, which has no name. A distinct instance so it cannot equal a scope name.
+     */
+    private static final String GLOBAL_SCOPE_NAME = new String("global");
+
+    private final ScopeFactory scopeFactory;
+
+    private final ConcurrentMap<Long, BundleScopeName> bundleScopeNames = new ConcurrentHashMap<Long, BundleScopeName>();
+
+    private final ConcurrentMap<Long, String> serviceScopeNames = new ConcurrentHashMap<Long, String>();
+
+    CachingScopeFactory(ScopeFactory scopeFactory) {
+        this.scopeFactory = scopeFactory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Scope getBundleScope(Bundle bundle) {
+        Long bundleId = Long.valueOf(bundle.getBundleId());
+        long lastModified = bundle.getLastModified();
+        BundleScopeName bundleScopeName = this.bundleScopeNames.get(bundleId);
+        if (bundleScopeName == null || bundleScopeName.lastModified != lastModified) {
+            // An entry for an earlier revision, whether found here or put concurrently, is replaced by the next lookup.
+            Scope scope = this.scopeFactory.getBundleScope(bundle);
+            String scopeName = toCachedScopeName(scope);
+            if (scopeName != null) {
+                this.bundleScopeNames.put(bundleId, new BundleScopeName(lastModified, scopeName));
+                if (bundle.getState() == Bundle.UNINSTALLED) {
+                    this.bundleScopeNames.remove(bundleId);
+                }
+            }
+            return scope;
+        }
+        return toScope(bundleScopeName.scopeName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Scope getGlobalScope() {
+        return this.scopeFactory.getGlobalScope();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Scope getServiceScope(ServiceReference ref) {
+        Long serviceId = (Long) ref.getProperty(Constants.SERVICE_ID);
+        String scopeName = serviceId == null ? null : this.serviceScopeNames.get(serviceId);
+        if (scopeName == null) {
+            Scope scope = this.scopeFactory.getServiceScope(ref);
+            String cachedScopeName = toCachedScopeName(scope);
+            if (serviceId != null && cachedScopeName != null) {
+                this.serviceScopeNames.put(serviceId, cachedScopeName);
+            }
+            return scope;
+        }
+        return toScope(scopeName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Scope getApplicationScope(String applicationScopeName) {
+        return this.scopeFactory.getApplicationScope(applicationScopeName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void destroyApplicationScope(Scope applicationScope) {
+        this.scopeFactory.destroyApplicationScope(applicationScope);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void bundleChanged(BundleEvent event) {
+        Bundle bundle = event.getBundle();
+        switch (event.getType()) {
+            case BundleEvent.INSTALLED:
+                getBundleScope(bundle);
+                break;
+            case BundleEvent.UPDATED:
+            case BundleEvent.UNINSTALLED:
+                this.bundleScopeNames.remove(Long.valueOf(bundle.getBundleId()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Discards the cached scope of the service of the given event if the service has been modified. Called before the
+     * event is delivered so that the service's new properties are used.
+     *
+     * @param event the <code>ServiceEvent</code>
+     */
+    void serviceChanging(ServiceEvent event) {
+        int type = event.getType();
+        if (type == ServiceEvent.MODIFIED || type == ServiceEvent.MODIFIED_ENDMATCH) {
+            removeServiceScopeName(event.getServiceReference());
+        }
+    }
+
+    /**
+     * Discards the cached scope of the service of the given event if the service is being unregistered. Called after
+     * the event is delivered so that the entry is not filled again.
+     *
+     * @param event the <code>ServiceEvent</code>
+     */
+    void serviceChanged(ServiceEvent event) {
+        if (event.getType() == ServiceEvent.UNREGISTERING) {
+            removeServiceScopeName(event.getServiceReference());
+        }
+    }
+
+    private void removeServiceScopeName(ServiceReference ref) {
+        Long serviceId = (Long) ref.getProperty(Constants.SERVICE_ID);
+        if (serviceId != null) {
+            this.serviceScopeNames.remove(serviceId);
+        }
+    }
+
+    /**
+     * Returns the name under which the given scope is cached, or <code>null</code> if it cannot be cached.
+     */
+    private static String toCachedScopeName(Scope scope) {
+        return scope.isGlobal() ? GLOBAL_SCOPE_NAME : scope.getScopeName();
+    }
+
+    private Scope toScope(String cachedScopeName) {
+        return cachedScopeName == GLOBAL_SCOPE_NAME ? this.scopeFactory.getGlobalScope() : this.scopeFactory.getApplicationScope(cachedScopeName);
+    }
+
+    /**
+     * The cached scope name of a revision of a bundle.
+     * <p />
+     *
+     * <strong>Concurrent Semantics</strong><br />
+     *
+     * Immutable.
+     */
+    private static final class BundleScopeName {
+
+        private final long lastModified;
+
+        private final String scopeName;
+
+        private BundleScopeName(long lastModified, String scopeName) {
+            this.lastModified = lastModified;
+            this.scopeName = scopeName;
+        }
+    }
+}
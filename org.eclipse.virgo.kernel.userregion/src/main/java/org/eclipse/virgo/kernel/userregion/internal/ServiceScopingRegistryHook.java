@@ -32,8 +32,11 @@ final class ServiceScopingRegistryHook implements FindHook, EventHook {
 
     private final ServiceScopingStrategy serviceScopingStrategy;
 
-    public ServiceScopingRegistryHook(ServiceScopingStrategy serviceScopingStrategy) {
+    private final CachingScopeFactory scopeFactory;
+
+    public ServiceScopingRegistryHook(ServiceScopingStrategy serviceScopingStrategy, CachingScopeFactory scopeFactory) {
        this.serviceScopingStrategy = serviceScopingStrategy;
+       this.scopeFactory = scopeFactory;
     }
 
     @SuppressWarnings("unchecked")
@@ -44,12 +47,14 @@ final class ServiceScopingRegistryHook implements FindHook, EventHook {
     @SuppressWarnings("unchecked")
     public void event(ServiceEvent event, Collection contexts) {
         ServiceReference ref = event.getServiceReference();
+        this.scopeFactory.serviceChanging(event);
         for (Iterator iterator = contexts.iterator(); iterator.hasNext();) {
             BundleContext context = (BundleContext) iterator.next();
             if (!this.serviceScopingStrategy.isPotentiallyVisible(ref, context)) {
                 iterator.remove();
             }
         }
+        this.scopeFactory.serviceChanged(event);
     }
 
 }
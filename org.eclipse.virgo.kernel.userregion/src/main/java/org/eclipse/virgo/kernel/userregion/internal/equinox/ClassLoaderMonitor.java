@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import java.util.List;
+
+import javax.management.MXBean;
+
+/**
+ * MBean for monitoring the classes defined and transformed by the class loaders of the bundles in the user region.
+ * The totals include the class loaders of bundles which are no longer resolved, but the statistics of each class
+ * loader are reported only for bundles which are currently resolved.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations <code>must</code> be threadsafe.
+ *
+ */
+@MXBean
+public interface ClassLoaderMonitor {
+
+    /**
+     * Returns the number of classes defined by the class loaders.
+     *
+     * @return the number of classes defined
+     */
+    long getClassesDefined();
+
+    /**
+     * Returns the number of classes the class loaders passed to class file transformers.
+     *
+     * @return the number of classes transformed
+     */
+    long getClassesTransformed();
+
+    /**
+     * Returns the number of bytes of class files the class loaders passed to class file transformers.
+     *
+     * @return the number of bytes transformed
+     */
+    long getBytesTransformed();
+
+    /**
+     * Returns the time the class loaders spent in class file transformers.
+     *
+     * @return the transform time in milliseconds
+     */
+    long getTransformTime();
+
+    /**
+     * Returns the statistics of the class loader of each bundle which is currently resolved.
+     *
+     * @return a {@link ClassLoaderStatistics} for each class loader
+     */
+    List<ClassLoaderStatistics> getClassLoaderStatistics();
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The classes defined and transformed by the class loader of a bundle.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ * Thread-safe.
+ *
+ */
+public final class ClassLoaderStatistics {
+
+    private final long bundleId;
+
+    private final String bundleSymbolicName;
+
+    private final String bundleVersion;
+
+    private final long classesDefined;
+
+    private final long classesTransformed;
+
+    private final long bytesTransformed;
+
+    private final long transformTime;
+
+    /**
+     * Create a new <code>ClassLoaderStatistics</code>.
+     *
+     * @param bundleId the id of the bundle
+     * @param bundleSymbolicName the symbolic name of the bundle
+     * @param bundleVersion the version of the bundle
+     * @param classesDefined the number of classes defined
+     * @param classesTransformed the number of classes passed to class file transformers
+     * @param bytesTransformed the number of bytes passed to class file transformers
+     * @param transformTime the time spent in class file transformers in milliseconds
+     */
+    @ConstructorProperties( { "bundleId", "bundleSymbolicName", "bundleVersion", "classesDefined", "classesTransformed", "bytesTransformed",
+        "transformTime" })
+    public ClassLoaderStatistics(long bundleId, String bundleSymbolicName, String bundleVersion, long classesDefined, long classesTransformed,
+        long bytesTransformed, long transformTime) {
+        this.bundleId = bundleId;
+        this.bundleSymbolicName = bundleSymbolicName;
+        this.bundleVersion = bundleVersion;
+        this.classesDefined = classesDefined;
+        this.classesTransformed = classesTransformed;
+        this.bytesTransformed = bytesTransformed;
+        this.transformTime = transformTime;
+    }
+
+    /**
+     * Returns the id of the bundle
+     *
+     * @return the bundle's id
+     */
+    public long getBundleId() {
+        return this.bundleId;
+    }
+
+    /**
+     * Returns the symbolic name of the bundle
+     *
+     * @return the bundle's symbolic name
+     */
+    public String getBundleSymbolicName() {
+        return this.bundleSymbolicName;
+    }
+
+    /**
+     * Returns the version of the bundle
+     *
+     * @return the bundle's version
+     */
+    public String getBundleVersion() {
+        return this.bundleVersion;
+    }
+
+    /**
+     * Returns the number of classes defined by the class loader
+     *
+     * @return the number of classes defined
+     */
+    public long getClassesDefined() {
+        return this.classesDefined;
+    }
+
+    /**
+     * Returns the number of classes the class loader passed to class file transformers
+     *
+     * @return the number of classes transformed
+     */
+    public long getClassesTransformed() {
+        return this.classesTransformed;
+    }
+
+    /**
+     * Returns the number of bytes of class files the class loader passed to class file transformers
+     *
+     * @return the number of bytes transformed
+     */
+    public long getBytesTransformed() {
+        return this.bytesTransformed;
+    }
+
+    /**
+     * Returns the time the class loader spent in class file transformers
+     *
+     * @return the transform time in milliseconds
+     */
+    public long getTransformTime() {
+        return this.transformTime;
+    }
+
+    public String toString() {
+        return String.format("%s_%s: %d defined, %d transformed", this.bundleSymbolicName, this.bundleVersion, this.classesDefined,
+            this.classesTransformed);
+    }
+}
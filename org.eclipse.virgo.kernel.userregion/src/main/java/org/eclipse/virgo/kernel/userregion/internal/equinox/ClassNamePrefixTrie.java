@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+/**
+ * {@link ClassNamePrefixTrie} determines whether a class name starts with any of a set of prefixes, such as package
+ * names, by walking a trie of the prefixes' characters. The cost of a match depends on the length of the longest
+ * matching prefix rather than on the number of prefixes, and a match allocates nothing.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is immutable once constructed and therefore thread safe.
+ *
+ */
+final class ClassNamePrefixTrie {
+
+    private final Node root = new Node();
+
+    /**
+     * Creates a {@link ClassNamePrefixTrie} of the given prefixes.
+     *
+     * @param prefixes the prefixes
+     */
+    ClassNamePrefixTrie(String... prefixes) {
+        for (String prefix : prefixes) {
+            Node node = this.root;
+            for (int index = 0; index < prefix.length(); index++) {
+                node = node.getOrAddChild(prefix.charAt(index));
+            }
+            node.terminal = true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if and only if the given class name starts with one of the prefixes of this trie.
+     *
+     * @param className the class name
+     * @return <code>true</code> if and only if the class name has a prefix in this trie
+     */
+    boolean matches(String className) {
+        Node node = this.root;
+        if (node.terminal) {
+            return true;
+        }
+        for (int index = 0; index < className.length(); index++) {
+            node = node.getChild(className.charAt(index));
+            if (node == null) {
+                return false;
+            }
+            if (node.terminal) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+
+        private char[] characters = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private boolean terminal;
+
+        private Node getChild(char character) {
+            char[] characters = this.characters;
+            for (int index = 0; index < characters.length; index++) {
+                if (characters[index] == character) {
+                    return this.children[index];
+                }
+            }
+            return null;
+        }
+
+        private Node getOrAddChild(char character) {
+            Node child = getChild(character);
+            if (child == null) {
+                int length = this.characters.length;
+
+                char[] characters = new char[length + 1];
+                System.arraycopy(this.characters, 0, characters, 0, length);
+                characters[length] = character;
+
+                Node[] children = new Node[length + 1];
+                System.arraycopy(this.children, 0, children, 0, length);
+                child = new Node();
+                children[length] = child;
+
+                this.characters = characters;
+                this.children = children;
+            }
+            return child;
+        }
+    }
+}
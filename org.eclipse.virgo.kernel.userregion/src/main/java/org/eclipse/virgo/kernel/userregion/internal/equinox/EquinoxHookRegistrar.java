@@ -33,13 +33,17 @@ public final class EquinoxHookRegistrar  {
     
     private final ClassLoaderDelegateHook metaInfResourceClassLoaderDelegateHook;
 
-    public EquinoxHookRegistrar(TransformedManifestProvidingBundleFileWrapper bundleFileWrapper, ClassLoaderDelegateHook metaInfResourceClassLoaderDelegateHook) {
+    private final StandardClassLoaderMonitor classLoaderMonitor;
+
+    public EquinoxHookRegistrar(TransformedManifestProvidingBundleFileWrapper bundleFileWrapper, ClassLoaderDelegateHook metaInfResourceClassLoaderDelegateHook,
+        StandardClassLoaderMonitor classLoaderMonitor) {
         this.bundleFileWrapper = bundleFileWrapper;
         this.metaInfResourceClassLoaderDelegateHook = metaInfResourceClassLoaderDelegateHook;
+        this.classLoaderMonitor = classLoaderMonitor;
     }
 
     public void init() {
-        PluggableClassLoadingHook.getInstance().setClassLoaderCreator(new KernelClassLoaderCreator());
+        PluggableClassLoadingHook.getInstance().setClassLoaderCreator(new KernelClassLoaderCreator(this.classLoaderMonitor));
         PluggableBundleFileWrapperFactoryHook.getInstance().setBundleFileWrapper(this.bundleFileWrapper);
         PluggableDelegatingClassLoaderDelegateHook.getInstance().addDelegate(this.metaInfResourceClassLoaderDelegateHook);
     }
@@ -12,7 +12,11 @@
 package org.eclipse.virgo.kernel.userregion.internal.equinox;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.osgi.framework.internal.core.BundleHost;
@@ -127,6 +131,44 @@ public final class EquinoxUtils {
         return dependencies.toArray(new Bundle[dependencies.size()]);
     }
 
+    /**
+     * Gets the direct dependencies of the supplied {@link Bundle} which export each package visible to the bundle. A
+     * package is mapped to more than one dependency if it is split across bundles.
+     * 
+     * @param bundle the <code>Bundle</code>.
+     * @param bundleContext the {@link BundleContext} to use for service access - typically the system
+     *        <code>BundleContext</code>.
+     * @param serverAdmin the {@link PlatformAdmin} service.
+     * @return a map of package name to the direct dependencies which export the package.
+     */
+    public static Map<String, List<Bundle>> getDirectDependenciesByPackage(Bundle bundle, BundleContext bundleContext, PlatformAdmin serverAdmin) {
+        State state = serverAdmin.getState(false);
+
+        ExportPackageDescription[] exportPackageDescriptions = serverAdmin.getStateHelper().getVisiblePackages(state.getBundle(bundle.getBundleId()));
+
+        Map<String, List<Bundle>> dependencies = new HashMap<String, List<Bundle>>();
+
+        for (ExportPackageDescription exportPackageDescription : exportPackageDescriptions) {
+            BundleDescription bundleDescription = exportPackageDescription.getExporter();
+            if (bundleDescription.getBundleId() != bundle.getBundleId()) {
+                Bundle dependencyBundle = bundleContext.getBundle(bundleDescription.getBundleId());
+                // Handle an uninstalled dependent bundle gracefully.
+                if (dependencyBundle != null) {
+                    List<Bundle> packageDependencies = dependencies.get(exportPackageDescription.getName());
+                    if (packageDependencies == null) {
+                        packageDependencies = new ArrayList<Bundle>(1);
+                        dependencies.put(exportPackageDescription.getName(), packageDependencies);
+                    }
+                    if (!packageDependencies.contains(dependencyBundle)) {
+                        packageDependencies.add(dependencyBundle);
+                    }
+                }
+            }
+        }
+
+        return dependencies;
+    }
+
     /**
      * Queries whether the supplied {@link Bundle} is the system bundle.
      * 
@@ -0,0 +1,405 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.eclipse.virgo.kernel.artifact.bundle.BundleBridge;
+import org.eclipse.virgo.kernel.artifact.library.LibraryDefinition;
+import org.eclipse.virgo.kernel.userregion.internal.importexpansion.ImportExpansionHandler;
+import org.eclipse.virgo.repository.ArtifactDescriptor;
+import org.eclipse.virgo.repository.Repository;
+import org.eclipse.virgo.util.io.IOUtils;
+
+/**
+ * {@link ExpandedManifestCache} is an on-disk cache of bundle manifests whose <code>Import-Library</code> and
+ * <code>Import-Bundle</code> headers have been expanded, so that the manifests of installed bundles need not be parsed
+ * and expanded again each time the framework starts.
+ * <p />
+ * A manifest is keyed by the location of its bundle, a hash of the manifest as it appears in the bundle and, if the
+ * manifest has <code>Import-Library</code> or <code>Import-Bundle</code> headers, a fingerprint of the libraries and
+ * bundles in the {@link Repository} and a description of the installed bundles which could satisfy its
+ * <code>Import-Bundle</code> header. The repository fingerprint is taken once, when it is first needed, so that keying
+ * a manifest does not search the repository; a change to the repository therefore invalidates cached manifests when the
+ * kernel next starts. Each manifest is stored in its own file, named after its key, and replaces any
+ * manifest previously stored for the same location.
+ * <p />
+ * Failure to read or write the cache is logged and treated as a miss.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+public final class ExpandedManifestCache implements ManifestCacheMonitor {
+
+    private static final String ENTRY_SUFFIX = ".mf";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final String KEY_SEPARATOR = "-";
+
+    private static final String IMPORT_BUNDLE_HEADER = "import-bundle:";
+
+    private static final String[] EXPANDED_HEADERS = { IMPORT_BUNDLE_HEADER, "import-library:" };
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    private final Object monitor = new Object();
+
+    private final File directory;
+
+    private final Repository repository;
+
+    private final ImportExpansionHandler importExpansionHandler;
+
+    private volatile byte[] repositoryFingerprint;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong bypassCount = new AtomicLong();
+
+    /**
+     * Creates an <code>ExpandedManifestCache</code> which stores manifests in the given directory.
+     *
+     * @param directory the cache directory, which is created if necessary
+     * @param repository the <code>Repository</code> used to expand manifests, or <code>null</code> if there is none
+     * @param importExpansionHandler the <code>ImportExpansionHandler</code> used to expand manifests, or
+     *        <code>null</code> if installed bundles are not used to expand manifests
+     */
+    public ExpandedManifestCache(File directory, Repository repository, ImportExpansionHandler importExpansionHandler) {
+        this.directory = directory;
+        this.repository = repository;
+        this.importExpansionHandler = importExpansionHandler;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            this.logger.warn("Unable to create manifest cache directory '{}'", directory);
+        }
+    }
+
+    /**
+     * Returns the key of the expanded form of the given manifest.
+     *
+     * @param bundleLocation the location of the bundle containing the manifest
+     * @param manifestBytes the manifest as it appears in the bundle
+     * @return the key
+     */
+    String getKey(File bundleLocation, byte[] manifestBytes) {
+        MessageDigest manifestDigest = createDigest();
+        manifestDigest.update(manifestBytes);
+        String manifest = toLowerCaseString(manifestBytes);
+        if (hasExpandedHeaders(manifest)) {
+            manifestDigest.update(getRepositoryFingerprint());
+            if (this.importExpansionHandler != null) {
+                for (String bundleSymbolicName : getImportedBundleNames(manifestBytes, manifest)) {
+                    manifestDigest.update(toBytes(this.importExpansionHandler.describeInstalledBundles(bundleSymbolicName)));
+                }
+            }
+        }
+        return toHex(createDigest().digest(toBytes(bundleLocation.getAbsolutePath()))) + KEY_SEPARATOR + toHex(manifestDigest.digest());
+    }
+
+    /**
+     * Returns the expanded manifest with the given key, or <code>null</code> if it is not in the cache.
+     *
+     * @param key the key returned by {@link #getKey(File, byte[])}
+     * @return the expanded manifest or <code>null</code>
+     */
+    byte[] get(String key) {
+        File entry = new File(this.directory, key + ENTRY_SUFFIX);
+        byte[] manifestBytes = null;
+        if (entry.isFile()) {
+            try {
+                manifestBytes = readFully(new FileInputStream(entry));
+            } catch (IOException e) {
+                this.logger.warn("Unable to read cached manifest '" + entry + "'", e);
+            }
+        }
+        if (manifestBytes == null) {
+            this.missCount.incrementAndGet();
+        } else {
+            this.hitCount.incrementAndGet();
+        }
+        return manifestBytes;
+    }
+
+    /**
+     * Stores the given expanded manifest under the given key, replacing any manifest stored for the same bundle
+     * location.
+     *
+     * @param key the key returned by {@link #getKey(File, byte[])}
+     * @param manifestBytes the expanded manifest
+     */
+    void put(String key, byte[] manifestBytes) {
+        String locationPrefix = key.substring(0, key.indexOf(KEY_SEPARATOR) + 1);
+        File entry = new File(this.directory, key + ENTRY_SUFFIX);
+        synchronized (this.monitor) {
+            File temporaryEntry = new File(this.directory, key + TEMPORARY_SUFFIX);
+            FileOutputStream out = null;
+            try {
+                out = new FileOutputStream(temporaryEntry);
+                out.write(manifestBytes);
+                out.close();
+                out = null;
+                deleteEntries(locationPrefix);
+                if (!temporaryEntry.renameTo(entry)) {
+                    this.logger.warn("Unable to store cached manifest '{}'", entry);
+                    temporaryEntry.delete();
+                }
+            } catch (IOException e) {
+                this.logger.warn("Unable to write cached manifest '" + entry + "'", e);
+                IOUtils.closeQuietly(out);
+                temporaryEntry.delete();
+            }
+        }
+    }
+
+    /**
+     * Records a manifest read which did not consult the cache.
+     */
+    void bypassed() {
+        this.bypassCount.incrementAndGet();
+    }
+
+    private void deleteEntries(String prefix) {
+        File[] entries = this.directory.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.getName().startsWith(prefix) && entry.getName().endsWith(ENTRY_SUFFIX)) {
+                    entry.delete();
+                }
+            }
+        }
+    }
+
+    private byte[] getRepositoryFingerprint() {
+        byte[] fingerprint = this.repositoryFingerprint;
+        if (fingerprint == null) {
+            fingerprint = createRepositoryFingerprint();
+            this.repositoryFingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    private byte[] createRepositoryFingerprint() {
+        Set<String> artifacts = new TreeSet<String>();
+        if (this.repository != null) {
+            addArtifacts(BundleBridge.BRIDGE_TYPE, artifacts);
+            addArtifacts(LibraryDefinition.LIBRARY_TYPE, artifacts);
+        }
+        MessageDigest digest = createDigest();
+        for (String artifact : artifacts) {
+            digest.update(toBytes(artifact));
+        }
+        return digest.digest();
+    }
+
+    private void addArtifacts(String type, Set<String> artifacts) {
+        for (ArtifactDescriptor artifactDescriptor : this.repository.createQuery("type", type).run()) {
+            artifacts.add(artifactDescriptor.getType() + ":" + artifactDescriptor.getName() + ":" + artifactDescriptor.getVersion() + ":"
+                + artifactDescriptor.getUri() + "\n");
+        }
+    }
+
+    private static boolean hasExpandedHeaders(String lowerCaseManifest) {
+        for (String header : EXPANDED_HEADERS) {
+            if (findHeader(lowerCaseManifest, header) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int findHeader(String lowerCaseManifest, String header) {
+        if (lowerCaseManifest.startsWith(header)) {
+            return 0;
+        }
+        int index = lowerCaseManifest.indexOf("\n" + header);
+        return index < 0 ? index : index + 1;
+    }
+
+    /**
+     * Returns the symbolic names of the bundles imported by the <code>Import-Bundle</code> header of the given
+     * manifest. Only the header is read, so the manifest need not be parsed.
+     */
+    static List<String> getImportedBundleNames(byte[] manifestBytes, String lowerCaseManifest) {
+        List<String> bundleSymbolicNames = new ArrayList<String>();
+        int headerIndex = findHeader(lowerCaseManifest, IMPORT_BUNDLE_HEADER);
+        if (headerIndex < 0) {
+            return bundleSymbolicNames;
+        }
+
+        String manifest = toString(manifestBytes);
+        StringBuilder value = new StringBuilder();
+        int lineStart = headerIndex + IMPORT_BUNDLE_HEADER.length();
+        do {
+            int lineEnd = manifest.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = manifest.length();
+            }
+            value.append(manifest.substring(lineStart, lineEnd).replace("\r", ""));
+            lineStart = lineEnd + 2;
+        } while (lineStart <= manifest.length() && manifest.charAt(lineStart - 1) == ' ');
+
+        boolean quoted = false;
+        int clauseStart = 0;
+        for (int index = 0; index <= value.length(); index++) {
+            char c = index < value.length() ? value.charAt(index) : ',';
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                String clause = value.substring(clauseStart, index);
+                int parameterIndex = clause.indexOf(';');
+                String bundleSymbolicName = (parameterIndex < 0 ? clause : clause.substring(0, parameterIndex)).trim();
+                if (bundleSymbolicName.length() > 0) {
+                    bundleSymbolicNames.add(bundleSymbolicName);
+                }
+                clauseStart = index + 1;
+            }
+        }
+        return bundleSymbolicNames;
+    }
+
+    /**
+     * Reads the whole of the given stream and closes it.
+     *
+     * @param in the stream to read
+     * @return the bytes read
+     * @throws IOException if the stream cannot be read
+     */
+    static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toString(byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toLowerCaseString(byte[] bytes) {
+        return toString(bytes).toLowerCase(Locale.ENGLISH);
+    }
+
+    private static byte[] toBytes(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getBypassCount() {
+        return this.bypassCount.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getEntryCount() {
+        File[] entries = this.directory.listFiles();
+        int count = 0;
+        if (entries != null) {
+            for (File entry : entries) {
+                if (entry.getName().endsWith(ENTRY_SUFFIX)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void resetStatistics() {
+        this.hitCount.set(0);
+        this.missCount.set(0);
+        this.bypassCount.set(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void clear() {
+        synchronized (this.monitor) {
+            deleteEntries("");
+        }
+    }
+}
@@ -22,14 +22,18 @@ import java.security.ProtectionDomain;
 import java.sql.Driver;
 import java.sql.DriverManager;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.osgi.baseadaptor.BaseData;
 import org.eclipse.osgi.baseadaptor.bundlefile.BundleEntry;
@@ -51,6 +55,8 @@ import org.eclipse.virgo.kernel.osgi.framework.OsgiFrameworkUtils;
 /**
  * Extension to {@link DefaultClassLoader} that adds instrumentation support.
  * <p/>
+ * The classes defined and transformed are counted and reported to a {@link StandardClassLoaderMonitor}.
+ * <p/>
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
@@ -59,7 +65,7 @@ import org.eclipse.virgo.kernel.osgi.framework.OsgiFrameworkUtils;
  */
 public final class KernelBundleClassLoader extends DefaultClassLoader implements InstrumentableClassLoader {
 
-    private static final String[] EXCLUDED_PACKAGES = new String[] { "java.", "javax.", "sun.", "oracle." };
+    private static final ClassNamePrefixTrie EXCLUDED_PACKAGES = new ClassNamePrefixTrie("java.", "javax.", "sun.", "oracle.");
 
     private static final String HEADER_INSTRUMENT_PACKAGE = "Instrument-Package";
     
@@ -67,7 +73,7 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
 
     private final List<ClassFileTransformer> classFileTransformers = new CopyOnWriteArrayList<ClassFileTransformer>();
 
-    private final String[] instrumentedPackages;
+    private final ClassNamePrefixTrie instrumentedPackages; // null if all packages are instrumented
 
     private final String[] classpath;
 
@@ -77,6 +83,16 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
     
     private final Object monitor = new Object();
 
+    private final StandardClassLoaderMonitor classLoaderMonitor;
+
+    private final AtomicLong classesDefined = new AtomicLong();
+
+    private final AtomicLong classesTransformed = new AtomicLong();
+
+    private final AtomicLong bytesTransformed = new AtomicLong();
+
+    private final AtomicLong transformTime = new AtomicLong(); // in nanoseconds
+
     private volatile boolean instrumented;
     
     /**
@@ -87,12 +103,23 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
      * @param domain the domain for this ClassLoader</code>
      * @param bundledata the bundledata for this ClassLoader</code>
      * @param classpath the classpath for this ClassLoader</code>
+     * @param classLoaderMonitor the monitor to report this ClassLoader's statistics to
      */
-    KernelBundleClassLoader(ClassLoader parent, ClassLoaderDelegate delegate, ProtectionDomain domain, BaseData bundledata, String[] classpath) {
+    KernelBundleClassLoader(ClassLoader parent, ClassLoaderDelegate delegate, ProtectionDomain domain, BaseData bundledata, String[] classpath,
+        StandardClassLoaderMonitor classLoaderMonitor) {
         super(parent, delegate, domain, bundledata, classpath);
         this.classpath = classpath;
         this.bundleScope = OsgiFrameworkUtils.getScopeName(bundledata.getBundle());
         this.instrumentedPackages = findInstrumentedPackages(bundledata.getBundle());
+        this.classLoaderMonitor = classLoaderMonitor;
+    }
+
+    /**
+     * Registers this ClassLoader with its monitor. This is done once the ClassLoader has been constructed so that the
+     * monitor never sees a partially constructed ClassLoader.
+     */
+    void init() {
+        this.classLoaderMonitor.addClassLoader(this);
     }
 
     /**
@@ -133,7 +160,10 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
     protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
         try {
             Class loadedClass = super.loadClass(name, resolve);
-            storeClassIfDriver(loadedClass);
+            // Classes defined by this class loader were checked when they were defined.
+            if (loadedClass.getClassLoader() != this) {
+                storeClassIfDriver(loadedClass);
+            }
             return loadedClass;
         } catch (ClassNotFoundException e) {
             throw new ExtendedClassNotFoundException(this, e);
@@ -156,20 +186,31 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
         return this.classFileTransformers.size();
     }
 
+    /**
+     * Returns the statistics of the classes defined and transformed by this ClassLoader.
+     * 
+     * @return the <code>ClassLoaderStatistics</code>
+     */
+    ClassLoaderStatistics getStatistics() {
+        BaseData baseData = this.manager.getBaseData();
+        return new ClassLoaderStatistics(baseData.getBundleID(), baseData.getSymbolicName(), String.valueOf(baseData.getVersion()),
+            this.classesDefined.get(), this.classesTransformed.get(), this.bytesTransformed.get(), TimeUnit.NANOSECONDS.toMillis(this.transformTime.get()));
+    }
+
     /**
      * Finds the explicit list of packages to include in instrumentation (if specified).
      */
-    private String[] findInstrumentedPackages(Bundle bundle) {
+    private ClassNamePrefixTrie findInstrumentedPackages(Bundle bundle) {
         String headerValue = (String) bundle.getHeaders().get(HEADER_INSTRUMENT_PACKAGE);
         if (headerValue == null || headerValue.length() == 0) {
-            return new String[0];
+            return null;
         } else {
             String[] vals = headerValue.split(",");
             String[] packageNames = new String[vals.length];
             for (int x = 0; x < packageNames.length; x++) {
                 packageNames[x] = vals[x].trim();
             }
-            return packageNames;
+            return new ClassNamePrefixTrie(packageNames);
         }
     }
 
@@ -178,28 +219,7 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
     }
 
     private boolean shouldInstrument(String className) {
-        return includedForInstrumentation(className) && !excludedFromInstrumentation(className);
-    }
-
-    private boolean includedForInstrumentation(String className) {
-        if (this.instrumentedPackages.length == 0) {
-            return true;
-        }
-        for (String instrumentedPackage : this.instrumentedPackages) {
-            if (className.startsWith(instrumentedPackage)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    private boolean excludedFromInstrumentation(String className) {
-        for (String excludedPackage : EXCLUDED_PACKAGES) {
-            if (className.startsWith(excludedPackage)) {
-                return true;
-            }
-        }
-        return false;
+        return (this.instrumentedPackages == null || this.instrumentedPackages.matches(className)) && !EXCLUDED_PACKAGES.matches(className);
     }
 
     /**
@@ -222,10 +242,11 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
     public Class<?> defineClass(String name, byte[] classbytes, ClasspathEntry classpathEntry, BundleEntry entry) {
 
         byte[] transformedBytes = classbytes;
-        if (shouldInstrument(name)) {
+        if (!this.classFileTransformers.isEmpty() && shouldInstrument(name)) {
+            String transformName = name.replace('.', '/');
+            long start = System.nanoTime();
             for (ClassFileTransformer transformer : this.classFileTransformers) {
                 try {
-                    String transformName = name.replaceAll("\\.", "/");
                     byte[] transform = transformer.transform(this, transformName, null, this.domain, transformedBytes);
                     if (transform != null) {
                         transformedBytes = transform;
@@ -234,9 +255,16 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
                     throw new ClassFormatError("Error reading class from bundle entry '" + entry.getName() + "'. " + e.getMessage());
                 }
             }
+            long transformTime = System.nanoTime() - start;
+            this.transformTime.addAndGet(transformTime);
+            this.classesTransformed.incrementAndGet();
+            this.bytesTransformed.addAndGet(classbytes.length);
+            this.classLoaderMonitor.classTransformed(classbytes.length, transformTime);
         }
         try {
             Class<?> definedClass = super.defineClass(name, transformedBytes, classpathEntry, entry);
+            this.classesDefined.incrementAndGet();
+            this.classLoaderMonitor.classDefined();
             storeClassIfDriver(definedClass);
             return definedClass;
         } catch (NoClassDefFoundError e) {
@@ -258,6 +286,7 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
     
     @Override
     public void close() {
+        this.classLoaderMonitor.removeClassLoader(this);
         clearJdbcDrivers();
     }
     
@@ -309,6 +338,11 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
         return deps;
     }
 
+    private Map<String, List<Bundle>> getDependencyBundlesByPackage() {
+        Bundle bundle = this.manager.getBaseData().getBundle();
+        return EquinoxUtils.getDirectDependenciesByPackage(bundle, getBundleContext(), getPlatformAdmin());
+    }
+
     /**
      * Gets the {@link BundleContext} for this ClassLoader's {@link Bundle}.
      * 
@@ -330,6 +364,10 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
     /**
      * Throwaway classloader for OSGi bundles.
      * <p/>
+     * The dependency bundles which export each package are determined when a class is first sought in the dependencies,
+     * and a single throwaway classloader is created for each dependency bundle, so each class is defined at most once by
+     * a throwaway classloader and its dependencies.
+     * <p/>
      * 
      * <strong>Concurrent Semantics</strong><br />
      * 
@@ -342,6 +380,12 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
 
         private final ClasspathManager manager;
 
+        private final Object monitor = new Object();
+
+        private Map<String, List<Bundle>> dependencyBundlesByPackage; // protected by monitor
+
+        private final Map<Bundle, ThrowAwayClassLoader> dependencyThrowAways = new HashMap<Bundle, ThrowAwayClassLoader>(); // protected by monitor
+
         /**
          * @param manager
          */
@@ -384,7 +428,12 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
          * @param traverseDependencies should dependency bundles be checked for the class.
          */
         Class<?> findClassInternal(String name, boolean traverseDependencies) {
-            String path = name.replaceAll("\\.", "/").concat(".class");
+            Class<?> loadedClass = findLoadedClass(name);
+            if (loadedClass != null) {
+                return loadedClass;
+            }
+
+            String path = name.replace('.', '/').concat(".class");
 
             BundleEntry entry = this.manager.findLocalEntry(path);
             if (entry == null) {
@@ -400,7 +449,13 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
             } catch (IOException e) {
                 bytes = null;
             }
-            return bytes == null ? null : defineClass(name, bytes, 0, bytes.length);
+            if (bytes == null) {
+                return null;
+            }
+            synchronized (this) {
+                loadedClass = findLoadedClass(name);
+                return loadedClass != null ? loadedClass : defineClass(name, bytes, 0, bytes.length);
+            }
         }
 
         /**
@@ -410,7 +465,11 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
          * @return the located <code>Class</code>, or <code>null</code> if no <code>Class</code> can be found.
          */
         private Class<?> findClassFromImport(String name) {
-            Bundle[] deps = getDependencyBundles(false);
+            int lastDot = name.lastIndexOf('.');
+            List<Bundle> deps = getDependencyBundlesExporting(lastDot == -1 ? "" : name.substring(0, lastDot));
+            if (deps == null) {
+                return null;
+            }
             for (Bundle dep : deps) {
                 ClassLoader depClassLoader = getBundleClassLoader(dep);
                 if (depClassLoader instanceof KernelBundleClassLoader) {
@@ -419,7 +478,7 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
                     if (loadedClass != null) {
                         return loadedClass;
                     }
-                    ThrowAwayClassLoader throwAway = pbcl.createThrowAway();
+                    ThrowAwayClassLoader throwAway = getDependencyThrowAway(dep, pbcl);
                     Class<?> cls = throwAway.findClassInternal(name, false);
                     if (cls != null) {
                         return cls;
@@ -430,6 +489,32 @@ public final class KernelBundleClassLoader extends DefaultClassLoader implements
             return null;
         }
 
+        /**
+         * Gets the dependency bundles which export the given package.
+         * 
+         * @param packageName the name of the package
+         * @return the dependency bundles, or <code>null</code> if no dependency bundle exports the package.
+         */
+        List<Bundle> getDependencyBundlesExporting(String packageName) {
+            synchronized (this.monitor) {
+                if (this.dependencyBundlesByPackage == null) {
+                    this.dependencyBundlesByPackage = getDependencyBundlesByPackage();
+                }
+                return this.dependencyBundlesByPackage.get(packageName);
+            }
+        }
+
+        private ThrowAwayClassLoader getDependencyThrowAway(Bundle dep, KernelBundleClassLoader depClassLoader) {
+            synchronized (this.monitor) {
+                ThrowAwayClassLoader throwAway = this.dependencyThrowAways.get(dep);
+                if (throwAway == null) {
+                    throwAway = depClassLoader.createThrowAway();
+                    this.dependencyThrowAways.put(dep, throwAway);
+                }
+                return throwAway;
+            }
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -33,6 +33,12 @@ import org.eclipse.virgo.osgi.extensions.equinox.hooks.ClassLoaderCreator;
  */
 final class KernelClassLoaderCreator implements ClassLoaderCreator {
 
+    private final StandardClassLoaderMonitor classLoaderMonitor;
+
+    KernelClassLoaderCreator(StandardClassLoaderMonitor classLoaderMonitor) {
+        this.classLoaderMonitor = classLoaderMonitor;
+    }
+
     /**
      * Creates a {@link KernelBundleClassLoader} in place of the standard Equinox {@link DefaultClassLoader}.
      */
@@ -40,7 +46,10 @@ final class KernelClassLoaderCreator implements ClassLoaderCreator {
         final BaseData data, final String[] bundleclasspath) {
         return AccessController.doPrivileged(new PrivilegedAction<BaseClassLoader>() {
             public BaseClassLoader run() {
-                return new KernelBundleClassLoader(parent, delegate, domain, data, bundleclasspath);
+                KernelBundleClassLoader classLoader = new KernelBundleClassLoader(parent, delegate, domain, data, bundleclasspath,
+                    KernelClassLoaderCreator.this.classLoaderMonitor);
+                classLoader.init();
+                return classLoader;
             }
         });
     }
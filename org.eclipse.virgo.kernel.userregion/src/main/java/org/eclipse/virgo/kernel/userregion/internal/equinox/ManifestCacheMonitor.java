@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import javax.management.MXBean;
+
+/**
+ * MBean for monitoring the on-disk cache of bundle manifests whose <code>Import-Library</code> and
+ * <code>Import-Bundle</code> headers have been expanded.
+ * <p/>
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Implementations <code>must</code> be threadsafe.
+ *
+ */
+@MXBean
+public interface ManifestCacheMonitor {
+
+    /**
+     * Returns the number of manifests read from the cache.
+     *
+     * @return the number of cache hits
+     */
+    long getHitCount();
+
+    /**
+     * Returns the number of manifests which were not in the cache and so were parsed and expanded.
+     *
+     * @return the number of cache misses
+     */
+    long getMissCount();
+
+    /**
+     * Returns the number of manifests read without consulting the cache because they were transformed during
+     * installation.
+     *
+     * @return the number of bypassed reads
+     */
+    long getBypassCount();
+
+    /**
+     * Returns the number of manifests currently held in the cache.
+     *
+     * @return the number of cache entries
+     */
+    int getEntryCount();
+
+    /**
+     * Resets the hit, miss, and bypass counts.
+     */
+    void resetStatistics();
+
+    /**
+     * Removes all the manifests from the cache.
+     */
+    void clear();
+}
@@ -18,6 +18,7 @@ import org.eclipse.osgi.service.resolver.State;
 import org.osgi.framework.BundleContext;
 
 import org.eclipse.virgo.kernel.osgi.framework.OsgiFrameworkUtils;
+import org.eclipse.virgo.kernel.serviceability.dump.DeferredDumpContextValue;
 import org.eclipse.virgo.medic.dump.Dump;
 import org.eclipse.virgo.medic.dump.DumpContributionFailedException;
 import org.eclipse.virgo.medic.dump.DumpContributor;
@@ -48,7 +49,12 @@ public class ResolutionDumpContributor implements DumpContributor {
     public void contribute(Dump dump) throws DumpContributionFailedException {
         File outputFile = dump.createFile("osgi.zip");
         if (dump.getContext().containsKey(RESOLUTION_STATE_KEY)) {
-            resolutionStateDumper.dump(outputFile, (State) dump.getContext().get(RESOLUTION_STATE_KEY));
+            Object state = dump.getContext().get(RESOLUTION_STATE_KEY);
+            if (state instanceof DeferredDumpContextValue) {
+                // the dump was generated directly, on the requesting thread, rather than by the ThrottlingDumpGenerator
+                state = ((DeferredDumpContextValue) state).create();
+            }
+            resolutionStateDumper.dump(outputFile, (State) state);
         } else {
             resolutionStateDumper.dump(outputFile);
         }
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link StandardClassLoaderMonitor} is the default implementation of {@link ClassLoaderMonitor}. Each
+ * {@link KernelBundleClassLoader} adds itself once it has been created and removes itself when it is closed, and
+ * reports each class it defines and transforms. The totals are kept as the classes are reported, so they include the
+ * classes of class loaders which have since been closed.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+public final class StandardClassLoaderMonitor implements ClassLoaderMonitor {
+
+    private final ConcurrentMap<KernelBundleClassLoader, Boolean> classLoaders = new ConcurrentHashMap<KernelBundleClassLoader, Boolean>();
+
+    private final AtomicLong classesDefined = new AtomicLong();
+
+    private final AtomicLong classesTransformed = new AtomicLong();
+
+    private final AtomicLong bytesTransformed = new AtomicLong();
+
+    private final AtomicLong transformTime = new AtomicLong(); // in nanoseconds
+
+    void addClassLoader(KernelBundleClassLoader classLoader) {
+        this.classLoaders.put(classLoader, Boolean.TRUE);
+    }
+
+    void removeClassLoader(KernelBundleClassLoader classLoader) {
+        this.classLoaders.remove(classLoader);
+    }
+
+    void classDefined() {
+        this.classesDefined.incrementAndGet();
+    }
+
+    void classTransformed(long bytes, long nanos) {
+        this.classesTransformed.incrementAndGet();
+        this.bytesTransformed.addAndGet(bytes);
+        this.transformTime.addAndGet(nanos);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getClassesDefined() {
+        return this.classesDefined.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getClassesTransformed() {
+        return this.classesTransformed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getBytesTransformed() {
+        return this.bytesTransformed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getTransformTime() {
+        return TimeUnit.NANOSECONDS.toMillis(this.transformTime.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<ClassLoaderStatistics> getClassLoaderStatistics() {
+        List<ClassLoaderStatistics> classLoaderStatistics = new ArrayList<ClassLoaderStatistics>();
+        for (KernelBundleClassLoader classLoader : this.classLoaders.keySet()) {
+            classLoaderStatistics.add(classLoader.getStatistics());
+        }
+        return classLoaderStatistics;
+    }
+}
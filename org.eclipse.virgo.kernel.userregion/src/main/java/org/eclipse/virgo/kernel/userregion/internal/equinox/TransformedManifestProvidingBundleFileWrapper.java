@@ -39,6 +39,9 @@ import org.eclipse.virgo.util.osgi.manifest.BundleManifestFactory;
  * A <code>BundleFileWrapper</code> implementation that wraps {@link BundleFile BundleFiles} and replaces the manifest in the
  * <code>BundleFile</code> will one that has been transformed in memory.
  * <p />
+ * If an {@link ExpandedManifestCache} is supplied, manifests which are not being transformed by a
+ * {@link ManifestTransformer} are read from the cache, and stored in it once they have been expanded.
+ * <p />
  *
  * <strong>Concurrent Semantics</strong><br />
  * Thread-safe.
@@ -50,7 +53,13 @@ public class TransformedManifestProvidingBundleFileWrapper implements BundleFile
     
     private final ThreadLocal<Stack<ManifestTransformer>> manifestTransformer;
     
+    private final ExpandedManifestCache manifestCache;
+    
     public TransformedManifestProvidingBundleFileWrapper(ImportExpander importExpander) {
+        this(importExpander, null);
+    }
+    
+    public TransformedManifestProvidingBundleFileWrapper(ImportExpander importExpander, ExpandedManifestCache manifestCache) {
         this.manifestTransformer = new ThreadLocal<Stack<ManifestTransformer>>() {
             @Override
             public Stack<ManifestTransformer> initialValue() {
@@ -58,6 +67,7 @@ public class TransformedManifestProvidingBundleFileWrapper implements BundleFile
             }
         };
         this.importExpander = importExpander;
+        this.manifestCache = manifestCache;
     }
 
     /** 
@@ -136,37 +146,38 @@ public class TransformedManifestProvidingBundleFileWrapper implements BundleFile
                             manifestTransformer = null;
                         }
                                               
-                        BundleManifest originalManifest;
+                        byte[] originalManifestBytes = null;
                         
                         if (entry != null) {
                             try {
-                            	InputStreamReader manifestReader = new InputStreamReader(entry.getInputStream());
-                                originalManifest = BundleManifestFactory.createBundleManifest(manifestReader);
-                                manifestReader.close();
+                                originalManifestBytes = ExpandedManifestCache.readFully(entry.getInputStream());
                             } catch (IOException ioe) {
                                 throw new RuntimeException(ioe);
                             }
-                        } else {
-                            originalManifest = BundleManifestFactory.createBundleManifest();
-                        } 
+                        }
                         
-                        BundleManifest transformedManifest = originalManifest;
+                        String cacheKey = null;
+                        ExpandedManifestCache manifestCache = TransformedManifestProvidingBundleFileWrapper.this.manifestCache;
+                        File baseFile = this.bundleFile.getBaseFile();
                         
-                        if (manifestTransformer != null) {
-                            transformedManifest = manifestTransformer.transform(originalManifest);                                                        
+                        if (manifestCache != null) {
+                            if (manifestTransformer == null && originalManifestBytes != null && baseFile != null) {
+                                cacheKey = manifestCache.getKey(baseFile, originalManifestBytes);
+                            } else {
+                                manifestCache.bypassed();
+                            }
                         }
                         
-                        try {
-                            this.importExpander.expandImports(Collections.singletonList(transformedManifest));
-                        } catch (UnableToSatisfyDependenciesException utsde) {
-                            throw new RuntimeException(utsde);
+                        byte[] manifestBytes = cacheKey == null ? null : manifestCache.get(cacheKey);
+                        
+                        if (manifestBytes == null) {
+                            manifestBytes = expandManifest(originalManifestBytes, manifestTransformer);
+                            if (cacheKey != null) {
+                                manifestCache.put(cacheKey, manifestBytes);
+                            }
                         }
                         
-                        try {
-                            this.manifestEntry = new TransformedManifestBundleEntry(transformedManifest);
-                        } catch (IOException e) {
-                            throw new RuntimeException(e);
-                        }                
+                        this.manifestEntry = new TransformedManifestBundleEntry(manifestBytes);
                     }
                 }
                 
@@ -176,6 +187,42 @@ public class TransformedManifestProvidingBundleFileWrapper implements BundleFile
             }
         }
 
+        private byte[] expandManifest(byte[] originalManifestBytes, ManifestTransformer manifestTransformer) {
+            BundleManifest originalManifest;
+            
+            if (originalManifestBytes != null) {
+                try {
+                    InputStreamReader manifestReader = new InputStreamReader(new ByteArrayInputStream(originalManifestBytes));
+                    originalManifest = BundleManifestFactory.createBundleManifest(manifestReader);
+                    manifestReader.close();
+                } catch (IOException ioe) {
+                    throw new RuntimeException(ioe);
+                }
+            } else {
+                originalManifest = BundleManifestFactory.createBundleManifest();
+            } 
+            
+            BundleManifest transformedManifest = originalManifest;
+            
+            if (manifestTransformer != null) {
+                transformedManifest = manifestTransformer.transform(originalManifest);                                                        
+            }
+            
+            try {
+                this.importExpander.expandImports(Collections.singletonList(transformedManifest));
+            } catch (UnableToSatisfyDependenciesException utsde) {
+                throw new RuntimeException(utsde);
+            }
+            
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                transformedManifest.write(new OutputStreamWriter(baos));
+                return baos.toByteArray();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
         /**
          * {@inheritDoc}
          */
@@ -237,11 +284,8 @@ public class TransformedManifestProvidingBundleFileWrapper implements BundleFile
         
         private final long time;
         
-        private TransformedManifestBundleEntry(BundleManifest transformedManifest) throws IOException {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            transformedManifest.write(new OutputStreamWriter(baos));
-            
-            this.manifestBytes = baos.toByteArray();
+        private TransformedManifestBundleEntry(byte[] manifestBytes) {
+            this.manifestBytes = manifestBytes;
             
             time = System.currentTimeMillis();
         }
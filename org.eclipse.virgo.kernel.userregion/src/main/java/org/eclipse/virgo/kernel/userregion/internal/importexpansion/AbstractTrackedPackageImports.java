@@ -12,6 +12,7 @@
 package org.eclipse.virgo.kernel.userregion.internal.importexpansion;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,10 +28,16 @@ import org.eclipse.virgo.util.osgi.manifest.Resolution;
 /**
  * {@link AbstractTrackedPackageImports} provides the general implementations of {@link TrackedPackageImports}.
  * <p />
+ * The version and bundle version ranges of the merged package imports are held in parsed form so that merging does not
+ * parse them again. A package import's attributes are updated only when merging changes them, and a merged version
+ * range is rendered into the version attribute only when the merged package imports are read. A package import which
+ * was merged in from another <code>TrackedPackageImports</code> is copied before it is first changed, so merging never
+ * modifies the package imports being merged.
+ * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
- * This class is thread safe.
+ * This class is not thread safe. See {@link TrackedPackageImports}.
  * 
  */
 abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
@@ -43,16 +50,12 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
 
     private static final String BUNDLE_VERSION_ATTRIBUTE_NAME = "bundle-version";
 
-    private static final Object tieMonitor = new Object(); // locking for hash clashes in isEquivalent
-
-    private final Object monitor = new Object();
-
     /**
-     * The current merged package imports are held as a map of package name to {@link ImportedPackage}. Each package
-     * import contains one and only one imported package name which corresponds to the package name used to index the
-     * package import in the map. The map is valid if and only if mergeException is <code>null</code>.
+     * The current merged package imports are held as a map of package name to {@link MergedImport}. Each package import
+     * contains one and only one imported package name which corresponds to the package name used to index the package
+     * import in the map. The map is valid if and only if mergeException is <code>null</code>.
      */
-    protected final Map<String, ImportedPackage> mergedPackageImports = new HashMap<String, ImportedPackage>();
+    private final Map<String, MergedImport> mergedImports = new HashMap<String, MergedImport>();
 
     private ImportMergeException mergeException = null;
 
@@ -64,23 +67,23 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
      * @param initialPackageImports a map of package name to {@link ImportedPackage}
      */
     AbstractTrackedPackageImports(Map<String, ImportedPackage> packageImports) {
-        this.mergedPackageImports.putAll(packageImports);
+        for (Entry<String, ImportedPackage> packageImport : packageImports.entrySet()) {
+            this.mergedImports.put(packageImport.getKey(), new MergedImport(packageImport.getValue()));
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     public void merge(TrackedPackageImports importsToMerge) throws ImportMergeException {
-        synchronized (this.monitor) {
-            checkMergeException();
-            try {
-                // Add the new imports before merging so they are included in any diagnostics.
-                sources.add(importsToMerge);
-                doMerge(importsToMerge);
-            } catch (ImportMergeException e) {
-                this.mergeException = e;
-                throw e;
-            }
+        checkMergeException();
+        try {
+            // Add the new imports before merging so they are included in any diagnostics.
+            sources.add(importsToMerge);
+            doMerge(importsToMerge);
+        } catch (ImportMergeException e) {
+            this.mergeException = e;
+            throw e;
         }
     }
 
@@ -88,56 +91,127 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
      * Merge the given package imports into this collection of package imports. If there is a conflict, issue
      * diagnostics and throw {@link ImportMergeException}.
      * <p />
-     * Pre-condition: the monitor is held and the current merged imports have no conflicts.
+     * Pre-condition: the current merged imports have no conflicts.
      * 
      * @param importsToMerge
      * @throws ImportMergeException
      */
     private void doMerge(TrackedPackageImports importsToMerge) throws ImportMergeException {
-        List<ImportedPackage> mergedImportsToMerge = importsToMerge.getMergedImports();
-        for (ImportedPackage packageImportToMerge : mergedImportsToMerge) {
-            String pkg = packageImportToMerge.getPackageName();
-            ImportedPackage mergedPackageImport = this.mergedPackageImports.get(pkg);
-            if (mergedPackageImport == null) {
-                this.mergedPackageImports.put(pkg, packageImportToMerge);
-            } else {
-                mergePackageImport(mergedPackageImport, packageImportToMerge);
+        if (importsToMerge instanceof AbstractTrackedPackageImports) {
+            AbstractTrackedPackageImports abstractImportsToMerge = (AbstractTrackedPackageImports) importsToMerge;
+            abstractImportsToMerge.checkMergeException();
+            for (MergedImport mergedImportToMerge : abstractImportsToMerge.mergedImports.values()) {
+                doMerge(mergedImportToMerge);
+            }
+        } else {
+            for (ImportedPackage packageImportToMerge : importsToMerge.getMergedImports()) {
+                doMerge(new MergedImport(packageImportToMerge));
             }
         }
+    }
 
+    private void doMerge(MergedImport mergedImportToMerge) throws ImportMergeException {
+        String pkg = mergedImportToMerge.packageImport.getPackageName();
+        MergedImport mergedImport = this.mergedImports.get(pkg);
+        if (mergedImport == null) {
+            this.mergedImports.put(pkg, mergedImportToMerge.share());
+        } else {
+            mergePackageImport(mergedImport, mergedImportToMerge);
+        }
     }
 
     /**
      * Merge the given source package import into the given target package import. Throw {@link ImportMergeException} if
-     * and only if there is a merge clash.
+     * and only if there is a merge clash. The target is checked in full before it is changed.
      * 
-     * @param targetPackageImport the package import to be merged and updated
-     * @param sourceImportToMerge the package import to be merged in
+     * @param target the package import to be merged and updated
+     * @param source the package import to be merged in
      * @throws ImportMergeException thrown if there is a merge clash
      */
-    private void mergePackageImport(ImportedPackage targetPackageImport, ImportedPackage sourceImportToMerge) throws ImportMergeException {
-        mergeAttributes(targetPackageImport, sourceImportToMerge);
-        mergeDirectives(targetPackageImport, sourceImportToMerge);
+    private void mergePackageImport(MergedImport target, MergedImport source) throws ImportMergeException {
+        ImportedPackage targetPackageImport = target.packageImport;
+
+        VersionRange versionRange = mergeVersionRanges(target, source);
+        boolean versionChanged = versionRange != null && (!target.versionWritten || !versionRange.equals(target.versionRange));
+
+        VersionRange bundleVersionRange = mergeBundleVersionRanges(target, source);
+        boolean bundleVersionChanged = !target.bundleVersionWritten || !bundleVersionRange.equals(target.bundleVersionRange);
+
+        Map<String, String> attributesToAdd = getAttributesToAdd(targetPackageImport, source.packageImport);
+
+        boolean resolutionChanged = targetPackageImport.getResolution() == Resolution.OPTIONAL
+            && source.packageImport.getResolution() == Resolution.MANDATORY;
+
+        if (versionChanged || bundleVersionChanged || !attributesToAdd.isEmpty() || resolutionChanged) {
+            MergedImport ownedTarget = target.own();
+            if (ownedTarget != target) {
+                this.mergedImports.put(targetPackageImport.getPackageName(), ownedTarget);
+            }
+            ownedTarget.update(versionChanged ? versionRange : null, bundleVersionChanged ? bundleVersionRange : null, attributesToAdd,
+                resolutionChanged);
+        }
+    }
+
+    /**
+     * Merge the version ranges of the given source and target. If the version ranges are disjoint, throw
+     * {@link ImportMergeException}.
+     * 
+     * @return the merged version range or <code>null</code> if the source does not specify a version range
+     * @throws ImportMergeException
+     */
+    private VersionRange mergeVersionRanges(MergedImport target, MergedImport source) throws ImportMergeException {
+        VersionRange sourceVersionRange = source.versionRange;
+        if (sourceVersionRange == null) {
+            return null;
+        }
+        VersionRange targetVersionRange = target.versionRange;
+        if (targetVersionRange == null) {
+            return sourceVersionRange;
+        }
+        VersionRange mergedVersionRange = VersionRange.intersection(sourceVersionRange, targetVersionRange);
+        if (mergedVersionRange.isEmpty()) {
+            throw new ImportMergeException(target.packageImport.getPackageName(), getPackageSources(target.packageImport),
+                "disjoint package version ranges");
+        }
+        return mergedVersionRange;
+    }
 
+    /**
+     * Merge the bundle version ranges of the given source and target. If the bundle version ranges are disjoint, throw
+     * {@link ImportMergeException}.
+     * 
+     * @return the merged bundle version range
+     * @throws ImportMergeException
+     */
+    private VersionRange mergeBundleVersionRanges(MergedImport target, MergedImport source) throws ImportMergeException {
+        VersionRange sourceVersionRange = source.bundleVersionRange;
+        VersionRange targetVersionRange = target.bundleVersionRange;
+        if (targetVersionRange == null) {
+            return sourceVersionRange;
+        }
+        VersionRange mergedVersionRange = VersionRange.intersection(sourceVersionRange, targetVersionRange);
+        if (mergedVersionRange.isEmpty()) {
+            throw new ImportMergeException(target.packageImport.getPackageName(), getPackageSources(target.packageImport),
+                "disjoint bundle version ranges " + sourceVersionRange.toString() + " and " + targetVersionRange.toString());
+        }
+        return mergedVersionRange;
     }
 
     /**
-     * Merge the attributes of the source package import into those of the target package import. Throw
-     * {@link ImportMergeException} if and only if there is a merge clash.
+     * Get the attributes, other than version attributes, of the source package import which the target package import
+     * lacks. Throw {@link ImportMergeException} if and only if the package imports have conflicting attribute values.
      * 
      * @param targetPackageImport the package import to be merged and updated
      * @param sourceImportToMerge the package import to be merged in
+     * @return the attributes to be added to the target package import
      * @throws ImportMergeException thrown if there is a merge clash
      */
-    private void mergeAttributes(ImportedPackage targetPackageImport, ImportedPackage sourceImportToMerge) throws ImportMergeException {
+    private Map<String, String> getAttributesToAdd(ImportedPackage targetPackageImport, ImportedPackage sourceImportToMerge)
+        throws ImportMergeException {
         Map<String, String> targetAttributes = targetPackageImport.getAttributes();
-        Map<String, String> sourceAttributes = sourceImportToMerge.getAttributes();
-
-        mergeVersionRanges(targetPackageImport, sourceImportToMerge);
+        Map<String, String> attributesToAdd = Collections.emptyMap();
 
-        mergeBundleVersionRanges(targetPackageImport, sourceImportToMerge);
-
-        for (Entry<String, String> sourceAttributeEntry : sourceAttributes.entrySet()) {
+        for (Entry<String, String> sourceAttributeEntry : sourceImportToMerge.getAttributes().entrySet()) {
             String sourceAttributeName = sourceAttributeEntry.getKey();
             if (!isVersionAttribute(sourceAttributeName)) {
                 String sourceAttributeValue = sourceAttributeEntry.getValue();
@@ -149,38 +223,14 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
                                 + "'");
                     }
                 } else {
-                    targetAttributes.put(sourceAttributeName, sourceAttributeValue);
-                }
-            }
-        }
-    }
-
-    /**
-     * Merge the version ranges of the given source and target attributes and update the target attributes if necessary
-     * with the merged range. If the version ranges are disjoint, throw {@link ImportMergeException}.
-     * 
-     * @param targetPackageImport the package import to be merged and updated
-     * @param sourceAttributes
-     * @throws ImportMergeException
-     */
-    private void mergeVersionRanges(ImportedPackage targetPackageImport, ImportedPackage sourceImportToMerge) throws ImportMergeException {
-        Map<String, String> sourceAttributes = sourceImportToMerge.getAttributes();
-        VersionRange sourceVersionRange = getVersionRange(sourceAttributes);
-        if (sourceVersionRange != null) {
-            Map<String, String> targetAttributes = targetPackageImport.getAttributes();
-            VersionRange targetVersionRange = getVersionRange(targetAttributes);
-            VersionRange mergedVersionRange;
-            if (targetVersionRange == null) {
-                mergedVersionRange = sourceVersionRange;
-            } else {
-                mergedVersionRange = VersionRange.intersection(sourceVersionRange, targetVersionRange);
-                if (mergedVersionRange.isEmpty()) {
-                    throw new ImportMergeException(targetPackageImport.getPackageName(), getPackageSources(targetPackageImport),
-                        "disjoint package version ranges");
+                    if (attributesToAdd.isEmpty()) {
+                        attributesToAdd = new HashMap<String, String>();
+                    }
+                    attributesToAdd.put(sourceAttributeName, sourceAttributeValue);
                 }
             }
-            targetAttributes.put(VERSION_ATTRIBUTE_NAME, mergedVersionRange.toParseString());
         }
+        return attributesToAdd;
     }
 
     /**
@@ -189,7 +239,7 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
      * @param attributes the attributes which may specify a version range
      * @return the version range or <code>null</code> if no version range is specified
      */
-    private VersionRange getVersionRange(Map<String, String> attributes) {
+    private static VersionRange getVersionRange(Map<String, String> attributes) {
         String versionRangeString = attributes.get(VERSION_ATTRIBUTE_NAME);
         if (versionRangeString == null) {
             versionRangeString = attributes.get(VERSION_ALTERNATE_ATTRIBUTE_NAME);
@@ -197,32 +247,6 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
         return versionRangeString == null ? null : new VersionRange(versionRangeString);
     }
 
-    /**
-     * Merge the bundle version ranges of the given source and target attributes and update the target attributes if
-     * necessary with the merged range. If the bundle version ranges are disjoint, throw {@link ImportMergeException}.
-     * 
-     * @param targetPackageImport the package import to be merged and updated
-     * @param sourceAttributes
-     * @throws ImportMergeException
-     */
-    private void mergeBundleVersionRanges(ImportedPackage targetPackageImport, ImportedPackage sourceImportToMerge) throws ImportMergeException {
-        VersionRange sourceVersionRange = sourceImportToMerge.getBundleVersion();
-
-        // Map<String, String> targetAttributes = targetPackageImport.getAttributes();
-        VersionRange targetVersionRange = targetPackageImport.getBundleVersion();
-        VersionRange mergedVersionRange;
-        if (targetVersionRange == null) {
-            mergedVersionRange = sourceVersionRange;
-        } else {
-            mergedVersionRange = VersionRange.intersection(sourceVersionRange, targetVersionRange);
-            if (mergedVersionRange.isEmpty()) {
-                throw new ImportMergeException(targetPackageImport.getPackageName(), getPackageSources(targetPackageImport),
-                    "disjoint bundle version ranges " + sourceVersionRange.toString() + " and " + targetVersionRange.toString());
-            }
-        }
-        targetPackageImport.setBundleVersion(mergedVersionRange);
-    }
-
     /**
      * Return <code>true</code> if and only if the given attribute name is that of a version or bundle version
      * attribute.
@@ -235,18 +259,6 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
             || BUNDLE_VERSION_ATTRIBUTE_NAME.equals(attributeName);
     }
 
-    /**
-     * Merge the directives of the source package import into those of the target package import.
-     * 
-     * @param targetPackageImport
-     * @param sourceImportToMerge
-     */
-    private void mergeDirectives(ImportedPackage targetPackageImport, ImportedPackage sourceImportToMerge) {
-        if (targetPackageImport.getResolution() == Resolution.OPTIONAL && sourceImportToMerge.getResolution() == Resolution.MANDATORY) {
-            targetPackageImport.setResolution(Resolution.MANDATORY);
-        }
-    }
-
     /**
      * Get a string describing the sources of the package of the given package import. This should help in diagnosing
      * the root cause of a conflicting merge.
@@ -262,40 +274,36 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
      * {@inheritDoc}
      */
     public String getSources(String pkg) {
-        synchronized (this.monitor) {
-            StringBuilder sourcesDescription = new StringBuilder();
-            boolean first = true;
-            String source = getSource(pkg);
-            if (source != null) {
-                sourcesDescription.append(source);
-                first = false;
-            }
-            for (TrackedPackageImports trackedPackageImports : this.sources) {
-                String sources = trackedPackageImports.getSources(pkg);
-                if (sources != null) {
-                    if (!first) {
-                        sourcesDescription.append(SOURCE_SEPARATOR);
-                    }
-                    sourcesDescription.append(sources);
-                    first = false;
+        StringBuilder sourcesDescription = new StringBuilder();
+        boolean first = true;
+        String source = getSource(pkg);
+        if (source != null) {
+            sourcesDescription.append(source);
+            first = false;
+        }
+        for (TrackedPackageImports trackedPackageImports : this.sources) {
+            String sources = trackedPackageImports.getSources(pkg);
+            if (sources != null) {
+                if (!first) {
+                    sourcesDescription.append(SOURCE_SEPARATOR);
                 }
+                sourcesDescription.append(sources);
+                first = false;
             }
-            return first ? null : sourcesDescription.toString();
         }
+        return first ? null : sourcesDescription.toString();
     }
 
     /**
      * {@inheritDoc}
      */
     public final List<ImportedPackage> getMergedImports() throws ImportMergeException {
-        synchronized (this.monitor) {
-            checkMergeException();
-            List<ImportedPackage> mergedImports = new ArrayList<ImportedPackage>();
-            for (ImportedPackage packageImport : this.mergedPackageImports.values()) {
-                mergedImports.add(packageImport);
-            }
-            return mergedImports;
+        checkMergeException();
+        List<ImportedPackage> mergedImports = new ArrayList<ImportedPackage>(this.mergedImports.size());
+        for (MergedImport mergedImport : this.mergedImports.values()) {
+            mergedImports.add(mergedImport.render());
         }
+        return mergedImports;
     }
 
     /**
@@ -330,9 +338,7 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
      * {@inheritDoc}
      */
     public boolean isEmpty() {
-        synchronized (this.monitor) {
-            return this.mergedPackageImports.isEmpty();
-        }
+        return this.mergedImports.isEmpty();
     }
 
     /**
@@ -345,32 +351,108 @@ abstract class AbstractTrackedPackageImports implements TrackedPackageImports {
 
         Assert.isInstanceOf(AbstractTrackedPackageImports.class, otherTrackedPackageImports,
             "otherTrackedPackageImports must be of type AbstractTrackedPackageImports");
-        AbstractTrackedPackageImports otherAbstractTrackedPackageImports = (AbstractTrackedPackageImports) otherTrackedPackageImports;
-        // Lock the object monitors in a predictable order to avoid deadlocks.
-        // Use hash to determine ordering, and tieMonitor (static monitor) when hashes coincide.
-        int thisHash = System.identityHashCode(this);
-        int otherHash = System.identityHashCode(otherTrackedPackageImports);
-        if (thisHash > otherHash) {
-            synchronized (this.monitor) {
-                synchronized (otherAbstractTrackedPackageImports.monitor) {
-                    return this.mergedPackageImports.equals(otherAbstractTrackedPackageImports.mergedPackageImports);
-                }
+        Map<String, MergedImport> otherMergedImports = ((AbstractTrackedPackageImports) otherTrackedPackageImports).mergedImports;
+        if (this.mergedImports.size() != otherMergedImports.size()) {
+            return false;
+        }
+        for (Entry<String, MergedImport> mergedImport : this.mergedImports.entrySet()) {
+            MergedImport otherMergedImport = otherMergedImports.get(mergedImport.getKey());
+            if (otherMergedImport == null || !mergedImport.getValue().render().equals(otherMergedImport.render())) {
+                return false;
             }
-        } else if (thisHash < otherHash) {
-            synchronized (otherAbstractTrackedPackageImports.monitor) {
-                synchronized (this.monitor) {
-                    return this.mergedPackageImports.equals(otherAbstractTrackedPackageImports.mergedPackageImports);
-                }
+        }
+        return true;
+    }
+
+    /**
+     * A merged package import together with its parsed version ranges.
+     */
+    private static final class MergedImport {
+
+        private final ImportedPackage packageImport;
+
+        private final boolean owned;
+
+        private VersionRange versionRange;
+
+        private VersionRange bundleVersionRange;
+
+        /*
+         * Whether or not the package import's attributes are known to hold the parsed version ranges in the normal form
+         * written by a merge.
+         */
+        private boolean versionWritten;
+
+        private boolean bundleVersionWritten;
+
+        /*
+         * Whether or not the merged version range has yet to be rendered into the package import's attributes.
+         */
+        private boolean versionRenderPending;
+
+        private MergedImport(ImportedPackage packageImport) {
+            this(packageImport, true, getVersionRange(packageImport.getAttributes()), packageImport.getBundleVersion(), false, false);
+        }
+
+        private MergedImport(ImportedPackage packageImport, boolean owned, VersionRange versionRange, VersionRange bundleVersionRange,
+            boolean versionWritten, boolean bundleVersionWritten) {
+            this.packageImport = packageImport;
+            this.owned = owned;
+            this.versionRange = versionRange;
+            this.bundleVersionRange = bundleVersionRange;
+            this.versionWritten = versionWritten;
+            this.bundleVersionWritten = bundleVersionWritten;
+        }
+
+        /**
+         * Returns a merged import sharing this merged import's package import, which the returned merged import does not
+         * own.
+         */
+        private MergedImport share() {
+            render();
+            return new MergedImport(this.packageImport, false, this.versionRange, this.bundleVersionRange, this.versionWritten,
+                this.bundleVersionWritten);
+        }
+
+        /**
+         * Returns this merged import if it owns its package import or, otherwise, a merged import owning a copy of it.
+         */
+        private MergedImport own() {
+            if (this.owned) {
+                return this;
             }
-        } else {
-            synchronized (tieMonitor) {
-                synchronized (otherAbstractTrackedPackageImports.monitor) {
-                    synchronized (this.monitor) {
-                        return this.mergedPackageImports.equals(otherAbstractTrackedPackageImports.mergedPackageImports);
-                    }
-                }
+            ImportedPackage copy = BundleManifestProcessor.copyImportedPackages(Collections.singletonList(render())).get(0);
+            return new MergedImport(copy, true, this.versionRange, this.bundleVersionRange, this.versionWritten, this.bundleVersionWritten);
+        }
+
+        private void update(VersionRange versionRange, VersionRange bundleVersionRange, Map<String, String> attributesToAdd,
+            boolean resolutionChanged) {
+            if (versionRange != null) {
+                this.versionRange = versionRange;
+                this.versionWritten = true;
+                this.versionRenderPending = true;
+            }
+            if (bundleVersionRange != null) {
+                this.packageImport.setBundleVersion(bundleVersionRange);
+                this.bundleVersionRange = bundleVersionRange;
+                this.bundleVersionWritten = true;
+            }
+            this.packageImport.getAttributes().putAll(attributesToAdd);
+            if (resolutionChanged) {
+                this.packageImport.setResolution(Resolution.MANDATORY);
             }
         }
-    }
 
+        /**
+         * Renders any merged version range which has not yet been rendered into the package import's attributes and
+         * returns the package import.
+         */
+        private ImportedPackage render() {
+            if (this.versionRenderPending) {
+                this.packageImport.getAttributes().put(VERSION_ATTRIBUTE_NAME, this.versionRange.toParseString());
+                this.versionRenderPending = false;
+            }
+            return this.packageImport;
+        }
+    }
 }
@@ -111,6 +111,25 @@ class BundleManifestProcessor {
             warnings.toArray(new Warning[warnings.size()]));
     }
 
+    /**
+     * Creates a copy of each of the supplied {@link ImportedPackage ImportedPackages}, including its attributes and
+     * directives, so that the copies may be modified without affecting the originals.
+     *
+     * @param importedPackages the <code>ImportedPackages</code> to copy
+     * @return the copies
+     */
+    static List<ImportedPackage> copyImportedPackages(List<ImportedPackage> importedPackages) {
+        BundleManifest manifest = BundleManifestFactory.createBundleManifest();
+
+        for (ImportedPackage importedPackage : importedPackages) {
+            ImportedPackage copy = manifest.getImportPackage().addImportedPackage(importedPackage.getPackageName());
+            copy.getAttributes().putAll(importedPackage.getAttributes());
+            copy.getDirectives().putAll(importedPackage.getDirectives());
+        }
+
+        return manifest.getImportPackage().getImportedPackages();
+    }
+
     private static void doCreateImportedPackageForEachExportedPackage(List<ExportedPackage> packageExports, String bundleSymbolicName,
         String version, VersionRange versionRange, BundleManifest bundleManifest) {
         for (ExportedPackage packageExport : packageExports) {
@@ -22,7 +22,7 @@ import org.eclipse.virgo.util.osgi.manifest.ImportedPackage;
  *
  * <strong>Concurrent Semantics</strong><br />
  *
- * This class is thread safe.
+ * This class is not thread safe. See {@link TrackedPackageImports}.
  *
  */
 class CollectingTrackedPackageImports extends AdditionalTrackedPackageImports {
@@ -26,7 +26,7 @@ import org.eclipse.virgo.util.osgi.manifest.ImportedPackage;
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
- * This class is thread safe.
+ * This class is not thread safe. See {@link TrackedPackageImports}.
  * 
  */
 final class ContainingTrackedPackageImports extends AdditionalTrackedPackageImports {
@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.importexpansion;
+
+import java.util.List;
+
+import org.eclipse.virgo.util.osgi.manifest.ImportedPackage;
+
+/**
+ * {@link ExpandedBundle} holds the package imports which correspond to importing a bundle, together with the details
+ * needed to track and diagnose them.
+ * <p />
+ * The package imports are modified when they are merged, so an <code>ExpandedBundle</code> which is used more than
+ * once must be used by way of {@link #copyImportedPackages()}.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Thread safe provided the package imports returned by {@link #getImportedPackages()} are not modified.
+ *
+ */
+final class ExpandedBundle {
+
+    private final List<ImportedPackage> importedPackages;
+
+    private final String source;
+
+    private final String bundleSymbolicName;
+
+    private final String bundleVersion;
+
+    private final boolean promoteExports;
+
+    private final boolean diagnose;
+
+    /**
+     * @param importedPackages the package imports which correspond to the bundle's package exports
+     * @param source a description of the bundle import for diagnostics
+     * @param bundleSymbolicName the symbolic name of the bundle, or of its host if it is a fragment
+     * @param bundleVersion the version of the bundle
+     * @param promoteExports <code>true</code> if and only if the package imports are to be promoted
+     * @param diagnose <code>true</code> if and only if overlap with the system bundle is to be diagnosed
+     */
+    ExpandedBundle(List<ImportedPackage> importedPackages, String source, String bundleSymbolicName, String bundleVersion,
+        boolean promoteExports, boolean diagnose) {
+        this.importedPackages = importedPackages;
+        this.source = source;
+        this.bundleSymbolicName = bundleSymbolicName;
+        this.bundleVersion = bundleVersion;
+        this.promoteExports = promoteExports;
+        this.diagnose = diagnose;
+    }
+
+    List<ImportedPackage> getImportedPackages() {
+        return this.importedPackages;
+    }
+
+    List<ImportedPackage> copyImportedPackages() {
+        return BundleManifestProcessor.copyImportedPackages(this.importedPackages);
+    }
+
+    String getSource() {
+        return this.source;
+    }
+
+    String getBundleSymbolicName() {
+        return this.bundleSymbolicName;
+    }
+
+    String getBundleVersion() {
+        return this.bundleVersion;
+    }
+
+    boolean isPromoteExports() {
+        return this.promoteExports;
+    }
+
+    boolean isDiagnose() {
+        return this.diagnose;
+    }
+}
@@ -19,7 +19,6 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.osgi.framework.internal.core.BundleRepository;
-import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Version;
 import org.slf4j.Logger;
@@ -76,7 +75,9 @@ public final class ImportExpansionHandler implements ImportExpander {
 
     private final TrackedPackageImportsFactory trackedPackageImportsFactory = new StandardTrackedPackageImportsFactory();
 
-    private final BundleContext bundleContext;
+    private final InstalledBundleIndex installedBundleIndex;
+
+    private final LibraryExpansionCache libraryExpansionCache = new LibraryExpansionCache();
 
     private final Set<String> packagesExportedBySystemBundle;
 
@@ -89,11 +90,20 @@ public final class ImportExpansionHandler implements ImportExpander {
     public ImportExpansionHandler(Repository repository, BundleContext bundleContext, Set<String> packagesExportedBySystemBundle,
         EventLogger eventLogger) {
         this.repository = repository;
-        this.bundleContext = bundleContext;
+        this.installedBundleIndex = bundleContext == null ? null : new InstalledBundleIndex(bundleContext);
         this.packagesExportedBySystemBundle = packagesExportedBySystemBundle;
         this.eventLogger = eventLogger;
     }
 
+    /**
+     * Stops tracking the installed bundles. This must be called when the handler is no longer needed.
+     */
+    public void stop() {
+        if (this.installedBundleIndex != null) {
+            this.installedBundleIndex.stop();
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -122,6 +132,17 @@ public final class ImportExpansionHandler implements ImportExpander {
         return importPromotionVector;
     }
 
+    /**
+     * Returns a description of the installed bundles which could satisfy an <code>Import-Bundle</code> of the given
+     * symbolic name. The description changes whenever such a bundle is installed, updated, or uninstalled.
+     *
+     * @param bundleSymbolicName the symbolic name of the imported bundle
+     * @return the description, which is empty if there are no such bundles or installed bundles are not considered
+     */
+    public String describeInstalledBundles(String bundleSymbolicName) {
+        return this.installedBundleIndex == null ? "" : this.installedBundleIndex.describeBundles(bundleSymbolicName);
+    }
+
     /**
      * Detect package imports with application import scope and add these to the package imports to be promoted.
      */
@@ -288,16 +309,34 @@ public final class ImportExpansionHandler implements ImportExpander {
      */
     private TrackedPackageImports createTrackedPackageImportsFromImportedBundle(OrderedPair<BundleManifest, Boolean> bundleManifest,
         boolean promoteExports, TrackedPackageImports packageImportsToBePromoted) {
-        TrackedPackageImports bundlePackageImports = createPackageImportsFromPackageExports(bundleManifest, promoteExports);
-        if (promoteExports) {
+        ExpandedBundle expandedBundle = expandBundle(bundleManifest, promoteExports);
+        return createTrackedPackageImportsFromExpandedBundle(expandedBundle, expandedBundle.getImportedPackages(), packageImportsToBePromoted);
+    }
+
+    /**
+     * Return the {@link TrackedPackageImports} corresponding to the given package imports of the given
+     * {@link ExpandedBundle} and, if appropriate, merge them into the given imports to be promoted.
+     */
+    private TrackedPackageImports createTrackedPackageImportsFromExpandedBundle(ExpandedBundle expandedBundle, List<ImportedPackage> packageImports,
+        TrackedPackageImports packageImportsToBePromoted) {
+        TrackedPackageImports bundlePackageImports;
+        if (packageImports.isEmpty()) {
+            bundlePackageImports = this.trackedPackageImportsFactory.createEmpty();
+        } else {
+            if (expandedBundle.isDiagnose()) {
+                diagnoseSystemBundleOverlap(packageImports, expandedBundle.getBundleSymbolicName(), expandedBundle.getBundleVersion());
+            }
+            bundlePackageImports = this.trackedPackageImportsFactory.create(packageImports, expandedBundle.getSource());
+        }
+        if (expandedBundle.isPromoteExports()) {
             packageImportsToBePromoted.merge(bundlePackageImports);
         }
         return bundlePackageImports;
     }
 
     /**
-     * Create a {@link TrackedPackageImports} instance corresponding to the given package exports from the given bundle
-     * manifest.
+     * Create an {@link ExpandedBundle} holding the package imports corresponding to the package exports of the given
+     * bundle manifest.
      * <p />
      * Importing fragment bundles is not encouraged but sometimes it's the only way out when reusing poorly packaged
      * bundles. Packages exported by a fragment are imported with the host's bundle symbolic name, an exact range
@@ -308,19 +347,18 @@ public final class ImportExpansionHandler implements ImportExpander {
      * for in the repository) during import expansion.
      * 
      */
-    private TrackedPackageImports createPackageImportsFromPackageExports(OrderedPair<BundleManifest, Boolean> bundleManifestHolder,
-        boolean promoteExports) {
+    private ExpandedBundle expandBundle(OrderedPair<BundleManifest, Boolean> bundleManifestHolder, boolean promoteExports) {
         BundleManifest bundleManifest = bundleManifestHolder.getFirst();
-        List<ExportedPackage> exportedPackages = bundleManifest.getExportPackage().getExportedPackages();
-        if (exportedPackages.isEmpty()) {
-            return this.trackedPackageImportsFactory.createEmpty();
-        }
         String bundleVersion = bundleManifest.getBundleVersion().toString();
         String bundleSymbolicName = bundleManifest.getBundleSymbolicName().getSymbolicName();
+        String source = "Import-Bundle '" + bundleSymbolicName + "' version '" + bundleManifest.getBundleVersion() + "'";
 
+        List<ExportedPackage> exportedPackages = bundleManifest.getExportPackage().getExportedPackages();
         List<ImportedPackage> packageImports;
 
-        if (bundleManifest.getFragmentHost().getBundleSymbolicName() != null) {
+        if (exportedPackages.isEmpty()) {
+            packageImports = Collections.emptyList();
+        } else if (bundleManifest.getFragmentHost().getBundleSymbolicName() != null) {
             bundleSymbolicName = bundleManifest.getFragmentHost().getBundleSymbolicName();
             packageImports = BundleManifestProcessor.createImportedPackageForEachExportedPackageOfFragment(exportedPackages, bundleSymbolicName, bundleManifest.getFragmentHost().getBundleVersion());
         } else {
@@ -331,12 +369,7 @@ public final class ImportExpansionHandler implements ImportExpander {
             tagImportsAsPromoted(packageImports);
         }
 
-        if (bundleManifestHolder.getSecond()) {
-            diagnoseSystemBundleOverlap(packageImports, bundleSymbolicName, bundleVersion);
-        }
-
-        return this.trackedPackageImportsFactory.create(packageImports, "Import-Bundle '" + bundleManifest.getBundleSymbolicName().getSymbolicName()
-            + "' version '" + bundleManifest.getBundleVersion() + "'");
+        return new ExpandedBundle(packageImports, source, bundleSymbolicName, bundleVersion, promoteExports, bundleManifestHolder.getSecond());
     }
 
     private void tagImportsAsPromoted(List<ImportedPackage> packageImports) {
@@ -409,42 +442,10 @@ public final class ImportExpansionHandler implements ImportExpander {
                 TrackedPackageImports libraryPackageImports = this.trackedPackageImportsFactory.createContainer("Import-Library '"
                     + importedLibrary.getLibrarySymbolicName() + "' version '" + libraryVersion + "'");
 
-                Set<Attribute> importedBundles = libraryArtefact.getAttribute("Import-Bundle");
-
-                for (Attribute importedBundle : importedBundles) {
-                    String bundleSymbolicName = importedBundle.getValue();
-                    Map<String, Set<String>> properties = importedBundle.getProperties();
-                    Set<String> versionSet = properties.get("version");
-                    VersionRange bundleVersionRange;
-                    if (versionSet != null && !versionSet.isEmpty()) {
-                        bundleVersionRange = new VersionRange(versionSet.iterator().next());
-                    } else {
-                        bundleVersionRange = VersionRange.NATURAL_NUMBER_RANGE;
-                    }
-                    OrderedPair<BundleManifest, Boolean> bundleManifest = findBundle(bundleSymbolicName, bundleVersionRange, additionalManifests);
-                    if (bundleManifest.getFirst() != null) {
-                        boolean applicationImportScope = false;
-                        Set<String> importScopeSet = properties.get(IMPORT_SCOPE_DIRECTIVE);
-                        if (importScopeSet != null && !importScopeSet.isEmpty()) {
-                            applicationImportScope = IMPORT_SCOPE_APPLICATION.equals(importScopeSet.iterator().next());
-                        }
-                        libraryPackageImports.merge(createTrackedPackageImportsFromImportedBundle(bundleManifest, applicationImportScope,
-                            packageImportsToBePromoted));
-                    } else {
-                        Resolution importedBundleResolution = Resolution.MANDATORY;
-                        Set<String> resolutionSet = properties.get("resolution");
-                        if (resolutionSet != null && !resolutionSet.isEmpty()) {
-                            importedBundleResolution = Resolution.valueOf(resolutionSet.iterator().next().toUpperCase(Locale.ENGLISH));
-                        }
-
-                        if (importedBundleResolution.equals(Resolution.MANDATORY)) {
-                            throw new UnableToSatisfyBundleDependenciesException(
-                                importingBundle.getBundleSymbolicName() != null ? importingBundle.getBundleSymbolicName().getSymbolicName()
-                                    : MISSING_BUNDLE_SYMBOLIC_NAME, importingBundle.getBundleVersion(), "Imported library '" + libraryName
-                                    + "' version '" + libraryVersion + "' contains Import-Bundle for bundle '" + bundleSymbolicName
-                                    + "' in version range '" + bundleVersionRange + "' which could not be satisfied");
-                        }
-                    }
+                LibraryExpansion libraryExpansion = getLibraryExpansion(libraryName, libraryArtefact, importingBundle, additionalManifests);
+                for (ExpandedBundle expandedBundle : libraryExpansion.getExpandedBundles()) {
+                    libraryPackageImports.merge(createTrackedPackageImportsFromExpandedBundle(expandedBundle, expandedBundle.copyImportedPackages(),
+                        packageImportsToBePromoted));
                 }
                 allLibraryPackageImports.merge(libraryPackageImports);
             } else if (importedLibrary.getResolution().equals(Resolution.MANDATORY)) {
@@ -454,6 +455,96 @@ public final class ImportExpansionHandler implements ImportExpander {
         return allLibraryPackageImports;
     }
 
+    /**
+     * Get the {@link LibraryExpansion} of the given definition of the library with the given name. The bundles imported by the library are looked
+     * up and, if they are the same as when the library was last expanded, the cached expansion is returned. Expansions
+     * which use any of the given additional manifests are not cached as those manifests belong to a single deployment.
+     * 
+     * @throws UnableToSatisfyBundleDependenciesException if a mandatory bundle imported by the library cannot be found
+     */
+    private LibraryExpansion getLibraryExpansion(String libraryName, ArtifactDescriptor libraryArtefact, BundleManifest importingBundle,
+        List<BundleManifest> additionalManifests) throws UnableToSatisfyBundleDependenciesException {
+        LibraryExpansion cachedLibraryExpansion = this.libraryExpansionCache.get(libraryArtefact);
+        List<LibraryExpansion.BundleImport> bundleImports = cachedLibraryExpansion != null ? cachedLibraryExpansion.getBundleImports()
+            : getLibraryBundleImports(libraryArtefact);
+
+        List<OrderedPair<Object, Boolean>> bundleOrigins = new ArrayList<OrderedPair<Object, Boolean>>(bundleImports.size());
+        List<Object> origins = new ArrayList<Object>(bundleImports.size());
+        boolean cacheable = true;
+        for (LibraryExpansion.BundleImport bundleImport : bundleImports) {
+            OrderedPair<Object, Boolean> bundleOrigin = findBundleOrigin(bundleImport.getBundleSymbolicName(), bundleImport.getVersionRange(),
+                additionalManifests);
+            if (bundleOrigin.getFirst() == null && bundleImport.getResolution().equals(Resolution.MANDATORY)) {
+                throw new UnableToSatisfyBundleDependenciesException(
+                    importingBundle.getBundleSymbolicName() != null ? importingBundle.getBundleSymbolicName().getSymbolicName()
+                        : MISSING_BUNDLE_SYMBOLIC_NAME, importingBundle.getBundleVersion(), "Imported library '" + libraryName
+                        + "' version '" + libraryArtefact.getVersion() + "' contains Import-Bundle for bundle '"
+                        + bundleImport.getBundleSymbolicName() + "' in version range '" + bundleImport.getVersionRange()
+                        + "' which could not be satisfied");
+            }
+            if (bundleOrigin.getFirst() != null && !bundleOrigin.getSecond()) {
+                cacheable = false;
+            }
+            bundleOrigins.add(bundleOrigin);
+            origins.add(bundleOrigin.getFirst());
+        }
+
+        if (cachedLibraryExpansion != null && cachedLibraryExpansion.isCurrent(libraryArtefact, origins)) {
+            return cachedLibraryExpansion;
+        }
+
+        List<ExpandedBundle> expandedBundles = new ArrayList<ExpandedBundle>(bundleImports.size());
+        for (int index = 0; index < bundleImports.size(); index++) {
+            OrderedPair<BundleManifest, Boolean> bundleManifest = toBundleManifest(bundleImports.get(index).getBundleSymbolicName(),
+                bundleImports.get(index).getVersionRange(), bundleOrigins.get(index));
+            if (bundleManifest.getFirst() != null) {
+                expandedBundles.add(expandBundle(bundleManifest, bundleImports.get(index).isApplicationImportScope()));
+            }
+        }
+
+        LibraryExpansion libraryExpansion = new LibraryExpansion(libraryArtefact, bundleImports, origins, expandedBundles);
+        if (cacheable) {
+            this.libraryExpansionCache.put(libraryExpansion);
+        }
+        return libraryExpansion;
+    }
+
+    /**
+     * Get the bundles imported by the given library definition.
+     */
+    private List<LibraryExpansion.BundleImport> getLibraryBundleImports(ArtifactDescriptor libraryArtefact) {
+        Set<Attribute> importedBundles = libraryArtefact.getAttribute("Import-Bundle");
+        List<LibraryExpansion.BundleImport> bundleImports = new ArrayList<LibraryExpansion.BundleImport>(importedBundles.size());
+
+        for (Attribute importedBundle : importedBundles) {
+            String bundleSymbolicName = importedBundle.getValue();
+            Map<String, Set<String>> properties = importedBundle.getProperties();
+            Set<String> versionSet = properties.get("version");
+            VersionRange bundleVersionRange;
+            if (versionSet != null && !versionSet.isEmpty()) {
+                bundleVersionRange = new VersionRange(versionSet.iterator().next());
+            } else {
+                bundleVersionRange = VersionRange.NATURAL_NUMBER_RANGE;
+            }
+
+            boolean applicationImportScope = false;
+            Set<String> importScopeSet = properties.get(IMPORT_SCOPE_DIRECTIVE);
+            if (importScopeSet != null && !importScopeSet.isEmpty()) {
+                applicationImportScope = IMPORT_SCOPE_APPLICATION.equals(importScopeSet.iterator().next());
+            }
+
+            Resolution importedBundleResolution = Resolution.MANDATORY;
+            Set<String> resolutionSet = properties.get("resolution");
+            if (resolutionSet != null && !resolutionSet.isEmpty()) {
+                importedBundleResolution = Resolution.valueOf(resolutionSet.iterator().next().toUpperCase(Locale.ENGLISH));
+            }
+
+            bundleImports.add(new LibraryExpansion.BundleImport(bundleSymbolicName, bundleVersionRange, applicationImportScope,
+                importedBundleResolution));
+        }
+        return bundleImports;
+    }
+
     /**
      * Set the package imports of the given {@link BundleManifest} to the merged imports of the given
      * {@link TrackedPackageImports}.
@@ -479,31 +570,42 @@ public final class ImportExpansionHandler implements ImportExpander {
      */
     private OrderedPair<BundleManifest, Boolean> findBundle(String bundleSymbolicName, VersionRange versionRange,
         List<BundleManifest> additionalManifests) {
+        return toBundleManifest(bundleSymbolicName, versionRange, findBundleOrigin(bundleSymbolicName, versionRange, additionalManifests));
+    }
 
-        boolean diagnose = false;
+    /**
+     * Find the origin of the bundle with the given symbolic name and version range: a manifest from the supplied list, the
+     * manifest of an installed bundle, or an artifact descriptor from the repository, in that order of preference. The
+     * second member of the result is <code>true</code> if and only if the origin is not from the supplied list.
+     */
+    private OrderedPair<Object, Boolean> findBundleOrigin(String bundleSymbolicName, VersionRange versionRange,
+        List<BundleManifest> additionalManifests) {
 
         // prefer bundles from the supplied list
-        BundleManifest bundleManifest = findMatchingManifest(bundleSymbolicName, versionRange, additionalManifests);
-
-        if (bundleManifest == null && this.bundleContext != null) {
-            Bundle[] installedBundles = this.bundleContext.getBundles();
-            for (Bundle bundle : installedBundles) {
-                if (bundleSymbolicName.equals(bundle.getSymbolicName()) && versionRange.includes(bundle.getVersion())) {
-                    bundleManifest = getBundleManifest(bundle);
-                    if (bundleManifest != null) {
-                        diagnose = true;
-                        break;
-                    }
-                }
-            }
+        Object bundleOrigin = findMatchingManifest(bundleSymbolicName, versionRange, additionalManifests);
+        if (bundleOrigin != null) {
+            return new OrderedPair<Object, Boolean>(bundleOrigin, false);
         }
 
-        if (bundleManifest == null) {
-            ArtifactDescriptor artefact = findArtifactDescriptorForBundle(bundleSymbolicName, versionRange);
-            if (artefact != null) {
-                diagnose = true;
-                bundleManifest = BundleManifestFactory.createBundleManifest(BundleBridge.convertToDictionary(artefact));
-            }
+        if (this.installedBundleIndex != null) {
+            bundleOrigin = this.installedBundleIndex.findBundleManifest(bundleSymbolicName, versionRange);
+        }
+
+        if (bundleOrigin == null) {
+            bundleOrigin = findArtifactDescriptorForBundle(bundleSymbolicName, versionRange);
+        }
+
+        return new OrderedPair<Object, Boolean>(bundleOrigin, bundleOrigin != null);
+    }
+
+    private OrderedPair<BundleManifest, Boolean> toBundleManifest(String bundleSymbolicName, VersionRange versionRange,
+        OrderedPair<Object, Boolean> bundleOrigin) {
+        Object origin = bundleOrigin.getFirst();
+        BundleManifest bundleManifest;
+        if (origin instanceof ArtifactDescriptor) {
+            bundleManifest = BundleManifestFactory.createBundleManifest(BundleBridge.convertToDictionary((ArtifactDescriptor) origin));
+        } else {
+            bundleManifest = (BundleManifest) origin;
         }
 
         if (bundleManifest != null) {
@@ -513,7 +615,7 @@ public final class ImportExpansionHandler implements ImportExpander {
             this.logger.info("Could not find definition for bundle with symbolic name '{}' and version range '{}'", bundleSymbolicName, versionRange);
         }
 
-        return new OrderedPair<BundleManifest, Boolean>(bundleManifest, diagnose);
+        return new OrderedPair<BundleManifest, Boolean>(bundleManifest, bundleOrigin.getSecond());
     }
 
     /**
@@ -547,16 +649,4 @@ public final class ImportExpansionHandler implements ImportExpander {
         return this.repository.get(LibraryDefinition.LIBRARY_TYPE, librarySymbolicName, versionRange);
     }
 
-    /**
-     * Get a {@link BundleDefinition} for the given {@link Bundle}. If a definition cannot be created, return
-     * <code>null</code>.
-     * 
-     * @param bundle the bundle whose definition is required
-     * @return the bundle definition or <code>null</code> if no definition can be created
-     */
-    @SuppressWarnings("unchecked")
-    private BundleManifest getBundleManifest(Bundle bundle) {
-        return BundleManifestFactory.createBundleManifest(bundle.getHeaders());
-    }
-
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.importexpansion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.util.osgi.VersionRange;
+import org.eclipse.virgo.util.osgi.manifest.BundleManifest;
+import org.eclipse.virgo.util.osgi.manifest.BundleManifestFactory;
+
+/**
+ * {@link InstalledBundleIndex} indexes the bundles installed in the framework by symbolic name so that the bundle
+ * satisfying an <code>Import-Bundle</code> can be found without scanning every installed bundle.
+ * <p />
+ * The index is built from the installed bundles the first time it is used and is then kept up to date by listening for
+ * bundle events until it is {@link #stop() stopped}. The bundles with a given symbolic name are held in descending
+ * version order and the manifest of each bundle is parsed at most once between updates of the bundle.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Thread safe.
+ *
+ */
+final class InstalledBundleIndex implements SynchronousBundleListener {
+
+    private final Object monitor = new Object();
+
+    private final BundleContext bundleContext;
+
+    private final Map<String, List<IndexedBundle>> bundlesBySymbolicName = new HashMap<String, List<IndexedBundle>>();
+
+    private final Map<Long, IndexedBundle> bundlesById = new HashMap<Long, IndexedBundle>();
+
+    private boolean initialised;
+
+    InstalledBundleIndex(BundleContext bundleContext) {
+        this.bundleContext = bundleContext;
+    }
+
+    /**
+     * Returns the manifest of the installed bundle with the highest version in the given range which has the given
+     * symbolic name, or <code>null</code> if there is no such bundle.
+     *
+     * @param bundleSymbolicName the symbolic name of the bundle
+     * @param versionRange the range of acceptable versions
+     * @return the bundle's manifest or <code>null</code>
+     */
+    BundleManifest findBundleManifest(String bundleSymbolicName, VersionRange versionRange) {
+        synchronized (this.monitor) {
+            initialiseIfNecessary();
+            List<IndexedBundle> indexedBundles = this.bundlesBySymbolicName.get(bundleSymbolicName);
+            if (indexedBundles != null) {
+                for (IndexedBundle indexedBundle : indexedBundles) {
+                    if (versionRange.includes(indexedBundle.version)) {
+                        BundleManifest bundleManifest = indexedBundle.getBundleManifest();
+                        if (bundleManifest != null) {
+                            return bundleManifest;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns a description of the installed bundles which have the given symbolic name. The description identifies the
+     * location, version, and last modification time of each bundle so that it changes whenever such a bundle is
+     * installed, updated, or uninstalled.
+     *
+     * @param bundleSymbolicName the symbolic name of the bundles
+     * @return the description, which is empty if there are no such bundles
+     */
+    String describeBundles(String bundleSymbolicName) {
+        synchronized (this.monitor) {
+            initialiseIfNecessary();
+            StringBuilder description = new StringBuilder();
+            List<IndexedBundle> indexedBundles = this.bundlesBySymbolicName.get(bundleSymbolicName);
+            if (indexedBundles != null) {
+                for (IndexedBundle indexedBundle : indexedBundles) {
+                    description.append(indexedBundle.bundle.getLocation()).append(';').append(indexedBundle.version).append(';').append(
+                        indexedBundle.bundle.getLastModified()).append('\n');
+                }
+            }
+            return description.toString();
+        }
+    }
+
+    /**
+     * Stops listening for bundle events and discards the index. If the index is used again, it is rebuilt.
+     */
+    void stop() {
+        synchronized (this.monitor) {
+            if (this.initialised) {
+                this.initialised = false;
+                this.bundleContext.removeBundleListener(this);
+                this.bundlesBySymbolicName.clear();
+                this.bundlesById.clear();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void bundleChanged(BundleEvent event) {
+        Bundle bundle = event.getBundle();
+        synchronized (this.monitor) {
+            if (!this.initialised) {
+                return;
+            }
+            switch (event.getType()) {
+                case BundleEvent.INSTALLED:
+                    add(bundle);
+                    break;
+                case BundleEvent.UPDATED:
+                    remove(bundle);
+                    add(bundle);
+                    break;
+                case BundleEvent.UNINSTALLED:
+                    remove(bundle);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void initialiseIfNecessary() {
+        if (!this.initialised) {
+            this.initialised = true;
+            this.bundleContext.addBundleListener(this);
+            for (Bundle bundle : this.bundleContext.getBundles()) {
+                if (bundle.getState() != Bundle.UNINSTALLED) {
+                    add(bundle);
+                }
+            }
+        }
+    }
+
+    private void add(Bundle bundle) {
+        String bundleSymbolicName = bundle.getSymbolicName();
+        Long bundleId = Long.valueOf(bundle.getBundleId());
+        if (bundleSymbolicName == null || this.bundlesById.containsKey(bundleId)) {
+            return;
+        }
+
+        IndexedBundle indexedBundle = new IndexedBundle(bundle, bundleSymbolicName, bundle.getVersion());
+        this.bundlesById.put(bundleId, indexedBundle);
+
+        List<IndexedBundle> indexedBundles = this.bundlesBySymbolicName.get(bundleSymbolicName);
+        if (indexedBundles == null) {
+            indexedBundles = new ArrayList<IndexedBundle>(1);
+            this.bundlesBySymbolicName.put(bundleSymbolicName, indexedBundles);
+        }
+
+        int index = 0;
+        while (index < indexedBundles.size() && indexedBundles.get(index).version.compareTo(indexedBundle.version) >= 0) {
+            index++;
+        }
+        indexedBundles.add(index, indexedBundle);
+    }
+
+    private void remove(Bundle bundle) {
+        IndexedBundle indexedBundle = this.bundlesById.remove(Long.valueOf(bundle.getBundleId()));
+        if (indexedBundle != null) {
+            List<IndexedBundle> indexedBundles = this.bundlesBySymbolicName.get(indexedBundle.symbolicName);
+            indexedBundles.remove(indexedBundle);
+            if (indexedBundles.isEmpty()) {
+                this.bundlesBySymbolicName.remove(indexedBundle.symbolicName);
+            }
+        }
+    }
+
+    private static final class IndexedBundle {
+
+        private final Bundle bundle;
+
+        private final String symbolicName;
+
+        private final Version version;
+
+        private BundleManifest bundleManifest;
+
+        private IndexedBundle(Bundle bundle, String symbolicName, Version version) {
+            this.bundle = bundle;
+            this.symbolicName = symbolicName;
+            this.version = version;
+        }
+
+        @SuppressWarnings("unchecked")
+        private BundleManifest getBundleManifest() {
+            if (this.bundleManifest == null) {
+                BundleManifest bundleManifest = BundleManifestFactory.createBundleManifest(this.bundle.getHeaders());
+                if (bundleManifest != null) {
+                    // Parse the headers used by import expansion now so that the shared manifest is only read later.
+                    bundleManifest.getBundleSymbolicName();
+                    bundleManifest.getBundleVersion();
+                    bundleManifest.getExportPackage();
+                    bundleManifest.getFragmentHost();
+                }
+                this.bundleManifest = bundleManifest;
+            }
+            return this.bundleManifest;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.importexpansion;
+
+import java.util.List;
+
+import org.eclipse.virgo.repository.ArtifactDescriptor;
+import org.eclipse.virgo.util.osgi.VersionRange;
+import org.eclipse.virgo.util.osgi.manifest.Resolution;
+
+/**
+ * {@link LibraryExpansion} is the result of expanding a library: the bundles the library imports and the
+ * {@link ExpandedBundle ExpandedBundles} of those which were found.
+ * <p />
+ * An expansion records the library definition and the origin of each bundle it imports, that is the bundle manifest or
+ * repository artifact descriptor the bundle was found in, or <code>null</code> if the bundle was not found. The
+ * expansion remains valid for as long as a lookup of the library and its bundles yields the same objects.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Thread safe.
+ *
+ */
+final class LibraryExpansion {
+
+    private final ArtifactDescriptor libraryArtefact;
+
+    private final List<BundleImport> bundleImports;
+
+    private final List<Object> bundleOrigins;
+
+    private final List<ExpandedBundle> expandedBundles;
+
+    LibraryExpansion(ArtifactDescriptor libraryArtefact, List<BundleImport> bundleImports, List<Object> bundleOrigins,
+        List<ExpandedBundle> expandedBundles) {
+        this.libraryArtefact = libraryArtefact;
+        this.bundleImports = bundleImports;
+        this.bundleOrigins = bundleOrigins;
+        this.expandedBundles = expandedBundles;
+    }
+
+    ArtifactDescriptor getLibraryArtefact() {
+        return this.libraryArtefact;
+    }
+
+    List<BundleImport> getBundleImports() {
+        return this.bundleImports;
+    }
+
+    List<ExpandedBundle> getExpandedBundles() {
+        return this.expandedBundles;
+    }
+
+    /**
+     * Returns <code>true</code> if and only if this expansion was produced from the given library definition and bundle
+     * origins.
+     *
+     * @param libraryArtefact the current definition of the library
+     * @param bundleOrigins the current origins of the bundles imported by the library
+     * @return <code>true</code> if and only if this expansion is current
+     */
+    boolean isCurrent(ArtifactDescriptor libraryArtefact, List<Object> bundleOrigins) {
+        if (this.libraryArtefact != libraryArtefact || this.bundleOrigins.size() != bundleOrigins.size()) {
+            return false;
+        }
+        for (int index = 0; index < bundleOrigins.size(); index++) {
+            if (this.bundleOrigins.get(index) != bundleOrigins.get(index)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A bundle imported by a library, as described by an <code>Import-Bundle</code> attribute of the library definition.
+     */
+    static final class BundleImport {
+
+        private final String bundleSymbolicName;
+
+        private final VersionRange versionRange;
+
+        private final boolean applicationImportScope;
+
+        private final Resolution resolution;
+
+        BundleImport(String bundleSymbolicName, VersionRange versionRange, boolean applicationImportScope, Resolution resolution) {
+            this.bundleSymbolicName = bundleSymbolicName;
+            this.versionRange = versionRange;
+            this.applicationImportScope = applicationImportScope;
+            this.resolution = resolution;
+        }
+
+        String getBundleSymbolicName() {
+            return this.bundleSymbolicName;
+        }
+
+        VersionRange getVersionRange() {
+            return this.versionRange;
+        }
+
+        boolean isApplicationImportScope() {
+            return this.applicationImportScope;
+        }
+
+        Resolution getResolution() {
+            return this.resolution;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.importexpansion;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.virgo.repository.ArtifactDescriptor;
+
+/**
+ * {@link LibraryExpansionCache} holds the most recent {@link LibraryExpansion} of each version of each library.
+ * <p />
+ * The repository does not notify changes, so an expansion is returned only if it was produced from the library
+ * definition the repository currently holds, and its caller must check the expansion's bundle origins with
+ * {@link LibraryExpansion#isCurrent(ArtifactDescriptor, java.util.List) isCurrent} before using it. A new definition of
+ * a library replaces the expansion of the old definition when the new definition is expanded.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Thread safe.
+ *
+ */
+final class LibraryExpansionCache {
+
+    private final ConcurrentMap<String, LibraryExpansion> libraryExpansions = new ConcurrentHashMap<String, LibraryExpansion>();
+
+    /**
+     * Returns the cached expansion of the given library definition, or <code>null</code> if there is none.
+     *
+     * @param libraryArtefact the library definition
+     * @return the <code>LibraryExpansion</code> or <code>null</code>
+     */
+    LibraryExpansion get(ArtifactDescriptor libraryArtefact) {
+        LibraryExpansion libraryExpansion = this.libraryExpansions.get(getKey(libraryArtefact));
+        return libraryExpansion != null && libraryExpansion.getLibraryArtefact() == libraryArtefact ? libraryExpansion : null;
+    }
+
+    /**
+     * Caches the given expansion, replacing any expansion of the same version of the same library.
+     *
+     * @param libraryExpansion the <code>LibraryExpansion</code> to cache
+     */
+    void put(LibraryExpansion libraryExpansion) {
+        this.libraryExpansions.put(getKey(libraryExpansion.getLibraryArtefact()), libraryExpansion);
+    }
+
+    private static String getKey(ArtifactDescriptor libraryArtefact) {
+        return libraryArtefact.getName() + ";" + libraryArtefact.getVersion();
+    }
+}
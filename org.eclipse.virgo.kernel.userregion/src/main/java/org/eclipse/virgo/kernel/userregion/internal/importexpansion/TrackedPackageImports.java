@@ -27,7 +27,9 @@ import org.eclipse.virgo.util.osgi.manifest.ImportedPackage;
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
- * Implementations of this class must be thread safe.
+ * Implementations of this class need not be thread safe. An instance is built by a single thread and, once it has been
+ * published to other threads, is only merged into other instances. Merging an instance into another does not modify
+ * the merged instance, so published instances may be merged concurrently.
  * 
  * @see TrackedPackageImportsFactory
  */
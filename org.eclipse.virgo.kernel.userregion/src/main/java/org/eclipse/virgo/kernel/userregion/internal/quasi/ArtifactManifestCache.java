@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.quasi;
+
+import java.net.URI;
+import java.util.Dictionary;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.virgo.kernel.artifact.bundle.BundleBridge;
+import org.eclipse.virgo.repository.ArtifactDescriptor;
+
+/**
+ * {@link ArtifactManifestCache} holds the manifest headers of the bundle artifacts found in the repository, converted
+ * by {@link BundleBridge#convertToDictionary(ArtifactDescriptor)}, so that they are not converted again each time a
+ * bundle is used to satisfy a dependency.
+ * <p />
+ * The repository does not notify changes, so the headers of an artifact are returned from the cache only if they were
+ * converted from the artifact descriptor the repository currently holds. A new descriptor of an artifact replaces the
+ * headers of the old descriptor when its headers are converted.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Thread safe.
+ *
+ */
+final class ArtifactManifestCache {
+
+    private final ConcurrentMap<URI, CachedManifest> manifests = new ConcurrentHashMap<URI, CachedManifest>();
+
+    /**
+     * Returns the manifest headers of the given bundle artifact. The returned headers must not be modified.
+     *
+     * @param artifact the bundle artifact
+     * @return the manifest headers
+     */
+    Dictionary<String, String> getManifest(ArtifactDescriptor artifact) {
+        CachedManifest cachedManifest = this.manifests.get(artifact.getUri());
+        if (cachedManifest != null && cachedManifest.artifact == artifact) {
+            return cachedManifest.manifest;
+        }
+        Dictionary<String, String> manifest = BundleBridge.convertToDictionary(artifact);
+        this.manifests.put(artifact.getUri(), new CachedManifest(artifact, manifest));
+        return manifest;
+    }
+
+    private static final class CachedManifest {
+
+        private final ArtifactDescriptor artifact;
+
+        private final Dictionary<String, String> manifest;
+
+        private CachedManifest(ArtifactDescriptor artifact, Dictionary<String, String> manifest) {
+            this.artifact = artifact;
+            this.manifest = manifest;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import java.util.Collections;
 import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -45,19 +46,23 @@ import org.slf4j.LoggerFactory;
 
 import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyBundleDependenciesException;
 import org.eclipse.virgo.kernel.osgi.framework.UnableToSatisfyDependenciesException;
+import org.eclipse.virgo.kernel.serviceability.dump.DeferredDumpContextValue;
 import org.eclipse.virgo.kernel.userregion.internal.equinox.ResolutionDumpContributor;
 import org.eclipse.virgo.kernel.userregion.internal.quasi.ResolutionFailureDetective.ResolverErrorsHolder;
 
 import org.eclipse.virgo.kernel.artifact.bundle.BundleBridge;
 import org.eclipse.virgo.medic.dump.DumpGenerator;
 import org.eclipse.virgo.repository.ArtifactDescriptor;
-import org.eclipse.virgo.repository.Attribute;
-import org.eclipse.virgo.repository.Query;
 import org.eclipse.virgo.repository.Repository;
 
 /**
  * Calculates the dependencies of a given set of {@link BundleDescription BundleDescriptions}.
  * <p />
+ * The results of repository queries, and the bundle descriptions created from the artifacts found, are reused for the
+ * rest of a calculation. The manifest headers of the artifacts are held in an {@link ArtifactManifestCache} which may
+ * be shared by several calculators. <code>Import-Package</code> constraints are satisfied from a snapshot of a
+ * {@link PackageExportIndex}, taken once per calculation, rather than by querying the repository for each import.
+ * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
@@ -78,11 +83,17 @@ public final class DependencyCalculator {
 
     private final StateObjectFactory stateObjectFactory;
 
+    private final ArtifactManifestCache artifactManifestCache;
+
+    private final PackageExportIndex packageExportIndex;
+
     private final DumpGenerator dumpGenerator;
 
     public DependencyCalculator(StateObjectFactory stateObjectFactory, ResolutionFailureDetective detective, Repository repository,
-        BundleContext bundleContext) {
+        ArtifactManifestCache artifactManifestCache, PackageExportIndex packageExportIndex, BundleContext bundleContext) {
         this.repository = repository;
+        this.artifactManifestCache = artifactManifestCache;
+        this.packageExportIndex = packageExportIndex;
         this.detective = detective;
         this.stateObjectFactory = stateObjectFactory;
         this.dumpGenerator = (DumpGenerator) bundleContext.getService(bundleContext.getServiceReference(DumpGenerator.class.getName()));
@@ -118,7 +129,7 @@ public final class DependencyCalculator {
         this.logger.info("Calculating missing dependencies of bundle(s) '{}'", bundles);
         synchronized (this.monitor) {
 
-            doSatisfyConstraints(bundles, state);
+            doSatisfyConstraints(bundles, state, new ResolutionCache());
 
             StateDelta delta = state.resolve(bundles);
 
@@ -211,11 +222,11 @@ public final class DependencyCalculator {
         return packageProviders;
     }
 
-    private void doSatisfyConstraints(BundleDescription description, State state) throws BundleException {
-        doSatisfyConstraints(new BundleDescription[] { description }, state);
+    private void doSatisfyConstraints(BundleDescription description, State state, ResolutionCache resolutionCache) throws BundleException {
+        doSatisfyConstraints(new BundleDescription[] { description }, state, resolutionCache);
     }
 
-    private void doSatisfyConstraints(BundleDescription[] descriptions, State state) throws BundleException {
+    private void doSatisfyConstraints(BundleDescription[] descriptions, State state, ResolutionCache resolutionCache) throws BundleException {
 
         VersionConstraint[] unsatisfiedConstraints = findUnsatisfiedConstraints(descriptions, state);
 
@@ -232,16 +243,16 @@ public final class DependencyCalculator {
                 continue;
             }
             if (versionConstraint instanceof ImportPackageSpecification) {
-                satisfyImportPackage((ImportPackageSpecification) versionConstraint, state, constraintsSatisfiers);
+                satisfyImportPackage((ImportPackageSpecification) versionConstraint, state, constraintsSatisfiers, resolutionCache);
             } else if (versionConstraint instanceof BundleSpecification) {
-                satisfyRequireBundle(versionConstraint, state, constraintsSatisfiers);
+                satisfyRequireBundle(versionConstraint, state, constraintsSatisfiers, resolutionCache);
             } else if (versionConstraint instanceof HostSpecification) {
-                satisfyFragmentHost(versionConstraint, state, constraintsSatisfiers);
+                satisfyFragmentHost(versionConstraint, state, constraintsSatisfiers, resolutionCache);
             }
         }
 
         for (BundleDescription description : descriptions) {
-            satisfyFragments(description, state, constraintsSatisfiers);
+            satisfyFragments(description, state, constraintsSatisfiers, resolutionCache);
         }
 
         Collections.sort(constraintsSatisfiers, new BundleDescriptionComparator());
@@ -249,93 +260,82 @@ public final class DependencyCalculator {
         for (BundleDescription constraintSatisfier : constraintsSatisfiers) {
             if (!isBundlePresentInState(constraintSatisfier.getName(), constraintSatisfier.getVersion(), state)) {
                 state.addBundle(constraintSatisfier);
-                doSatisfyConstraints(constraintSatisfier, state);
+                doSatisfyConstraints(constraintSatisfier, state, resolutionCache);
             }
         }
     }
 
-    private void satisfyFragments(BundleDescription description, State state, List<BundleDescription> constraintSatisfiers) throws BundleException {
-        Set<? extends ArtifactDescriptor> fragmentArtefacts = this.repository.createQuery("type", BundleBridge.BRIDGE_TYPE).addFilter(
-            "Fragment-Host", description.getSymbolicName()).run();
+    private void satisfyFragments(BundleDescription description, State state, List<BundleDescription> constraintSatisfiers,
+        ResolutionCache resolutionCache) throws BundleException {
+        Set<? extends ArtifactDescriptor> fragmentArtefacts = findBundleArtefacts("Fragment-Host", description.getSymbolicName(), resolutionCache);
         for (ArtifactDescriptor fragmentArtefact : fragmentArtefacts) {
-            addBundle(fragmentArtefact, state, constraintSatisfiers);
+            addBundle(fragmentArtefact, state, constraintSatisfiers, resolutionCache);
         }
     }
 
-    private void satisfyFragmentHost(VersionConstraint constraint, State state, List<BundleDescription> constraintSatisfiers) throws BundleException {
-        Set<? extends ArtifactDescriptor> hostArtefacts = this.repository.createQuery("type", BundleBridge.BRIDGE_TYPE).addFilter(
-            "Bundle-SymbolicName", constraint.getName()).run();
+    private void satisfyFragmentHost(VersionConstraint constraint, State state, List<BundleDescription> constraintSatisfiers,
+        ResolutionCache resolutionCache) throws BundleException {
+        Set<? extends ArtifactDescriptor> hostArtefacts = findBundleArtefacts("Bundle-SymbolicName", constraint.getName(), resolutionCache);
         for (ArtifactDescriptor hostArtefact : hostArtefacts) {
-            addBundle(hostArtefact, state, constraintSatisfiers);
+            addBundle(hostArtefact, state, constraintSatisfiers, resolutionCache);
         }
     }
 
-    private void satisfyRequireBundle(VersionConstraint constraint, State state, List<BundleDescription> constraintSatisfiers) throws BundleException {
-        Set<? extends ArtifactDescriptor> requiredBundleArtefacts = this.repository.createQuery("type", BundleBridge.BRIDGE_TYPE).addFilter(
-            "Bundle-SymbolicName", constraint.getName()).run();
+    private void satisfyRequireBundle(VersionConstraint constraint, State state, List<BundleDescription> constraintSatisfiers,
+        ResolutionCache resolutionCache) throws BundleException {
+        Set<? extends ArtifactDescriptor> requiredBundleArtefacts = findBundleArtefacts("Bundle-SymbolicName", constraint.getName(),
+            resolutionCache);
         for (ArtifactDescriptor requiredBundleArtefact : requiredBundleArtefacts) {
-            addBundle(requiredBundleArtefact, state, constraintSatisfiers);
+            addBundle(requiredBundleArtefact, state, constraintSatisfiers, resolutionCache);
         }
     }
 
-    private void satisfyImportPackage(ImportPackageSpecification constraint, State state, List<BundleDescription> constraintSatisfiers)
-        throws BundleException {
-        VersionRange packageVersionRange = constraint.getVersionRange();
-        Query query = this.repository.createQuery("type", BundleBridge.BRIDGE_TYPE);
-        boolean loosePackageVersionRange = false;
-        if (packageVersionRange != null && packageVersionRange.getMaximum().equals(packageVersionRange.getMinimum())) {
-            Map<String, Set<String>> properties = new HashMap<String, Set<String>>();
-            properties.put("version", new HashSet<String>(Arrays.asList(packageVersionRange.getMaximum().toString())));
-            query.addFilter("Export-Package", constraint.getName(), properties);
-        } else {
-            query.addFilter("Export-Package", constraint.getName());
-            loosePackageVersionRange = packageVersionRange != null;
+    private Set<? extends ArtifactDescriptor> findBundleArtefacts(String filterName, String filterValue, ResolutionCache resolutionCache) {
+        String queryKey = filterName + "=" + filterValue;
+        Set<? extends ArtifactDescriptor> artefacts = resolutionCache.queryResults.get(queryKey);
+        if (artefacts == null) {
+            artefacts = this.repository.createQuery("type", BundleBridge.BRIDGE_TYPE).addFilter(filterName, filterValue).run();
+            resolutionCache.queryResults.put(queryKey, artefacts);
         }
+        return artefacts;
+    }
 
+    private void satisfyImportPackage(ImportPackageSpecification constraint, State state, List<BundleDescription> constraintSatisfiers,
+        ResolutionCache resolutionCache) throws BundleException {
         String bundleSymbolicName = constraint.getBundleSymbolicName();
-        if (bundleSymbolicName != null) {
-            query.addFilter("Bundle-SymbolicName", bundleSymbolicName);
-        }
-
         VersionRange bundleVersionRange = constraint.getBundleVersionRange();
-        boolean looseBundleVersionRange = false;
-        if (bundleVersionRange != null && bundleVersionRange.getMaximum().equals(bundleVersionRange.getMinimum())) {
-            query.addFilter("Bundle-Version", bundleVersionRange.getMaximum().toString());
-        } else {
-            looseBundleVersionRange = bundleVersionRange != null;
-        }
-
-        Set<? extends ArtifactDescriptor> packageExportingArtefacts = query.run();
 
-        for (ArtifactDescriptor packageExportingArtefact : packageExportingArtefacts) {
-            if ((!loosePackageVersionRange || packageVersionInRange(packageExportingArtefact, packageVersionRange, constraint.getName()))
-                && (!looseBundleVersionRange || bundleVersionInRange(packageExportingArtefact, bundleVersionRange))) {
-                addBundle(packageExportingArtefact, state, constraintSatisfiers);
+        for (ArtifactDescriptor packageExportingArtefact : getPackageExports(resolutionCache).findExporters(constraint.getName(),
+            constraint.getVersionRange())) {
+            if ((bundleSymbolicName == null || bundleSymbolicName.equals(packageExportingArtefact.getName()))
+                && (bundleVersionRange == null || bundleVersionInRange(packageExportingArtefact, bundleVersionRange))) {
+                addBundle(packageExportingArtefact, state, constraintSatisfiers, resolutionCache);
             }
         }
     }
 
-    private boolean packageVersionInRange(ArtifactDescriptor packageExportingArtefact, VersionRange packageVersionRange, String packageName) {
-        for (Attribute attribute : packageExportingArtefact.getAttribute("Export-Package")) {
-            if (attribute.getValue().equals(packageName)) {
-                Set<String> versions = attribute.getProperties().get("version");
-                Version version = new org.osgi.framework.Version(versions == null || versions.isEmpty() ? "0" : versions.iterator().next());
-                if (packageVersionRange.isIncluded(version)) {
-                    return true;
-                }
-            }
+    private PackageExportIndex.Snapshot getPackageExports(ResolutionCache resolutionCache) {
+        if (resolutionCache.packageExports == null) {
+            resolutionCache.packageExports = this.packageExportIndex.getSnapshot();
         }
-        return false;
+        return resolutionCache.packageExports;
     }
 
     private boolean bundleVersionInRange(ArtifactDescriptor packageExportingArtefact, VersionRange bundleVersionRange) {
         return bundleVersionRange.isIncluded(packageExportingArtefact.getVersion());
     }
 
-    private void addBundle(ArtifactDescriptor artefact, State state, List<BundleDescription> constraintSatisfiers) throws BundleException {
+    private void addBundle(ArtifactDescriptor artefact, State state, List<BundleDescription> constraintSatisfiers,
+        ResolutionCache resolutionCache) throws BundleException {
         if (!isBundlePresentInState(artefact.getName(), artefact.getVersion(), state)) {
-            BundleDescription description = createBundleDescription(artefact, state);
-            constraintSatisfiers.add(description);
+            BundleDescription description = resolutionCache.bundleDescriptions.get(artefact);
+            if (description == null) {
+                description = createBundleDescription(artefact, state);
+                resolutionCache.bundleDescriptions.put(artefact, description);
+            }
+            if (!constraintSatisfiers.contains(description)) {
+                constraintSatisfiers.add(description);
+            }
         }
     }
 
@@ -344,7 +344,7 @@ public final class DependencyCalculator {
     }
 
     private BundleDescription createBundleDescription(ArtifactDescriptor artifact, State state) throws BundleException {
-        Dictionary<?, ?> manifest = BundleBridge.convertToDictionary(artifact);
+        Dictionary<?, ?> manifest = this.artifactManifestCache.getManifest(artifact);
         try {
             URI uri = artifact.getUri();
             if ("file".equals(uri.getScheme())) {
@@ -364,13 +364,36 @@ public final class DependencyCalculator {
         return state.getStateHelper().getUnsatisfiedLeaves(bundles);
     }
 
-    private void generateDump(State state) {
+    /**
+     * Requests a dump of a copy of the given state. The dump may be generated on another thread after the state has
+     * been modified further, so the state itself is not dumped. The copy is deferred so that it is taken only if the
+     * dump is not dropped.
+     */
+    private void generateDump(final State state) {
         Map<String, Object> context = new HashMap<String, Object>();
-        context.put(ResolutionDumpContributor.RESOLUTION_STATE_KEY, state);
+        context.put(ResolutionDumpContributor.RESOLUTION_STATE_KEY, new DeferredDumpContextValue() {
+
+            public Object create() {
+                return stateObjectFactory.createState(state);
+            }
+        });
         this.dumpGenerator.generateDump("resolutionFailure", context);
     }
 
     public long getNextBundleId() {
         return this.bundleId.getAndIncrement();
     }
+
+    /**
+     * The results of the repository queries run, the snapshot of the package export index used, and the bundle
+     * descriptions created, while calculating the dependencies of a set of bundles against a single {@link State}.
+     */
+    private static final class ResolutionCache {
+
+        private final Map<String, Set<? extends ArtifactDescriptor>> queryResults = new HashMap<String, Set<? extends ArtifactDescriptor>>();
+
+        private final Map<ArtifactDescriptor, BundleDescription> bundleDescriptions = new IdentityHashMap<ArtifactDescriptor, BundleDescription>();
+
+        private PackageExportIndex.Snapshot packageExports;
+    }
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.quasi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.osgi.service.resolver.VersionRange;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.kernel.artifact.bundle.BundleBridge;
+import org.eclipse.virgo.repository.ArtifactDescriptor;
+import org.eclipse.virgo.repository.Attribute;
+import org.eclipse.virgo.repository.Repository;
+
+/**
+ * {@link PackageExportIndex} is an inverted index of the bundle artifacts in the repository from the name of each
+ * exported package to the artifacts which export it, in ascending order of the exported package version. The
+ * artifacts which export a package in a given version range are found by a lookup and a binary search rather than by a
+ * repository query and a scan of each candidate's <code>Export-Package</code> attributes.
+ * <p />
+ * The repository does not notify changes, so each {@link Snapshot} of the index is taken by enumerating the bundle
+ * artifacts of the repository once and is reused while the repository returns the same artifact descriptors. When the
+ * repository's contents change, only the descriptors which are new are indexed again. The index is derived from the
+ * artifact descriptors, which the repository persists itself, so building it reads no artifacts and it is not
+ * persisted separately.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * Thread safe.
+ *
+ */
+final class PackageExportIndex {
+
+    private static final String EXPORT_PACKAGE_ATTRIBUTE_NAME = "Export-Package";
+
+    private static final String VERSION_PROPERTY_NAME = "version";
+
+    private static final PackageExport[] NO_PACKAGE_EXPORTS = new PackageExport[0];
+
+    private static final Comparator<PackageExport> VERSION_ORDER = new Comparator<PackageExport>() {
+
+        public int compare(PackageExport packageExport1, PackageExport packageExport2) {
+            return packageExport1.version.compareTo(packageExport2.version);
+        }
+    };
+
+    private final Object monitor = new Object();
+
+    private final Repository repository;
+
+    private Snapshot snapshot = new Snapshot(Collections.<ArtifactDescriptor> emptySet(), null); // protected by monitor
+
+    PackageExportIndex(Repository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Returns a snapshot of the index which reflects the bundle artifacts the repository currently holds.
+     *
+     * @return the current <code>Snapshot</code>
+     */
+    Snapshot getSnapshot() {
+        Set<? extends ArtifactDescriptor> artifacts = this.repository.createQuery("type", BundleBridge.BRIDGE_TYPE).run();
+        synchronized (this.monitor) {
+            if (!this.snapshot.isOf(artifacts)) {
+                this.snapshot = new Snapshot(artifacts, this.snapshot);
+            }
+            return this.snapshot;
+        }
+    }
+
+    /**
+     * An immutable index of a fixed set of bundle artifacts.
+     * <p />
+     *
+     * <strong>Concurrent Semantics</strong><br />
+     *
+     * Thread safe.
+     */
+    static final class Snapshot {
+
+        private final Map<ArtifactDescriptor, PackageExport[]> artifactPackageExports;
+
+        private final Map<String, PackageExport[]> packageExports;
+
+        private Snapshot(Set<? extends ArtifactDescriptor> artifacts, Snapshot previousSnapshot) {
+            this.artifactPackageExports = new IdentityHashMap<ArtifactDescriptor, PackageExport[]>(artifacts.size());
+            Map<String, List<PackageExport>> packageExportLists = new HashMap<String, List<PackageExport>>();
+            for (ArtifactDescriptor artifact : artifacts) {
+                PackageExport[] artifactPackageExports = previousSnapshot == null ? null
+                    : previousSnapshot.artifactPackageExports.get(artifact);
+                if (artifactPackageExports == null) {
+                    artifactPackageExports = indexPackageExports(artifact);
+                }
+                this.artifactPackageExports.put(artifact, artifactPackageExports);
+
+                for (PackageExport packageExport : artifactPackageExports) {
+                    List<PackageExport> packageExportList = packageExportLists.get(packageExport.packageName);
+                    if (packageExportList == null) {
+                        packageExportList = new ArrayList<PackageExport>(1);
+                        packageExportLists.put(packageExport.packageName, packageExportList);
+                    }
+                    packageExportList.add(packageExport);
+                }
+            }
+
+            this.packageExports = new HashMap<String, PackageExport[]>(packageExportLists.size() * 2);
+            for (Entry<String, List<PackageExport>> packageExportList : packageExportLists.entrySet()) {
+                PackageExport[] packageExports = packageExportList.getValue().toArray(new PackageExport[packageExportList.getValue().size()]);
+                Arrays.sort(packageExports, VERSION_ORDER);
+                this.packageExports.put(packageExportList.getKey(), packageExports);
+            }
+        }
+
+        private boolean isOf(Set<? extends ArtifactDescriptor> artifacts) {
+            if (artifacts.size() != this.artifactPackageExports.size()) {
+                return false;
+            }
+            for (ArtifactDescriptor artifact : artifacts) {
+                if (!this.artifactPackageExports.containsKey(artifact)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the bundle artifacts which export the given package at a version in the given version range, in
+         * ascending order of the exported package version. An artifact which exports the package at more than one
+         * version in the range is returned once for each such version.
+         *
+         * @param packageName the name of the package
+         * @param versionRange the version range, or <code>null</code> for any version
+         * @return the exporting artifacts
+         */
+        List<ArtifactDescriptor> findExporters(String packageName, VersionRange versionRange) {
+            PackageExport[] packageExports = this.packageExports.get(packageName);
+            if (packageExports == null) {
+                return Collections.emptyList();
+            }
+            if (versionRange == null) {
+                versionRange = VersionRange.emptyRange;
+            }
+
+            List<ArtifactDescriptor> exporters = new ArrayList<ArtifactDescriptor>();
+            Version maximum = versionRange.getMaximum();
+            for (int index = findLowestCandidate(packageExports, versionRange.getMinimum(), versionRange.getIncludeMinimum()); index < packageExports.length; index++) {
+                PackageExport packageExport = packageExports[index];
+                if (maximum != null && packageExport.version.compareTo(maximum) > 0) {
+                    break;
+                }
+                if (versionRange.isIncluded(packageExport.version)) {
+                    exporters.add(packageExport.artifact);
+                }
+            }
+            return exporters;
+        }
+
+        /**
+         * Returns the index of the lowest of the given package exports, which are in ascending version order, whose
+         * version is not below the given minimum, or the number of package exports if there is no such package export.
+         */
+        private static int findLowestCandidate(PackageExport[] packageExports, Version minimum, boolean includeMinimum) {
+            int low = 0;
+            int high = packageExports.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                int comparison = packageExports[middle].version.compareTo(minimum);
+                if (comparison < 0 || (comparison == 0 && !includeMinimum)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private static PackageExport[] indexPackageExports(ArtifactDescriptor artifact) {
+            Set<Attribute> attributes = artifact.getAttribute(EXPORT_PACKAGE_ATTRIBUTE_NAME);
+            if (attributes == null || attributes.isEmpty()) {
+                return NO_PACKAGE_EXPORTS;
+            }
+            List<PackageExport> packageExports = new ArrayList<PackageExport>(attributes.size());
+            for (Attribute attribute : attributes) {
+                Set<String> versions = attribute.getProperties().get(VERSION_PROPERTY_NAME);
+                Version version = new Version(versions == null || versions.isEmpty() ? "0" : versions.iterator().next());
+                packageExports.add(new PackageExport(attribute.getValue(), version, artifact));
+            }
+            return packageExports.toArray(new PackageExport[packageExports.size()]);
+        }
+    }
+
+    private static final class PackageExport {
+
+        private final String packageName;
+
+        private final Version version;
+
+        private final ArtifactDescriptor artifact;
+
+        private PackageExport(String packageName, Version version, ArtifactDescriptor artifact) {
+            this.packageName = packageName;
+            this.version = version;
+            this.artifact = artifact;
+        }
+    }
+}
@@ -57,6 +57,8 @@ final class StandardQuasiBundle implements QuasiBundle {
 
     private final StateHelper stateHelper;
 
+    private final StandardQuasiFramework quasiFramework;
+
     /**
      * Constructs an unresolved, uncommitted {@link QuasiBundle} with the given {@link BundleDescription}.
      * 
@@ -65,11 +67,26 @@ final class StandardQuasiBundle implements QuasiBundle {
      * @param stateHelper a {@link StateHelper} for analysing wiring
      */
     public StandardQuasiBundle(BundleDescription bundleDescription, BundleManifest bundleManifest, StateHelper stateHelper) {
+        this(bundleDescription, bundleManifest, stateHelper, null);
+    }
+
+    /**
+     * Constructs an unresolved, uncommitted {@link QuasiBundle} with the given {@link BundleDescription} which has been
+     * installed in the given {@link StandardQuasiFramework} and may be uninstalled from it.
+     * 
+     * @param bundleDescription the <code>BundleDescription</code> for this <code>QuasiBundle</code>
+     * @param bundleManifest
+     * @param stateHelper a {@link StateHelper} for analysing wiring
+     * @param quasiFramework the <code>StandardQuasiFramework</code> in which this <code>QuasiBundle</code> is installed
+     */
+    StandardQuasiBundle(BundleDescription bundleDescription, BundleManifest bundleManifest, StateHelper stateHelper,
+        StandardQuasiFramework quasiFramework) {
         this.bundleDescription = bundleDescription;
         this.bundleManifest = bundleManifest;
         this.bsn = bundleDescription.getSymbolicName();
         this.bv = bundleDescription.getVersion();
         this.stateHelper = stateHelper;
+        this.quasiFramework = quasiFramework;
     }
 
     BundleDescription getBundleDescription() {
@@ -105,7 +122,10 @@ final class StandardQuasiBundle implements QuasiBundle {
      * {@inheritDoc}
      */
     public void uninstall() {
-        throw new UnsupportedOperationException("not implemented yet");
+        if (this.quasiFramework == null) {
+            throw new UnsupportedOperationException("only a bundle installed in a quasi framework can be uninstalled");
+        }
+        this.quasiFramework.uninstall(this);
     }
 
     public void setBundle(Bundle bundle) {
@@ -84,12 +84,12 @@ final class StandardQuasiFramework implements QuasiFramework {
     
     private final TransformedManifestProvidingBundleFileWrapper bundleTransformationHandler;
 
-    StandardQuasiFramework(BundleContext bundleContext, State state, PlatformAdmin platformAdmin, ResolutionFailureDetective detective, Repository repository, TransformedManifestProvidingBundleFileWrapper bundleTransformationHandler) {
+    StandardQuasiFramework(BundleContext bundleContext, State state, PlatformAdmin platformAdmin, ResolutionFailureDetective detective, Repository repository, ArtifactManifestCache artifactManifestCache, PackageExportIndex packageExportIndex, TransformedManifestProvidingBundleFileWrapper bundleTransformationHandler) {
         this.bundleContext = bundleContext;
         this.state = state;
         this.stateObjectFactory = platformAdmin.getFactory();
         this.detective = detective;
-        this.dependencyCalculator = new DependencyCalculator(platformAdmin.getFactory(), this.detective, repository, this.bundleContext);
+        this.dependencyCalculator = new DependencyCalculator(platformAdmin.getFactory(), this.detective, repository, artifactManifestCache, packageExportIndex, this.bundleContext);
         this.stateHelper = platformAdmin.getStateHelper();
         this.bundleTransformationHandler = bundleTransformationHandler;
     }
@@ -105,6 +105,22 @@ final class StandardQuasiFramework implements QuasiFramework {
         }
     }
 
+    /**
+     * Removes the given {@link StandardQuasiBundle}, which must have been installed in this framework, from the side
+     * state so that it no longer takes part in resolution or commit. Has no effect if the bundle has already been
+     * uninstalled.
+     * 
+     * @param quasiBundle the <code>StandardQuasiBundle</code> to be uninstalled
+     */
+    void uninstall(StandardQuasiBundle quasiBundle) {
+        synchronized (this.monitor) {
+            if (this.installedQuasiBundles.remove(quasiBundle)) {
+                this.state.removeBundle(quasiBundle.getBundleDescription());
+                this.otherBundles = null;
+            }
+        }
+    }
+
     private StandardQuasiBundle doInstall(URI location, BundleManifest bundleManifest) throws BundleException {
         try {
             Dictionary<String, String> manifest = bundleManifest.toDictionary();
@@ -112,7 +128,7 @@ final class StandardQuasiFramework implements QuasiFramework {
             BundleDescription bundleDescription = this.stateObjectFactory.createBundleDescription(this.state, manifest, installLocation,
                 nextBundleId());
             this.state.addBundle(bundleDescription);
-            return new StandardQuasiBundle(bundleDescription, bundleManifest, this.stateHelper);
+            return new StandardQuasiBundle(bundleDescription, bundleManifest, this.stateHelper, this);
         } catch (RuntimeException e) {
             throw new BundleException("Unable to read bundle at '" + location + "'", e);
         }
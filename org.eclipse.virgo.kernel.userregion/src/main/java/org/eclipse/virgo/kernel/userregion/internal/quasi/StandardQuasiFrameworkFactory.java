@@ -29,6 +29,7 @@ import org.eclipse.virgo.kernel.osgi.framework.OsgiFrameworkUtils;
 import org.eclipse.virgo.kernel.osgi.framework.OsgiServiceHolder;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
 import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
 import org.eclipse.virgo.kernel.userregion.internal.equinox.TransformedManifestProvidingBundleFileWrapper;
 import org.eclipse.virgo.repository.Repository;
 import org.eclipse.virgo.util.io.FileSystemUtils;
@@ -36,6 +37,14 @@ import org.eclipse.virgo.util.io.FileSystemUtils;
 /**
  * {@link StandardQuasiFrameworkFactory} is the default implementation of {@link QuasiFrameworkFactory}.
  * <p />
+ * Each {@link QuasiFramework} is given its own side state which is read from a serialised snapshot of the system
+ * state. The snapshot is only rewritten when the system state's time stamp, which Equinox advances whenever the state
+ * is changed, differs from the time stamp at which the snapshot was taken. This avoids serialising the whole system
+ * state on every call to {@link #create()} when no bundles have been installed, updated, or uninstalled in between.
+ * <p />
+ * A single {@link QuasiStateSnapshot} is shared by all callers of {@link #getStateSnapshot()} and is replaced, using the
+ * same time stamp check, when the system state has changed.
+ * <p />
  * 
  * <strong>Concurrent Semantics</strong><br />
  * 
@@ -58,11 +67,26 @@ public final class StandardQuasiFrameworkFactory implements QuasiFrameworkFactor
     
     private final TransformedManifestProvidingBundleFileWrapper bundleTransformationHandler;
 
+    private final ArtifactManifestCache artifactManifestCache = new ArtifactManifestCache();
+
+    private final PackageExportIndex packageExportIndex;
+
+    private final Object monitor = new Object();
+
+    private byte[] systemStateSnapshot; // protected by monitor
+
+    private long systemStateSnapshotTimeStamp = -1; // protected by monitor
+
+    private final Object stateSnapshotMonitor = new Object();
+
+    private StandardQuasiStateSnapshot stateSnapshot; // protected by stateSnapshotMonitor
+
     public StandardQuasiFrameworkFactory(BundleContext bundleContext, ResolutionFailureDetective detective, Repository repository, TransformedManifestProvidingBundleFileWrapper bundleTransformationHandler) {
         this.bundleContext = bundleContext;
         this.platformAdmin = getPlatformAdminService(bundleContext);
         this.detective = detective;
         this.repository = repository;
+        this.packageExportIndex = new PackageExportIndex(repository);
         ServiceReference platformAdminServiceReference = bundleContext.getServiceReference(PlatformAdmin.class.getName());
         this.stateManager = (StateManager) bundleContext.getService(platformAdminServiceReference);
         this.bundleTransformationHandler = bundleTransformationHandler;
@@ -72,40 +96,78 @@ public final class StandardQuasiFrameworkFactory implements QuasiFrameworkFactor
      * {@inheritDoc}
      */
     public QuasiFramework create() {
-        return new StandardQuasiFramework(this.bundleContext, createState(), this.platformAdmin, this.detective, this.repository, this.bundleTransformationHandler);
+        return new StandardQuasiFramework(this.bundleContext, createState(), this.platformAdmin, this.detective, this.repository, this.artifactManifestCache, this.packageExportIndex, this.bundleTransformationHandler);
     }
     
-    /** 
+    /**
      * {@inheritDoc}
      */
     public QuasiFramework create(File stateDump) {
-        return new StandardQuasiFramework(this.bundleContext, readStateDump(stateDump), this.platformAdmin, this.detective, this.repository, this.bundleTransformationHandler);
+        return new StandardQuasiFramework(this.bundleContext, readStateDump(stateDump), this.platformAdmin, this.detective, this.repository, this.artifactManifestCache, this.packageExportIndex, this.bundleTransformationHandler);
     }
 
+    /**
+     * {@inheritDoc}
+     */
     @SuppressWarnings("deprecation")
-    private State createState() {        
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        
+    public QuasiStateSnapshot getStateSnapshot() {
+        State systemState = this.stateManager.getSystemState();
+
+        synchronized (this.stateSnapshotMonitor) {
+            long timeStamp = systemState.getTimeStamp();
+            if (this.stateSnapshot == null || timeStamp != this.stateSnapshot.getTimeStamp()) {
+                this.stateSnapshot = new StandardQuasiStateSnapshot(createState(), this.platformAdmin.getStateHelper(), timeStamp);
+            }
+            return this.stateSnapshot;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private State createState() {
         State state;
-        
+
         try {
-            this.platformAdmin.getFactory().writeState(this.stateManager.getSystemState(), baos);
-            state = this.platformAdmin.getFactory().readState(new ByteArrayInputStream(baos.toByteArray()));
+            state = this.platformAdmin.getFactory().readState(new ByteArrayInputStream(getSystemStateSnapshot()));
         } catch (IOException ioe) {
             throw new RuntimeException("Failed to create a copy of the OSGi state", ioe);
         }
-        
+
         if (state.getResolver() == null) {
             state.setResolver(this.platformAdmin.createResolver());
         }
-        
+
         if (!state.isResolved()) {
             state.resolve(true);
         }
-        
+
         return state;
     }
 
+    /**
+     * Returns a serialised copy of the system state, taking a fresh copy only if the system state has changed since the
+     * previous copy was taken.
+     * 
+     * @return the serialised system state
+     * @throws IOException if the system state cannot be written
+     */
+    @SuppressWarnings("deprecation")
+    private byte[] getSystemStateSnapshot() throws IOException {
+        State systemState = this.stateManager.getSystemState();
+
+        synchronized (this.monitor) {
+            // Read the time stamp before writing so that a concurrent change causes the next call to take a fresh copy
+            long timeStamp = systemState.getTimeStamp();
+            if (this.systemStateSnapshot == null || timeStamp != this.systemStateSnapshotTimeStamp) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                this.platformAdmin.getFactory().writeState(systemState, baos);
+                this.systemStateSnapshot = baos.toByteArray();
+                this.systemStateSnapshotTimeStamp = timeStamp;
+                this.logger.debug("Took a snapshot of the system state at time stamp {}", timeStamp);
+            }
+            return this.systemStateSnapshot;
+        }
+    }
+
     private State readStateDump(File outdir) {
         State state = null;
 
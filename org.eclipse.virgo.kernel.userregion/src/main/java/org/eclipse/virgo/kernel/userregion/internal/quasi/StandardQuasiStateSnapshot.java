@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.quasi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.osgi.service.resolver.State;
+import org.eclipse.osgi.service.resolver.StateHelper;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiBundle;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiExportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
+
+/**
+ * {@link StandardQuasiStateSnapshot} is the default implementation of {@link QuasiStateSnapshot}. It wraps a copy of
+ * the system state which is never modified and indexes the copy's bundles and packages on construction.
+ * <p />
+ *
+ * <strong>Concurrent Semantics</strong><br />
+ *
+ * This class is thread safe.
+ *
+ */
+final class StandardQuasiStateSnapshot implements QuasiStateSnapshot {
+
+    private final long timeStamp;
+
+    private final List<QuasiBundle> bundles = new ArrayList<QuasiBundle>();
+
+    private final Map<Long, QuasiBundle> bundlesById = new HashMap<Long, QuasiBundle>();
+
+    private final Map<String, List<QuasiBundle>> bundlesBySymbolicName = new HashMap<String, List<QuasiBundle>>();
+
+    private final Map<Long, List<QuasiImportPackage>> wiredImportPackages = new HashMap<Long, List<QuasiImportPackage>>();
+
+    private final Map<String, List<QuasiExportPackage>> exportPackages = new HashMap<String, List<QuasiExportPackage>>();
+
+    private final Map<String, List<QuasiImportPackage>> importPackages = new HashMap<String, List<QuasiImportPackage>>();
+
+    /**
+     * Creates a snapshot of the given state. The state must not be modified once the snapshot has been created.
+     *
+     * @param state the state
+     * @param stateHelper the <code>StateHelper</code> for the state
+     * @param timeStamp the time stamp of the system state the state was copied from
+     */
+    StandardQuasiStateSnapshot(State state, StateHelper stateHelper, long timeStamp) {
+        this.timeStamp = timeStamp;
+        for (BundleDescription bundleDescription : state.getBundles()) {
+            addBundle(new StandardQuasiBundle(bundleDescription, null, stateHelper));
+        }
+    }
+
+    private void addBundle(QuasiBundle bundle) {
+        this.bundles.add(bundle);
+        this.bundlesById.put(bundle.getBundleId(), bundle);
+        addToIndex(this.bundlesBySymbolicName, bundle.getSymbolicName(), bundle);
+
+        for (QuasiExportPackage exportPackage : bundle.getExportPackages()) {
+            addToIndex(this.exportPackages, exportPackage.getPackageName(), exportPackage);
+        }
+
+        List<QuasiImportPackage> wiredImportPackages = new ArrayList<QuasiImportPackage>();
+        for (QuasiImportPackage importPackage : bundle.getImportPackages()) {
+            addToIndex(this.importPackages, importPackage.getPackageName(), importPackage);
+            if (importPackage.getProvider() != null) {
+                wiredImportPackages.add(importPackage);
+            }
+        }
+        this.wiredImportPackages.put(bundle.getBundleId(), Collections.unmodifiableList(wiredImportPackages));
+    }
+
+    private static <T> void addToIndex(Map<String, List<T>> index, String key, T value) {
+        List<T> values = index.get(key);
+        if (values == null) {
+            values = new ArrayList<T>();
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    long getTimeStamp() {
+        return this.timeStamp;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<QuasiBundle> getBundles() {
+        return Collections.unmodifiableList(this.bundles);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QuasiBundle getBundle(long bundleId) {
+        return this.bundlesById.get(bundleId);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public QuasiBundle getBundle(String name, Version version) {
+        List<QuasiBundle> bundles = this.bundlesBySymbolicName.get(name);
+        if (bundles != null) {
+            for (QuasiBundle bundle : bundles) {
+                if (bundle.getVersion().equals(version)) {
+                    return bundle;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<QuasiImportPackage> getWiredImportPackages(long bundleId) {
+        List<QuasiImportPackage> wiredImportPackages = this.wiredImportPackages.get(bundleId);
+        return wiredImportPackages == null ? Collections.<QuasiImportPackage> emptyList() : wiredImportPackages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<QuasiExportPackage> getExportPackages(String packageName) {
+        return getFromIndex(this.exportPackages, packageName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public List<QuasiImportPackage> getImportPackages(String packageName) {
+        return getFromIndex(this.importPackages, packageName);
+    }
+
+    private static <T> List<T> getFromIndex(Map<String, List<T>> index, String key) {
+        List<T> values = index.get(key);
+        return values == null ? Collections.<T> emptyList() : Collections.unmodifiableList(values);
+    }
+}
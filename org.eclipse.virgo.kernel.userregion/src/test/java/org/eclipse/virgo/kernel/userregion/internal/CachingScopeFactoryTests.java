@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.kernel.shim.scope.Scope;
+import org.eclipse.virgo.kernel.shim.scope.ScopeFactory;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundle;
+
+/**
+ */
+public class CachingScopeFactoryTests {
+
+    private static final String SCOPE_NAME = "application scope";
+
+    private final ScopeFactory scopeFactory = createMock(ScopeFactory.class);
+
+    private final CachingScopeFactory cachingScopeFactory = new CachingScopeFactory(this.scopeFactory);
+
+    private final StubBundle bundle = new StubBundle(7L, "bundle", Version.emptyVersion, "location");
+
+    private Scope globalScope;
+
+    private Scope appScope;
+
+    @Before
+    public void setUp() {
+        this.bundle.setState(Bundle.INSTALLED);
+
+        this.globalScope = createMock(Scope.class);
+        expect(this.globalScope.isGlobal()).andReturn(true).anyTimes();
+        this.appScope = createMock(Scope.class);
+        expect(this.appScope.isGlobal()).andReturn(false).anyTimes();
+        expect(this.appScope.getScopeName()).andReturn(SCOPE_NAME).anyTimes();
+        replay(this.globalScope, this.appScope);
+
+        expect(this.scopeFactory.getGlobalScope()).andReturn(this.globalScope).anyTimes();
+        expect(this.scopeFactory.getApplicationScope(SCOPE_NAME)).andReturn(this.appScope).anyTimes();
+    }
+
+    @Test
+    public void bundleScopeIsDeterminedOnceUntilUninstalled() {
+        expect(this.scopeFactory.getBundleScope(this.bundle)).andReturn(this.appScope).times(2);
+        replay(this.scopeFactory);
+
+        this.cachingScopeFactory.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, this.bundle));
+        assertSame(this.appScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+        assertSame(this.appScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+
+        this.cachingScopeFactory.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, this.bundle));
+        assertSame(this.appScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+
+        verify(this.scopeFactory);
+    }
+
+    @Test
+    public void bundleScopeCachedForAnEarlierRevisionIsNotUsed() {
+        expect(this.scopeFactory.getBundleScope(this.bundle)).andReturn(this.appScope).once();
+        expect(this.scopeFactory.getBundleScope(this.bundle)).andReturn(this.globalScope).once();
+        replay(this.scopeFactory);
+
+        this.cachingScopeFactory.bundleChanged(new BundleEvent(BundleEvent.UPDATED, this.bundle));
+        assertSame(this.appScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+
+        this.bundle.setLastModified(this.bundle.getLastModified() + 1);
+        assertSame(this.globalScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+        assertSame(this.globalScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+
+        verify(this.scopeFactory);
+    }
+
+    @Test
+    public void globalBundleScopeIsCached() {
+        expect(this.scopeFactory.getBundleScope(this.bundle)).andReturn(this.globalScope).once();
+        replay(this.scopeFactory);
+
+        assertSame(this.globalScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+        assertSame(this.globalScope, this.cachingScopeFactory.getBundleScope(this.bundle));
+
+        verify(this.scopeFactory);
+    }
+
+    @Test
+    public void serviceScopeIsDeterminedOnceUntilModified() {
+        ServiceReference serviceReference = createMock(ServiceReference.class);
+        expect(serviceReference.getProperty(Constants.SERVICE_ID)).andReturn(Long.valueOf(42)).anyTimes();
+        replay(serviceReference);
+
+        expect(this.scopeFactory.getServiceScope(serviceReference)).andReturn(this.appScope).once();
+        expect(this.scopeFactory.getServiceScope(serviceReference)).andReturn(this.globalScope).once();
+        replay(this.scopeFactory);
+
+        assertSame(this.appScope, this.cachingScopeFactory.getServiceScope(serviceReference));
+        assertSame(this.appScope, this.cachingScopeFactory.getServiceScope(serviceReference));
+
+        ServiceEvent modified = new ServiceEvent(ServiceEvent.MODIFIED, serviceReference);
+        this.cachingScopeFactory.serviceChanging(modified);
+        this.cachingScopeFactory.serviceChanged(modified);
+        assertSame(this.globalScope, this.cachingScopeFactory.getServiceScope(serviceReference));
+        assertSame(this.globalScope, this.cachingScopeFactory.getServiceScope(serviceReference));
+
+        verify(this.scopeFactory);
+    }
+}
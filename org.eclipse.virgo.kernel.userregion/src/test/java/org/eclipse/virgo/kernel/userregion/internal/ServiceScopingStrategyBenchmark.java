@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal;
+
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.kernel.install.artifact.ScopeServiceRepository;
+import org.eclipse.virgo.kernel.shim.scope.Scope;
+import org.eclipse.virgo.kernel.shim.scope.internal.StandardScopeFactory;
+import org.eclipse.virgo.medic.test.eventlog.MockEventLogger;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundle;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+
+/**
+ * Measures the cost of {@link ServiceScopingStrategy#scopeReferences} with 50 application scopes and 5,000 service
+ * references, using a {@link StandardScopeFactory}.
+ * <p/>
+ * This is a benchmark which reports its timings on standard output, not a test, so it is named so that the build's
+ * test run does not pick it up.
+ */
+public class ServiceScopingStrategyBenchmark {
+
+    private static final int SCOPE_COUNT = 50;
+
+    private static final int SERVICE_COUNT = 5000;
+
+    private static final int WARM_UP_ITERATIONS = 20;
+
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void scopeReferences() {
+        ServiceScopingStrategy serviceScopingStrategy = new ServiceScopingStrategy(new StandardScopeFactory(new MockEventLogger()),
+            new EmptyScopeServiceRepository());
+
+        List<StubBundle> scopedBundles = new ArrayList<StubBundle>();
+        for (int scope = 0; scope < SCOPE_COUNT; scope++) {
+            StubBundle bundle = new StubBundle(Long.valueOf(scope + 1), "scoped.bundle" + scope, Version.emptyVersion, "scoped" + scope);
+            bundle.addHeader("Module-Scope", "scope" + scope);
+            scopedBundles.add(bundle);
+        }
+        StubBundle globalBundle = new StubBundle(Long.valueOf(SCOPE_COUNT + 1), "global.bundle", Version.emptyVersion, "global");
+
+        List<ServiceReference> serviceReferences = new ArrayList<ServiceReference>(SERVICE_COUNT);
+        for (int service = 0; service < SERVICE_COUNT; service++) {
+            boolean global = service % (SCOPE_COUNT + 1) == SCOPE_COUNT;
+            serviceReferences.add(createServiceReference(global ? globalBundle : scopedBundles.get(service % (SCOPE_COUNT + 1)), global));
+        }
+
+        StubBundleContext consumingBundleContext = new StubBundleContext(scopedBundles.get(0));
+
+        int expectedReferences = 0;
+        for (int service = 0; service < SERVICE_COUNT; service++) {
+            if (service % (SCOPE_COUNT + 1) == 0) {
+                expectedReferences++;
+            }
+        }
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            scope(serviceScopingStrategy, serviceReferences, consumingBundleContext);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(expectedReferences, scope(serviceScopingStrategy, serviceReferences, consumingBundleContext));
+        }
+        long averageNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        System.out.println(String.format("scopeReferences with %d scopes and %d service references: %6d us", SCOPE_COUNT, SERVICE_COUNT,
+            averageNanos / 1000));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int scope(ServiceScopingStrategy serviceScopingStrategy, List<ServiceReference> serviceReferences,
+        StubBundleContext consumingBundleContext) {
+        Collection references = new HashSet<ServiceReference>(serviceReferences);
+        serviceScopingStrategy.scopeReferences(references, consumingBundleContext, "benchmark.Service", null);
+        return references.size();
+    }
+
+    private static ServiceReference createServiceReference(StubBundle bundle, boolean global) {
+        ServiceReference serviceReference = createNiceMock(ServiceReference.class);
+        expect(serviceReference.getBundle()).andReturn(bundle).anyTimes();
+        expect(serviceReference.getProperty(Scope.PROPERTY_SERVICE_SCOPE)).andReturn(global ? Scope.SCOPE_ID_GLOBAL : Scope.SCOPE_ID_APP).anyTimes();
+        replay(serviceReference);
+        return serviceReference;
+    }
+
+    private static final class EmptyScopeServiceRepository implements ScopeServiceRepository {
+
+        public void recordService(String scopeName, String[] types, Dictionary<Object, Object> properties) {
+        }
+
+        public boolean scopeHasMatchingService(String scopeName, String type, String filter) throws InvalidSyntaxException {
+            return false;
+        }
+
+        public void clearScope(String scopeName) {
+        }
+
+        public Set<String> knownScopes() {
+            return Collections.<String> emptySet();
+        }
+    }
+}
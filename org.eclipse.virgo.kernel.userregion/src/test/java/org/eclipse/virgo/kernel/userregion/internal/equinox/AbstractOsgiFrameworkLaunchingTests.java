@@ -77,6 +77,10 @@ public abstract class AbstractOsgiFrameworkLaunchingTests {
 
     protected QuasiFramework quasiFramework;
 
+    protected final StandardClassLoaderMonitor classLoaderMonitor = new StandardClassLoaderMonitor();
+
+    private ImportExpansionHandler importExpansionHandler;
+
     @Before
     public void setUp() throws Exception {
 
@@ -142,7 +146,7 @@ public abstract class AbstractOsgiFrameworkLaunchingTests {
         TransformedManifestProvidingBundleFileWrapper bundleFileWrapper = new TransformedManifestProvidingBundleFileWrapper(importExpander);
         this.framework = new EquinoxOsgiFramework(equinox.getBundleContext(), packageAdmin, bundleFileWrapper);
 
-        PluggableClassLoadingHook.getInstance().setClassLoaderCreator(new KernelClassLoaderCreator());
+        PluggableClassLoadingHook.getInstance().setClassLoaderCreator(new KernelClassLoaderCreator(this.classLoaderMonitor));
         StandardResolutionFailureDetective detective = new StandardResolutionFailureDetective(platformAdmin);
         this.quasiFramework = new StandardQuasiFrameworkFactory(bundleContext, detective, repository, bundleFileWrapper).create();
     }
@@ -155,12 +159,19 @@ public abstract class AbstractOsgiFrameworkLaunchingTests {
             packagesExportedBySystemBundle.add(exportedPackage.getName());
         }
 
-        return new ImportExpansionHandler(repository, bundleContext, packagesExportedBySystemBundle, new MockEventLogger());
+        this.importExpansionHandler = new ImportExpansionHandler(repository, bundleContext, packagesExportedBySystemBundle,
+            new MockEventLogger());
+        return this.importExpansionHandler;
     }
 
     @After
     public void stop() throws Exception {
 
+        if (this.importExpansionHandler != null) {
+            this.importExpansionHandler.stop();
+            this.importExpansionHandler = null;
+        }
+
         if (this.repositoryRegistration != null) {
             this.repositoryRegistration.unregister();
             this.repositoryRegistration = null;
@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ */
+public class ClassNamePrefixTrieTests {
+
+    @Test
+    public void matchingPrefixes() {
+        ClassNamePrefixTrie trie = new ClassNamePrefixTrie("java.", "javax.", "sun.", "com.foo");
+
+        assertTrue(trie.matches("java.lang.String"));
+        assertTrue(trie.matches("javax.sql.DataSource"));
+        assertTrue(trie.matches("sun.misc.Unsafe"));
+        assertTrue(trie.matches("com.foo.Bar"));
+        assertTrue(trie.matches("com.foobar.Baz"));
+        assertTrue(trie.matches("com.foo"));
+    }
+
+    @Test
+    public void nonMatchingPrefixes() {
+        ClassNamePrefixTrie trie = new ClassNamePrefixTrie("java.", "javax.", "sun.", "com.foo");
+
+        assertFalse(trie.matches("javaz.Foo"));
+        assertFalse(trie.matches("java"));
+        assertFalse(trie.matches("org.eclipse.virgo.Foo"));
+        assertFalse(trie.matches("com.fo"));
+        assertFalse(trie.matches(""));
+    }
+
+    @Test
+    public void noPrefixes() {
+        assertFalse(new ClassNamePrefixTrie().matches("java.lang.String"));
+    }
+
+    @Test
+    public void emptyPrefix() {
+        ClassNamePrefixTrie trie = new ClassNamePrefixTrie("");
+        assertTrue(trie.matches("java.lang.String"));
+        assertTrue(trie.matches(""));
+    }
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.kernel.artifact.bundle.BundleBridge;
+import org.eclipse.virgo.kernel.artifact.library.LibraryDefinition;
+import org.eclipse.virgo.kernel.userregion.internal.importexpansion.ImportExpansionHandler;
+import org.eclipse.virgo.medic.test.eventlog.MockEventLogger;
+import org.eclipse.virgo.repository.Query;
+import org.eclipse.virgo.repository.Repository;
+import org.eclipse.virgo.repository.RepositoryAwareArtifactDescriptor;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundle;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+import org.eclipse.virgo.util.io.PathReference;
+
+/**
+ */
+public class ExpandedManifestCacheTests {
+
+    private static final File CACHE_DIRECTORY = new File("target/manifest-cache");
+
+    private static final File BUNDLE_LOCATION = new File("target/bundles/a.jar");
+
+    private static final byte[] MANIFEST = "Bundle-SymbolicName: a\n".getBytes();
+
+    private static final byte[] EXPANDED_MANIFEST = "Bundle-SymbolicName: a\nImport-Package: p\n".getBytes();
+
+    private static final byte[] IMPORTING_MANIFEST = "Bundle-SymbolicName: a\nImport-Bundle: b\n".getBytes();
+
+    private final Repository repository = createMock(Repository.class);
+
+    private ExpandedManifestCache cache;
+
+    @Before
+    public void setUp() {
+        new PathReference(CACHE_DIRECTORY).delete(true);
+        this.cache = new ExpandedManifestCache(CACHE_DIRECTORY, this.repository, null);
+    }
+
+    @Test
+    public void missThenHit() {
+        replay(this.repository);
+
+        String key = this.cache.getKey(BUNDLE_LOCATION, MANIFEST);
+        assertNull(this.cache.get(key));
+        this.cache.put(key, EXPANDED_MANIFEST);
+        assertArrayEquals(EXPANDED_MANIFEST, this.cache.get(key));
+
+        assertEquals(1, this.cache.getMissCount());
+        assertEquals(1, this.cache.getHitCount());
+        assertEquals(1, this.cache.getEntryCount());
+
+        verify(this.repository);
+    }
+
+    @Test
+    public void cacheSurvivesRestart() {
+        replay(this.repository);
+
+        String key = this.cache.getKey(BUNDLE_LOCATION, MANIFEST);
+        this.cache.put(key, EXPANDED_MANIFEST);
+
+        ExpandedManifestCache restartedCache = new ExpandedManifestCache(CACHE_DIRECTORY, this.repository, null);
+        assertArrayEquals(EXPANDED_MANIFEST, restartedCache.get(restartedCache.getKey(BUNDLE_LOCATION, MANIFEST)));
+        assertEquals(1, restartedCache.getHitCount());
+    }
+
+    @Test
+    public void changedManifestReplacesEntry() {
+        replay(this.repository);
+
+        String key = this.cache.getKey(BUNDLE_LOCATION, MANIFEST);
+        this.cache.put(key, EXPANDED_MANIFEST);
+
+        String changedKey = this.cache.getKey(BUNDLE_LOCATION, "Bundle-SymbolicName: a\nBundle-Version: 2\n".getBytes());
+        assertFalse(key.equals(changedKey));
+        this.cache.put(changedKey, EXPANDED_MANIFEST);
+
+        assertNull(this.cache.get(key));
+        assertEquals(1, this.cache.getEntryCount());
+    }
+
+    @Test
+    public void differentLocationsHaveDifferentEntries() {
+        replay(this.repository);
+
+        this.cache.put(this.cache.getKey(BUNDLE_LOCATION, MANIFEST), EXPANDED_MANIFEST);
+        this.cache.put(this.cache.getKey(new File("target/bundles/b.jar"), MANIFEST), EXPANDED_MANIFEST);
+
+        assertEquals(2, this.cache.getEntryCount());
+    }
+
+    @Test
+    public void repositoryIsFingerprintedOnce() {
+        expectRepositoryContents(Collections.<RepositoryAwareArtifactDescriptor> emptySet());
+
+        String key = this.cache.getKey(BUNDLE_LOCATION, IMPORTING_MANIFEST);
+        assertEquals(key, this.cache.getKey(BUNDLE_LOCATION, IMPORTING_MANIFEST));
+        this.cache.getKey(new File("target/bundles/b.jar"), IMPORTING_MANIFEST);
+
+        verify(this.repository);
+    }
+
+    @Test
+    public void repositoryChangeInvalidatesExpandedManifestOnRestart() {
+        expectRepositoryContents(Collections.<RepositoryAwareArtifactDescriptor> emptySet());
+        String key = this.cache.getKey(BUNDLE_LOCATION, IMPORTING_MANIFEST);
+        this.cache.put(key, EXPANDED_MANIFEST);
+        verify(this.repository);
+
+        reset(this.repository);
+        RepositoryAwareArtifactDescriptor artifactDescriptor = createMock(RepositoryAwareArtifactDescriptor.class);
+        expect(artifactDescriptor.getType()).andReturn(BundleBridge.BRIDGE_TYPE).anyTimes();
+        expect(artifactDescriptor.getName()).andReturn("b").anyTimes();
+        expect(artifactDescriptor.getVersion()).andReturn(Version.emptyVersion).anyTimes();
+        expect(artifactDescriptor.getUri()).andReturn(URI.create("file:/b.jar")).anyTimes();
+        replay(artifactDescriptor);
+        expectRepositoryContents(Collections.singleton(artifactDescriptor));
+
+        ExpandedManifestCache restartedCache = new ExpandedManifestCache(CACHE_DIRECTORY, this.repository, null);
+        assertNull(restartedCache.get(restartedCache.getKey(BUNDLE_LOCATION, IMPORTING_MANIFEST)));
+        verify(this.repository);
+    }
+
+    @Test
+    public void installedBundleChangeInvalidatesExpandedManifest() {
+        expectRepositoryContents(Collections.<RepositoryAwareArtifactDescriptor> emptySet());
+        StubBundleContext bundleContext = new StubBundleContext();
+        StubBundle bundle = new StubBundle(1L, "b", Version.emptyVersion, "b.jar");
+        bundleContext.addInstalledBundle(bundle);
+        ImportExpansionHandler importExpansionHandler = new ImportExpansionHandler(this.repository, bundleContext,
+            Collections.<String> emptySet(), new MockEventLogger());
+        ExpandedManifestCache cache = new ExpandedManifestCache(CACHE_DIRECTORY, this.repository, importExpansionHandler);
+
+        String key = cache.getKey(BUNDLE_LOCATION, IMPORTING_MANIFEST);
+        cache.put(key, EXPANDED_MANIFEST);
+        assertEquals(key, cache.getKey(BUNDLE_LOCATION, IMPORTING_MANIFEST));
+
+        bundle.setLastModified(bundle.getLastModified() + 1);
+        assertNull(cache.get(cache.getKey(BUNDLE_LOCATION, IMPORTING_MANIFEST)));
+
+        importExpansionHandler.stop();
+        assertTrue(bundleContext.getBundleListeners().isEmpty());
+    }
+
+    @Test
+    public void importedBundleNamesAreReadFromManifest() {
+        assertImportedBundleNames("Import-Bundle: b\n", "b");
+        assertImportedBundleNames("Bundle-SymbolicName: a\r\nimport-bundle: b;version=\"[1,2)\",\r\n c;import-scope:=application\r\n", "b", "c");
+        assertImportedBundleNames("Import-Bundle: b;version=\"[1,\n 2)\", c\nImport-Package: d\n", "b", "c");
+        assertImportedBundleNames("Import-Library: b\n");
+    }
+
+    @Test
+    public void clear() {
+        replay(this.repository);
+
+        String key = this.cache.getKey(BUNDLE_LOCATION, MANIFEST);
+        this.cache.put(key, EXPANDED_MANIFEST);
+        this.cache.clear();
+
+        assertEquals(0, this.cache.getEntryCount());
+        assertNull(this.cache.get(key));
+    }
+
+    private static void assertImportedBundleNames(String manifest, String... bundleSymbolicNames) {
+        assertEquals(Arrays.asList(bundleSymbolicNames), ExpandedManifestCache.getImportedBundleNames(manifest.getBytes(),
+            manifest.toLowerCase(Locale.ENGLISH)));
+    }
+
+    private void expectRepositoryContents(Set<RepositoryAwareArtifactDescriptor> bundles) {
+        Query bundleQuery = createMock(Query.class);
+        expect(bundleQuery.run()).andReturn(bundles);
+        Query libraryQuery = createMock(Query.class);
+        expect(libraryQuery.run()).andReturn(Collections.<RepositoryAwareArtifactDescriptor> emptySet());
+        expect(this.repository.createQuery("type", BundleBridge.BRIDGE_TYPE)).andReturn(bundleQuery);
+        expect(this.repository.createQuery("type", LibraryDefinition.LIBRARY_TYPE)).andReturn(libraryQuery);
+        replay(bundleQuery, libraryQuery, this.repository);
+    }
+}
@@ -14,12 +14,15 @@ package org.eclipse.virgo.kernel.userregion.internal.equinox;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.lang.instrument.ClassFileTransformer;
 import java.lang.instrument.IllegalClassFormatException;
 import java.security.ProtectionDomain;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.virgo.kernel.userregion.internal.equinox.KernelBundleClassLoader;
@@ -38,6 +41,8 @@ public class LoadTimeWeavingTests extends AbstractOsgiFrameworkLaunchingTests {
 
     private static final String B_TYPE_NAME = "app.b.B";
 
+    private Bundle domainBundle;
+
     private Bundle emBundle;
 
     private Bundle includeBundle;
@@ -51,7 +56,7 @@ public class LoadTimeWeavingTests extends AbstractOsgiFrameworkLaunchingTests {
     public void setUp() throws Exception {
         super.setUp();        
         
-        this.framework.getBundleContext().installBundle(new File("src/test/resources/ltw/ltw-domain.jar").toURI().toString());
+        this.domainBundle = this.framework.getBundleContext().installBundle(new File("src/test/resources/ltw/ltw-domain.jar").toURI().toString());
         this.includeBundle = this.framework.getBundleContext().installBundle(new File("src/test/resources/ltw/ltw-include.jar").toURI().toString());
         this.emBundle = this.framework.getBundleContext().installBundle(new File("src/test/resources/ltw/ltw-em.jar").toURI().toString());
     }
@@ -75,6 +80,35 @@ public class LoadTimeWeavingTests extends AbstractOsgiFrameworkLaunchingTests {
         assertSame(domainTypeClass, throwAway.loadClass(DOMAIN_TYPE_NAME));
     }
 
+    @Test public void dependenciesAreIndexedByExportedPackage() {
+        KernelBundleClassLoader emClassLoader = (KernelBundleClassLoader) this.framework.getBundleClassLoader(this.emBundle);
+        assertNotNull(emClassLoader);
+        KernelBundleClassLoader.ThrowAwayClassLoader throwAway = emClassLoader.createThrowAway();
+
+        assertEquals(Arrays.asList(this.domainBundle), throwAway.getDependencyBundlesExporting("ltw.domain"));
+        assertNull(throwAway.getDependencyBundlesExporting("ltw.em"));
+        assertNull(throwAway.getDependencyBundlesExporting("app.a"));
+        assertNull(throwAway.findClassInternal(A_TYPE_NAME, true));
+    }
+
+    @Test public void dependencyThrowawaysArePooledPerThrowaway() {
+        KernelBundleClassLoader emClassLoader = (KernelBundleClassLoader) this.framework.getBundleClassLoader(this.emBundle);
+        assertNotNull(emClassLoader);
+        KernelBundleClassLoader.ThrowAwayClassLoader throwAway = emClassLoader.createThrowAway();
+
+        Class<?> domainTypeClass = throwAway.findClassInternal(DOMAIN_TYPE_NAME, true);
+        assertNotNull(domainTypeClass);
+        assertNotSame(throwAway, domainTypeClass.getClassLoader());
+        assertNotSame(this.framework.getBundleClassLoader(this.domainBundle), domainTypeClass.getClassLoader());
+        assertSame(domainTypeClass, throwAway.findClassInternal(DOMAIN_TYPE_NAME, true));
+
+        KernelBundleClassLoader.ThrowAwayClassLoader otherThrowAway = emClassLoader.createThrowAway();
+        Class<?> otherDomainTypeClass = otherThrowAway.findClassInternal(DOMAIN_TYPE_NAME, true);
+        assertNotSame(domainTypeClass, otherDomainTypeClass);
+        assertNotSame(domainTypeClass.getClassLoader(), otherDomainTypeClass.getClassLoader());
+        assertSame(otherDomainTypeClass, otherThrowAway.findClassInternal(DOMAIN_TYPE_NAME, true));
+    }
+
     @Test public void weaveAcrossBundles() throws ClassNotFoundException {
         KernelBundleClassLoader emClassLoader = (KernelBundleClassLoader) this.framework.getBundleClassLoader(this.emBundle);
         assertNotNull(emClassLoader);
@@ -116,6 +150,51 @@ public class LoadTimeWeavingTests extends AbstractOsgiFrameworkLaunchingTests {
         assertNotSame(this.emBundle.loadClass(DOMAIN_TYPE_NAME), before);
     }
 
+    @Test public void classLoaderTotalsIncludeClosedClassLoaders() throws Exception {
+        KernelBundleClassLoader emClassLoader = (KernelBundleClassLoader) this.framework.getBundleClassLoader(this.emBundle);
+        emClassLoader.addClassFileTransformer(new ClassFileTransformer() {
+
+            public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+                byte[] classfileBuffer) throws IllegalClassFormatException {
+                return null;
+            }
+
+        });
+        this.emBundle.loadClass(DOMAIN_TYPE_NAME);
+        long classesDefined = this.classLoaderMonitor.getClassesDefined();
+        long classesTransformed = this.classLoaderMonitor.getClassesTransformed();
+        long bytesTransformed = this.classLoaderMonitor.getBytesTransformed();
+        assertTrue(classesDefined > 0);
+        assertEquals(1, classesTransformed);
+        assertEquals(classesTransformed, getClassesTransformedByOpenClassLoaders());
+
+        this.framework.refresh(this.emBundle);
+        waitUntilTransformingClassLoadersClosed(3000);
+
+        assertEquals(0, getClassesTransformedByOpenClassLoaders());
+        assertEquals(classesDefined, this.classLoaderMonitor.getClassesDefined());
+        assertEquals(classesTransformed, this.classLoaderMonitor.getClassesTransformed());
+        assertEquals(bytesTransformed, this.classLoaderMonitor.getBytesTransformed());
+    }
+
+    private long getClassesTransformedByOpenClassLoaders() {
+        long classesTransformed = 0;
+        for (ClassLoaderStatistics statistics : this.classLoaderMonitor.getClassLoaderStatistics()) {
+            classesTransformed += statistics.getClassesTransformed();
+        }
+        return classesTransformed;
+    }
+
+    private void waitUntilTransformingClassLoadersClosed(int maxWaitInMillis) {
+        while (getClassesTransformedByOpenClassLoaders() > 0 && maxWaitInMillis > 0) {
+            try {
+                Thread.sleep(50); maxWaitInMillis-=50;
+            } catch (InterruptedException e) {
+                continue;
+            }
+        }
+    }
+
     private void waitUntilResolved(int maxWaitInMillis) {
         boolean resolved = this.emBundle.getState() == Bundle.RESOLVED;
         while (!resolved && maxWaitInMillis>0) {
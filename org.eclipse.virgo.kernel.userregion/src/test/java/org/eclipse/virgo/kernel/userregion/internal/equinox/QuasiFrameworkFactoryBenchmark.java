@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.equinox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiFramework;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiFrameworkFactory;
+import org.eclipse.virgo.kernel.userregion.internal.quasi.StandardQuasiFrameworkFactory;
+import org.eclipse.virgo.kernel.userregion.internal.quasi.StandardResolutionFailureDetective;
+
+/**
+ * Measures the per-deploy cost of creating and resolving a {@link QuasiFramework} as the number of installed bundles
+ * grows. The first creation after the system state changes pays for a snapshot of the state, subsequent creations
+ * reuse it.
+ * <p/>
+ * Not run by the build, which runs only classes named <code>*Tests</code>. Run it by hand to compare the timings it
+ * prints before and after a change to {@link StandardQuasiFrameworkFactory}.
+ */
+public class QuasiFrameworkFactoryBenchmark extends AbstractOsgiFrameworkLaunchingTests {
+
+    private static final int[] INSTALLED_BUNDLE_COUNTS = { 0, 150, 300, 600 };
+
+    private static final int ITERATIONS = 20;
+
+    @Override
+    protected String getRepositoryConfigDirectory() {
+        return new File("src/test/resources/config/BundleInstallationTests").getAbsolutePath();
+    }
+
+    @Test
+    public void perDeployCostAsInstalledBundlesGrow() throws Exception {
+        BundleContext bundleContext = this.framework.getBundleContext();
+        QuasiFrameworkFactory factory = new StandardQuasiFrameworkFactory(bundleContext, new StandardResolutionFailureDetective(this.platformAdmin),
+            this.repository, null);
+
+        int installed = 0;
+        for (int target : INSTALLED_BUNDLE_COUNTS) {
+            for (; installed < target; installed++) {
+                bundleContext.installBundle("benchmark:" + installed, new ByteArrayInputStream(createBundle(installed)));
+            }
+
+            long start = System.nanoTime();
+            QuasiFramework first = factory.create();
+            first.resolve();
+            long firstNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                QuasiFramework quasiFramework = factory.create();
+                quasiFramework.resolve();
+            }
+            long averageNanos = (System.nanoTime() - start) / ITERATIONS;
+
+            assertEquals(bundleContext.getBundles().length, first.getBundles().size());
+
+            System.out.println(String.format("%4d installed bundles: first create %6d us, subsequent creates %6d us", installed,
+                firstNanos / 1000, averageNanos / 1000));
+        }
+    }
+
+    private static byte[] createBundle(int index) throws IOException {
+        Manifest manifest = new Manifest();
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        attributes.putValue("Bundle-ManifestVersion", "2");
+        attributes.putValue("Bundle-SymbolicName", "benchmark.bundle" + index);
+        attributes.putValue("Bundle-Version", "1.0.0");
+        attributes.putValue("Export-Package", "benchmark.p" + index + ";version=\"1.0.0\"");
+        if (index > 0) {
+            attributes.putValue("Import-Package", "benchmark.p" + (index - 1) + ";version=\"[1.0.0,2.0.0)\"");
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JarOutputStream jar = new JarOutputStream(baos, manifest);
+        jar.close();
+        return baos.toByteArray();
+    }
+}
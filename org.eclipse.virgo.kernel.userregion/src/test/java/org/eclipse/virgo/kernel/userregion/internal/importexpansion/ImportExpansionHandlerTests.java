@@ -153,6 +153,68 @@ public class ImportExpansionHandlerTests {
 
     }
 
+    @Test
+    public void repeatedImportLibraryIsUnaffectedByEarlierExpansion() throws UnableToSatisfyDependenciesException {
+
+        List<Object> mocks = new ArrayList<Object>();
+
+        ImportedLibrary libraryImport = createAndStoreMock(ImportedLibrary.class, mocks);
+
+        expect(libraryImport.getLibrarySymbolicName()).andReturn("org.springframework").atLeastOnce();
+        expect(libraryImport.getVersion()).andReturn(new VersionRange("[2.5,3.0)")).atLeastOnce();
+        expect(libraryImport.getResolution()).andReturn(Resolution.MANDATORY).anyTimes();
+
+        ImportExpansionHandler handler = new ImportExpansionHandler(repository, packagesExportedBySystemBundle, new MockEventLogger());
+
+        replayMocks(mocks);
+
+        BundleManifest firstBundleManifest = BundleManifestFactory.createBundleManifest();
+        handler.expandImports(Arrays.asList(new ImportedLibrary[] { libraryImport }), Arrays.asList(new ImportedBundle[0]), firstBundleManifest);
+        for (ImportedPackage packageImport : firstBundleManifest.getImportPackage().getImportedPackages()) {
+            packageImport.getAttributes().put("bundle-symbolic-name", "modified");
+        }
+
+        BundleManifest secondBundleManifest = BundleManifestFactory.createBundleManifest();
+        handler.expandImports(Arrays.asList(new ImportedLibrary[] { libraryImport }), Arrays.asList(new ImportedBundle[0]), secondBundleManifest);
+
+        verifyMocks(mocks);
+
+        assertEquals(34, secondBundleManifest.getImportPackage().getImportedPackages().size());
+
+        for (ImportedPackage packageImport : secondBundleManifest.getImportPackage().getImportedPackages()) {
+            assertTrue(packageImport.getAttributes().get("bundle-symbolic-name").startsWith("org.springframework."));
+        }
+    }
+
+    @Test
+    public void repeatedImportLibraryReusesExpansion() throws UnableToSatisfyDependenciesException {
+
+        List<Object> mocks = new ArrayList<Object>();
+
+        ImportedLibrary libraryImport = createAndStoreMock(ImportedLibrary.class, mocks);
+
+        expect(libraryImport.getLibrarySymbolicName()).andReturn("org.springframework").atLeastOnce();
+        expect(libraryImport.getVersion()).andReturn(new VersionRange("[2.5,3.0)")).atLeastOnce();
+        expect(libraryImport.getResolution()).andReturn(Resolution.MANDATORY).anyTimes();
+
+        ImportExpansionHandler handler = new ImportExpansionHandler(repository, packagesExportedBySystemBundle, new MockEventLogger());
+
+        replayMocks(mocks);
+
+        BundleManifest firstBundleManifest = BundleManifestFactory.createBundleManifest();
+        handler.expandImports(Arrays.asList(new ImportedLibrary[] { libraryImport }), Arrays.asList(new ImportedBundle[0]), firstBundleManifest);
+        int attributeReads = this.repository.attributeReads;
+        assertTrue(attributeReads > 0);
+
+        BundleManifest secondBundleManifest = BundleManifestFactory.createBundleManifest();
+        handler.expandImports(Arrays.asList(new ImportedLibrary[] { libraryImport }), Arrays.asList(new ImportedBundle[0]), secondBundleManifest);
+        assertEquals(attributeReads, this.repository.attributeReads);
+
+        verifyMocks(mocks);
+
+        assertEquals(34, secondBundleManifest.getImportPackage().getImportedPackages().size());
+    }
+
     @Test
     public void basicImportFragmentBundle() throws UnableToSatisfyDependenciesException {
         List<Object> mocks = new ArrayList<Object>();
@@ -704,6 +766,8 @@ public class ImportExpansionHandlerTests {
 
         private final List<RepositoryAwareArtifactDescriptor> artifactDescriptors = new ArrayList<RepositoryAwareArtifactDescriptor>();
 
+        private int attributeReads;
+
         /**
          * {@inheritDoc}
          */
@@ -752,7 +816,7 @@ public class ImportExpansionHandlerTests {
             this.artifactDescriptors.add(new StubRepositoryAwareArtifactDescriptor(descriptor));
         }
 
-        private static final class StubRepositoryAwareArtifactDescriptor implements RepositoryAwareArtifactDescriptor {
+        private final class StubRepositoryAwareArtifactDescriptor implements RepositoryAwareArtifactDescriptor {
 
             private final ArtifactDescriptor delegate;
 
@@ -764,10 +828,12 @@ public class ImportExpansionHandlerTests {
             }
 
             public Set<Attribute> getAttribute(String name) {
+                attributeReads++;
                 return delegate.getAttribute(name);
             }
 
             public Set<Attribute> getAttributes() {
+                attributeReads++;
                 return delegate.getAttributes();
             }
 
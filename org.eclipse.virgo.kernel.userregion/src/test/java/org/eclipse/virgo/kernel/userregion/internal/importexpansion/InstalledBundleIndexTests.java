@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.importexpansion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundle;
+import org.eclipse.virgo.teststubs.osgi.framework.StubBundleContext;
+import org.eclipse.virgo.util.osgi.VersionRange;
+import org.eclipse.virgo.util.osgi.manifest.BundleManifest;
+
+/**
+ */
+public class InstalledBundleIndexTests {
+
+    private final StubBundleContext bundleContext = new StubBundleContext();
+
+    private final InstalledBundleIndex installedBundleIndex = new InstalledBundleIndex(this.bundleContext);
+
+    @Test
+    public void highestVersionInRangeIsFound() {
+        install(1, "a", "1.0.0");
+        install(2, "a", "2.0.0");
+        install(3, "a", "3.0.0");
+        install(4, "b", "2.5.0");
+
+        assertVersion("2.0.0", this.installedBundleIndex.findBundleManifest("a", new VersionRange("[1.0.0,3.0.0)")));
+        assertVersion("3.0.0", this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE));
+        assertNull(this.installedBundleIndex.findBundleManifest("a", new VersionRange("[4.0.0,5.0.0)")));
+        assertNull(this.installedBundleIndex.findBundleManifest("c", VersionRange.NATURAL_NUMBER_RANGE));
+
+        assertEquals(1, this.bundleContext.getBundleListeners().size());
+    }
+
+    @Test
+    public void indexFollowsBundleEvents() {
+        install(1, "a", "1.0.0");
+        assertVersion("1.0.0", this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE));
+
+        StubBundle bundle = install(2, "a", "2.0.0");
+        this.installedBundleIndex.bundleChanged(new BundleEvent(BundleEvent.INSTALLED, bundle));
+        assertVersion("2.0.0", this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE));
+
+        this.installedBundleIndex.bundleChanged(new BundleEvent(BundleEvent.UNINSTALLED, bundle));
+        assertVersion("1.0.0", this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE));
+    }
+
+    @Test
+    public void updatedManifestIsParsedAgain() {
+        StubBundle bundle = install(1, "a", "1.0.0");
+        assertEquals(0, this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE).getExportPackage()
+            .getExportedPackages().size());
+
+        bundle.addHeader("Export-Package", "p");
+        assertEquals(0, this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE).getExportPackage()
+            .getExportedPackages().size());
+
+        this.installedBundleIndex.bundleChanged(new BundleEvent(BundleEvent.UPDATED, bundle));
+        assertEquals(1, this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE).getExportPackage()
+            .getExportedPackages().size());
+    }
+
+    @Test
+    public void stopRemovesBundleListener() {
+        this.installedBundleIndex.stop();
+        assertTrue(this.bundleContext.getBundleListeners().isEmpty());
+
+        install(1, "a", "1.0.0");
+        assertVersion("1.0.0", this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE));
+        assertEquals(1, this.bundleContext.getBundleListeners().size());
+
+        this.installedBundleIndex.stop();
+        assertTrue(this.bundleContext.getBundleListeners().isEmpty());
+
+        install(2, "a", "2.0.0");
+        assertVersion("2.0.0", this.installedBundleIndex.findBundleManifest("a", VersionRange.NATURAL_NUMBER_RANGE));
+        assertEquals(1, this.bundleContext.getBundleListeners().size());
+    }
+
+    private StubBundle install(long bundleId, String symbolicName, String version) {
+        StubBundle bundle = new StubBundle(bundleId, symbolicName, new Version(version), "location" + bundleId);
+        bundle.addHeader("Bundle-SymbolicName", symbolicName);
+        bundle.addHeader("Bundle-Version", version);
+        bundle.setState(Bundle.INSTALLED);
+        this.bundleContext.addInstalledBundle(bundle);
+        return bundle;
+    }
+
+    private static void assertVersion(String expectedVersion, BundleManifest bundleManifest) {
+        assertEquals(new Version(expectedVersion), bundleManifest.getBundleVersion());
+    }
+}
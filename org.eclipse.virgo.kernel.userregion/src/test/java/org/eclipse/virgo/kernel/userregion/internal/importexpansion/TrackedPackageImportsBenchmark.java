@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.importexpansion;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import org.eclipse.virgo.kernel.osgi.framework.ImportMergeException;
+import org.eclipse.virgo.util.osgi.manifest.BundleManifest;
+import org.eclipse.virgo.util.osgi.manifest.BundleManifestFactory;
+import org.eclipse.virgo.util.osgi.manifest.ImportedPackage;
+
+/**
+ * Measures the cost of merging {@link TrackedPackageImports} of 50 bundles, each importing 500 packages with
+ * overlapping version and bundle version ranges, and of promoting the result into a container.
+ * <p/>
+ * The build runs only classes named <code>*Tests</code>, so this benchmark runs only when it is run explicitly.
+ */
+public class TrackedPackageImportsBenchmark {
+
+    private static final int BUNDLE_COUNT = 50;
+
+    private static final int PACKAGE_COUNT = 500;
+
+    private static final int WARM_UP_ITERATIONS = 20;
+
+    private static final int ITERATIONS = 200;
+
+    private final TrackedPackageImportsFactory trackedPackageImportsFactory = new StandardTrackedPackageImportsFactory();
+
+    @Test
+    public void merge() throws ImportMergeException {
+        List<TrackedPackageImports> bundlePackageImports = new ArrayList<TrackedPackageImports>(BUNDLE_COUNT);
+        for (int bundle = 0; bundle < BUNDLE_COUNT; bundle++) {
+            bundlePackageImports.add(this.trackedPackageImportsFactory.create(createImportedPackages(bundle), "bundle" + bundle));
+        }
+
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            merge(bundlePackageImports);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            assertEquals(PACKAGE_COUNT, merge(bundlePackageImports).getMergedImports().size());
+        }
+        long averageNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        System.out.println(String.format("merge of %d bundles importing %d packages: %6d us", BUNDLE_COUNT, PACKAGE_COUNT, averageNanos / 1000));
+    }
+
+    private TrackedPackageImports merge(List<TrackedPackageImports> bundlePackageImports) throws ImportMergeException {
+        TrackedPackageImports collector = this.trackedPackageImportsFactory.createCollector();
+        for (TrackedPackageImports packageImports : bundlePackageImports) {
+            collector.merge(packageImports);
+        }
+        TrackedPackageImports container = this.trackedPackageImportsFactory.createContainer("benchmark");
+        container.merge(collector);
+        return container;
+    }
+
+    /**
+     * Each bundle imports every package with a version range which contains version 5 and a bundle version range which
+     * contains version 50, so that every merge of a package narrows its ranges.
+     */
+    private static List<ImportedPackage> createImportedPackages(int bundle) {
+        BundleManifest bundleManifest = BundleManifestFactory.createBundleManifest();
+        for (int pkg = 0; pkg < PACKAGE_COUNT; pkg++) {
+            ImportedPackage importedPackage = bundleManifest.getImportPackage().addImportedPackage("benchmark.p" + pkg);
+            importedPackage.getAttributes().put("version", "[" + (bundle % 5) + "," + (6 + bundle) + ")");
+            importedPackage.getAttributes().put("bundle-version", "[" + bundle + "," + (51 + bundle) + ")");
+            if (pkg % 10 == 0) {
+                importedPackage.getAttributes().put("vendor", "benchmark");
+            }
+        }
+        return bundleManifest.getImportPackage().getImportedPackages();
+    }
+}
@@ -388,6 +388,31 @@ public class TrackedPackageImportsTests {
         }
     }
 
+    @Test public void testMergeDoesNotModifyMergedImports() throws ImportMergeException, IOException {
+
+        BundleManifest manifestA = BundleManifestFactory.createBundleManifest(new StringReader(
+            "bundle-symbolicname: A\nimport-package: p;version=\"[1,3]\";resolution:=optional"));
+        TrackedPackageImports tpiA = this.trackedPackageImportsFactory.create(manifestA);
+
+        BundleManifest manifestB = BundleManifestFactory.createBundleManifest(new StringReader(
+            "bundle-symbolicname: B\nimport-package: p;version=\"2\";a=b"));
+        TrackedPackageImports tpiB = this.trackedPackageImportsFactory.create(manifestB);
+
+        TrackedPackageImports tpiCollector = this.trackedPackageImportsFactory.createCollector();
+        tpiCollector.merge(tpiA);
+        tpiCollector.merge(tpiB);
+
+        ImportedPackage mergedImport = convertImportedPackageListToMap(tpiCollector.getMergedImports()).get("p");
+        Assert.assertEquals("Incorrectly merged version", new VersionRange("[2,3]"), new VersionRange(mergedImport.getAttributes().get("version")));
+        Assert.assertEquals("Incorrectly merged attribute", "b", mergedImport.getAttributes().get("a"));
+        Assert.assertEquals("Incorrectly merged resolution", Resolution.MANDATORY, mergedImport.getResolution());
+
+        ImportedPackage importA = convertImportedPackageListToMap(tpiA.getMergedImports()).get("p");
+        Assert.assertEquals("Merged import modified", new VersionRange("[1,3]"), new VersionRange(importA.getAttributes().get("version")));
+        Assert.assertNull("Merged import modified", importA.getAttributes().get("a"));
+        Assert.assertEquals("Merged import modified", Resolution.OPTIONAL, importA.getResolution());
+    }
+
     /**
      * Convert a given list of package imports with no duplicate package names to a map of package name to
      * {@link ImportedPackage}.
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.quasi;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import org.eclipse.virgo.kernel.artifact.bundle.BundleBridge;
+import org.eclipse.virgo.repository.ArtifactDescriptor;
+import org.eclipse.virgo.repository.Attribute;
+
+/**
+ */
+public class ArtifactManifestCacheTests {
+
+    private static final URI BUNDLE_URI = URI.create("file:/bundles/a.jar");
+
+    private final ArtifactManifestCache artifactManifestCache = new ArtifactManifestCache();
+
+    @Test
+    public void manifestIsReusedForSameDescriptor() {
+        ArtifactDescriptor artifact = createArtifactDescriptor("1.0.0");
+
+        Dictionary<String, String> manifest = this.artifactManifestCache.getManifest(artifact);
+        assertEquals("a", manifest.get("Bundle-SymbolicName"));
+        assertEquals("1.0.0", manifest.get("Bundle-Version"));
+
+        assertSame(manifest, this.artifactManifestCache.getManifest(artifact));
+    }
+
+    @Test
+    public void manifestIsReplacedForNewDescriptor() {
+        Dictionary<String, String> manifest = this.artifactManifestCache.getManifest(createArtifactDescriptor("1.0.0"));
+
+        Dictionary<String, String> newManifest = this.artifactManifestCache.getManifest(createArtifactDescriptor("1.1.0"));
+        assertNotSame(manifest, newManifest);
+        assertEquals("1.1.0", newManifest.get("Bundle-Version"));
+    }
+
+    private static ArtifactDescriptor createArtifactDescriptor(String bundleVersion) {
+        Set<Attribute> attributes = new HashSet<Attribute>();
+        attributes.add(createAttribute(BundleBridge.RAW_HEADER_PREFIX + "Bundle-SymbolicName", "a"));
+        attributes.add(createAttribute(BundleBridge.RAW_HEADER_PREFIX + "Bundle-Version", bundleVersion));
+        attributes.add(createAttribute("Bundle-SymbolicName", "a"));
+
+        ArtifactDescriptor artifact = createMock(ArtifactDescriptor.class);
+        expect(artifact.getUri()).andReturn(BUNDLE_URI).anyTimes();
+        expect(artifact.getType()).andReturn(BundleBridge.BRIDGE_TYPE).anyTimes();
+        expect(artifact.getAttributes()).andReturn(attributes).anyTimes();
+        replay(artifact);
+        return artifact;
+    }
+
+    private static Attribute createAttribute(String key, String value) {
+        Attribute attribute = createMock(Attribute.class);
+        expect(attribute.getKey()).andReturn(key).anyTimes();
+        expect(attribute.getValue()).andReturn(value).anyTimes();
+        replay(attribute);
+        return attribute;
+    }
+}
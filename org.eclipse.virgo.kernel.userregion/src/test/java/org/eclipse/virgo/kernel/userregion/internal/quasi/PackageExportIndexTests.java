@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.quasi;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.osgi.service.resolver.VersionRange;
+import org.junit.Test;
+
+import org.eclipse.virgo.kernel.artifact.bundle.BundleBridge;
+import org.eclipse.virgo.repository.Attribute;
+import org.eclipse.virgo.repository.Query;
+import org.eclipse.virgo.repository.Repository;
+import org.eclipse.virgo.repository.RepositoryAwareArtifactDescriptor;
+
+/**
+ */
+public class PackageExportIndexTests {
+
+    private final RepositoryAwareArtifactDescriptor a = createArtifactDescriptor("p", "1.0.0", "p", "2.5.0", "q", null);
+
+    private final RepositoryAwareArtifactDescriptor b = createArtifactDescriptor("p", "2.0.0");
+
+    private final RepositoryAwareArtifactDescriptor c = createArtifactDescriptor("r", "1.0.0");
+
+    @Test
+    public void exportersInRangeAreFoundInVersionOrder() {
+        PackageExportIndex.Snapshot snapshot = createPackageExportIndex(setOf(this.a, this.b)).getSnapshot();
+
+        assertEquals(Arrays.asList(this.a, this.b, this.a), snapshot.findExporters("p", new VersionRange("1")));
+        assertEquals(Arrays.asList(this.b, this.a), snapshot.findExporters("p", new VersionRange("[2,3)")));
+        assertEquals(Arrays.asList(this.a), snapshot.findExporters("p", new VersionRange("[1,1]")));
+        assertEquals(Arrays.asList(this.b), snapshot.findExporters("p", new VersionRange("[2,2.5)")));
+        assertEquals(Arrays.asList(this.a), snapshot.findExporters("q", new VersionRange("[0,1)")));
+        assertEquals(Arrays.asList(this.a, this.b, this.a), snapshot.findExporters("p", null));
+    }
+
+    @Test
+    public void noExportersOutsideRange() {
+        PackageExportIndex.Snapshot snapshot = createPackageExportIndex(setOf(this.a, this.b)).getSnapshot();
+
+        assertTrue(snapshot.findExporters("p", new VersionRange("(2.5,3)")).isEmpty());
+        assertTrue(snapshot.findExporters("p", new VersionRange("(1,2)")).isEmpty());
+        assertTrue(snapshot.findExporters("p", new VersionRange("3")).isEmpty());
+        assertTrue(snapshot.findExporters("q", new VersionRange("1")).isEmpty());
+        assertTrue(snapshot.findExporters("r", new VersionRange("0")).isEmpty());
+    }
+
+    @Test
+    public void snapshotIsReusedWhileRepositoryIsUnchanged() {
+        PackageExportIndex packageExportIndex = createPackageExportIndex(setOf(this.a, this.b), setOf(this.b, this.a));
+
+        assertSame(packageExportIndex.getSnapshot(), packageExportIndex.getSnapshot());
+    }
+
+    @Test
+    public void snapshotReflectsRepositoryChanges() {
+        PackageExportIndex packageExportIndex = createPackageExportIndex(setOf(this.a, this.b), setOf(this.b, this.c));
+
+        PackageExportIndex.Snapshot snapshot = packageExportIndex.getSnapshot();
+        PackageExportIndex.Snapshot changedSnapshot = packageExportIndex.getSnapshot();
+
+        assertNotSame(snapshot, changedSnapshot);
+        assertEquals(Arrays.asList(this.b), changedSnapshot.findExporters("p", new VersionRange("1")));
+        assertEquals(Arrays.asList(this.c), changedSnapshot.findExporters("r", new VersionRange("1")));
+        assertTrue(changedSnapshot.findExporters("q", null).isEmpty());
+    }
+
+    /**
+     * Creates an index of a repository whose bundle artifacts are the given sets of artifacts on successive queries.
+     * Each artifact's attributes may be read only once, so an artifact which is indexed more than once fails the test.
+     */
+    private static PackageExportIndex createPackageExportIndex(Set<RepositoryAwareArtifactDescriptor>... repositoryContents) {
+        Repository repository = createMock(Repository.class);
+        for (Set<RepositoryAwareArtifactDescriptor> artifacts : repositoryContents) {
+            Query query = createMock(Query.class);
+            expect(query.run()).andReturn(artifacts);
+            replay(query);
+            expect(repository.createQuery("type", BundleBridge.BRIDGE_TYPE)).andReturn(query);
+        }
+        replay(repository);
+        return new PackageExportIndex(repository);
+    }
+
+    private static Set<RepositoryAwareArtifactDescriptor> setOf(RepositoryAwareArtifactDescriptor... artifacts) {
+        return new LinkedHashSet<RepositoryAwareArtifactDescriptor>(Arrays.asList(artifacts));
+    }
+
+    /**
+     * Creates a bundle artifact descriptor exporting the given packages, each given as a package name followed by a
+     * version or <code>null</code>.
+     */
+    private static RepositoryAwareArtifactDescriptor createArtifactDescriptor(String... packageExports) {
+        Set<Attribute> attributes = new HashSet<Attribute>();
+        for (int index = 0; index < packageExports.length; index += 2) {
+            attributes.add(createAttribute(packageExports[index], packageExports[index + 1]));
+        }
+
+        RepositoryAwareArtifactDescriptor artifact = createMock(RepositoryAwareArtifactDescriptor.class);
+        expect(artifact.getAttribute("Export-Package")).andReturn(attributes);
+        replay(artifact);
+        return artifact;
+    }
+
+    private static Attribute createAttribute(String packageName, String version) {
+        Map<String, Set<String>> properties = new HashMap<String, Set<String>>();
+        if (version != null) {
+            properties.put("version", Collections.singleton(version));
+        }
+
+        Attribute attribute = createMock(Attribute.class);
+        expect(attribute.getValue()).andReturn(packageName).anyTimes();
+        expect(attribute.getProperties()).andReturn(properties).anyTimes();
+        replay(attribute);
+        return attribute;
+    }
+}
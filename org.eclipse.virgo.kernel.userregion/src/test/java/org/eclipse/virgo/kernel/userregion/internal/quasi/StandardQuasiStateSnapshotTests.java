@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2010 VMware Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *   VMware Inc. - initial contribution
+ *******************************************************************************/
+
+package org.eclipse.virgo.kernel.userregion.internal.quasi;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import java.util.List;
+
+import org.eclipse.osgi.service.resolver.BundleDescription;
+import org.eclipse.osgi.service.resolver.State;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiImportPackage;
+import org.eclipse.virgo.kernel.osgi.quasi.QuasiStateSnapshot;
+
+/**
+ */
+public class StandardQuasiStateSnapshotTests {
+
+    private static final String PN = "p";
+
+    private static final Version VERSION = new Version("1.2.3");
+
+    private StubBundleDescription exporter;
+
+    private StubBundleDescription importer;
+
+    private QuasiStateSnapshot snapshot;
+
+    private State state;
+
+    @Before
+    public void setUp() {
+        this.exporter = new StubBundleDescription("exporter");
+        this.exporter.setBundleId(1);
+        this.exporter.setVersion(VERSION);
+        StubExportPackageDescription exportPackage = new StubExportPackageDescription(PN);
+        exportPackage.setExporter(this.exporter);
+        this.exporter.addExportPackage(exportPackage);
+
+        this.importer = new StubBundleDescription("importer");
+        this.importer.setBundleId(2);
+        this.importer.setVersion(VERSION);
+        StubImportPackageSpecification wiredImport = new StubImportPackageSpecification(PN);
+        wiredImport.setBundle(this.importer);
+        wiredImport.setSupplier(exportPackage);
+        wiredImport.setResolved(true);
+        this.importer.addImportPackage(wiredImport);
+        StubImportPackageSpecification unwiredImport = new StubImportPackageSpecification("q");
+        unwiredImport.setBundle(this.importer);
+        this.importer.addImportPackage(unwiredImport);
+
+        this.state = createMock(State.class);
+        expect(this.state.getBundles()).andReturn(new BundleDescription[] { this.exporter, this.importer });
+        replay(this.state);
+
+        this.snapshot = new StandardQuasiStateSnapshot(this.state, new StubStateHelper(), 7);
+    }
+
+    @Test
+    public void testBundles() {
+        verify(this.state);
+        Assert.assertEquals(2, this.snapshot.getBundles().size());
+        Assert.assertEquals("exporter", this.snapshot.getBundle(1).getSymbolicName());
+        Assert.assertEquals(2, this.snapshot.getBundle("importer", VERSION).getBundleId());
+        Assert.assertNull(this.snapshot.getBundle(3));
+        Assert.assertNull(this.snapshot.getBundle("importer", Version.emptyVersion));
+    }
+
+    @Test
+    public void testWiredImportPackages() {
+        List<QuasiImportPackage> wiredImportPackages = this.snapshot.getWiredImportPackages(2);
+        Assert.assertEquals(1, wiredImportPackages.size());
+        Assert.assertEquals("exporter", wiredImportPackages.get(0).getProvider().getExportingBundle().getSymbolicName());
+        Assert.assertTrue(this.snapshot.getWiredImportPackages(1).isEmpty());
+        Assert.assertTrue(this.snapshot.getWiredImportPackages(3).isEmpty());
+    }
+
+    @Test
+    public void testPackages() {
+        Assert.assertEquals(1, this.snapshot.getExportPackages(PN).size());
+        Assert.assertEquals(1, this.snapshot.getImportPackages(PN).size());
+        Assert.assertEquals(1, this.snapshot.getImportPackages("q").size());
+        Assert.assertTrue(this.snapshot.getExportPackages("q").isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        this.snapshot.getBundles().clear();
+    }
+
+    @Test
+    public void testTimeStamp() {
+        Assert.assertEquals(7, ((StandardQuasiStateSnapshot) this.snapshot).getTimeStamp());
+    }
+}